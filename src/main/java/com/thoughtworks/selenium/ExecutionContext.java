@@ -0,0 +1,440 @@
+/*
+ * Copyright 2004 ThoughtWorks, Inc. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law
+ * or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package com.thoughtworks.selenium;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+
+import org.apache.log4j.Logger;
+import org.openqa.selenium.WebDriver;
+
+import com.virtusa.isq.vtaf.report.model.TestCase;
+
+/**
+ * The state of the test running on the current thread: the browsers and
+ * database connections it uses, its logger, its timings, its verification
+ * errors, its window index and the test case of the report its steps are
+ * added to.<br>
+ * Each thread has its own context, so that test methods can run in parallel
+ * (TestNG parallel="methods") on the same test class instance without
+ * sharing a browser or mixing up their results. A new context is started
+ * before each test method.<br>
+ * The context is inherited by the threads a test thread starts, so that a
+ * test method with a TestNG timeOut, which TestNG runs on a thread of its
+ * own, still uses the browser started for it before the method.
+ */
+public final class ExecutionContext {
+
+    /** The context of each thread, inherited by the threads it starts. */
+    private static final ThreadLocal<ExecutionContext> CURRENT =
+            new InheritableThreadLocal<ExecutionContext>() {
+
+                @Override
+                protected ExecutionContext initialValue() {
+                    return new ExecutionContext();
+                }
+            };
+
+    /** The driver commands are sent to. */
+    private WebDriver driver;
+
+    /** The browser sessions by user name. */
+    private Map<String, WebDriver> seleniumInstances =
+            new HashMap<String, WebDriver>();
+
+    /** The browser sessions still launching, by user name. */
+    private final Map<String, Future<WebDriver>> pendingUsers =
+            new LinkedHashMap<String, Future<WebDriver>>();
+
+    /** The name of the user being created. */
+    private String seleniumInstanceName = "";
+
+    /** The database connections by name. */
+    private Map<String, Connection> databaseInstances =
+            new HashMap<String, Connection>();
+
+    /** The verification errors. */
+    private StringBuffer verificationErrors = new StringBuffer();
+
+    /** The logger, or null to use the shared logger. */
+    private Logger log;
+
+    /** The error messages. */
+    private String errorMessages = "Verification failures : \n";
+
+    /** The current test method. */
+    private String currentMethod = "";
+
+    /** The calling class name. */
+    private String callingClassName = "";
+
+    /** The line number. */
+    private int lineNumber;
+
+    /** The open window handle index. */
+    private List<String> openWindowHandleIndex = new ArrayList<String>();
+
+    /** The command start time, by {@link System#nanoTime()}, or 0 if unset. */
+    private long commandStartTime;
+
+    /** The test case start time, by {@link System#nanoTime()}, or 0 if unset. */
+    private long testcaseStartTime;
+
+    /** The total execution time taken. */
+    private long totalExecutionTimeTaken;
+
+    /** The name of the test case running. */
+    private String testCaseName = "";
+
+    /** The test case of the report the steps are added to. */
+    private TestCase reportTestCase;
+
+    /**
+     * Instantiates a new execution context.
+     */
+    private ExecutionContext() {
+    }
+
+    /**
+     * Gets the context of the current thread.
+     *
+     * @return the context
+     */
+    public static ExecutionContext current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Starts a new context on the current thread. Called before each test
+     * method.
+     *
+     * @return the new context
+     */
+    public static ExecutionContext begin() {
+        ExecutionContext context = new ExecutionContext();
+        CURRENT.set(context);
+        return context;
+    }
+
+    /**
+     * Makes the current thread use the given context, e.g. a helper thread
+     * started by a test method.
+     *
+     * @param context the context
+     */
+    public static void attach(final ExecutionContext context) {
+        CURRENT.set(context);
+    }
+
+    /**
+     * Gets the driver.
+     *
+     * @return the driver
+     */
+    public WebDriver getDriver() {
+        return driver;
+    }
+
+    /**
+     * Sets the driver.
+     *
+     * @param webDriver the driver
+     */
+    public void setDriver(final WebDriver webDriver) {
+        this.driver = webDriver;
+    }
+
+    /**
+     * Gets the selenium instances.
+     *
+     * @return the selenium instances
+     */
+    public Map<String, WebDriver> getSeleniumInstances() {
+        return seleniumInstances;
+    }
+
+    /**
+     * Sets the selenium instances.
+     *
+     * @param instances the selenium instances
+     */
+    public void setSeleniumInstances(final Map<String, WebDriver> instances) {
+        this.seleniumInstances = instances;
+    }
+
+    /**
+     * Gets the browser sessions still launching, by user name. They are
+     * added to the selenium instances when the user is first needed.
+     *
+     * @return the launching sessions
+     */
+    public Map<String, Future<WebDriver>> getPendingUsers() {
+        return pendingUsers;
+    }
+
+    /**
+     * Gets the selenium instance name.
+     *
+     * @return the selenium instance name
+     */
+    public String getSeleniumInstanceName() {
+        return seleniumInstanceName;
+    }
+
+    /**
+     * Sets the selenium instance name.
+     *
+     * @param instanceName the selenium instance name
+     */
+    public void setSeleniumInstanceName(final String instanceName) {
+        this.seleniumInstanceName = instanceName;
+    }
+
+    /**
+     * Gets the database instances.
+     *
+     * @return the database instances
+     */
+    public Map<String, Connection> getDatabaseInstances() {
+        return databaseInstances;
+    }
+
+    /**
+     * Sets the database instances.
+     *
+     * @param instances the database instances
+     */
+    public void setDatabaseInstances(final Map<String, Connection> instances) {
+        this.databaseInstances = instances;
+    }
+
+    /**
+     * Gets the verification errors.
+     *
+     * @return the verification errors
+     */
+    public StringBuffer getVerificationErrors() {
+        return verificationErrors;
+    }
+
+    /**
+     * Sets the verification errors.
+     *
+     * @param errors the verification errors
+     */
+    public void setVerificationErrors(final StringBuffer errors) {
+        this.verificationErrors = errors;
+    }
+
+    /**
+     * Gets the logger.
+     *
+     * @return the logger, or null if the shared logger is used
+     */
+    public Logger getLog() {
+        return log;
+    }
+
+    /**
+     * Sets the logger.
+     *
+     * @param logger the logger
+     */
+    public void setLog(final Logger logger) {
+        this.log = logger;
+    }
+
+    /**
+     * Gets the error messages.
+     *
+     * @return the error messages
+     */
+    public String getErrorMessages() {
+        return errorMessages;
+    }
+
+    /**
+     * Sets the error messages.
+     *
+     * @param messages the error messages
+     */
+    public void setErrorMessages(final String messages) {
+        this.errorMessages = messages;
+    }
+
+    /**
+     * Gets the current method.
+     *
+     * @return the current method
+     */
+    public String getCurrentMethod() {
+        return currentMethod;
+    }
+
+    /**
+     * Sets the current method.
+     *
+     * @param method the current method
+     */
+    public void setCurrentMethod(final String method) {
+        this.currentMethod = method;
+    }
+
+    /**
+     * Gets the calling class name.
+     *
+     * @return the calling class name
+     */
+    public String getCallingClassName() {
+        return callingClassName;
+    }
+
+    /**
+     * Sets the calling class name.
+     *
+     * @param className the calling class name
+     */
+    public void setCallingClassName(final String className) {
+        this.callingClassName = className;
+    }
+
+    /**
+     * Gets the line number.
+     *
+     * @return the line number
+     */
+    public int getLineNumber() {
+        return lineNumber;
+    }
+
+    /**
+     * Sets the line number.
+     *
+     * @param line the line number
+     */
+    public void setLineNumber(final int line) {
+        this.lineNumber = line;
+    }
+
+    /**
+     * Gets the open window handle index.
+     *
+     * @return the open window handle index
+     */
+    public List<String> getOpenWindowHandleIndex() {
+        return openWindowHandleIndex;
+    }
+
+    /**
+     * Sets the open window handle index.
+     *
+     * @param handles the open window handle index
+     */
+    public void setOpenWindowHandleIndex(final List<String> handles) {
+        this.openWindowHandleIndex = handles;
+    }
+
+    /**
+     * Gets the command start time.
+     *
+     * @return the command start time, in nanoseconds
+     */
+    public long getCommandStartTime() {
+        return commandStartTime;
+    }
+
+    /**
+     * Sets the command start time.
+     *
+     * @param startTime the command start time, in nanoseconds
+     */
+    public void setCommandStartTime(final long startTime) {
+        this.commandStartTime = startTime;
+    }
+
+    /**
+     * Gets the test case start time.
+     *
+     * @return the test case start time, in nanoseconds
+     */
+    public long getTestcaseStartTime() {
+        return testcaseStartTime;
+    }
+
+    /**
+     * Sets the test case start time.
+     *
+     * @param startTime the test case start time, in nanoseconds
+     */
+    public void setTestcaseStartTime(final long startTime) {
+        this.testcaseStartTime = startTime;
+    }
+
+    /**
+     * Gets the total execution time taken.
+     *
+     * @return the total execution time taken
+     */
+    public long getTotalExecutionTimeTaken() {
+        return totalExecutionTimeTaken;
+    }
+
+    /**
+     * Sets the total execution time taken.
+     *
+     * @param timeTaken the total execution time taken
+     */
+    public void setTotalExecutionTimeTaken(final long timeTaken) {
+        this.totalExecutionTimeTaken = timeTaken;
+    }
+
+    /**
+     * Gets the name of the test case running.
+     *
+     * @return the test case name
+     */
+    public String getTestCaseName() {
+        return testCaseName;
+    }
+
+    /**
+     * Sets the name of the test case running.
+     *
+     * @param name the test case name
+     */
+    public void setTestCaseName(final String name) {
+        this.testCaseName = name;
+    }
+
+    /**
+     * Gets the test case of the report the steps are added to.
+     *
+     * @return the test case, or null if none
+     */
+    public TestCase getReportTestCase() {
+        return reportTestCase;
+    }
+
+    /**
+     * Sets the test case of the report the steps are added to.
+     *
+     * @param testCase the test case
+     */
+    public void setReportTestCase(final TestCase testCase) {
+        this.reportTestCase = testCase;
+    }
+}
@@ -13,9 +13,6 @@ package com.thoughtworks.selenium;
 
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.IOException;
-import java.util.Properties;
 
 import org.apache.commons.io.FileUtils;
 import org.openqa.selenium.OutputType;
@@ -26,6 +23,8 @@ import org.testng.ITestResult;
 import org.testng.Reporter;
 import org.testng.internal.IResultListener;
 
+import com.virtusa.isq.vtaf.report.reporter.ScreenshotWriter;
+
 /**
  * The Class ScreenshotListenerVir.
  */
@@ -106,13 +105,18 @@ public class ScreenshotListenerVir implements IResultListener {
 
         try {
 
-            if (outputDirectory.mkdirs()) {
-                String fileloc = getProperties();
-                File scrFile =
+            if (outputDirectory.exists() || outputDirectory.mkdirs()) {
+                byte[] png =
                         ((TakesScreenshot) driver)
-                                .getScreenshotAs(OutputType.FILE);
-                FileUtils.copyFile(scrFile, new File(fileloc + ".png"));
-                Reporter.log("<a href='" + fileloc + ".png'>screenshot</a>");
+                                .getScreenshotAs(OutputType.BYTES);
+                File screenShot =
+                        new File(outputDirectory,
+                                ScreenshotWriter.contentName(png));
+                if (!screenShot.exists()) {
+                    FileUtils.writeByteArrayToFile(screenShot, png);
+                }
+                Reporter.log("<a href='" + screenShot.getName()
+                        + "'>screenshot</a>");
             } else {
                 System.err.println("Creation of directory failed "
                         + outputDirectory.getAbsolutePath());
@@ -126,45 +130,6 @@ public class ScreenshotListenerVir implements IResultListener {
         Reporter.setCurrentTestResult(null);
     }
 
-    /**
-     * Gets the properties.
-     * 
-     * @return the properties
-     * @throws IOException
-     *             Signals that an I/O exception has occurred.
-     */
-    private static String getProperties() throws IOException {
-        Properties props = new Properties();
-        File file = new File("");
-        String absPath = file.getAbsolutePath();
-        if ((absPath.indexOf("grid") > -1)) {
-            absPath =
-                    absPath + File.separator + "grid" + File.separator
-                            + "selenium-grid-1.0.6";
-        }
-        String fileName = "";
-        FileInputStream fis = null;
-        try {
-            fis =
-                    new FileInputStream(new File(absPath + File.separator
-                            + "project.properties"));
-            props.load(fis);
-        } finally {
-            if (fis != null) {
-                try {
-                    fis.close();
-                } catch (IOException e) {
-                    e.printStackTrace();
-                } 
-            }
-        }
-        fileName = props.getProperty("currentScreenShot");
-
-        props.clear();
-
-        return fileName;
-    }
-
     /**
      * On configuration failure.
      * 
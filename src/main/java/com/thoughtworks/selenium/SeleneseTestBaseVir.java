@@ -12,15 +12,17 @@
 package com.thoughtworks.selenium;
 
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.IOException;
-import java.io.InputStreamReader;
 import java.lang.reflect.Method;
 import java.sql.Connection;
-import java.util.HashMap;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 import org.apache.log4j.Logger;
 import org.apache.log4j.PropertyConfigurator;
@@ -28,6 +30,10 @@ import org.openqa.selenium.WebDriver;
 import org.openqa.selenium.firefox.FirefoxProfile;
 import org.openqa.selenium.remote.DesiredCapabilities;
 
+import com.virtusa.isq.vtaf.runtime.BrowserLauncher;
+import com.virtusa.isq.vtaf.runtime.LaunchProfile;
+import com.virtusa.isq.vtaf.runtime.ProcessReaper;
+
 /**
  * Provides a base class that implements some handy functionality for Selenium
  * testing (you are <i>not</i> required to extend this class).
@@ -41,34 +47,28 @@ public class SeleneseTestBaseVir {
     /** The capture screen shot on failure. */
     private boolean captureScreenShotOnFailure = false;
 
-    /** The driver. */
-    private WebDriver driver = null;
-
     /** The browser string. */
-    private static String browserString;
+    private static volatile String browserString;
 
     /** The web driver capabilities. */
-    private static DesiredCapabilities webDriverCapabilities;
-
-    /** The selenium instances. */
-    private Map<String, WebDriver> seleniumInstances =
-            new HashMap<String, WebDriver>();
-
-    /** The selenium instance name. */
-    private String seleniumInstanceName = "";
+    private static volatile DesiredCapabilities webDriverCapabilities;
 
     /** The default profile. */
-    private static FirefoxProfile defaultProfile;
+    private static volatile FirefoxProfile defaultProfile;
 
-    /** The log. */
-    private static Logger log;
+    /** The default profile being built in the background. */
+    private static Future<FirefoxProfile> defaultProfileBuild;
 
-    /** The database instances. */
-    private Map<String, Connection> databaseInstances =
-            new HashMap<String, Connection>();
+    /**
+     * The shared log, used by the threads which did not set their own. The
+     * driver, the browser and database sessions and the verification errors
+     * are kept in the {@link ExecutionContext} of each thread.
+     */
+    private static volatile Logger log;
 
-    /** The verification errors. */
-    private StringBuffer verificationErrors = new StringBuffer();
+    /** The loggers of the classes reporting steps, by class name. */
+    private static final ConcurrentMap<String, Logger> CLASS_LOGS =
+            new ConcurrentHashMap<String, Logger>();
 
     /**
      * Initialize the logger.
@@ -78,14 +78,39 @@ public class SeleneseTestBaseVir {
     }
 
     /**
-     * Get the logger for each corresponding class.
+     * Get the logger for each corresponding class. The logger is used by the
+     * current thread, and becomes the shared log if none was set yet.
      * 
      * @param clz
      *            the clz
      * 
      */
     public final void getLogger(final Class< ? > clz) {
-        setLog(Logger.getLogger(clz));
+        Logger classLog = Logger.getLogger(clz);
+        setThreadLog(classLog);
+        if (log == null) {
+            setLog(classLog);
+        }
+    }
+
+    /**
+     * Get the logger for a class by its name, without loading the class. The
+     * loggers are cached, as this is called for each step.
+     * 
+     * @param className
+     *            the class name
+     * 
+     */
+    public final void getLogger(final String className) {
+        Logger classLog = CLASS_LOGS.get(className);
+        if (classLog == null) {
+            classLog = Logger.getLogger(className);
+            CLASS_LOGS.putIfAbsent(className, classLog);
+        }
+        setThreadLog(classLog);
+        if (log == null) {
+            setLog(classLog);
+        }
     }
 
     /**
@@ -180,7 +205,7 @@ public class SeleneseTestBaseVir {
             final String browserName, final String serverConfig) {
 
         this.configWebDriver(browserName);
-        seleniumInstanceName = instanceName;
+        setSeleniumInstanceName(instanceName);
 
         if (!serverConfig.isEmpty()) {
             String[] commandSet = serverConfig.split(",");
@@ -196,16 +221,17 @@ public class SeleneseTestBaseVir {
                     if ("firefoxprofile".equalsIgnoreCase(command)) {
 
                         try {
-                            setDefaultProfile(new FirefoxProfile(
-                                    new File(input)));
+                            setDefaultProfile(LaunchProfile.getInstance()
+                                    .configure(new FirefoxProfile(
+                                            new File(input))));
                         } catch (Exception e) {
-                            log.error("Cannot find the firefox profile. Switching to the default.", e);
+                            getLog().error("Cannot find the firefox profile. Switching to the default.", e);
                             e.printStackTrace();
                         }
                     }
 
                 } catch (Exception e) {
-                    log.error("Unexpected error occured.", e);
+                    getLog().error("Unexpected error occured.", e);
                     e.printStackTrace();
                 }
             }
@@ -256,9 +282,13 @@ public class SeleneseTestBaseVir {
 
             setBrowserString(browserString);
             setWebDriverCapabilities(new DesiredCapabilities());
-            setDefaultProfile(new FirefoxProfile());
+            buildDefaultProfile();
         } else if (browserString.contains("opera")) {
 
+            setBrowserString(browserString);
+            setWebDriverCapabilities(new DesiredCapabilities());
+        } else if (browserString.contains("fake")) {
+
             setBrowserString(browserString);
             setWebDriverCapabilities(new DesiredCapabilities());
         } else {
@@ -298,30 +328,7 @@ public class SeleneseTestBaseVir {
      *             the exception
      */
     public final boolean isProcessRunning(final String serviceName) throws Exception {
-        String tasklist = "tasklist";
-        Process p = Runtime.getRuntime().exec(tasklist);
-        BufferedReader reader = null;
-        try {
-            reader =
-                    new BufferedReader(
-                            new InputStreamReader(p.getInputStream()));
-            String line;
-
-            while ((line = reader.readLine()) != null) {
-                if (line.contains(serviceName)) {
-                    return true;
-                }
-            }
-        } finally {
-            if (reader != null) {
-                try {
-                    reader.close();
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-            }
-        }
-        return false;
+        return ProcessReaper.getInstance().isRunning(serviceName);
     }
 
     /**
@@ -333,8 +340,7 @@ public class SeleneseTestBaseVir {
      *             the exception
      */
     public final void killProcess(final String serviceName) throws Exception {
-        String kill = "taskkill /F /IM ";
-        Runtime.getRuntime().exec(kill + serviceName);
+        ProcessReaper.getInstance().killAll(serviceName);
     }
     
     
@@ -424,7 +430,7 @@ public class SeleneseTestBaseVir {
      * failing immediately if any are found.
      */
     public final void checkForVerificationErrors() {
-        String verificationErrorString = verificationErrors.toString();
+        String verificationErrorString = getVerificationErrors().toString();
         clearVerificationErrors();
         if (!"".equals(verificationErrorString)) {
             failure(verificationErrorString);
@@ -433,7 +439,7 @@ public class SeleneseTestBaseVir {
 
     /** Clears out the list of verification errors. */
     public final void clearVerificationErrors() {
-        verificationErrors = new StringBuffer();
+        setVerificationErrors(new StringBuffer());
     }
 
     /**
@@ -490,7 +496,7 @@ public class SeleneseTestBaseVir {
      * @return the seleniumInstances
      */
     public final Map<String, WebDriver> getSeleniumInstances() {
-        return seleniumInstances;
+        return ExecutionContext.current().getSeleniumInstances();
     }
 
     /**
@@ -499,7 +505,7 @@ public class SeleneseTestBaseVir {
      */
     public final void setSeleniumInstances(
             final Map<String, WebDriver> seleniumInstancesMap) {
-        this.seleniumInstances = seleniumInstancesMap;
+        ExecutionContext.current().setSeleniumInstances(seleniumInstancesMap);
     }
 
     /**
@@ -510,14 +516,14 @@ public class SeleneseTestBaseVir {
      */
     public final void putSeleniumInstances(final String instanceName,
             final WebDriver webDriver) {
-        this.seleniumInstances.put(instanceName, webDriver);
+        getSeleniumInstances().put(instanceName, webDriver);
     }
 
     /**
      * @return the seleniumInstanceName
      */
     public final String getSeleniumInstanceName() {
-        return seleniumInstanceName;
+        return ExecutionContext.current().getSeleniumInstanceName();
     }
 
     /**
@@ -526,33 +532,104 @@ public class SeleneseTestBaseVir {
      */
     public final void setSeleniumInstanceName(
             final String seleniumInstanceNameString) {
-        this.seleniumInstanceName = seleniumInstanceNameString;
+        ExecutionContext.current().setSeleniumInstanceName(
+                seleniumInstanceNameString);
     }
 
     /**
-     * @return the defaultProfile
+     * Starts building the default Firefox profile in the background, so that
+     * it is ready when the first browser is launched.
      */
-    public static final FirefoxProfile getDefaultProfile() {
+    private static synchronized void buildDefaultProfile() {
+        defaultProfile = null;
+        defaultProfileBuild =
+                BrowserLauncher.getInstance().prepare(
+                        new Callable<FirefoxProfile>() {
+
+                            @Override
+                            public FirefoxProfile call() {
+                                return LaunchProfile.getInstance().configure(
+                                        new FirefoxProfile());
+                            }
+                        });
+    }
+
+    /**
+     * @return the defaultProfile, waiting for it if it is being built
+     */
+    public static final synchronized FirefoxProfile getDefaultProfile() {
+        if (defaultProfile == null && defaultProfileBuild != null) {
+            defaultProfile = resolveProfile(defaultProfileBuild);
+            defaultProfileBuild = null;
+        }
         return defaultProfile;
     }
 
+    /**
+     * Takes the default profile as it is now, for a browser launched later
+     * on another thread, without waiting for a profile being built.
+     * 
+     * @return the default profile, or its build in progress
+     */
+    public static final synchronized Future<FirefoxProfile> snapshotDefaultProfile() {
+        if (defaultProfile == null && defaultProfileBuild != null) {
+            return defaultProfileBuild;
+        }
+        final FirefoxProfile profile = defaultProfile;
+        FutureTask<FirefoxProfile> snapshot =
+                new FutureTask<FirefoxProfile>(new Callable<FirefoxProfile>() {
+
+                    @Override
+                    public FirefoxProfile call() {
+                        return profile;
+                    }
+                });
+        snapshot.run();
+        return snapshot;
+    }
+
+    /**
+     * Waits for a profile taken by {@link #snapshotDefaultProfile()}.
+     * 
+     * @param profile
+     *            the profile, or its build
+     * @return the profile, or a new profile if the build failed
+     */
+    public static final FirefoxProfile resolveProfile(
+            final Future<FirefoxProfile> profile) {
+        try {
+            return profile.get();
+        } catch (ExecutionException e) {
+            getLog().error("Cannot build the firefox profile in the background.",
+                    e.getCause());
+            return new FirefoxProfile();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new FirefoxProfile();
+        }
+    }
+
     /**
      * @param defaultProfileFirefox
      *            the defaultProfile to set
      */
-    public static final void setDefaultProfile(
+    public static final synchronized void setDefaultProfile(
             final FirefoxProfile defaultProfileFirefox) {
         SeleneseTestBaseVir.defaultProfile = defaultProfileFirefox;
+        defaultProfileBuild = null;
     }
 
     /**
-     * @return the log
+     * @return the log of the current thread, or the shared log
      */
     public static final Logger getLog() {
-        return log;
+        Logger threadLog = ExecutionContext.current().getLog();
+        return threadLog != null ? threadLog : log;
     }
 
     /**
+     * Sets the shared log, used by the threads which did not set their own.
+     *
      * @param logValue
      *            the log to set
      */
@@ -560,11 +637,19 @@ public class SeleneseTestBaseVir {
         SeleneseTestBaseVir.log = logValue;
     }
 
+    /**
+     * @param logValue
+     *            the log of the current thread to set
+     */
+    public static final void setThreadLog(final Logger logValue) {
+        ExecutionContext.current().setLog(logValue);
+    }
+
     /**
      * @return the databaseInstances
      */
     public final Map<String, Connection> getDatabaseInstances() {
-        return databaseInstances;
+        return ExecutionContext.current().getDatabaseInstances();
     }
 
     /**
@@ -573,7 +658,7 @@ public class SeleneseTestBaseVir {
      */
     public final void setDatabaseInstances(
             final Map<String, Connection> databaseInstancesMap) {
-        this.databaseInstances = databaseInstancesMap;
+        ExecutionContext.current().setDatabaseInstances(databaseInstancesMap);
     }
 
     /**
@@ -584,14 +669,14 @@ public class SeleneseTestBaseVir {
      */
     public final void putDatabaseInstances(final String instanceName,
             final Connection connection) {
-        this.databaseInstances.put(instanceName, connection);
+        getDatabaseInstances().put(instanceName, connection);
     }
 
     /**
      * @return the verificationErrors
      */
     public final StringBuffer getVerificationErrors() {
-        return verificationErrors;
+        return ExecutionContext.current().getVerificationErrors();
     }
 
     /**
@@ -600,7 +685,8 @@ public class SeleneseTestBaseVir {
      */
     public final void setVerificationErrors(
             final StringBuffer verificationErrorsString) {
-        this.verificationErrors = verificationErrorsString;
+        ExecutionContext.current().setVerificationErrors(
+                verificationErrorsString);
     }
 
     /**
@@ -621,7 +707,7 @@ public class SeleneseTestBaseVir {
      * @return the driver
      */
     public final WebDriver getDriver() {
-        return driver;
+        return ExecutionContext.current().getDriver();
     }
 
     /**
@@ -629,6 +715,6 @@ public class SeleneseTestBaseVir {
      *            the driver to set
      */
     public final void setDriver(final WebDriver driverObj) {
-        this.driver = driverObj;
+        ExecutionContext.current().setDriver(driverObj);
     }
 }
@@ -15,9 +15,10 @@ package com.thoughtworks.selenium;
 import java.awt.AWTException;
 import java.awt.Robot;
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.lang.reflect.Method;
+import java.net.MalformedURLException;
+import java.net.URL;
 import java.sql.Connection;
 import java.util.ArrayList;
 import java.util.Calendar;
@@ -26,15 +27,20 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.log4j.Logger;
 import org.openqa.selenium.WebDriver;
 import org.openqa.selenium.chrome.ChromeDriver;
+import org.openqa.selenium.chrome.ChromeOptions;
 import org.openqa.selenium.firefox.FirefoxDriver;
 import org.openqa.selenium.firefox.FirefoxProfile;
 import org.openqa.selenium.ie.InternetExplorerDriver;
 import org.openqa.selenium.remote.DesiredCapabilities;
+import org.openqa.selenium.remote.RemoteWebDriver;
 import org.openqa.selenium.safari.SafariDriver;
 import org.testng.ITestContext;
 import org.testng.annotations.AfterMethod;
@@ -48,8 +54,16 @@ import org.testng.annotations.Parameters;
 
 import com.opera.core.systems.OperaDriver;
 import com.virtusa.VTAF.reporter.reader.ReportBase;
+import com.virtusa.isq.vtaf.runtime.BrowserLauncher;
+import com.virtusa.isq.vtaf.runtime.BrowserSessionPool;
+import com.virtusa.isq.vtaf.runtime.GridDispatcher;
+import com.virtusa.isq.vtaf.runtime.LaunchProfile;
+import com.virtusa.isq.vtaf.runtime.ProcessReaper;
+import com.virtusa.isq.vtaf.runtime.fake.FakeWebDriver;
 import com.virtusa.isq.vtaf.report.reporter.Reporter;
 import com.virtusa.isq.vtaf.utils.PropertyHandler;
+import com.virtusa.isq.vtaf.utils.RetryExecutor;
+import com.virtusa.isq.vtaf.utils.StepTimingWriter;
 
 /**
  * The Class SeleneseTestNgHelperVir.
@@ -57,58 +71,107 @@ import com.virtusa.isq.vtaf.utils.PropertyHandler;
 public class SeleneseTestNgHelperVir extends SeleneseTestBaseVir {
 
     /** The reporter. */
-    private static ReportBase reporter;
+    private static volatile ReportBase reporter;
 
     /** The robot. */
-    private static Robot robot;
+    private static volatile Robot robot;
 
     /** The prop. */
-    private static Properties prop;
+    private static volatile Properties prop;
 
     /** The properties location. */
-    private static String propertiesLocation;
-
-    /** The error messages. */
-    private String errorMessages = "Verification failures : \n";
+    private static volatile String propertiesLocation;
 
     /** The test package name. */
-    private String testPackageName = "";
+    private volatile String testPackageName = "";
 
-    /** The current method. */
-    private String currentMethod = "";
+    /** The retry count. */
+    private static volatile int retryCount;
 
-    /** The calling class name. */
-    private String callingClassName = "";
+    /**
+     * Whether the line of each step is looked up, rather than only the one of
+     * the failed steps. Set by the <i>REPORT_DETAILED_STEPS</i> runtime
+     * property.
+     */
+    private static volatile boolean detailedSteps;
 
-    /** The line number. */
-    private int lineNumber;
+    /** The access to single stack frames, on the JREs providing it. */
+    private static final Object STACK_ACCESS;
 
-    /** The retry count. */
-    private static int retryCount;
+    /** Gets the number of stack frames of a throwable. */
+    private static final Method STACK_DEPTH;
+
+    /** Gets a single stack frame of a throwable. */
+    private static final Method STACK_ELEMENT;
+
+    static {
+        Object access = null;
+        Method depth = null;
+        Method element = null;
+        try {
+            access =
+                    Class.forName("sun.misc.SharedSecrets")
+                            .getMethod("getJavaLangAccess").invoke(null);
+            Class<?> accessType = Class.forName("sun.misc.JavaLangAccess");
+            depth =
+                    accessType.getMethod("getStackTraceDepth",
+                            Throwable.class);
+            element =
+                    accessType.getMethod("getStackTraceElement",
+                            Throwable.class, int.class);
+        } catch (Exception e) {
+            // Java 9 and later only give the whole stack
+            access = null;
+            depth = null;
+            element = null;
+        }
+        STACK_ACCESS = access;
+        STACK_DEPTH = depth;
+        STACK_ELEMENT = element;
+    }
+
+    /** The retry executor shared by the commands. */
+    private static RetryExecutor retryExecutor;
 
     /** The time out period. */
-    private static String timeOutPeriod;
+    private static volatile String timeOutPeriod;
 
     /** The exec props. */
-    private static Properties execProps;
-
-    /** The open window handle index. */
-    private List<String> openWindowHandleIndex;
+    private static volatile Properties execProps;
 
     /** The result reporter. */
-    private static Reporter resultReporter;
+    private static volatile Reporter resultReporter;
 
-    /** The command start time. */
-    private Date commandStartTime;
+    /**
+     * Writes the time taken to each command to the time log in the
+     * target/logs folder as the commands run.
+     */
+    private static volatile StepTimingWriter timeLog;
 
-    /** The testcase start time. */
-    private Date testcaseStartTime;
+    /** The factory launching the browsers. */
+    private final BrowserSessionPool.DriverFactory browserFactory =
+            new BrowserSessionPool.DriverFactory() {
 
-    /** The total execution time taken. */
-    private long totalExecutionTimeTaken;
-    
-    /** Stores the time taken to each command. */
-    private static String logTimeCSVFileBuilder = "";
+                @Override
+                public WebDriver create(final String browser) {
+                    return createDriver(browser, getWebDriverCapabilities(),
+                            null);
+                }
+            };
+
+    /**
+     * The factory launching the browsers of the tests and tracking the
+     * processes they start.
+     */
+    private final BrowserSessionPool.DriverFactory driverFactory =
+            new BrowserSessionPool.DriverFactory() {
+
+                @Override
+                public WebDriver create(final String browser) {
+                    return ProcessReaper.getInstance().launch(browser,
+                            browserFactory);
+                }
+            };
 
     /**
      * Sets the before test configuration for the test.
@@ -136,6 +199,8 @@ public class SeleneseTestNgHelperVir extends SeleneseTestBaseVir {
             }
             log.info("Execution Browser : " + browserStr);
             super.setUp(url, browserStr);
+            BrowserLauncher.getInstance().prime(getBrowserString(),
+                    driverFactory);
         } catch (Exception e) {
             log.error("Exception occured while setting up the test ", e);
         }
@@ -155,6 +220,7 @@ public class SeleneseTestNgHelperVir extends SeleneseTestBaseVir {
         // Initializing the logger
         initLogger();
         initReporter();
+        initTimeLog();
         resultReporter.addNewTestExecution();
         getLogger(SeleneseTestNgHelperVir.class);
         
@@ -194,6 +260,9 @@ public class SeleneseTestNgHelperVir extends SeleneseTestBaseVir {
         String retry = propHandler.getRuntimeProperty("RETRY");
         String browser = propHandler.getRuntimeProperty("BROWSER");
         setExecProps(propHandler.getPropertyObject());
+        detailedSteps =
+                propHandler.getBooleanRuntimeProperty("REPORT_DETAILED_STEPS",
+                        false);
         
         if (!browser.isEmpty()) {
             super.setBrowserString(browser);
@@ -235,23 +304,30 @@ public class SeleneseTestNgHelperVir extends SeleneseTestBaseVir {
     @BeforeMethod
     public final void setTestContext(final Method method) {
 
+        ExecutionContext.begin();
+        getRetryExecutor().clearStep();
+
         PropertyHandler propHandler = new PropertyHandler(propertiesLocation);
         propHandler.setRuntimeProperty("tcComment", "");
         
-        totalExecutionTimeTaken = 0;
-        testcaseStartTime = getCurrentTime();
-        errorMessages = "Verification failures : \n";
+        setTotalExecutionTimeTaken(0);
+        ExecutionContext.current().setTestcaseStartTime(System.nanoTime());
+        setErrorMessages("Verification failures : \n");
         setOpenWindowHandleIndex(new ArrayList<String>());
         setBrowserString(System.getProperty("selenium.defaultBrowser"));
-        this.cleanBrowserSessions();
+        if (!isBrowserReuseEnabled()) {
+            this.cleanBrowserSessions();
+        }
         getLog().info("Starting a new selenium webdriver session.");
         
         this.startBrowserSession(getBrowserString());
         Logger log = getLog();
         log.info("Started the selenium webdriver session.");
 
-        reporter.startReporter(method.getDeclaringClass().getCanonicalName(),
-                method.getName());
+        synchronized (reporter) {
+            reporter.startReporter(method.getDeclaringClass()
+                    .getCanonicalName(), method.getName());
+        }
         log.info("Executing the test case : "
                 + method.getDeclaringClass().getSimpleName() + "."
                 + method.getName());
@@ -261,10 +337,14 @@ public class SeleneseTestNgHelperVir extends SeleneseTestBaseVir {
         testPackageName =
                 this.getClass().getPackage().toString().split("package ")[1];
         String testCaseName = method.getName();
-        resultReporter.addNewTestCase(testCaseName);
-        
-        appendToCSVFileBuilder("\n", testCaseName, "\n");
-        //logTimeCSVFileBuilder.append("\n").append(testCaseName).append("\n");
+        resultReporter.addNewTestCase(this.getClass().getSimpleName(),
+                testCaseName);
+        ExecutionContext.current().setTestCaseName(
+                this.getClass().getSimpleName() + "." + testCaseName);
+        // the caller of the last test case must not be taken for this one's
+        setCallingClassName("");
+        setCurrentMethod("");
+        setLineNumber(0);
         startOfTestCase();
 
         log.info("Starting the test case..");
@@ -278,11 +358,156 @@ public class SeleneseTestNgHelperVir extends SeleneseTestBaseVir {
      */
     public final void startBrowserSession(final String browserString) {
 
+        WebDriver driver = launchBrowserSession(browserString, driverFactory);
+
+        setDriver(driver);
+        if (getSeleniumInstances().isEmpty()) {
+            putSeleniumInstances("default", driver);
+        } else {
+            putSeleniumInstances(getSeleniumInstanceName(), driver);
+        }
+    }
+
+    /**
+     * Starts a browser session off the test thread, ready for the test case.
+     * The session is not registered; the caller adds it to the selenium
+     * instances once the launch is done. The browser is launched with the
+     * capabilities and the Firefox profile configured when this is called,
+     * so that the users set up meanwhile do not change it.
+     * 
+     * @param browserString
+     *            the browser string
+     * @return the launch of the driver
+     */
+    public final Future<WebDriver> startBrowserSessionAsync(
+            final String browserString) {
         DesiredCapabilities capabilities = getWebDriverCapabilities();
+        final BrowserSessionPool.DriverFactory factory =
+                launchFactory(capabilities == null ? new DesiredCapabilities()
+                        : new DesiredCapabilities(capabilities),
+                        snapshotDefaultProfile());
+        return BrowserLauncher.getInstance().prepare(new Callable<WebDriver>() {
+
+            @Override
+            public WebDriver call() {
+                WebDriver driver =
+                        launchBrowserSession(browserString, factory);
+                startOfTestCase(driver);
+                return driver;
+            }
+        });
+    }
+
+    /**
+     * Creates a factory launching the browsers with the given settings and
+     * tracking the processes they start.
+     * 
+     * @param capabilities
+     *            the capabilities
+     * @param profile
+     *            the Firefox profile, or its build
+     * @return the factory
+     */
+    private BrowserSessionPool.DriverFactory launchFactory(
+            final DesiredCapabilities capabilities,
+            final Future<FirefoxProfile> profile) {
+        final BrowserSessionPool.DriverFactory settingsFactory =
+                new BrowserSessionPool.DriverFactory() {
+
+                    @Override
+                    public WebDriver create(final String browser) {
+                        return createDriver(browser, capabilities, profile);
+                    }
+                };
+        return new BrowserSessionPool.DriverFactory() {
+
+            @Override
+            public WebDriver create(final String browser) {
+                return ProcessReaper.getInstance().launch(browser,
+                        settingsFactory);
+            }
+        };
+    }
+
+    /**
+     * Launches a browser, or takes one from the pool or the warm browsers.
+     * 
+     * @param browserString
+     *            the browser string
+     * @param launchFactory
+     *            the factory launching a new browser
+     * @return the driver
+     */
+    private WebDriver launchBrowserSession(final String browserString,
+            final BrowserSessionPool.DriverFactory launchFactory) {
+        BrowserSessionPool pool = BrowserSessionPool.getInstance();
+        BrowserSessionPool.DriverFactory factory =
+                BrowserLauncher.getInstance().wrap(launchFactory);
+        if (pool.isEnabled()) {
+            return pool.acquire(browserString, factory);
+        }
+        return factory.create(browserString);
+    }
+
+    /**
+     * Waits for the browser sessions still launching and adds them to the
+     * selenium instances, so that they end with the test case.
+     */
+    private void collectPendingUsers() {
+        Map<String, Future<WebDriver>> pendingUsers =
+                ExecutionContext.current().getPendingUsers();
+        for (Map.Entry<String, Future<WebDriver>> entry : pendingUsers
+                .entrySet()) {
+            try {
+                putSeleniumInstances(entry.getKey(), entry.getValue().get());
+            } catch (ExecutionException e) {
+                getLog().info("User " + entry.getKey() + " was not created : "
+                        + e.getCause().getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        pendingUsers.clear();
+    }
+
+    /**
+     * Checks if browsers outlive the tests, in a pool or warm in the
+     * background, in which case the browser processes must not be killed
+     * between the tests.
+     * 
+     * @return true, if browsers are reused or launched ahead
+     */
+    private boolean isBrowserReuseEnabled() {
+        return BrowserSessionPool.getInstance().isEnabled()
+                || BrowserLauncher.getInstance().isEnabled();
+    }
+
+    /**
+     * Launches a new browser.
+     * 
+     * @param browserString
+     *            the browser string
+     * @param capabilities
+     *            the capabilities
+     * @param profileLaunch
+     *            the Firefox profile, or its build, or null for the default
+     *            profile
+     * @return the driver
+     */
+    private WebDriver createDriver(final String browserString,
+            final DesiredCapabilities capabilities,
+            final Future<FirefoxProfile> profileLaunch) {
+
+        String gridNode = System.getProperty(GridDispatcher.NODE_PROPERTY);
+        if (gridNode != null && !gridNode.isEmpty()) {
+            return createGridDriver(gridNode, browserString, capabilities,
+                    profileLaunch);
+        }
+        LaunchProfile launchProfile = LaunchProfile.getInstance();
         WebDriver driver;
         if (browserString.contains("chrome")
                 || browserString.contains("Chrome")) {
-            driver = new ChromeDriver();
+            driver = new ChromeDriver(launchProfile.getChromeOptions());
 
         } else if (browserString.contains("safari")) {
 
@@ -296,31 +521,107 @@ public class SeleneseTestNgHelperVir extends SeleneseTestBaseVir {
             driver = new InternetExplorerDriver(capabilities);
 
         } else if (browserString.contains("firefox")) {
-            FirefoxProfile profile = getDefaultProfile();
-            profile.setEnableNativeEvents(true);
-            driver = new FirefoxDriver(profile);
+            FirefoxProfile profile = firefoxProfile(profileLaunch);
+            profile.setEnableNativeEvents(!launchProfile.isHeadless());
+            driver =
+                    new FirefoxDriver(launchProfile.createFirefoxBinary(),
+                            profile);
 
         } else if (browserString.contains("opera")) {
 
             DesiredCapabilities.opera();
             driver = new OperaDriver(capabilities);
+
+        } else if (browserString.contains("fake")) {
+            driver = FakeWebDriver.fromProperties();
         } else {
             getLog().info("Unsupported browser type passed " + browserString);
             throw new AssertionError("Unsupported Browser");
         } 
+        return driver;
+    }
+
+    /**
+     * Launches a new browser on the grid node this shard of the suite was
+     * dispatched to.
+     * 
+     * @param gridNode
+     *            the node endpoint
+     * @param browserString
+     *            the browser string
+     * @param webDriverCapabilities
+     *            the capabilities
+     * @param profileLaunch
+     *            the Firefox profile, or its build, or null for the default
+     *            profile
+     * @return the driver
+     */
+    private WebDriver createGridDriver(final String gridNode,
+            final String browserString,
+            final DesiredCapabilities webDriverCapabilities,
+            final Future<FirefoxProfile> profileLaunch) {
+
+        if (gridNode.startsWith(GridDispatcher.FAKE_NODE)) {
+            return FakeWebDriver.fromProperties(GridDispatcher
+                    .fakeLatency(gridNode));
+        }
+        LaunchProfile launchProfile = LaunchProfile.getInstance();
+        DesiredCapabilities capabilities;
+        if (browserString.contains("chrome")
+                || browserString.contains("Chrome")) {
+            capabilities = DesiredCapabilities.chrome();
+            capabilities.setCapability(ChromeOptions.CAPABILITY,
+                    launchProfile.getChromeOptions());
+
+        } else if (browserString.contains("safari")) {
+            capabilities = DesiredCapabilities.safari();
+
+        } else if (browserString.contains("iexplore")) {
+            capabilities = DesiredCapabilities.internetExplorer();
+            capabilities.setJavascriptEnabled(true);
+
+        } else if (browserString.contains("firefox")) {
+            FirefoxProfile profile = firefoxProfile(profileLaunch);
+            profile.setEnableNativeEvents(!launchProfile.isHeadless());
+            capabilities = DesiredCapabilities.firefox();
+            capabilities.setCapability(FirefoxDriver.PROFILE, profile);
+
+        } else if (browserString.contains("opera")) {
+            capabilities = DesiredCapabilities.opera();
 
-        setDriver(driver);
-        if (getSeleniumInstances().isEmpty()) {
-            putSeleniumInstances("default", driver);
         } else {
-            putSeleniumInstances(getSeleniumInstanceName(), driver);
+            getLog().info("Unsupported browser type passed " + browserString);
+            throw new AssertionError("Unsupported Browser");
+        }
+        capabilities.merge(webDriverCapabilities);
+        try {
+            return new RemoteWebDriver(new URL(gridNode), capabilities);
+        } catch (MalformedURLException e) {
+            throw new AssertionError("Invalid grid node " + gridNode);
         }
     }
 
     /**
-     * Clean driver server sessions.
+     * Gets the Firefox profile of a launch.
+     * 
+     * @param profileLaunch
+     *            the profile, or its build, or null for the default profile
+     * @return the profile
+     */
+    private FirefoxProfile firefoxProfile(
+            final Future<FirefoxProfile> profileLaunch) {
+        return profileLaunch == null ? getDefaultProfile()
+                : resolveProfile(profileLaunch);
+    }
+
+    /**
+     * Clean driver server sessions. Only done when blanket kills are enabled;
+     * otherwise the processes of each driver are terminated when it is quit.
      */
     private void cleanDriverServerSessions() {
+        if (!ProcessReaper.getInstance().isBlanket()) {
+            return;
+        }
         this.killBrowserProcess("chromedriver");
         if (isx64bit()) {
             this.killBrowserProcess("IEDriverServer(x64)");
@@ -330,9 +631,13 @@ public class SeleneseTestNgHelperVir extends SeleneseTestBaseVir {
     }
 
     /**
-     * Clean browser sessions.
+     * Clean browser sessions. Only done when blanket kills are enabled;
+     * otherwise the processes of each driver are terminated when it is quit.
      */
     private void cleanBrowserSessions() {
+        if (!ProcessReaper.getInstance().isBlanket()) {
+            return;
+        }
         String browser = getBrowserString();
         if (browser.contains("iexplore")) {
             this.killBrowserProcess("iexplore");
@@ -373,15 +678,26 @@ public class SeleneseTestNgHelperVir extends SeleneseTestBaseVir {
         log.info("End of the test case.");
 
         log.info("Total Time taken to execute the commands : "
-                + totalExecutionTimeTaken + " ms");
+                + getTotalExecutionTimeTaken() + " ms");
         logTime("Total Time taken to execute the test case : ",
-                testcaseStartTime, getCurrentTime(), log);
+                ExecutionContext.current().getTestcaseStartTime(),
+                System.nanoTime(), log, "", 0);
 
+        collectPendingUsers();
         Map<String, WebDriver> seleniumInstances = getSeleniumInstances();
+        BrowserSessionPool pool = BrowserSessionPool.getInstance();
 
         for (Map.Entry<String, WebDriver> entry : seleniumInstances.entrySet()) {
             try {
-                entry.getValue().quit();
+                if (pool.isEnabled()) {
+                    pool.release(entry.getValue());
+                } else {
+                    try {
+                        entry.getValue().quit();
+                    } finally {
+                        ProcessReaper.getInstance().release(entry.getValue());
+                    }
+                }
             } catch (Exception e) {
                 e.printStackTrace();
             }
@@ -407,7 +723,9 @@ public class SeleneseTestNgHelperVir extends SeleneseTestBaseVir {
         setDatabaseInstances(new HashMap<String, Connection>());
         endTestReporting(false);
         super.checkForVerificationErrors();
-        this.cleanBrowserSessions();
+        if (!isBrowserReuseEnabled()) {
+            this.cleanBrowserSessions();
+        }
     }
 
     /**
@@ -421,38 +739,38 @@ public class SeleneseTestNgHelperVir extends SeleneseTestBaseVir {
     @AfterSuite
     public final void tearDownSuite() throws Exception {
         resultReporter.endTestReporting();
+        resultReporter.finishReporting();
+        getRetryExecutor().logStatistics(getLog());
+        BrowserSessionPool.getInstance().shutdown();
+        BrowserLauncher.getInstance().shutdown();
+        ProcessReaper.getInstance().releaseAll();
         super.tearDown();
         cleanDriverServerSessions();
-        generateTimeLogCSV();
+        closeTimeLog();
     }
     
     
     /**
-     * Generates the log time CSV file in the target/logs folder. 
-     * 
+     * Writes the rest of the time log in the target/logs folder, and closes
+     * it.
      */
-    private void generateTimeLogCSV() {
-        FileWriter writer = null;
-        Logger log = getLog();
+    private static synchronized void closeTimeLog() {
+        if (timeLog != null) {
+            timeLog.close();
+            timeLog = null;
+        }
+    }
+
+    /**
+     * Inits the time log in the target/logs folder.
+     */
+    public static synchronized void initTimeLog() {
+        closeTimeLog();
         try {
-            writer = new FileWriter("target" + File.separator + "logs" 
-                    + File.separator + "ExecutionTime.csv");
-            writer.append(logTimeCSVFileBuilder);
-            writer.flush();
+            timeLog = StepTimingWriter.fromProperties();
         } catch (IOException e) {
-            log.error(e);
+            getLog().error(e);
             e.printStackTrace();
-        } catch (Exception e) {
-            log.error(e);
-            e.printStackTrace();
-        } finally {
-            if (writer != null) {
-                try {
-                    writer.close();
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-            }
         }
     }
 
@@ -467,16 +785,11 @@ public class SeleneseTestNgHelperVir extends SeleneseTestBaseVir {
      *                 If the process is firefox.exe parameter should be firefox
      */
     public final void killBrowserProcess(final String process) {
-        String processName = process.concat(".exe");
         Logger log = null;
-        final int pauseTimeAfterBrowserKill = 3000;
         try {
             log = getLog();
-            if (isProcessRunning(processName)) {
-                this.killProcess(processName);
-                
+            if (ProcessReaper.getInstance().killAll(process)) {
                 log.info(process.concat(" browser session cleaned successfully"));
-                pause(pauseTimeAfterBrowserKill);
             }
         } catch (Exception ex) {
             log.error(process.concat(" browser session clean failed"), ex);
@@ -508,10 +821,24 @@ public class SeleneseTestNgHelperVir extends SeleneseTestBaseVir {
      * Start of test case.
      */
     public final void startOfTestCase() {
-        WebDriver driver = getDriver();
-        final int pageloadTimeOut = 300;
+        startOfTestCase(getDriver());
+    }
+
+    /**
+     * Sets the window size and the timeouts of a browser for the test case.
+     * 
+     * @param driver
+     *            the driver
+     */
+    public final void startOfTestCase(final WebDriver driver) {
+        LaunchProfile launchProfile = LaunchProfile.getInstance();
+        final int pageloadTimeOut = launchProfile.getPageLoadTimeout();
         try {
-            driver.manage().window().maximize();
+            if (launchProfile.getViewport() != null) {
+                driver.manage().window().setSize(launchProfile.getViewport());
+            } else if (!launchProfile.isHeadless()) {
+                driver.manage().window().maximize();
+            }
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -526,7 +853,9 @@ public class SeleneseTestNgHelperVir extends SeleneseTestBaseVir {
     }
 
     /**
-     * Reportresult.
+     * Reportresult. The calling test class and method are looked up from the
+     * stack for every step; the line and the source lines only for the failed
+     * ones, or for every step in detailed mode.
      * 
      * @param isAssert
      *            the is assert
@@ -540,40 +869,43 @@ public class SeleneseTestNgHelperVir extends SeleneseTestBaseVir {
     public final void reportresult(final boolean isAssert, final String step,
             final String result, final String messageString) {
         String message = messageString;
+        boolean passed = "PASSED".equals(result);
+
+        boolean detailed = !passed || detailedSteps;
 
-        StackTraceElement[] stackTraceElements =
-                Thread.currentThread().getStackTrace();
-        callingClassName = stackTraceElements[0].getClassName();
+        // The frames are read up to the test class only; the whole stack is
+        // only built for the source lines of a failure.
+        Throwable callSite = new Throwable();
+        StackTraceElement caller = findCaller(callSite);
+        String callingClassName = caller.getClassName();
         String callingMethod = "";
-        for (int i = 0; i < stackTraceElements.length; i++) {
-            callingClassName = stackTraceElements[i].getClassName();
-            if (callingClassName.startsWith(testPackageName)) {
-                callingMethod = stackTraceElements[i].getMethodName();
-                lineNumber = stackTraceElements[i].getLineNumber();
-                break;
+        if (callingClassName.startsWith(testPackageName)) {
+            callingMethod = caller.getMethodName();
+            if (detailed) {
+                setLineNumber(caller.getLineNumber());
             }
         }
-        Class< ? > callingClass = null;
-        try {
-            callingClass = Class.forName(callingClassName);
-        } catch (ClassNotFoundException e) {
-            e.printStackTrace();
-        }
-        getLogger(callingClass);
+        setCallingClassName(callingClassName);
+        getLogger(callingClassName);
         Logger log = getLog();
-        if (!currentMethod.equals(callingMethod)) {
-            log.info("Executing : " + callingClass.getName() + " : "
+        if (!getCurrentMethod().equals(callingMethod)) {
+            log.info("Executing : " + callingClassName + " : "
                     + callingMethod);
-            currentMethod = callingMethod;
+            setCurrentMethod(callingMethod);
             
         }
 
         log.info("Step : " + step + "\t|\tResult : " + result
-                + "\t|\tMessage : " + message);
+                + "\t|\tMessage : " + message
+                + (detailedSteps ? "\t|\tLine : " + getLineNumber() : ""));
 
-        logTime(step, getCommandStartTime(), getCurrentTime(), log);
+        getRetryExecutor().endStep(passed);
+        logTime(step, getCommandStartTime(), System.nanoTime(), log, result,
+                getRetryExecutor().getLastStepRetries());
 
-        reporter.reportResult(step, result, message);
+        synchronized (reporter) {
+            reporter.reportResult(step, result, message);
+        }
 
         // Adding data to the new reporter
         try {
@@ -582,7 +914,7 @@ public class SeleneseTestNgHelperVir extends SeleneseTestBaseVir {
             
             // replace xml special characters in the message.
             message = replaceXMLSpecialCharacters(message);
-            if ("PASSED".equals(result)) {
+            if (passed) {
                 String testMessage = message;
                 String stepDesc = step.substring(step.indexOf(':') + 1, step.length());
                 if ("".equals(message) || message == null) {
@@ -593,7 +925,8 @@ public class SeleneseTestNgHelperVir extends SeleneseTestBaseVir {
             } else {
                 resultReporter.reportStepResults(false, testStep, message,
                         "Error",
-                        getSourceLines(new Throwable(message).getStackTrace()));
+                        getSourceLines(callSite.getStackTrace()),
+                        getDriver());
             }
         } catch (Exception e) {
             e.printStackTrace();
@@ -601,6 +934,43 @@ public class SeleneseTestNgHelperVir extends SeleneseTestBaseVir {
 
     }
    
+    /**
+     * Finds the frame of the test class taking a step. On Java 7 and 8 the
+     * frames are read one by one, so that the frames beyond the test class
+     * are not built.
+     * 
+     * @param callSite
+     *            the throwable taken in the step
+     * @return the frame of the test class, or the last frame if none
+     */
+    private StackTraceElement findCaller(final Throwable callSite) {
+        StackTraceElement frame = null;
+        if (STACK_ACCESS != null) {
+            try {
+                int depth =
+                        (Integer) STACK_DEPTH.invoke(STACK_ACCESS, callSite);
+                for (int i = 0; i < depth; i++) {
+                    frame =
+                            (StackTraceElement) STACK_ELEMENT.invoke(
+                                    STACK_ACCESS, callSite, i);
+                    if (frame.getClassName().startsWith(testPackageName)) {
+                        break;
+                    }
+                }
+                return frame;
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+        for (StackTraceElement element : callSite.getStackTrace()) {
+            frame = element;
+            if (frame.getClassName().startsWith(testPackageName)) {
+                break;
+            }
+        }
+        return frame;
+    }
+
     /**
      * End test reporting.
      * 
@@ -609,7 +979,9 @@ public class SeleneseTestNgHelperVir extends SeleneseTestBaseVir {
      */
     public final void endTestReporting(final boolean testFailed) {
 
-        reporter.endResultReporting(testFailed);
+        synchronized (reporter) {
+            reporter.endResultReporting(testFailed);
+        }
 
     }
 
@@ -626,19 +998,19 @@ public class SeleneseTestNgHelperVir extends SeleneseTestBaseVir {
      * Sets the command start time.
      * 
      * @param startTime
-     *            the new command start time
+     *            the new command start time, by {@link System#nanoTime()}
      */
-    protected final void setCommandStartTime(final Date startTime) {
-        this.commandStartTime = startTime;
+    protected final void setCommandStartTime(final long startTime) {
+        ExecutionContext.current().setCommandStartTime(startTime);
     }
 
     /**
      * Gets the command start time.
      * 
-     * @return the command start time
+     * @return the command start time, by {@link System#nanoTime()}
      */
-    protected final Date getCommandStartTime() {
-        return this.commandStartTime;
+    protected final long getCommandStartTime() {
+        return ExecutionContext.current().getCommandStartTime();
     }
 
     /**
@@ -647,22 +1019,30 @@ public class SeleneseTestNgHelperVir extends SeleneseTestBaseVir {
      * @param desc
      *            the description
      * @param start
-     *            the start date time
+     *            the start time, by {@link System#nanoTime()}, or 0 if unset
      * @param end
-     *            the end time
+     *            the end time, by {@link System#nanoTime()}
      * @param log
      *            the log
+     * @param outcome
+     *            the result
+     * @param retries
+     *            the retries
      */
-    private void logTime(final String desc, final Date start, final Date end, final Logger log) {
+    private void logTime(final String desc, final long start, final long end,
+            final Logger log, final String outcome, final int retries) {
         try {                      
-            if (!desc.startsWith("PAUSE")) {
-                Long timeDiff = Math.abs(end.getTime() - start.getTime());
-                totalExecutionTimeTaken += timeDiff;
+            if (!desc.startsWith("PAUSE") && start != 0) {
+                long timeDiff = TimeUnit.NANOSECONDS.toMillis(end - start);
+                setTotalExecutionTimeTaken(getTotalExecutionTimeTaken()
+                        + timeDiff);
                 log.info("Time taken to execute " + desc + " " + timeDiff
                         + " ms");
-                appendToCSVFileBuilder(desc, ",", timeDiff, "\n");
-                //logTimeCSVFileBuilder.append(desc).append(',').append(timeDiff)
-                //        .append("\n");
+                StepTimingWriter writer = timeLog;
+                if (writer != null) {
+                    writer.record(ExecutionContext.current().getTestCaseName(),
+                            desc, timeDiff, retries, outcome);
+                }
             }
         } catch (Exception e) {
            log.info(e.getMessage());
@@ -734,7 +1114,7 @@ public class SeleneseTestNgHelperVir extends SeleneseTestBaseVir {
      * @return the errorMessages
      */
     public final String getErrorMessages() {
-        return errorMessages;
+        return ExecutionContext.current().getErrorMessages();
     }
 
     /**
@@ -742,7 +1122,7 @@ public class SeleneseTestNgHelperVir extends SeleneseTestBaseVir {
      *            the errorMessages to set
      */
     public final void setErrorMessages(final String errorMessagesString) {
-        this.errorMessages = errorMessagesString;
+        ExecutionContext.current().setErrorMessages(errorMessagesString);
     }
 
     /**
@@ -764,7 +1144,7 @@ public class SeleneseTestNgHelperVir extends SeleneseTestBaseVir {
      * @return the currentMethod
      */
     public final String getCurrentMethod() {
-        return currentMethod;
+        return ExecutionContext.current().getCurrentMethod();
     }
 
     /**
@@ -772,14 +1152,14 @@ public class SeleneseTestNgHelperVir extends SeleneseTestBaseVir {
      *            the currentMethod to set
      */
     public final void setCurrentMethod(final String currentMethodString) {
-        this.currentMethod = currentMethodString;
+        ExecutionContext.current().setCurrentMethod(currentMethodString);
     }
 
     /**
      * @return the callingClassName
      */
     public final String getCallingClassName() {
-        return callingClassName;
+        return ExecutionContext.current().getCallingClassName();
     }
 
     /**
@@ -787,14 +1167,15 @@ public class SeleneseTestNgHelperVir extends SeleneseTestBaseVir {
      *            the callingClassName to set
      */
     public final void setCallingClassName(final String callingClassNameString) {
-        this.callingClassName = callingClassNameString;
+        ExecutionContext.current().setCallingClassName(
+                callingClassNameString);
     }
 
     /**
      * @return the lineNumber
      */
     public final int getLineNumber() {
-        return lineNumber;
+        return ExecutionContext.current().getLineNumber();
     }
 
     /**
@@ -802,7 +1183,7 @@ public class SeleneseTestNgHelperVir extends SeleneseTestBaseVir {
      *            the lineNumber to set
      */
     public final void setLineNumber(final int lineNumberInt) {
-        this.lineNumber = lineNumberInt;
+        ExecutionContext.current().setLineNumber(lineNumberInt);
     }
 
     /**
@@ -824,7 +1205,7 @@ public class SeleneseTestNgHelperVir extends SeleneseTestBaseVir {
      * @return the openWindowHandleIndex
      */
     public final List<String> getOpenWindowHandleIndex() {
-        return openWindowHandleIndex;
+        return ExecutionContext.current().getOpenWindowHandleIndex();
     }
 
     /**
@@ -833,7 +1214,8 @@ public class SeleneseTestNgHelperVir extends SeleneseTestBaseVir {
      */
     public final void setOpenWindowHandleIndex(
             final List<String> openWindowHandleIndexList) {
-        this.openWindowHandleIndex = openWindowHandleIndexList;
+        ExecutionContext.current().setOpenWindowHandleIndex(
+                openWindowHandleIndexList);
     }
 
     /**
@@ -855,7 +1237,7 @@ public class SeleneseTestNgHelperVir extends SeleneseTestBaseVir {
      * @return the totalExecutionTimeTaken
      */
     public final long getTotalExecutionTimeTaken() {
-        return totalExecutionTimeTaken;
+        return ExecutionContext.current().getTotalExecutionTimeTaken();
     }
 
     /**
@@ -863,7 +1245,7 @@ public class SeleneseTestNgHelperVir extends SeleneseTestBaseVir {
      *            the totalExecutionTimeTaken to set
      */
     public final void setTotalExecutionTimeTaken(final long totalTimeTaken) {
-        this.totalExecutionTimeTaken = totalTimeTaken;
+        ExecutionContext.current().setTotalExecutionTimeTaken(totalTimeTaken);
     }
 
     /**
@@ -879,21 +1261,19 @@ public class SeleneseTestNgHelperVir extends SeleneseTestBaseVir {
      */
     public static final void setRetryCount(final int retryCountInt) {
         SeleneseTestNgHelperVir.retryCount = retryCountInt;
+        getRetryExecutor().setDefaultAttempts(retryCountInt);
     }
 
-    
     /**
-     * Append to the csv log.
-     * 
-     * @param appendValues
-     *            objects to append
+     * Gets the retry executor shared by the commands, configured from the
+     * runtime properties on the first use.
+     *
+     * @return the retry executor
      */
-    private static void appendToCSVFileBuilder(final Object... appendValues) {
-        StringBuilder builder = new StringBuilder();
-        for (Object currentAppendValue : appendValues) {
-            builder.append(currentAppendValue);
-            
+    public static final synchronized RetryExecutor getRetryExecutor() {
+        if (retryExecutor == null) {
+            retryExecutor = RetryExecutor.fromProperties("runtime.properties");
         }
-        logTimeCSVFileBuilder += builder.toString();
+        return retryExecutor;
     }
 }
@@ -11,8 +11,6 @@
 
 package com.virtusa.isq.vtaf.objectmap;
 
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.StringTokenizer;
@@ -23,7 +21,8 @@ import java.util.StringTokenizer;
 public class ObjectMap {
 
     /**
-     * Gets the object search path.
+     * Gets the object search path. The page enums are resolved through the
+     * shared {@link ObjectMapRegistry}.
      * 
      * @param objectName
      *            the object name
@@ -33,47 +32,13 @@ public class ObjectMap {
      */
     public static String getObjectSearchPath(final String objectName,
             final String identifire) {
-        String searchPath = "";
+        String searchPath =
+                ObjectMapRegistry.getInstance().getSearchPath(objectName);
+        if (!"".equals(identifire)) {
+            return getResolvedSearchPath(searchPath, identifire);
 
-        try {
-
-            Class< ? > clz =
-                    Class.forName("com.virtusa.isq.vtaf.runtime.pages."
-                            + objectName.split("\\.")[0]);
-            /* Use method added in Java 1.5. */
-            Object[] consts = clz.getEnumConstants();
-            /* Enum constants are in order of declaration. */
-
-            for (int i = 0; i < consts.length; i++) {
-
-                if (consts[i].toString().equalsIgnoreCase(
-                        objectName.split("\\.")[1])) {
-                    Class< ? > sub = consts[i].getClass();
-                    Method mth = sub.getDeclaredMethod("getSrachPath");
-                    searchPath = (String) mth.invoke(consts[i]);
-                    /* Prove it worked. */
-                    // System.out.println(val);
-                    break;
-
-                }
-
-            }
-            if (!"".equals(identifire)) {
-                return getResolvedSearchPath(searchPath, identifire);
-
-            } else {
-                return searchPath;
-            }
-        } catch (ClassNotFoundException e) {
-            return "";
-        } catch (NoSuchMethodException e) {
-            return "";
-        } catch (InvocationTargetException e) {
-            return "";
-        } catch (IllegalAccessException e) {
-            return "";
-        } catch (IllegalArgumentException e) {
-            return "";
+        } else {
+            return searchPath;
         }
     }
 
@@ -121,7 +86,9 @@ public class ObjectMap {
     }
 
     /**
-     * Gets the resolved search path.
+     * Gets the resolved search path. The search path is compiled once into a
+     * {@link SearchPathTemplate} and rendered with the parameters of the
+     * identifier.
      * 
      * @param searchPath
      *            the search path
@@ -131,17 +98,6 @@ public class ObjectMap {
      */
     public static String getResolvedSearchPath(final String searchPath,
             final String identifire) {
-        String resolvedSearchPath = searchPath;
-        List<String> parameterValues = getParameterValues(identifire);
-        for (String param :  parameterValues) {
-            if (!"".equals(param)) {
-                resolvedSearchPath =
-                        resolvedSearchPath.replace("<"
-                                + param.split("_PARAM:")[0]
-                                + ">",
-                                param.split("_PARAM:")[1]);
-            }
-        }
-        return resolvedSearchPath;
+        return SearchPathTemplate.forTemplate(searchPath).render(identifire);
     }
 }
@@ -0,0 +1,181 @@
+/*
+ * Copyright 2004 ThoughtWorks, Inc. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law
+ * or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package com.virtusa.isq.vtaf.objectmap;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Process wide index of the generated page enums.<br>
+ * Each page class is loaded through reflection only once, the first time one
+ * of its objects is requested. The search paths of all the constants are then
+ * kept in a hash index keyed by the lower cased object name, so that the
+ * subsequent lookups are plain map reads.
+ */
+public final class ObjectMapRegistry {
+
+    /** The package which holds the generated page enums. */
+    private static final String PAGES_PACKAGE =
+            "com.virtusa.isq.vtaf.runtime.pages.";
+
+    /** The search path accessor generated in each page enum. */
+    private static final String SEARCH_PATH_METHOD = "getSrachPath";
+
+    /** The shared registry instance. */
+    private static final ObjectMapRegistry INSTANCE = new ObjectMapRegistry();
+
+    /** The loaded pages, keyed by the page name. */
+    private final ConcurrentMap<String, Map<String, String>> pages =
+            new ConcurrentHashMap<String, Map<String, String>>();
+
+    /** The number of lookups served from an already loaded page. */
+    private final AtomicLong hitCount = new AtomicLong();
+
+    /** The number of lookups which had to load the page. */
+    private final AtomicLong missCount = new AtomicLong();
+
+    /**
+     * Instantiates the registry.
+     */
+    private ObjectMapRegistry() {
+    }
+
+    /**
+     * Gets the shared registry instance.
+     *
+     * @return the registry
+     */
+    public static ObjectMapRegistry getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Gets the search path of the given object.
+     *
+     * @param objectName
+     *            the object name in the form <i>page.object</i>
+     * @return the search path, or an empty string if the page or the object
+     *         cannot be found
+     */
+    public String getSearchPath(final String objectName) {
+        int pageEnd = objectName.indexOf('.');
+        if (pageEnd < 0) {
+            return "";
+        }
+        int objectEnd = objectName.indexOf('.', pageEnd + 1);
+        if (objectEnd < 0) {
+            objectEnd = objectName.length();
+        }
+        String pageName = objectName.substring(0, pageEnd);
+        Map<String, String> page = pages.get(pageName);
+        if (page == null) {
+            missCount.incrementAndGet();
+            page = loadPage(pageName);
+            Map<String, String> existing = pages.putIfAbsent(pageName, page);
+            if (existing != null) {
+                page = existing;
+            }
+        } else {
+            hitCount.incrementAndGet();
+        }
+        String searchPath =
+                page.get(objectName.substring(pageEnd + 1, objectEnd)
+                        .toLowerCase(Locale.ENGLISH));
+        if (searchPath == null) {
+            return "";
+        }
+        return searchPath;
+    }
+
+    /**
+     * Loads the search paths of all the objects in the given page enum.
+     *
+     * @param pageName
+     *            the page name
+     * @return the index of the page, empty if the page cannot be loaded
+     */
+    private Map<String, String> loadPage(final String pageName) {
+        Map<String, String> index = new HashMap<String, String>();
+        try {
+            Class< ? > clz = Class.forName(PAGES_PACKAGE + pageName);
+            Object[] consts = clz.getEnumConstants();
+            if (consts == null) {
+                return Collections.emptyMap();
+            }
+            for (Object constant : consts) {
+                Method mth =
+                        constant.getClass().getDeclaredMethod(
+                                SEARCH_PATH_METHOD);
+                mth.setAccessible(true);
+                String key = constant.toString().toLowerCase(Locale.ENGLISH);
+                // keep the first declaration when names differ only by case
+                if (!index.containsKey(key)) {
+                    index.put(key, (String) mth.invoke(constant));
+                }
+            }
+        } catch (ClassNotFoundException e) {
+            return Collections.emptyMap();
+        } catch (NoSuchMethodException e) {
+            return Collections.emptyMap();
+        } catch (InvocationTargetException e) {
+            return Collections.emptyMap();
+        } catch (IllegalAccessException e) {
+            return Collections.emptyMap();
+        } catch (IllegalArgumentException e) {
+            return Collections.emptyMap();
+        }
+        return Collections.unmodifiableMap(index);
+    }
+
+    /**
+     * Gets the number of lookups served from an already loaded page.
+     *
+     * @return the hit count
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * Gets the number of lookups which had to load the page.
+     *
+     * @return the miss count
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * Gets the number of pages loaded into the registry.
+     *
+     * @return the loaded page count
+     */
+    public int getLoadedPageCount() {
+        return pages.size();
+    }
+
+    /**
+     * Drops all the loaded pages and resets the counters.
+     */
+    public void clear() {
+        pages.clear();
+        hitCount.set(0);
+        missCount.set(0);
+    }
+}
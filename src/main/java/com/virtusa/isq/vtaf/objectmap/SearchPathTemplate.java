@@ -0,0 +1,265 @@
+/*
+ * Copyright 2004 ThoughtWorks, Inc. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law
+ * or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package com.virtusa.isq.vtaf.objectmap;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A parameterized search path, e.g. <i>//td[text()='&lt;p1&gt;']</i>, parsed
+ * once into literal and placeholder segments.<br>
+ * The segments only hold offsets into the template, and the identifier is
+ * scanned in place while rendering, so that a resolution allocates little
+ * more than the resulting string. Identifiers are given in the form
+ * <i>p1_PARAM:value1_PARAM,p2_PARAM:value2</i>.
+ */
+public final class SearchPathTemplate {
+
+    /** The separator between the parameters of an identifier. */
+    private static final String PARAM_SEPARATOR = "_PARAM,";
+
+    /** The separator between the name and the value of a parameter. */
+    private static final String VALUE_SEPARATOR = "_PARAM:";
+
+    /** The maximum number of templates kept in the cache. */
+    private static final int MAX_CACHED_TEMPLATES = 4096;
+
+    /** The compiled templates. */
+    private static final ConcurrentMap<String, SearchPathTemplate> TEMPLATES =
+            new ConcurrentHashMap<String, SearchPathTemplate>();
+
+    /** The template string. */
+    private final String template;
+
+    /** The start offsets of the segments. */
+    private final int[] segmentStarts;
+
+    /** The end offsets of the segments. */
+    private final int[] segmentEnds;
+
+    /** Whether each segment is a placeholder name or a literal. */
+    private final boolean[] placeholders;
+
+    /**
+     * Instantiates a new search path template.
+     *
+     * @param templateString the template string
+     * @param starts the start offsets of the segments
+     * @param ends the end offsets of the segments
+     * @param isPlaceholder whether each segment is a placeholder
+     */
+    private SearchPathTemplate(final String templateString,
+            final int[] starts, final int[] ends,
+            final boolean[] isPlaceholder) {
+        this.template = templateString;
+        this.segmentStarts = starts;
+        this.segmentEnds = ends;
+        this.placeholders = isPlaceholder;
+    }
+
+    /**
+     * Gets the compiled form of the given template, compiling it on the first
+     * use.
+     *
+     * @param templateString the template string
+     * @return the compiled template
+     */
+    public static SearchPathTemplate forTemplate(final String templateString) {
+        SearchPathTemplate compiled = TEMPLATES.get(templateString);
+        if (compiled == null) {
+            compiled = compile(templateString);
+            if (TEMPLATES.size() < MAX_CACHED_TEMPLATES) {
+                TEMPLATES.putIfAbsent(templateString, compiled);
+            }
+        }
+        return compiled;
+    }
+
+    /**
+     * Parses the given template into segments. A placeholder is the text
+     * between a <i>&lt;</i> and the following <i>&gt;</i>; when placeholders
+     * overlap, the innermost <i>&lt;</i> is used.
+     *
+     * @param templateString the template string
+     * @return the compiled template
+     */
+    public static SearchPathTemplate compile(final String templateString) {
+        int length = templateString.length();
+        int maxSegments = 1;
+        for (int i = 0; i < length; i++) {
+            if (templateString.charAt(i) == '<') {
+                maxSegments += 2;
+            }
+        }
+        int[] starts = new int[maxSegments];
+        int[] ends = new int[maxSegments];
+        boolean[] isPlaceholder = new boolean[maxSegments];
+        int count = 0;
+        int cursor = 0;
+        int open = -1;
+        for (int i = 0; i < length; i++) {
+            char c = templateString.charAt(i);
+            if (c == '<') {
+                open = i;
+            } else if (c == '>' && open >= 0) {
+                if (open > cursor) {
+                    starts[count] = cursor;
+                    ends[count] = open;
+                    count++;
+                }
+                starts[count] = open + 1;
+                ends[count] = i;
+                isPlaceholder[count] = true;
+                count++;
+                cursor = i + 1;
+                open = -1;
+            }
+        }
+        if (cursor < length) {
+            starts[count] = cursor;
+            ends[count] = length;
+            count++;
+        }
+        int[] segmentStarts = new int[count];
+        int[] segmentEnds = new int[count];
+        boolean[] segmentPlaceholders = new boolean[count];
+        System.arraycopy(starts, 0, segmentStarts, 0, count);
+        System.arraycopy(ends, 0, segmentEnds, 0, count);
+        System.arraycopy(isPlaceholder, 0, segmentPlaceholders, 0, count);
+        return new SearchPathTemplate(templateString, segmentStarts,
+                segmentEnds, segmentPlaceholders);
+    }
+
+    /**
+     * Checks if the template has any placeholders.
+     *
+     * @return true, if the template has placeholders
+     */
+    public boolean hasPlaceholders() {
+        for (boolean placeholder : placeholders) {
+            if (placeholder) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Renders the template, replacing each placeholder with the matching
+     * parameter of the identifier. Placeholders without a matching parameter
+     * are kept as they are.
+     *
+     * @param identifier the identifier
+     * @return the resolved search path
+     */
+    public String render(final String identifier) {
+        if (identifier == null || identifier.isEmpty() || !hasPlaceholders()) {
+            return template;
+        }
+        int[] params = parseIdentifier(identifier);
+        StringBuilder resolved =
+                new StringBuilder(template.length() + identifier.length());
+        for (int s = 0; s < segmentStarts.length; s++) {
+            int start = segmentStarts[s];
+            int end = segmentEnds[s];
+            if (!placeholders[s]) {
+                resolved.append(template, start, end);
+                continue;
+            }
+            int param = findParameter(params, identifier, start, end);
+            if (param < 0) {
+                resolved.append(template, start - 1, end + 1);
+            } else {
+                resolved.append(identifier, params[param + 2],
+                        params[param + 3]);
+            }
+        }
+        return resolved.toString();
+    }
+
+    /**
+     * Scans the identifier for parameters. Each parameter is stored as four
+     * consecutive offsets: name start, name end, value start and value end.
+     * Parameters without a name/value separator are skipped.
+     *
+     * @param identifier the identifier
+     * @return the parameter offsets, terminated by -1
+     */
+    private static int[] parseIdentifier(final String identifier) {
+        int maxParams = 1;
+        int index = identifier.indexOf(PARAM_SEPARATOR);
+        while (index >= 0) {
+            maxParams++;
+            index =
+                    identifier.indexOf(PARAM_SEPARATOR, index
+                            + PARAM_SEPARATOR.length());
+        }
+        final int offsetsPerParam = 4;
+        int[] params = new int[maxParams * offsetsPerParam + 1];
+        int count = 0;
+        int paramStart = 0;
+        int length = identifier.length();
+        while (paramStart <= length) {
+            int paramEnd = identifier.indexOf(PARAM_SEPARATOR, paramStart);
+            if (paramEnd < 0) {
+                paramEnd = length;
+            }
+            int nameEnd = identifier.indexOf(VALUE_SEPARATOR, paramStart);
+            if (nameEnd >= 0 && nameEnd < paramEnd) {
+                int valueStart = nameEnd + VALUE_SEPARATOR.length();
+                int valueEnd = identifier.indexOf(VALUE_SEPARATOR, valueStart);
+                if (valueEnd < 0 || valueEnd > paramEnd) {
+                    valueEnd = paramEnd;
+                }
+                params[count++] = paramStart;
+                params[count++] = nameEnd;
+                params[count++] = valueStart;
+                params[count++] = valueEnd;
+            }
+            paramStart = paramEnd + PARAM_SEPARATOR.length();
+        }
+        params[count] = -1;
+        return params;
+    }
+
+    /**
+     * Finds the first parameter whose name matches the given placeholder.
+     *
+     * @param params the parameter offsets
+     * @param identifier the identifier
+     * @param nameStart the start of the placeholder name in the template
+     * @param nameEnd the end of the placeholder name in the template
+     * @return the index of the parameter in the offsets, or -1
+     */
+    private int findParameter(final int[] params, final String identifier,
+            final int nameStart, final int nameEnd) {
+        int nameLength = nameEnd - nameStart;
+        final int offsetsPerParam = 4;
+        for (int p = 0; params[p] >= 0; p += offsetsPerParam) {
+            if (params[p + 1] - params[p] == nameLength
+                    && template.regionMatches(nameStart, identifier,
+                            params[p], nameLength)) {
+                return p;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Gets the template string.
+     *
+     * @return the template
+     */
+    public String getTemplate() {
+        return template;
+    }
+}
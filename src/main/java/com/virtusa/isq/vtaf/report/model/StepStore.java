@@ -0,0 +1,323 @@
+/*
+ * Copyright 2004 ThoughtWorks, Inc. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law
+ * or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+
+package com.virtusa.isq.vtaf.report.model;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Stores the test steps of a test case column by column, instead of one
+ * object per step, for executions with very many steps.<br>
+ * The results and times are kept in primitive arrays, and the categories and
+ * log levels by their ids in a dictionary shared by all the test cases. The
+ * messages of all the test cases are appended to a shared character buffer;
+ * once it holds more than the spill threshold, it is moved to the end of a
+ * temporary file and the messages are read back from there. The screenshots
+ * and stack traces, which only the failed steps have, are kept by step.<br>
+ * The store is a list of {@link TestStep}, so the report templates render it
+ * as before: each step is created again when it is read, and a step changed
+ * after it was added is stored again with {@link #set(int, TestStep)}.
+ */
+public class StepStore extends AbstractList<TestStep> {
+
+    /** The default spill threshold, in characters. */
+    public static final int DEFAULT_SPILL_THRESHOLD = 1 << 20;
+
+    /** The steps allocated first. */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /** The bytes of a character in the spill file. */
+    private static final int CHAR_BYTES = 2;
+
+    /** The length stored for a null message. */
+    private static final int NULL_LENGTH = -1;
+
+    /** The dictionary id stored for a null string. */
+    private static final int NO_WORD = -1;
+
+    /** The strings of the shared dictionary, by id. */
+    private static final List<String> DICTIONARY = new ArrayList<String>();
+
+    /** The ids of the strings of the shared dictionary. */
+    private static final Map<String, Integer> DICTIONARY_IDS =
+            new HashMap<String, Integer>();
+
+    /** The lock of the shared characters. */
+    private static final Object CHARS_LOCK = new Object();
+
+    /**
+     * The characters of messages kept in memory, or 0 or less to keep them
+     * all in memory.
+     */
+    private static volatile int spillThreshold = DEFAULT_SPILL_THRESHOLD;
+
+    /** The shared characters kept in memory. */
+    private static char[] chars = new char[0];
+
+    /** The number of shared characters kept in memory. */
+    private static int charCount;
+
+    /** The number of shared characters moved to the spill file. */
+    private static long spilledChars;
+
+    /** The spill file, once created. */
+    private static RandomAccessFile spillFile;
+
+    /** The number of steps. */
+    private int size;
+
+    /** The results. */
+    private boolean[] passed = new boolean[INITIAL_CAPACITY];
+
+    /** The times, in milliseconds since the epoch. */
+    private long[] times = new long[INITIAL_CAPACITY];
+
+    /** The dictionary ids of the categories. */
+    private int[] categories = new int[INITIAL_CAPACITY];
+
+    /** The dictionary ids of the log levels. */
+    private int[] levels = new int[INITIAL_CAPACITY];
+
+    /** The positions of the messages among all the characters stored. */
+    private long[] messageStarts = new long[INITIAL_CAPACITY];
+
+    /** The lengths of the messages. */
+    private int[] messageLengths = new int[INITIAL_CAPACITY];
+
+    /**
+     * The screenshot, the thumbnail and the stack trace of the failed steps,
+     * by step.
+     */
+    private final Map<Integer, String[]> failures =
+            new HashMap<Integer, String[]>();
+
+    /**
+     * Sets the characters of messages kept in memory by all the stores.
+     *
+     * @param threshold the characters, or 0 or less to keep them all
+     */
+    public static void setSpillThreshold(final int threshold) {
+        spillThreshold = threshold;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final synchronized int size() {
+        return size;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final synchronized TestStep get(final int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: "
+                    + size);
+        }
+        String[] failure = failures.get(index);
+        return new TestStep(passed[index], times[index],
+                word(categories[index]), failure != null ? failure[0] : null,
+                failure != null ? failure[1] : null, readMessage(index),
+                failure != null ? failure[2] : null, word(levels[index]));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final synchronized void add(final int index, final TestStep step) {
+        if (index != size) {
+            throw new UnsupportedOperationException(
+                    "Test steps can only be added at the end");
+        }
+        if (size == passed.length) {
+            int capacity = size * 2;
+            passed = Arrays.copyOf(passed, capacity);
+            times = Arrays.copyOf(times, capacity);
+            categories = Arrays.copyOf(categories, capacity);
+            levels = Arrays.copyOf(levels, capacity);
+            messageStarts = Arrays.copyOf(messageStarts, capacity);
+            messageLengths = Arrays.copyOf(messageLengths, capacity);
+        }
+        size++;
+        store(index, step);
+        modCount++;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final synchronized TestStep set(final int index,
+            final TestStep step) {
+        TestStep previous = get(index);
+        store(index, step);
+        return previous;
+    }
+
+    /**
+     * Stores the columns of a step.
+     *
+     * @param index the index of the step
+     * @param step the step
+     */
+    private void store(final int index, final TestStep step) {
+        passed[index] = step.isPassed();
+        times[index] = step.getTimeMillis();
+        categories[index] = wordId(step.getCategory());
+        levels[index] = wordId(step.getLoglvl());
+        String message = step.getMessage();
+        if (message == null) {
+            messageStarts[index] = 0;
+            messageLengths[index] = NULL_LENGTH;
+        } else {
+            messageStarts[index] = append(message);
+            messageLengths[index] = message.length();
+        }
+        if (step.getErrimg() != null || step.getErrthumb() != null
+                || step.getStacktrace() != null) {
+            failures.put(index, new String[] {step.getErrimg(),
+                    step.getErrthumb(), step.getStacktrace() });
+        } else {
+            failures.remove(index);
+        }
+    }
+
+    /**
+     * Appends a message to the shared characters, moving the characters in
+     * memory to the spill file first when they would exceed the spill
+     * threshold.
+     *
+     * @param message the message
+     * @return the position of the message among all the characters stored
+     */
+    private static long append(final String message) {
+        synchronized (CHARS_LOCK) {
+            int threshold = spillThreshold;
+            if (threshold > 0 && charCount > 0
+                    && charCount + message.length() > threshold) {
+                spill();
+            }
+            if (charCount + message.length() > chars.length) {
+                chars =
+                        Arrays.copyOf(chars, Math.max(
+                                charCount + message.length(),
+                                Math.max(INITIAL_CAPACITY, chars.length * 2)));
+            }
+            message.getChars(0, message.length(), chars, charCount);
+            long start = spilledChars + charCount;
+            charCount += message.length();
+            return start;
+        }
+    }
+
+    /**
+     * Moves the shared characters in memory to the end of the spill file,
+     * keeping their buffer for the next ones. The characters stay in memory
+     * when they cannot be written. Called holding the lock of the shared
+     * characters.
+     */
+    private static void spill() {
+        try {
+            if (spillFile == null) {
+                File file = File.createTempFile("vtaf-steps", ".chars");
+                file.deleteOnExit();
+                spillFile = new RandomAccessFile(file, "rw");
+            }
+            ByteBuffer bytes = ByteBuffer.allocate(charCount * CHAR_BYTES);
+            bytes.asCharBuffer().put(chars, 0, charCount);
+            spillFile.seek(spilledChars * CHAR_BYTES);
+            spillFile.write(bytes.array());
+            spilledChars += charCount;
+            charCount = 0;
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Reads the message of a step back.
+     *
+     * @param index the index of the step
+     * @return the message
+     */
+    private String readMessage(final int index) {
+        int length = messageLengths[index];
+        if (length == NULL_LENGTH) {
+            return null;
+        }
+        long start = messageStarts[index];
+        synchronized (CHARS_LOCK) {
+            if (start >= spilledChars) {
+                return new String(chars, (int) (start - spilledChars), length);
+            }
+            try {
+                byte[] bytes = new byte[length * CHAR_BYTES];
+                spillFile.seek(start * CHAR_BYTES);
+                spillFile.readFully(bytes);
+                return ByteBuffer.wrap(bytes).asCharBuffer().toString();
+            } catch (IOException e) {
+                e.printStackTrace();
+                return "";
+            }
+        }
+    }
+
+    /**
+     * Gets the id of a string in the shared dictionary, adding it the first
+     * time.
+     *
+     * @param word the string
+     * @return the id, or -1 for null
+     */
+    private static int wordId(final String word) {
+        if (word == null) {
+            return NO_WORD;
+        }
+        synchronized (DICTIONARY) {
+            Integer id = DICTIONARY_IDS.get(word);
+            if (id == null) {
+                id = DICTIONARY.size();
+                DICTIONARY.add(word);
+                DICTIONARY_IDS.put(word, id);
+            }
+            return id;
+        }
+    }
+
+    /**
+     * Gets a string of the shared dictionary.
+     *
+     * @param id the id
+     * @return the string, or null for -1
+     */
+    private static String word(final int id) {
+        if (id == NO_WORD) {
+            return null;
+        }
+        synchronized (DICTIONARY) {
+            return DICTIONARY.get(id);
+        }
+    }
+}
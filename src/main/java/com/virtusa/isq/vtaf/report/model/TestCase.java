@@ -12,7 +12,7 @@
 
 package com.virtusa.isq.vtaf.report.model;
 
-import java.util.ArrayList;
+import java.util.List;
 
 /**
  * The Class TestCase.
@@ -41,7 +41,7 @@ public class TestCase {
     private int testCaseId;
 
     /** The test steps. */
-    private ArrayList<TestStep> testSteps;
+    private StepStore testSteps;
 
     /**
      * Instantiates a new test case.
@@ -61,7 +61,7 @@ public class TestCase {
         this.type = "test module";
         this.rid = ridNo;
         this.testCaseId = testCaseid;
-        testSteps = new ArrayList<TestStep>();
+        testSteps = new StepStore();
     }
 
     /**
@@ -137,11 +137,12 @@ public class TestCase {
     }
     
     /**
-     * Gets the testSteps.
+     * Gets the testSteps. A step changed after it was added must be set again
+     * to be kept, see {@link StepStore}.
      *
      * @return the testSteps
      */
-    public final ArrayList<TestStep> getTestSteps() {
+    public final List<TestStep> getTestSteps() {
         return this.testSteps;
     }
 }
@@ -20,8 +20,21 @@ import java.util.Date;
  */
 public class TestStep {
 
-    /** The time. */
-    private String time;
+    /**
+     * The format of the step times. Each rendering thread uses its own
+     * instance, as SimpleDateFormat is not thread safe.
+     */
+    private static final ThreadLocal<SimpleDateFormat> TIME_FORMAT =
+            new ThreadLocal<SimpleDateFormat>() {
+
+                @Override
+                protected SimpleDateFormat initialValue() {
+                    return new SimpleDateFormat("h:mm:ss");
+                }
+            };
+
+    /** The time, in milliseconds since the epoch. */
+    private final long timeMillis;
     
     /** The category. */
     private String category;
@@ -54,16 +67,16 @@ public class TestStep {
      * Success Test Step.
      *
      * @param ispassed the ispassed
-     * @param execTime the exec time
+     * @param execTimeMillis the exec time, in milliseconds since the epoch
      * @param stepCategory the step category
      * @param stepMessage the step message
      * @param loglevel the loglevel
      */
-    public TestStep(final boolean ispassed, final String execTime,
+    public TestStep(final boolean ispassed, final long execTimeMillis,
             final String stepCategory, final String stepMessage, final String loglevel) {
         super();
         this.isPassed = ispassed;
-        this.time = execTime;
+        this.timeMillis = execTimeMillis;
         this.category = stepCategory;
         this.message = stepMessage;
         this.codefile = "UNKNOWN";
@@ -84,11 +97,29 @@ public class TestStep {
      */
     public TestStep(final boolean ispassed, final String stepCategory, final String errImg, final String errThumb,
             final String stepMessage, final String stackTrace, final String loglevel) {
+        this(ispassed, System.currentTimeMillis(), stepCategory, errImg,
+                errThumb, stepMessage, stackTrace, loglevel);
+    }
+
+    /**
+     * Test Step read back from a {@link StepStore}.
+     *
+     * @param ispassed the ispassed
+     * @param execTimeMillis the exec time, in milliseconds since the epoch
+     * @param stepCategory the step category
+     * @param errImg the err img
+     * @param errThumb the err thumb
+     * @param stepMessage the step message
+     * @param stackTrace the stack trace
+     * @param loglevel the loglevel
+     */
+    TestStep(final boolean ispassed, final long execTimeMillis,
+            final String stepCategory, final String errImg,
+            final String errThumb, final String stepMessage,
+            final String stackTrace, final String loglevel) {
         super();
-        Date date = new Date();
-        SimpleDateFormat sdf = new SimpleDateFormat("h:mm:ss"); 
         this.isPassed = ispassed;
-        this.time = sdf.format(date);
+        this.timeMillis = execTimeMillis;
         this.category = stepCategory;
         this.errimg = errImg;
         this.errthumb = errThumb;
@@ -109,12 +140,21 @@ public class TestStep {
     }
 
     /**
-     * Gets the time.
+     * Gets the time, formatted when the report is rendered.
      *
      * @return the time
      */
     public final String getTime() {
-        return time;
+        return TIME_FORMAT.get().format(new Date(timeMillis));
+    }
+
+    /**
+     * Gets the time in milliseconds since the epoch.
+     *
+     * @return the time
+     */
+    public final long getTimeMillis() {
+        return timeMillis;
     }
 
     /**
@@ -144,6 +184,18 @@ public class TestStep {
         return errthumb;
     }
 
+    /**
+     * Sets the screenshot and its thumbnail.
+     *
+     * @param errImg the err img
+     * @param errThumb the err thumb
+     */
+    public final void setScreenshot(final String errImg,
+            final String errThumb) {
+        this.errimg = errImg;
+        this.errthumb = errThumb;
+    }
+
     /**
      * Gets the message.
      *
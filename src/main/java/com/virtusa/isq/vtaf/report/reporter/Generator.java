@@ -28,6 +28,9 @@ import org.antlr.stringtemplate.StringTemplateGroup;
  */
 public class Generator {
 
+    /** The report data templates, loaded on the first render. */
+    private StringTemplateGroup reportTemplates;
+
     
     /**
      * Generate report.
@@ -51,6 +54,26 @@ public class Generator {
 
     }
 
+    /**
+     * Renders one template of the report data, e.g. a single test case.
+     *
+     * @param templateName the template name
+     * @param attribute the attribute the template takes
+     * @param value the value
+     * @return the rendered text
+     */
+    public final String render(final String templateName,
+            final String attribute, final Object value) {
+        if (reportTemplates == null) {
+            reportTemplates =
+                    new StringTemplateGroup(
+                            getTemplateStringReader("ReportHtmlData.stg"));
+        }
+        StringTemplate template = reportTemplates.getInstanceOf(templateName);
+        template.setAttribute(attribute, value);
+        return template.toString();
+    }
+
     /**
      * Evaluates the Content() template function in the given template file and
      * saves to the file returned by the FileName() template function passing
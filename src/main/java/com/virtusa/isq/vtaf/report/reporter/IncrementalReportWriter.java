@@ -0,0 +1,393 @@
+/*
+ * Copyright 2004 ThoughtWorks, Inc. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law
+ * or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+
+package com.virtusa.isq.vtaf.report.reporter;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.virtusa.isq.vtaf.report.model.TestCase;
+import com.virtusa.isq.vtaf.report.model.TestExecution;
+import com.virtusa.isq.vtaf.report.model.TestSuite;
+
+/**
+ * Writes the report data file as the test cases finish, instead of rendering
+ * the whole report again each time.<br>
+ * Each finished test case is rendered alone. At each checkpoint, every given
+ * number of test cases, and when the reporting finishes, the test cases
+ * rendered since the last one are written over the closing tags at the end
+ * of the report data file, followed by the closing tags again, and the
+ * totals of the summary are rewritten in place. The totals are written with
+ * spare padding, so that they keep their length. The file is a complete
+ * report as of the last checkpoint, and each test case is written once.<br>
+ * The test cases of a suite are written in a section of that suite. When
+ * test cases of suites running at the same time interleave, a suite gets
+ * several sections with the same rid, which the report viewer shows as one
+ * suite.
+ */
+public class IncrementalReportWriter {
+
+    /** The default test cases between the checkpoints. */
+    public static final int DEFAULT_CHECKPOINT_INTERVAL = 10;
+
+    /** The end of the summary, before the test suites. */
+    private static final String SUITES_START = "rid=\"a106eb7a56abd88\">";
+
+    /** The end of a test suite. */
+    private static final String SUITE_END = "</activity>";
+
+    /** The totals of the summary rewritten in place. */
+    private static final String[] TOTALS = {"totalsuccesscount",
+            "totalfailedcount", "totalerrorcount" };
+
+    /** The characters kept for a total. */
+    private static final int TOTAL_WIDTH = 10;
+
+    /** The characters kept for a result. */
+    private static final int RESULT_WIDTH = "Success".length();
+
+    /** The encoding of the report data. */
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /** The report data file. */
+    private final File dataFile;
+
+    /** The test cases between the checkpoints. */
+    private final int checkpointInterval;
+
+    /** The report templates. */
+    private final Generator generator = new Generator();
+
+    /** The test cases written. */
+    private final Set<Integer> writtenTestCases = new HashSet<Integer>();
+
+    /** The test cases rendered since the last checkpoint. */
+    private final List<RenderedTestCase> pending =
+            new ArrayList<RenderedTestCase>();
+
+    /** The successful test cases written. */
+    private int successCount;
+
+    /** The failed test cases written. */
+    private int failedCount;
+
+    /** The positions of the totals in the file, once it is started. */
+    private long[] totalPositions;
+
+    /** The position of the closing tags at the end of the file. */
+    private long endPosition;
+
+    /** The suite of the last section of the file, or null. */
+    private TestSuite openSuite;
+
+    /** The position of the result of the last section of the file. */
+    private long openResultPosition;
+
+    /** Whether a test case of the last section of the file failed. */
+    private boolean openSuiteFailed;
+
+    /**
+     * Instantiates a new writer of the report data in a report folder,
+     * checkpointing every {@link #DEFAULT_CHECKPOINT_INTERVAL} test cases.
+     *
+     * @param reportFolderLocation the report folder location
+     */
+    public IncrementalReportWriter(final String reportFolderLocation) {
+        this(reportFolderLocation, DEFAULT_CHECKPOINT_INTERVAL);
+    }
+
+    /**
+     * Instantiates a new writer of the report data in a report folder.
+     *
+     * @param reportFolderLocation the report folder location
+     * @param interval the test cases between the checkpoints
+     */
+    public IncrementalReportWriter(final String reportFolderLocation,
+            final int interval) {
+        this.dataFile =
+                new File(reportFolderLocation + File.separator
+                        + "report.html.data");
+        this.checkpointInterval = Math.max(1, interval);
+    }
+
+    /**
+     * Renders a finished test case, unless it was written already, and
+     * checkpoints the report when enough test cases were rendered since the
+     * last checkpoint.
+     *
+     * @param execution the test execution
+     * @param suite the test suite of the test case
+     * @param testCase the test case
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public final synchronized void writeTestCase(
+            final TestExecution execution, final TestSuite suite,
+            final TestCase testCase) throws IOException {
+        if (!writtenTestCases.add(testCase.getTestCaseId())) {
+            return;
+        }
+        boolean failed = "Failed".equals(testCase.getResult());
+        if (failed) {
+            failedCount++;
+        } else if ("Success".equals(testCase.getResult())) {
+            successCount++;
+        }
+        pending.add(new RenderedTestCase(suite, failed, "\n\t\t"
+                + generator.render("TestCase", "testCase", testCase)));
+        if (pending.size() >= checkpointInterval) {
+            checkpoint(execution);
+        }
+    }
+
+    /**
+     * Writes the test cases rendered since the last checkpoint to the report
+     * data file, and rewrites its totals.
+     *
+     * @param execution the test execution
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public final synchronized void checkpoint(final TestExecution execution)
+            throws IOException {
+        RandomAccessFile file = new RandomAccessFile(dataFile, "rw");
+        try {
+            if (totalPositions == null) {
+                start(file, execution);
+            }
+            file.seek(endPosition);
+            for (Map.Entry<TestSuite, List<RenderedTestCase>> section
+                    : sections().entrySet()) {
+                if (section.getKey() != openSuite) {
+                    openSection(file, section.getKey());
+                }
+                for (RenderedTestCase testCase : section.getValue()) {
+                    file.write(bytes(testCase.data));
+                    openSuiteFailed |= testCase.failed;
+                }
+            }
+            endPosition = file.getFilePointer();
+            String summary = renderSummary(execution);
+            file.write(bytes((openSuite != null ? "\n\t\t" + SUITE_END : "")
+                    + summary.substring(summary.indexOf(SUITES_START)
+                            + SUITES_START.length())));
+            file.setLength(file.getFilePointer());
+
+            int[] totals = {successCount, failedCount, failedCount };
+            for (int i = 0; i < TOTALS.length; i++) {
+                file.seek(totalPositions[i]);
+                file.write(bytes(fixed(TOTALS[i], String.valueOf(totals[i]),
+                        TOTAL_WIDTH)));
+            }
+            if (openSuite != null) {
+                file.seek(openResultPosition);
+                file.write(bytes(fixed("result", openSuiteFailed ? "Failed"
+                        : "Success", RESULT_WIDTH)));
+            }
+        } finally {
+            file.close();
+        }
+        pending.clear();
+    }
+
+    /**
+     * Writes the report data file with all the test cases rendered, if any
+     * were rendered since the last checkpoint.
+     *
+     * @param execution the test execution
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public final synchronized void finish(final TestExecution execution)
+            throws IOException {
+        if (!pending.isEmpty()) {
+            checkpoint(execution);
+        }
+    }
+
+    /**
+     * Groups the test cases rendered since the last checkpoint by suite, the
+     * suite of the last section of the file first, so that they continue it.
+     *
+     * @return the test cases by suite
+     */
+    private Map<TestSuite, List<RenderedTestCase>> sections() {
+        Map<TestSuite, List<RenderedTestCase>> sections =
+                new LinkedHashMap<TestSuite, List<RenderedTestCase>>();
+        if (openSuite != null) {
+            sections.put(openSuite, new ArrayList<RenderedTestCase>());
+        }
+        for (RenderedTestCase testCase : pending) {
+            List<RenderedTestCase> section = sections.get(testCase.suite);
+            if (section == null) {
+                section = new ArrayList<RenderedTestCase>();
+                sections.put(testCase.suite, section);
+            }
+            section.add(testCase);
+        }
+        return sections;
+    }
+
+    /**
+     * Starts the report data file with the summary, its totals padded so
+     * that they can be rewritten in place.
+     *
+     * @param file the file
+     * @param execution the test execution
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    private void start(final RandomAccessFile file,
+            final TestExecution execution) throws IOException {
+        String summary = renderSummary(execution);
+        String header =
+                summary.substring(0, summary.indexOf(SUITES_START)
+                        + SUITES_START.length());
+        long[] positions = new long[TOTALS.length];
+        for (int i = 0; i < TOTALS.length; i++) {
+            int at = header.indexOf(TOTALS[i] + "=\"");
+            int end = header.indexOf('"', at + TOTALS[i].length() + 2) + 1;
+            header =
+                    header.substring(0, at)
+                            + fixed(TOTALS[i], "0", TOTAL_WIDTH)
+                            + header.substring(end);
+        }
+        for (int i = 0; i < TOTALS.length; i++) {
+            positions[i] =
+                    bytes(header.substring(0,
+                            header.indexOf(TOTALS[i] + "=\""))).length;
+        }
+        file.setLength(0);
+        file.write(bytes(header));
+        endPosition = file.getFilePointer();
+        totalPositions = positions;
+    }
+
+    /**
+     * Closes the last section of the file, if any, and opens a section of a
+     * suite, its result padded so that it can be rewritten in place.
+     *
+     * @param file the file, at the end of the last section
+     * @param suite the test suite
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    private void openSection(final RandomAccessFile file,
+            final TestSuite suite) throws IOException {
+        if (openSuite != null) {
+            long sectionEnd = file.getFilePointer();
+            file.seek(openResultPosition);
+            file.write(bytes(fixed("result", openSuiteFailed ? "Failed"
+                    : "Success", RESULT_WIDTH)));
+            file.seek(sectionEnd);
+            file.write(bytes("\n\t\t" + SUITE_END));
+        }
+        TestSuite suiteStart =
+                new TestSuite(suite.getTestsuitename(),
+                        suite.getIterationcount(), suite.getMaxchildren(),
+                        suite.getDuration(), suite.getType(), suite.getRid());
+        String start = generator.render("TestSuite", "testSuite", suiteStart);
+        start = "\n\t\t" + start.substring(0, start.lastIndexOf(SUITE_END));
+        // the name comes first, on a line of its own
+        int at =
+                start.indexOf("result=\"",
+                        start.indexOf('\n', start.indexOf("foldername=")));
+        int end = start.indexOf('"', at + "result=\"".length()) + 1;
+        start =
+                start.substring(0, at)
+                        + fixed("result", "Success", RESULT_WIDTH)
+                        + start.substring(end);
+        openResultPosition =
+                file.getFilePointer() + bytes(start.substring(0, at)).length;
+        file.write(bytes(start));
+        openSuite = suite;
+        openSuiteFailed = false;
+    }
+
+    /**
+     * Renders the summary of the test execution, without its suites.
+     *
+     * @param execution the test execution
+     * @return the rendered summary
+     */
+    private String renderSummary(final TestExecution execution) {
+        TestExecution summary =
+                new TestExecution(execution.getUser(), execution.getHost(),
+                        execution.getOsversion(), execution.getLanguage(),
+                        execution.getScreenresolution(),
+                        execution.getTimestamp(), execution.getDuration());
+        return "\n<report>\t\n\t"
+                + generator.render("TestExecution", "testExecution", summary)
+                + "\n</report>\n";
+    }
+
+    /**
+     * Formats an attribute padded with spaces after it to a fixed length.
+     *
+     * @param name the attribute name
+     * @param value the value
+     * @param width the characters kept for the value
+     * @return the attribute and its padding
+     */
+    private static String fixed(final String name, final String value,
+            final int width) {
+        StringBuilder attribute =
+                new StringBuilder(name).append("=\"").append(value)
+                        .append('"');
+        for (int i = value.length(); i < width; i++) {
+            attribute.append(' ');
+        }
+        return attribute.toString();
+    }
+
+    /**
+     * Encodes report data.
+     *
+     * @param data the data
+     * @return the bytes
+     */
+    private static byte[] bytes(final String data) {
+        return data.getBytes(UTF8);
+    }
+
+    /**
+     * A test case rendered and not yet written.
+     */
+    private static final class RenderedTestCase {
+
+        /** The test suite. */
+        private final TestSuite suite;
+
+        /** Whether the test case failed. */
+        private final boolean failed;
+
+        /** The rendered test case. */
+        private final String data;
+
+        /**
+         * Instantiates a new rendered test case.
+         *
+         * @param testSuite the test suite
+         * @param testFailed whether the test case failed
+         * @param rendered the rendered test case
+         */
+        private RenderedTestCase(final TestSuite testSuite,
+                final boolean testFailed, final String rendered) {
+            this.suite = testSuite;
+            this.failed = testFailed;
+            this.data = rendered;
+        }
+    }
+}
@@ -13,28 +13,41 @@
 package com.virtusa.isq.vtaf.report.reporter;
 
 import java.awt.Dimension;
+import java.awt.GraphicsEnvironment;
 import java.awt.Toolkit;
 import java.net.InetAddress;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.LinkedHashSet;
+import java.util.Map;
 import java.util.Set;
 
+import com.thoughtworks.selenium.ExecutionContext;
 import com.virtusa.isq.vtaf.report.model.TestCase;
 import com.virtusa.isq.vtaf.report.model.TestExecution;
 import com.virtusa.isq.vtaf.report.model.TestStep;
 import com.virtusa.isq.vtaf.report.model.TestSuite;
 
 /**
- * The Class ReportBuilder.
+ * The Class ReportBuilder.<br>
+ * The test case being reported is kept in the {@link ExecutionContext} of
+ * the test, so that test methods running in parallel report their steps to
+ * their own test case, and the threads the test runs on or starts report to
+ * it too.
  */
 public class ReportBuilder {
 
-    /** The test case. */
-    private TestCase testCase = null;
-    
-    /** The test suite. */
+    /** The suite of each test case. */
+    private final Map<TestCase, TestSuite> testCaseSuites =
+            new HashMap<TestCase, TestSuite>();
+
+    /** The last added test suite. */
     private TestSuite testSuite = null;
+
+    /** The test suites by name. */
+    private final Map<String, TestSuite> testSuites =
+            new HashMap<String, TestSuite>();
     
     /** The test execution. */
     private TestExecution testExecution = null;
@@ -80,12 +93,40 @@ public class ReportBuilder {
      * @param modulename the modulename
      * @param execDuration the exec duration
      */
-    public final void addNewTestCase(final String modulename, final String execDuration) {
+    public final synchronized void addNewTestCase(final String modulename, final String execDuration) {
+        addNewTestCase(testSuite, modulename, execDuration);
+    }
+
+    /**
+     * Adds the new test case to the test suite of the given name.
+     *
+     * @param testSuiteName the test suite name
+     * @param modulename the modulename
+     * @param execDuration the exec duration
+     */
+    public final synchronized void addNewTestCase(final String testSuiteName,
+            final String modulename, final String execDuration) {
+        TestSuite suite = testSuites.get(testSuiteName);
+        addNewTestCase(suite != null ? suite : testSuite, modulename,
+                execDuration);
+    }
+
+    /**
+     * Adds the new test case to the given test suite.
+     *
+     * @param suite the test suite
+     * @param modulename the modulename
+     * @param execDuration the exec duration
+     */
+    private void addNewTestCase(final TestSuite suite,
+            final String modulename, final String execDuration) {
 
         String rId = getRid();
-        testCase =
+        TestCase newTestCase =
                 new TestCase(modulename, execDuration, rId, getUniqueTestCaseId());
-        testSuite.getTestCases().add(testCase);
+        suite.getTestCases().add(newTestCase);
+        testCaseSuites.put(newTestCase, suite);
+        ExecutionContext.current().setReportTestCase(newTestCase);
     }
 
     /**
@@ -94,7 +135,7 @@ public class ReportBuilder {
      * @param testSuiteName the test suite name
      * @param duration the duration
      */
-    public final void addNewTestSuite(final String testSuiteName,
+    public final synchronized void addNewTestSuite(final String testSuiteName,
             final String duration) {
         String iterationcount = "1";
         String maxchildren = "0";
@@ -106,13 +147,14 @@ public class ReportBuilder {
                         duration, type, rId);
 
         testExecution.getTestSuites().add(testSuite);
+        testSuites.put(testSuiteName, testSuite);
 
     }
 
     /**
      * Adds the new test execution.
      */
-    public final void addNewTestExecution() {
+    public final synchronized void addNewTestExecution() {
 
         String host = "UNKNOWN";
         String user = "UNKNOWN";
@@ -126,8 +168,11 @@ public class ReportBuilder {
             user = System.getProperty("user.name");
             host = InetAddress.getLoopbackAddress().getHostName();
             osversion = System.getProperty("os.version");
-            Dimension screenSize = Toolkit.getDefaultToolkit().getScreenSize();
-            screenresolution = screenSize.width + "X" + screenSize.height;
+            if (!GraphicsEnvironment.isHeadless()) {
+                Dimension screenSize =
+                        Toolkit.getDefaultToolkit().getScreenSize();
+                screenresolution = screenSize.width + "X" + screenSize.height;
+            }
 
             Date date = new Date();
             SimpleDateFormat sdf = new SimpleDateFormat("MM/dd/yyyy h:mm:ss a");
@@ -153,18 +198,14 @@ public class ReportBuilder {
      * @param message the message
      * @param loglvl the loglvl
      */
-    public final void addNewTestStep(final boolean isPassed, final String category,
+    public final synchronized void addNewTestStep(final boolean isPassed, final String category,
             final String message, final String loglvl) {
 
-        Date date = new Date();
-        SimpleDateFormat sdf = new SimpleDateFormat("h:mm:ss");
-        String time = sdf.format(date);
-
-        
         TestStep testStep =
-                new TestStep(isPassed, time, category, message, loglvl);
+                new TestStep(isPassed, System.currentTimeMillis(), category,
+                        message, loglvl);
 
-        testCase.getTestSteps().add(testStep);
+        getCurrentTestCase().getTestSteps().add(testStep);
 
     }
 
@@ -179,7 +220,7 @@ public class ReportBuilder {
      * @param stacktrace the stacktrace
      * @param loglvl the loglvl
      */
-    public final void addNewTestStep(final boolean isPassed, final String category,
+    public final synchronized void addNewTestStep(final boolean isPassed, final String category,
             final String errimg, final String errthumb, final String message,
             final String stacktrace, final String loglvl) {
 
@@ -187,18 +228,19 @@ public class ReportBuilder {
                 new TestStep(isPassed, category, errimg, errthumb,
                         message, stacktrace, loglvl);
 
-        testCase.getTestSteps().add(testStep);
+        TestCase currentTestCase = getCurrentTestCase();
+        currentTestCase.getTestSteps().add(testStep);
 
         if (!isPassed) {
-            testCase.setResult("Failed");
-            testSuite.setResult("Failed");
+            currentTestCase.setResult("Failed");
+            testCaseSuites.get(currentTestCase).setResult("Failed");
         }
     }
 
     /**
      * Sets the execution summary.
      */
-    public final void setExecutionSummary() {
+    public final synchronized void setExecutionSummary() {
 
         for (TestSuite ts : testExecution.getTestSuites()) {
             for (TestCase tc : ts.getTestCases()) {
@@ -228,12 +270,34 @@ public class ReportBuilder {
         return testExecution;
     }
 
+    /**
+     * Gets the test case the current test reports to.
+     *
+     * @return the test case, or null if none was added by this builder
+     */
+    public final synchronized TestCase getCurrentTestCase() {
+        TestCase currentTestCase =
+                ExecutionContext.current().getReportTestCase();
+        return testCaseSuites.containsKey(currentTestCase) ? currentTestCase
+                : null;
+    }
+
+    /**
+     * Gets the test suite of a test case.
+     *
+     * @param aTestCase the test case
+     * @return the test suite
+     */
+    public final synchronized TestSuite getTestSuite(final TestCase aTestCase) {
+        return testCaseSuites.get(aTestCase);
+    }
+
     /**
      * Gets the rid.
      *
      * @return the rid
      */
-    public final String getRid() {
+    public final synchronized String getRid() {
         rid++;
         return String.valueOf(rid);
     }
@@ -243,7 +307,7 @@ public class ReportBuilder {
      *
      * @return the unique test case id
      */
-    public final int getUniqueTestCaseId() {
+    public final synchronized int getUniqueTestCaseId() {
         return uniqueTestCaseId++;
     }
 
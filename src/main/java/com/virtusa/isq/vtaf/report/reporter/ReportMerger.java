@@ -0,0 +1,261 @@
+/*
+ * Copyright 2004 ThoughtWorks, Inc. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law
+ * or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+
+package com.virtusa.isq.vtaf.report.reporter;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Merges the execution reports of test runs made in parallel, e.g. the shards
+ * of a suite run on several grid nodes, into one execution report.<br>
+ * The test suites of all the reports are listed in the merged report; a suite
+ * run in several reports is listed once with all its test cases. The totals
+ * are counted again from the merged test cases, and the screenshots are
+ * copied along.
+ */
+public class ReportMerger {
+
+    /** The report data file. */
+    private static final String DATA_FILE = "report.html.data";
+
+    /** The end of the element enclosing the test suites. */
+    private static final String SUITES_START = "rid=\"a106eb7a56abd88\">";
+
+    /** The end of the report, after the test suites. */
+    private static final Pattern SUITES_END = Pattern.compile(
+            "</activity>\\s*</activity>\\s*</report>\\s*$");
+
+    /** The result of a test case. */
+    private static final Pattern TEST_CASE_RESULT = Pattern.compile(
+            "testcasename=\"[^\"]*\"[^>]*?result=\"([^\"]*)\"");
+
+    /** The report id of an element. */
+    private static final Pattern RID = Pattern.compile("rid=\"\\d+\"");
+
+    /** The folder name of a test suite. */
+    private static final Pattern SUITE_NAME = Pattern.compile(
+            "^<activity\\s+foldername=\"([^\"]*)\"");
+
+    /** The start of a test suite, up to its first test case. */
+    private static final Pattern SUITE_BODY = Pattern.compile(
+            "^<activity[^>]*>\\s*(<params/>)?");
+
+    /**
+     * Merges reports into a new report folder.
+     *
+     * @param reportFolders the folders of the reports, in order
+     * @param targetFolder the folder of the merged report
+     * @param blockedCount the test cases which could not run
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public final void merge(final List<File> reportFolders,
+            final File targetFolder, final int blockedCount)
+            throws IOException {
+
+        if (!targetFolder.exists() && !targetFolder.mkdirs()) {
+            throw new IOException("Cannot create new folder in location "
+                    + targetFolder.getAbsolutePath());
+        }
+        FileUtils.copyDirectory(new File("src" + File.separator + "main"
+                + File.separator + "resources" + File.separator
+                + "ReportTemplate"), targetFolder);
+
+        Map<String, StringBuilder> suites =
+                new LinkedHashMap<String, StringBuilder>();
+        for (File folder : reportFolders) {
+            File dataFile = new File(folder, DATA_FILE);
+            if (!dataFile.isFile()) {
+                continue;
+            }
+            for (String suite : suiteBlocks(FileUtils.readFileToString(
+                    dataFile, "UTF-8"))) {
+                addSuite(suites, suite);
+            }
+            File images = new File(folder, "images");
+            if (images.isDirectory()) {
+                copyImages(images, new File(targetFolder, "images"));
+            }
+        }
+
+        ReportBuilder builder =
+                new ReportBuilder(targetFolder.getAbsolutePath());
+        builder.addNewTestExecution();
+        new Generator().generateReport(builder);
+        File mergedFile = new File(targetFolder, DATA_FILE);
+        String shell = FileUtils.readFileToString(mergedFile, "UTF-8");
+
+        StringBuilder body = new StringBuilder();
+        for (StringBuilder suite : suites.values()) {
+            body.append("\n\t\t").append(suite);
+        }
+        int insertAt = shell.indexOf(SUITES_START) + SUITES_START.length();
+        String merged =
+                setTotals(shell.substring(0, insertAt), body, blockedCount)
+                        + renumber(body) + shell.substring(insertAt);
+        FileUtils.writeStringToFile(mergedFile, merged, "UTF-8");
+    }
+
+    /**
+     * Numbers the elements of the merged suites again, as each report
+     * numbers its own from one.
+     *
+     * @param suites the merged suites
+     * @return the suites
+     */
+    private String renumber(final CharSequence suites) {
+        StringBuffer renumbered = new StringBuffer();
+        Matcher rid = RID.matcher(suites);
+        int next = 0;
+        while (rid.find()) {
+            next++;
+            rid.appendReplacement(renumbered, "rid=\"" + next + "\"");
+        }
+        rid.appendTail(renumbered);
+        return renumbered.toString();
+    }
+
+    /**
+     * Adds a test suite, appending its test cases to the suite of the same
+     * name if any.
+     *
+     * @param suites the merged suites by name
+     * @param suite the suite
+     */
+    private void addSuite(final Map<String, StringBuilder> suites,
+            final String suite) {
+        Matcher name = SUITE_NAME.matcher(suite);
+        String suiteName = name.find() ? name.group(1) : suite;
+        StringBuilder merged = suites.get(suiteName);
+        if (merged == null) {
+            suites.put(suiteName, new StringBuilder(suite));
+            return;
+        }
+        Matcher header = SUITE_BODY.matcher(suite);
+        if (!header.find()) {
+            return;
+        }
+        String testCases =
+                suite.substring(header.end(), suite.lastIndexOf("</activity>"));
+        merged.insert(merged.lastIndexOf("</activity>"), testCases);
+        if (header.group().contains("result=\"Failed\"")) {
+            int start = merged.indexOf("result=\"");
+            int end = merged.indexOf("\"", start + "result=\"".length());
+            merged.replace(start, end + 1, "result=\"Failed\"");
+        }
+    }
+
+    /**
+     * Splits the test suites of a report.
+     *
+     * @param report the report data
+     * @return the suite elements
+     */
+    private List<String> suiteBlocks(final String report) {
+        List<String> blocks = new ArrayList<String>();
+        int start = report.indexOf(SUITES_START);
+        Matcher end = SUITES_END.matcher(report);
+        if (start < 0 || !end.find()) {
+            return blocks;
+        }
+        String suites =
+                report.substring(start + SUITES_START.length(), end.start());
+        int depth = 0;
+        int blockStart = -1;
+        int pos = 0;
+        while (true) {
+            int open = suites.indexOf("<activity", pos);
+            int close = suites.indexOf("</activity>", pos);
+            if (close < 0) {
+                break;
+            }
+            if (open >= 0 && open < close) {
+                if (depth == 0) {
+                    blockStart = open;
+                }
+                depth++;
+                pos = open + "<activity".length();
+            } else {
+                depth--;
+                pos = close + "</activity>".length();
+                if (depth == 0 && blockStart >= 0) {
+                    blocks.add(suites.substring(blockStart, pos));
+                    blockStart = -1;
+                }
+            }
+        }
+        return blocks;
+    }
+
+    /**
+     * Sets the result and the totals of the merged report from its test
+     * cases.
+     *
+     * @param report the report data before the suites
+     * @param suites the merged suites
+     * @param blockedCount the test cases which could not run
+     * @return the report data
+     */
+    private String setTotals(final String report, final CharSequence suites,
+            final int blockedCount) {
+        int failed = 0;
+        int success = 0;
+        Matcher testCase = TEST_CASE_RESULT.matcher(suites);
+        while (testCase.find()) {
+            if ("Failed".equals(testCase.group(1))) {
+                failed++;
+            } else if ("Success".equals(testCase.group(1))) {
+                success++;
+            }
+        }
+        String result = failed > 0 ? "Failed" : "Success";
+        return report
+                .replace("result=\"Success\"", "result=\"" + result + "\"")
+                .replaceFirst("totalerrorcount=\"\\d+\"",
+                        "totalerrorcount=\"" + failed + "\"")
+                .replaceFirst("totalsuccesscount=\"\\d+\"",
+                        "totalsuccesscount=\"" + success + "\"")
+                .replaceFirst("totalfailedcount=\"\\d+\"",
+                        "totalfailedcount=\"" + failed + "\"")
+                .replaceFirst("totalblockedcount=\"\\d+\"",
+                        "totalblockedcount=\"" + blockedCount + "\"");
+    }
+
+    /**
+     * Copies the screenshots of a report, keeping the ones already copied.
+     *
+     * @param source the screenshot folder of the report
+     * @param target the screenshot folder of the merged report
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    private void copyImages(final File source, final File target)
+            throws IOException {
+        File[] images = source.listFiles();
+        if (images == null) {
+            return;
+        }
+        for (File image : images) {
+            File copy = new File(target, image.getName());
+            if (image.isFile() && !copy.exists()) {
+                FileUtils.copyFile(image, copy);
+            }
+        }
+    }
+}
@@ -13,35 +13,94 @@
 package com.virtusa.isq.vtaf.report.reporter;
 
 import java.awt.AWTException;
+import java.awt.GraphicsEnvironment;
 import java.awt.Rectangle;
 import java.awt.Robot;
 import java.awt.Toolkit;
-import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
-
-import javax.imageio.ImageIO;
+import java.util.List;
 
 import org.apache.commons.io.FileUtils;
-import org.imgscalr.Scalr;
-import org.imgscalr.Scalr.Method;
+import org.openqa.selenium.OutputType;
+import org.openqa.selenium.TakesScreenshot;
+import org.openqa.selenium.WebDriver;
+
+import com.virtusa.isq.vtaf.report.model.StepStore;
+import com.virtusa.isq.vtaf.report.model.TestCase;
+import com.virtusa.isq.vtaf.report.model.TestStep;
+import com.virtusa.isq.vtaf.utils.PropertyHandler;
 
 /**
  * The Class Reporter.
  */
 public class Reporter {
 
+    /**
+     * The system property naming the report folder, set when the report is
+     * merged with others afterwards.
+     */
+    public static final String REPORT_DIR_PROPERTY = "vtaf.report.dir";
+
+    /** The default screenshot writer threads. */
+    private static final int DEFAULT_SCREENSHOT_THREADS = 2;
+
+    /** The default screenshots waiting to be written. */
+    private static final int DEFAULT_SCREENSHOT_QUEUE = 16;
+
     /** The builder. */
     private ReportBuilder builder;
 
+    /**
+     * The writer adding each finished test case to the report data, or null
+     * to render the whole report each time. Set by the <i>REPORT_MODE</i>
+     * runtime property, <i>incremental</i> (default) or <i>full</i>, and
+     * written out every <i>REPORT_CHECKPOINT</i> test cases.
+     */
+    private IncrementalReportWriter writer;
+
+    /**
+     * The writer of the screenshots. Set by the
+     * <i>REPORT_SCREENSHOT_THREADS</i> and <i>REPORT_SCREENSHOT_QUEUE</i>
+     * runtime properties, and encoding them by the ones read by
+     * {@link ScreenshotEncoder#fromProperties()}. Near duplicates are only
+     * skipped when <i>REPORT_SCREENSHOT_NEAR_BITS</i> is 0 or more (default
+     * -1, never).
+     */
+    private final ScreenshotWriter screenshotWriter;
+
     /**
      * Instantiates a new reporter.
      */
     public Reporter() {
 
         builder = new ReportBuilder(initReportDirectory());
+        PropertyHandler propHandler = new PropertyHandler("runtime.properties");
+        screenshotWriter =
+                new ScreenshotWriter(propHandler.getIntRuntimeProperty(
+                        "REPORT_SCREENSHOT_THREADS",
+                        DEFAULT_SCREENSHOT_THREADS),
+                        propHandler.getIntRuntimeProperty(
+                                "REPORT_SCREENSHOT_QUEUE",
+                                DEFAULT_SCREENSHOT_QUEUE),
+                        propHandler.getIntRuntimeProperty(
+                                "REPORT_SCREENSHOT_NEAR_BITS", -1),
+                        ScreenshotEncoder.fromProperties());
+        StepStore.setSpillThreshold(propHandler.getIntRuntimeProperty(
+                "REPORT_STEP_SPILL_THRESHOLD",
+                StepStore.DEFAULT_SPILL_THRESHOLD));
+        if (!"full".equalsIgnoreCase(propHandler.getRuntimeProperty(
+                "REPORT_MODE", "incremental"))) {
+            writer =
+                    new IncrementalReportWriter(
+                            builder.getReportFolderLocation(),
+                            propHandler.getIntRuntimeProperty(
+                                    "REPORT_CHECKPOINT",
+                                    IncrementalReportWriter
+                                            .DEFAULT_CHECKPOINT_INTERVAL));
+        }
     }
 
     /**
@@ -55,9 +114,12 @@ public class Reporter {
         SimpleDateFormat sdf = new SimpleDateFormat("yyyy_MM_dd_HH_mm_ssa");
         String timestamp = sdf.format(date);
 
+        String reportDir = System.getProperty(REPORT_DIR_PROPERTY);
         File reportFolder =
-                new File("target" + File.separator + "Reports" + File.separator
-                        + "ExecutionReport" + timestamp);
+                reportDir != null && !reportDir.isEmpty() ? new File(reportDir)
+                        : new File("target" + File.separator + "Reports"
+                                + File.separator + "ExecutionReport"
+                                + timestamp);
 
         try {
             if (!reportFolder.exists() && !reportFolder.mkdirs()) {
@@ -119,6 +181,17 @@ public class Reporter {
         builder.addNewTestCase(testCaseName, "0ms");
     }
 
+    /**
+     * Adds the new test case to the given test suite.
+     *
+     * @param testSuiteName the test suite name
+     * @param testCaseName the test case name
+     */
+    public final void addNewTestCase(final String testSuiteName,
+            final String testCaseName) {
+        builder.addNewTestCase(testSuiteName, testCaseName, "0ms");
+    }
+
     /**
      * Report step results.
      *
@@ -131,98 +204,157 @@ public class Reporter {
     public final void reportStepResults(final boolean isPassed,
             final String category, final String message, final String loglvl,
             final String stacktrace) {
+        reportStepResults(isPassed, category, message, loglvl, stacktrace,
+                null);
+    }
+
+    /**
+     * Report step results, taking the screenshot of a failed step from the
+     * browser when it can.
+     *
+     * @param isPassed the is passed
+     * @param category the category
+     * @param message the message
+     * @param loglvl the loglvl
+     * @param stacktrace the stacktrace
+     * @param driver the driver of the step, or null to capture the screen
+     */
+    public final void reportStepResults(final boolean isPassed,
+            final String category, final String message, final String loglvl,
+            final String stacktrace, final WebDriver driver) {
 
         if (isPassed) {
             builder.addNewTestStep(isPassed, category, message, loglvl);
         } else {
 
             String screenShot =
-                    saveScreenShot(builder.getReportFolderLocation());
-            String thumbScreenShot = saveScreenshotThumb(screenShot);
-            builder.addNewTestStep(isPassed, category, "images"
-                    + File.separator + screenShot, thumbScreenShot, message,
-                    stacktrace, "Error");
+                    saveScreenShot(builder.getReportFolderLocation(), driver);
+            String errImg = null;
+            String thumbScreenShot = null;
+            if (screenShot != null) {
+                errImg = "images" + File.separator + screenShot;
+                thumbScreenShot = errImg + ScreenshotWriter.THUMB_SUFFIX;
+            }
+            builder.addNewTestStep(isPassed, category, errImg,
+                    thumbScreenShot, message, stacktrace, "Error");
         }
 
     }
 
     /**
-     * Save screen shot.
+     * Captures a screenshot, and queues it and its thumbnail to be written.
+     * The page is captured by the driver; the screen is captured instead only
+     * when the driver cannot, and a display is available.
      *
      * @param reportFolderLocation the report folder location
-     * @return the string
+     * @param driver the driver, or null to capture the screen
+     * @return the screenshot file name, or null if none was captured
      */
-    private String saveScreenShot(final String reportFolderLocation) {
-
-        Date date = new Date();
-        SimpleDateFormat sdf = new SimpleDateFormat("yyyyMMddHHmmssSS");
-        String timestamp = sdf.format(date);
-        Rectangle screenRect =
-                new Rectangle(Toolkit.getDefaultToolkit().getScreenSize());
-        BufferedImage capture;
-        String screenShotFile = timestamp + ".png";
-        String screenShotImgFolder =
-                reportFolderLocation + File.separator + "images";
-        try {
-            capture = new Robot().createScreenCapture(screenRect);
-            File screenShotImgFolderFile = new File(screenShotImgFolder);
-
-            if (!screenShotImgFolderFile.exists() && !screenShotImgFolderFile.mkdirs()) {
-                
-                throw new RuntimeException("Cannot create new folder in location " 
-                            + screenShotImgFolderFile.getAbsolutePath());                
+    private String saveScreenShot(final String reportFolderLocation,
+            final WebDriver driver) {
+
+        File screenShotImgFolder =
+                new File(reportFolderLocation + File.separator + "images");
+        if (driver instanceof TakesScreenshot) {
+            try {
+                return screenshotWriter.store(screenShotImgFolder,
+                        ((TakesScreenshot) driver)
+                                .getScreenshotAs(OutputType.BYTES));
+            } catch (Exception e) {
+                e.printStackTrace();
             }
-            File screenShotImg =
-                    new File(screenShotImgFolder + File.separator
-                            + screenShotFile);
-            ImageIO.write(capture, "png", screenShotImg);
-        } catch (IOException e) {
-            e.printStackTrace();
+        }
+        if (GraphicsEnvironment.isHeadless()) {
+            return null;
+        }
+        try {
+            Rectangle screenRect =
+                    new Rectangle(Toolkit.getDefaultToolkit().getScreenSize());
+            return screenshotWriter.store(screenShotImgFolder,
+                    new Robot().createScreenCapture(screenRect));
         } catch (AWTException e1) {
             e1.printStackTrace();
         } catch (Exception e2) {
             e2.printStackTrace();
         }
-        return screenShotFile;
+        return null;
     }
 
     /**
-     * Save screenshot thumb.
+     * Points the steps of a test case to the screenshots written for their
+     * provisional names, and drops the screenshots which could not be
+     * written.
      *
-     * @param screenShotFile the screen shot file
-     * @return the string
+     * @param testCase the test case
      */
-    private String saveScreenshotThumb(final String screenShotFile) {
-        final int thumbWidth = 150;
-        final int thumbHeight = 100;
-        String screenShotThumb =
-                "images" + File.separator + screenShotFile + "_Thumb.png";
-        try {
-            String screenShotOriginalFile =
-                    builder.getReportFolderLocation() + File.separator
-                            + "images" + File.separator + screenShotFile;
-            BufferedImage img = ImageIO.read(new File(screenShotOriginalFile));
-            BufferedImage thumb =
-                    Scalr.resize(img, Method.SPEED, thumbWidth, thumbHeight,
-                            Scalr.OP_ANTIALIAS, Scalr.OP_BRIGHTER);
-
-            ImageIO.write(thumb, "png", new File(screenShotOriginalFile
-                    + "_Thumb.png"));
-
-        } catch (IOException e) {
-            e.printStackTrace();
+    private void resolveScreenShots(final TestCase testCase) {
+        List<TestStep> steps = testCase.getTestSteps();
+        for (int i = 0; i < steps.size(); i++) {
+            TestStep step = steps.get(i);
+            if (step.isPassed() || step.getErrimg() == null) {
+                continue;
+            }
+            String screenShot =
+                    step.getErrimg().substring(
+                            step.getErrimg().lastIndexOf(File.separator) + 1);
+            String written = screenshotWriter.resolve(screenShot);
+            if (written == null) {
+                step.setScreenshot(null, null);
+                steps.set(i, step);
+            } else if (!written.equals(screenShot)) {
+                step.setScreenshot("images" + File.separator + written,
+                        "images" + File.separator + written
+                                + ScreenshotWriter.THUMB_SUFFIX);
+                steps.set(i, step);
+            }
         }
-        return screenShotThumb;
     }
 
     /**
-     * End test reporting.
+     * End test reporting, once the screenshots taken so far are written.
+     * Writes the test case of the current thread to the
+     * report when reporting incrementally, otherwise renders the whole report.
      */
     public final void endTestReporting() {
 
-        builder.setExecutionSummary();
-        Generator generator = new Generator();
-        generator.generateReport(builder);
+        screenshotWriter.drain();
+        synchronized (builder) {
+            TestCase testCase = builder.getCurrentTestCase();
+            if (testCase != null) {
+                resolveScreenShots(testCase);
+            }
+            if (writer != null) {
+                if (testCase != null) {
+                    try {
+                        writer.writeTestCase(builder.getTestExecution(),
+                                builder.getTestSuite(testCase), testCase);
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                }
+                return;
+            }
+            builder.setExecutionSummary();
+            Generator generator = new Generator();
+            generator.generateReport(builder);
+        }
+    }
+
+    /**
+     * Finishes the reporting of a suite run: writes out the test cases not
+     * written yet when reporting incrementally.
+     */
+    public final void finishReporting() {
+        if (writer == null) {
+            return;
+        }
+        synchronized (builder) {
+            try {
+                writer.finish(builder.getTestExecution());
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
     }
 
 }
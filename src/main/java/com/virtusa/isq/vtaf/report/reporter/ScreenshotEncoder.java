@@ -0,0 +1,199 @@
+/*
+ * Copyright 2004 ThoughtWorks, Inc. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law
+ * or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+
+package com.virtusa.isq.vtaf.report.reporter;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+
+import org.apache.log4j.Logger;
+import org.imgscalr.Scalr;
+import org.imgscalr.Scalr.Method;
+
+import com.virtusa.isq.vtaf.utils.PropertyHandler;
+
+/**
+ * Encodes the screenshots of the failed steps. Configured through the runtime
+ * properties:
+ * <ul>
+ * <li><i>REPORT_SCREENSHOT_FORMAT</i>: <i>png</i> (default) or <i>jpeg</i></li>
+ * <li><i>REPORT_SCREENSHOT_PNG_LEVEL</i>: the PNG compression level, from 0
+ * (none) to 9 (smallest), or -1 for the default of the encoder. The level
+ * is ignored when the PNG encoder of the JRE does not support levels, as on
+ * Java 7, and the captured PNG data is kept.</li>
+ * <li><i>REPORT_SCREENSHOT_JPEG_QUALITY</i>: the JPEG quality, from 0 to 100
+ * </li>
+ * <li><i>REPORT_SCREENSHOT_MAX_DIMENSION</i>: the most pixels of the longer
+ * side; larger screenshots are scaled down (default 0, never)</li>
+ * </ul>
+ */
+public class ScreenshotEncoder {
+
+    /** The logger. */
+    private static final Logger LOG = Logger.getLogger(ScreenshotEncoder.class);
+
+    /** The default JPEG quality. */
+    private static final int DEFAULT_JPEG_QUALITY = 80;
+
+    /** The highest PNG compression level. */
+    private static final float MAX_PNG_LEVEL = 9f;
+
+    /** The highest JPEG quality. */
+    private static final float MAX_JPEG_QUALITY = 100f;
+
+    /** True, to encode JPEG rather than PNG. */
+    private final boolean jpeg;
+
+    /** The PNG compression level, or -1 for the default. */
+    private final int pngLevel;
+
+    /** The JPEG quality. */
+    private final int jpegQuality;
+
+    /** The most pixels of the longer side, or 0 for no limit. */
+    private final int maxDimension;
+
+    /**
+     * Instantiates a new screenshot encoder.
+     *
+     * @param jpegFormat true, to encode JPEG rather than PNG
+     * @param compressionLevel the PNG compression level, or -1 for the
+     *        default
+     * @param quality the JPEG quality
+     * @param maxSide the most pixels of the longer side, or 0 for no limit
+     */
+    public ScreenshotEncoder(final boolean jpegFormat,
+            final int compressionLevel, final int quality, final int maxSide) {
+        this.jpeg = jpegFormat;
+        if (!jpegFormat && compressionLevel >= 0 && !canCompressPng()) {
+            LOG.warn("REPORT_SCREENSHOT_PNG_LEVEL is not supported by the PNG"
+                    + " encoder of this JRE, the captured PNG data is kept");
+            this.pngLevel = -1;
+        } else {
+            this.pngLevel = Math.min((int) MAX_PNG_LEVEL, compressionLevel);
+        }
+        this.jpegQuality =
+                Math.max(0, Math.min((int) MAX_JPEG_QUALITY, quality));
+        this.maxDimension = Math.max(0, maxSide);
+    }
+
+    /**
+     * Creates an encoder configured from the runtime properties.
+     *
+     * @return the encoder
+     */
+    public static ScreenshotEncoder fromProperties() {
+        PropertyHandler propHandler = new PropertyHandler("runtime.properties");
+        String format =
+                propHandler.getRuntimeProperty("REPORT_SCREENSHOT_FORMAT",
+                        "png");
+        return new ScreenshotEncoder("jpeg".equalsIgnoreCase(format)
+                || "jpg".equalsIgnoreCase(format),
+                propHandler.getIntRuntimeProperty(
+                        "REPORT_SCREENSHOT_PNG_LEVEL", -1),
+                propHandler.getIntRuntimeProperty(
+                        "REPORT_SCREENSHOT_JPEG_QUALITY",
+                        DEFAULT_JPEG_QUALITY),
+                propHandler.getIntRuntimeProperty(
+                        "REPORT_SCREENSHOT_MAX_DIMENSION", 0));
+    }
+
+    /**
+     * Checks whether the PNG encoder supports compression levels.
+     *
+     * @return true, if compression levels are supported
+     */
+    private static boolean canCompressPng() {
+        Iterator<ImageWriter> writers =
+                ImageIO.getImageWritersByFormatName("png");
+        if (!writers.hasNext()) {
+            return false;
+        }
+        ImageWriter writer = writers.next();
+        try {
+            return writer.getDefaultWriteParam().canWriteCompressed();
+        } finally {
+            writer.dispose();
+        }
+    }
+
+    /**
+     * Gets the file name extension of the encoded screenshots.
+     *
+     * @return the extension
+     */
+    public final String getExtension() {
+        return jpeg ? ".jpg" : ".png";
+    }
+
+    /**
+     * Checks whether screenshots captured as PNG data are written as they
+     * are, without encoding them again.
+     *
+     * @return true, if PNG data is kept
+     */
+    public final boolean keepsPng() {
+        return !jpeg && pngLevel < 0 && maxDimension == 0;
+    }
+
+    /**
+     * Encodes a screenshot to a file.
+     *
+     * @param image the screenshot
+     * @param file the file
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public final void write(final BufferedImage image, final File file)
+            throws IOException {
+        BufferedImage scaled = image;
+        if (maxDimension > 0
+                && Math.max(image.getWidth(), image.getHeight()) > maxDimension) {
+            scaled = Scalr.resize(image, Method.BALANCED, maxDimension);
+        }
+        if (jpeg && scaled.getType() != BufferedImage.TYPE_INT_RGB) {
+            BufferedImage opaque =
+                    new BufferedImage(scaled.getWidth(), scaled.getHeight(),
+                            BufferedImage.TYPE_INT_RGB);
+            opaque.createGraphics().drawImage(scaled, 0, 0, null);
+            scaled = opaque;
+        }
+
+        Iterator<ImageWriter> writers =
+                ImageIO.getImageWritersByFormatName(jpeg ? "jpeg" : "png");
+        ImageWriter writer = writers.next();
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        if (param.canWriteCompressed() && (jpeg || pngLevel >= 0)) {
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(jpeg ? jpegQuality / MAX_JPEG_QUALITY
+                    : 1f - pngLevel / MAX_PNG_LEVEL);
+        }
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Cannot replace " + file.getAbsolutePath());
+        }
+        ImageOutputStream out = ImageIO.createImageOutputStream(file);
+        try {
+            writer.setOutput(out);
+            writer.write(null, new IIOImage(scaled, null, null), param);
+        } finally {
+            writer.dispose();
+            out.close();
+        }
+    }
+}
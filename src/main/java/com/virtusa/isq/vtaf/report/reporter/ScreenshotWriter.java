@@ -0,0 +1,522 @@
+/*
+ * Copyright 2004 ThoughtWorks, Inc. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law
+ * or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+
+package com.virtusa.isq.vtaf.report.reporter;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.imageio.ImageIO;
+
+import org.apache.commons.io.FileUtils;
+import org.imgscalr.Scalr;
+import org.imgscalr.Scalr.Method;
+
+/**
+ * Writes the screenshots of the failed steps and their thumbnails in the
+ * background, so that the test only waits for the capture.<br>
+ * A stored screenshot gets a provisional name at once; the writer thread then
+ * names it by the SHA-1 hash of its content, so the same screen captured
+ * again is written once, and {@link #resolve(String)} gives the file written.
+ * Optionally, a screenshot which looks like the one captured before it on the
+ * same thread, by the average hash of an 8 by 8 grid, is not written either;
+ * the report refers to the earlier one instead.<br>
+ * The writes are queued to a few threads; when the queue is full, the test
+ * thread writes the screenshot itself, which bounds the screenshots held in
+ * memory. The thumbnail is scaled from the captured image instead of being
+ * read back from the disk. The screenshots are encoded by a
+ * {@link ScreenshotEncoder}; PNG data captured by the browser is written as it
+ * is unless the encoder changes it.
+ */
+public class ScreenshotWriter {
+
+    /** The file name suffix of the thumbnails. */
+    public static final String THUMB_SUFFIX = "_Thumb.png";
+
+    /** The cells per side of the grid of the average hash. */
+    private static final int HASH_GRID = 8;
+
+    /** The bytes of a pixel. */
+    private static final int BYTES_PER_PIXEL = 4;
+
+    /** The width of the thumbnails. */
+    private static final int THUMB_WIDTH = 150;
+
+    /** The height of the thumbnails. */
+    private static final int THUMB_HEIGHT = 100;
+
+    /** The milliseconds an idle writer thread is kept. */
+    private static final long KEEP_ALIVE_MILLIS = 10000L;
+
+    /** The number of the writer threads. */
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+
+    /** The executor. */
+    private final ThreadPoolExecutor executor;
+
+    /** The writes not waited for yet. */
+    private final List<Future<?>> pending = new ArrayList<Future<?>>();
+
+    /** The number of the screenshots stored. */
+    private final AtomicLong captures = new AtomicLong();
+
+    /** The file names of the screenshots stored. */
+    private final Set<String> stored = new HashSet<String>();
+
+    /** The file names of the screenshots which could not be written. */
+    private final Set<String> failed = new HashSet<String>();
+
+    /**
+     * The file names written for the provisional names of the screenshots,
+     * and for the near duplicates not written.
+     */
+    private final Map<String, String> aliases = new HashMap<String, String>();
+
+    /**
+     * The screenshot last written for each thread storing screenshots, by
+     * the id of the thread.
+     */
+    private final Map<Long, Written> previous = new HashMap<Long, Written>();
+
+    /**
+     * The most bits by which the average hash of a screenshot may differ
+     * from the one before for it to be a near duplicate, or -1 to write all
+     * the screenshots.
+     */
+    private final int nearBits;
+
+    /** The encoder of the screenshots. */
+    private final ScreenshotEncoder encoder;
+
+    /**
+     * Instantiates a new screenshot writer.
+     *
+     * @param threads the writer threads
+     * @param queueSize the screenshots which may wait for a writer thread
+     * @param nearDuplicateBits the most bits by which the average hashes of
+     *        near duplicate screenshots differ, or -1 to write all the
+     *        screenshots
+     * @param screenshotEncoder the encoder of the screenshots
+     */
+    public ScreenshotWriter(final int threads, final int queueSize,
+            final int nearDuplicateBits,
+            final ScreenshotEncoder screenshotEncoder) {
+        this.nearBits = nearDuplicateBits;
+        this.encoder = screenshotEncoder;
+        int poolSize = Math.max(1, threads);
+        executor =
+                new ThreadPoolExecutor(poolSize, poolSize, KEEP_ALIVE_MILLIS,
+                        TimeUnit.MILLISECONDS,
+                        new ArrayBlockingQueue<Runnable>(Math.max(1,
+                                queueSize)), new ThreadFactory() {
+
+                            @Override
+                            public Thread newThread(final Runnable task) {
+                                Thread thread =
+                                        new Thread(task,
+                                                "vtaf-screenshot-"
+                                                        + THREAD_COUNT
+                                                                .incrementAndGet());
+                                thread.setDaemon(true);
+                                return thread;
+                            }
+                        }, new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Stores a screenshot captured as an image, and its thumbnail.
+     *
+     * @param folder the screenshot folder
+     * @param image the captured image
+     * @return the provisional screenshot file name
+     */
+    public final String store(final File folder, final BufferedImage image) {
+        final String provisional = provisionalName();
+        final long thread = Thread.currentThread().getId();
+        submit(new Runnable() {
+
+            @Override
+            public void run() {
+                String name = null;
+                try {
+                    name = pixelName(image);
+                    if (!claim(provisional, name)
+                            || isNearDuplicate(thread, name, image)) {
+                        return;
+                    }
+                    createFolder(new File(folder, name));
+                    encoder.write(image, new File(folder, name));
+                    writeThumbnail(new File(folder, name + THUMB_SUFFIX),
+                            image);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    fail(name != null ? name : provisional);
+                }
+            }
+        });
+        return provisional;
+    }
+
+    /**
+     * Stores a screenshot captured as PNG data, and its thumbnail.
+     *
+     * @param folder the screenshot folder
+     * @param png the PNG data
+     * @return the provisional screenshot file name
+     */
+    public final String store(final File folder, final byte[] png) {
+        final String provisional = provisionalName();
+        final long thread = Thread.currentThread().getId();
+        submit(new Runnable() {
+
+            @Override
+            public void run() {
+                String name =
+                        hex(sha1().digest(png)) + encoder.getExtension();
+                try {
+                    if (!claim(provisional, name)) {
+                        return;
+                    }
+                    BufferedImage image =
+                            ImageIO.read(new ByteArrayInputStream(png));
+                    if (image != null
+                            && isNearDuplicate(thread, name, image)) {
+                        return;
+                    }
+                    if (encoder.keepsPng() || image == null) {
+                        FileUtils.writeByteArrayToFile(new File(folder, name),
+                                png);
+                    } else {
+                        createFolder(new File(folder, name));
+                        encoder.write(image, new File(folder, name));
+                    }
+                    if (image != null) {
+                        writeThumbnail(new File(folder, name + THUMB_SUFFIX),
+                                image);
+                    }
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    fail(name);
+                }
+            }
+        });
+        return provisional;
+    }
+
+    /**
+     * Gets the file a stored screenshot was written to: the file named by
+     * its content, or an earlier screenshot when it was a near duplicate of
+     * it. Call after {@link #drain()}.
+     *
+     * @param name the provisional screenshot file name
+     * @return the file name written, or null if it could not be written
+     */
+    public final String resolve(final String name) {
+        synchronized (stored) {
+            String written = name;
+            while (aliases.containsKey(written)) {
+                written = aliases.get(written);
+            }
+            return failed.contains(written) ? null : written;
+        }
+    }
+
+    /**
+     * Gets the file name of a screenshot from its content.
+     *
+     * @param png the PNG data
+     * @return the file name
+     */
+    public static String contentName(final byte[] png) {
+        return hex(sha1().digest(png)) + ".png";
+    }
+
+    /**
+     * Gets a provisional file name for a screenshot, unique within this
+     * writer.
+     *
+     * @return the file name
+     */
+    private String provisionalName() {
+        return "capture-" + captures.incrementAndGet()
+                + encoder.getExtension();
+    }
+
+    /**
+     * Gets the file name of a screenshot captured as an image, by the SHA-1
+     * hash of its pixels.
+     *
+     * @param image the image
+     * @return the file name
+     */
+    private String pixelName(final BufferedImage image) {
+        MessageDigest digest = sha1();
+        int width = image.getWidth();
+        int[] row = new int[width];
+        ByteBuffer bytes = ByteBuffer.allocate(width * BYTES_PER_PIXEL);
+        for (int y = 0; y < image.getHeight(); y++) {
+            image.getRGB(0, y, width, 1, row, 0, width);
+            bytes.clear();
+            bytes.asIntBuffer().put(row);
+            digest.update(bytes.array());
+        }
+        return hex(digest.digest()) + encoder.getExtension();
+    }
+
+    /**
+     * Names a stored screenshot by its content, and claims the file name
+     * unless the same screenshot was stored already.
+     *
+     * @param provisional the provisional file name
+     * @param name the file name
+     * @return true, if the screenshot is new
+     */
+    private boolean claim(final String provisional, final String name) {
+        synchronized (stored) {
+            aliases.put(provisional, name);
+            return stored.add(name);
+        }
+    }
+
+    /**
+     * Records a screenshot which could not be written, so that the report
+     * does not refer to it.
+     *
+     * @param name the file name
+     */
+    private void fail(final String name) {
+        synchronized (stored) {
+            failed.add(name);
+        }
+    }
+
+    /**
+     * Checks whether a screenshot looks like the one written before it for
+     * the same thread, and if so refers to that one instead. Never, unless
+     * near duplicates are enabled.
+     *
+     * @param thread the id of the thread which stored the screenshot
+     * @param name the file name
+     * @param image the screenshot
+     * @return true, if the screenshot need not be written
+     */
+    private boolean isNearDuplicate(final long thread, final String name,
+            final BufferedImage image) {
+        if (nearBits < 0) {
+            return false;
+        }
+        long hash = averageHash(image);
+        synchronized (stored) {
+            Written last = previous.get(thread);
+            if (last != null && last.width == image.getWidth()
+                    && last.height == image.getHeight()
+                    && Long.bitCount(last.hash ^ hash) <= nearBits) {
+                aliases.put(name, last.name);
+                return true;
+            }
+            previous.put(thread, new Written(name, hash, image.getWidth(),
+                    image.getHeight()));
+            return false;
+        }
+    }
+
+    /**
+     * Computes the average hash of an image: one bit per cell of an 8 by 8
+     * grid, set when the cell is brighter than the whole image.
+     *
+     * @param image the image
+     * @return the hash
+     */
+    private static long averageHash(final BufferedImage image) {
+        final int maxSamples = 8;
+        final int redShift = 16;
+        final int greenShift = 8;
+        final int channel = 0xFF;
+        long[] cells = new long[HASH_GRID * HASH_GRID];
+        int cellWidth = Math.max(1, image.getWidth() / HASH_GRID);
+        int cellHeight = Math.max(1, image.getHeight() / HASH_GRID);
+        int stepX = Math.max(1, cellWidth / maxSamples);
+        int stepY = Math.max(1, cellHeight / maxSamples);
+        long total = 0;
+        for (int cell = 0; cell < cells.length; cell++) {
+            int left = (cell % HASH_GRID) * cellWidth;
+            int top = (cell / HASH_GRID) * cellHeight;
+            for (int y = top; y < Math.min(top + cellHeight,
+                    image.getHeight()); y += stepY) {
+                for (int x = left; x < Math.min(left + cellWidth,
+                        image.getWidth()); x += stepX) {
+                    int rgb = image.getRGB(x, y);
+                    cells[cell] +=
+                            ((rgb >> redShift) & channel)
+                                    + ((rgb >> greenShift) & channel)
+                                    + (rgb & channel);
+                }
+            }
+            total += cells[cell];
+        }
+        long mean = total / cells.length;
+        long hash = 0;
+        for (int cell = 0; cell < cells.length; cell++) {
+            if (cells[cell] > mean) {
+                hash |= 1L << cell;
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * Creates a SHA-1 digest.
+     *
+     * @return the digest
+     */
+    private static MessageDigest sha1() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Formats bytes in hexadecimal.
+     *
+     * @param bytes the bytes
+     * @return the hexadecimal digits
+     */
+    private static String hex(final byte[] bytes) {
+        final int byteMask = 0xFF;
+        final int byteRadix = 0x100;
+        final int hexRadix = 16;
+        StringBuilder digits = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            digits.append(Integer.toString((b & byteMask) + byteRadix,
+                    hexRadix).substring(1));
+        }
+        return digits.toString();
+    }
+
+    /**
+     * Waits for the screenshots queued so far to be written.
+     */
+    public final void drain() {
+        List<Future<?>> writes;
+        synchronized (pending) {
+            writes = new ArrayList<Future<?>>(pending);
+            pending.clear();
+        }
+        for (Future<?> write : writes) {
+            try {
+                write.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Queues a write.
+     *
+     * @param write the write
+     */
+    private void submit(final Runnable write) {
+        Future<?> future = executor.submit(write);
+        synchronized (pending) {
+            pending.add(future);
+        }
+    }
+
+    /**
+     * Writes the thumbnail of a screenshot.
+     *
+     * @param thumbnail the thumbnail file
+     * @param image the screenshot
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    private static void writeThumbnail(final File thumbnail,
+            final BufferedImage image) throws IOException {
+        BufferedImage thumb =
+                Scalr.resize(image, Method.SPEED, THUMB_WIDTH, THUMB_HEIGHT,
+                        Scalr.OP_ANTIALIAS, Scalr.OP_BRIGHTER);
+        ImageIO.write(thumb, "png", thumbnail);
+    }
+
+    /**
+     * Creates the folder of a file.
+     *
+     * @param file the file
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    private static void createFolder(final File file) throws IOException {
+        File folder = file.getParentFile();
+        if (!folder.exists() && !folder.mkdirs()) {
+            throw new IOException("Cannot create new folder in location "
+                    + folder.getAbsolutePath());
+        }
+    }
+
+    /**
+     * A screenshot written, as compared with the next one of its thread.
+     */
+    private static final class Written {
+
+        /** The file name. */
+        private final String name;
+
+        /** The average hash. */
+        private final long hash;
+
+        /** The width. */
+        private final int width;
+
+        /** The height. */
+        private final int height;
+
+        /**
+         * Instantiates a new written screenshot.
+         *
+         * @param fileName the file name
+         * @param averageHash the average hash
+         * @param imageWidth the width
+         * @param imageHeight the height
+         */
+        private Written(final String fileName, final long averageHash,
+                final int imageWidth, final int imageHeight) {
+            this.name = fileName;
+            this.hash = averageHash;
+            this.width = imageWidth;
+            this.height = imageHeight;
+        }
+    }
+}
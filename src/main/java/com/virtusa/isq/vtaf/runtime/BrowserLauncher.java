@@ -0,0 +1,457 @@
+/*
+ * Copyright 2004 ThoughtWorks, Inc. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law
+ * or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package com.virtusa.isq.vtaf.runtime;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+import org.openqa.selenium.WebDriver;
+
+import com.virtusa.isq.vtaf.utils.PropertyHandler;
+
+/**
+ * Launches browsers in the background, so that a test takes a browser which
+ * is already running instead of waiting for one to start.<br>
+ * Each time a browser is taken, a replacement is launched while the test
+ * runs, keeping up to the configured number of browsers warm per browser
+ * string. When no warm browser is ready, the test waits for the launch in
+ * progress, or launches one itself if none is.<br>
+ * The launcher also runs other slow preparations off the test thread, such
+ * as building the Firefox profile.<br>
+ * Configured through the runtime properties:
+ * <ul>
+ * <li><i>BROWSER_PREWARM</i>: the browsers kept warm per browser string
+ * (default 0, which disables the launcher)</li>
+ * <li><i>BROWSER_PREWARM_THREADS</i>: the browsers launched at the same time
+ * </li>
+ * </ul>
+ */
+public final class BrowserLauncher {
+
+    /** The default launch threads. */
+    private static final int DEFAULT_THREADS = 1;
+
+    /** The nanoseconds in a millisecond. */
+    private static final long NANOS_PER_MILLI = 1000000L;
+
+    /** The longest wait for the launches in progress on shutdown. */
+    private static final long SHUTDOWN_WAIT_MILLIS = 30000L;
+
+    /** The shared launcher. */
+    private static BrowserLauncher instance;
+
+    /** The log. */
+    private static final Logger LOG = Logger.getLogger(BrowserLauncher.class);
+
+    /** The browsers kept warm per browser string. */
+    private final int warmSize;
+
+    /** The browsers launched at the same time. */
+    private final int threads;
+
+    /** The executor, created on the first use. */
+    private ExecutorService executor;
+
+    /** The launches of the warm browsers per browser string. */
+    private final Map<String, LinkedList<WarmLaunch>> warmBrowsers =
+            new HashMap<String, LinkedList<WarmLaunch>>();
+
+    /** The browsers taken. */
+    private final AtomicLong takeCount = new AtomicLong();
+
+    /** The browsers taken warm. */
+    private final AtomicLong warmHitCount = new AtomicLong();
+
+    /** The launch time hidden from the tests, in nanoseconds. */
+    private final AtomicLong hiddenNanos = new AtomicLong();
+
+    /** The launch time spent on the test threads, in nanoseconds. */
+    private final AtomicLong blockingNanos = new AtomicLong();
+
+    /**
+     * Instantiates a new browser launcher.
+     *
+     * @param warmBrowserCount the browsers kept warm per browser string
+     * @param launchThreads the browsers launched at the same time
+     */
+    public BrowserLauncher(final int warmBrowserCount, final int launchThreads) {
+        this.warmSize = Math.max(0, warmBrowserCount);
+        this.threads = Math.max(1, launchThreads);
+    }
+
+    /**
+     * Gets the shared launcher configured from the runtime properties.
+     *
+     * @return the launcher
+     */
+    public static synchronized BrowserLauncher getInstance() {
+        if (instance == null) {
+            PropertyHandler propHandler =
+                    new PropertyHandler("runtime.properties");
+            instance =
+                    new BrowserLauncher(propHandler.getIntRuntimeProperty(
+                            "BROWSER_PREWARM", 0),
+                            propHandler.getIntRuntimeProperty(
+                                    "BROWSER_PREWARM_THREADS",
+                                    DEFAULT_THREADS));
+            Runtime.getRuntime().addShutdownHook(new Thread() {
+
+                @Override
+                public void run() {
+                    instance.shutdown();
+                }
+            });
+        }
+        return instance;
+    }
+
+    /**
+     * Checks if browsers are kept warm.
+     *
+     * @return true, if enabled
+     */
+    public boolean isEnabled() {
+        return warmSize > 0;
+    }
+
+    /**
+     * Wraps a factory so that the browsers are taken from the warm browsers.
+     * The factory is returned as is when the launcher is disabled.
+     *
+     * @param factory the factory launching the browsers
+     * @return the factory taking warm browsers
+     */
+    public BrowserSessionPool.DriverFactory wrap(
+            final BrowserSessionPool.DriverFactory factory) {
+        if (!isEnabled()) {
+            return factory;
+        }
+        return new BrowserSessionPool.DriverFactory() {
+
+            @Override
+            public WebDriver create(final String browserString) {
+                return take(browserString, factory);
+            }
+        };
+    }
+
+    /**
+     * Starts launching the warm browsers of a browser string ahead of the
+     * first test.
+     *
+     * @param browserString the browser string
+     * @param factory the factory launching the browsers
+     */
+    public void prime(final String browserString,
+            final BrowserSessionPool.DriverFactory factory) {
+        if (isEnabled()) {
+            replenish(browserString, factory);
+        }
+    }
+
+    /**
+     * Takes a warm browser, or launches one if none is ready or launching,
+     * and launches the replacements in the background.
+     *
+     * @param browserString the browser string
+     * @param factory the factory launching the browsers
+     * @return the driver
+     */
+    public WebDriver take(final String browserString,
+            final BrowserSessionPool.DriverFactory factory) {
+        takeCount.incrementAndGet();
+        WebDriver driver = null;
+        WarmLaunch launch = next(browserString);
+        while (driver == null && launch != null) {
+            driver = await(launch);
+            if (driver == null) {
+                launch = next(browserString);
+            }
+        }
+        if (driver == null) {
+            long start = System.nanoTime();
+            driver = factory.create(browserString);
+            blockingNanos.addAndGet(System.nanoTime() - start);
+        }
+        replenish(browserString, factory);
+        return driver;
+    }
+
+    /**
+     * Runs a task off the test thread. The task runs on its own thread, so
+     * that the browser launches can wait for it.
+     *
+     * @param <T> the result type
+     * @param task the task
+     * @return the result of the task
+     */
+    public <T> Future<T> prepare(final Callable<T> task) {
+        FutureTask<T> future = new FutureTask<T>(task);
+        Thread thread = new Thread(future, "browser-launcher-prepare");
+        thread.setDaemon(true);
+        thread.start();
+        return future;
+    }
+
+    /**
+     * Quits the warm browsers and logs the statistics. The launches which
+     * have not started are cancelled; the launches in progress are waited
+     * for, up to a limit, and their browsers quit.
+     */
+    public void shutdown() {
+        List<WarmLaunch> launches = new ArrayList<WarmLaunch>();
+        ExecutorService launchExecutor;
+        synchronized (this) {
+            for (LinkedList<WarmLaunch> warm : warmBrowsers.values()) {
+                launches.addAll(warm);
+            }
+            warmBrowsers.clear();
+            launchExecutor = executor;
+            executor = null;
+        }
+        if (launchExecutor != null) {
+            launchExecutor.shutdown();
+        }
+        List<WarmLaunch> started = new ArrayList<WarmLaunch>();
+        for (WarmLaunch launch : launches) {
+            if (!launch.cancelIfNotStarted()) {
+                started.add(launch);
+            }
+        }
+        long deadline =
+                System.nanoTime() + SHUTDOWN_WAIT_MILLIS * NANOS_PER_MILLI;
+        for (WarmLaunch launch : started) {
+            try {
+                quit(launch.get(Math.max(0, deadline - System.nanoTime()),
+                        TimeUnit.NANOSECONDS).driver);
+            } catch (TimeoutException e) {
+                LOG.info("Warm browser still launching on shutdown,"
+                        + " not quit");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                LOG.debug("Warm browser not quit : " + e.getMessage());
+            }
+        }
+        if (takeCount.get() > 0) {
+            LOG.info(getStatistics());
+        }
+    }
+
+    /**
+     * Gets the warm hit rate and the launch time hidden from the tests.
+     *
+     * @return the statistics
+     */
+    public String getStatistics() {
+        long takes = takeCount.get();
+        long hits = warmHitCount.get();
+        final int percent = 100;
+        return "Browser launcher : taken " + takes + ", warm " + hits + " ("
+                + (takes == 0 ? 0 : hits * percent / takes) + "%), launch time"
+                + " hidden " + hiddenNanos.get() / NANOS_PER_MILLI + " ms,"
+                + " waited " + blockingNanos.get() / NANOS_PER_MILLI + " ms";
+    }
+
+    /**
+     * Gets the oldest launch of a browser string.
+     *
+     * @param browserString the browser string
+     * @return the launch, or null if none
+     */
+    private synchronized WarmLaunch next(final String browserString) {
+        LinkedList<WarmLaunch> warm = warmBrowsers.get(browserString);
+        return warm == null ? null : warm.pollFirst();
+    }
+
+    /**
+     * Waits for a launch and checks that its browser still responds.
+     *
+     * @param launch the launch
+     * @return the driver, or null if the launch failed or the browser died
+     */
+    private WebDriver await(final Future<WarmBrowser> launch) {
+        long start = System.nanoTime();
+        WarmBrowser warm;
+        try {
+            warm = launch.get();
+        } catch (ExecutionException e) {
+            LOG.info("Background browser launch failed : "
+                    + e.getCause().getMessage());
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        long waited = System.nanoTime() - start;
+        try {
+            warm.driver.getWindowHandles();
+        } catch (Exception e) {
+            LOG.info("Discarding unresponsive warm browser");
+            quit(warm.driver);
+            return null;
+        }
+        warmHitCount.incrementAndGet();
+        blockingNanos.addAndGet(waited);
+        hiddenNanos.addAndGet(Math.max(0, warm.launchNanos - waited));
+        return warm.driver;
+    }
+
+    /**
+     * Quits a warm browser, ignoring failures.
+     *
+     * @param driver the driver
+     */
+    private void quit(final WebDriver driver) {
+        try {
+            driver.quit();
+        } catch (Exception e) {
+            LOG.debug("Warm browser not quit : " + e.getMessage());
+        } finally {
+            ProcessReaper.getInstance().release(driver);
+        }
+    }
+
+    /**
+     * Launches browsers in the background until the browser string has the
+     * configured number of warm browsers.
+     *
+     * @param browserString the browser string
+     * @param factory the factory launching the browsers
+     */
+    private synchronized void replenish(final String browserString,
+            final BrowserSessionPool.DriverFactory factory) {
+        LinkedList<WarmLaunch> warm = warmBrowsers.get(browserString);
+        if (warm == null) {
+            warm = new LinkedList<WarmLaunch>();
+            warmBrowsers.put(browserString, warm);
+        }
+        while (warm.size() < warmSize) {
+            WarmLaunch launch = new WarmLaunch(new Callable<WarmBrowser>() {
+
+                @Override
+                public WarmBrowser call() {
+                    long start = System.nanoTime();
+                    WebDriver driver = factory.create(browserString);
+                    return new WarmBrowser(driver, System.nanoTime() - start);
+                }
+            });
+            executor().execute(launch);
+            warm.addLast(launch);
+        }
+    }
+
+    /**
+     * Gets the executor, creating it on the first use.
+     *
+     * @return the executor
+     */
+    private synchronized ExecutorService executor() {
+        if (executor == null) {
+            final AtomicInteger threadCount = new AtomicInteger();
+            executor =
+                    Executors.newFixedThreadPool(threads, new ThreadFactory() {
+
+                        @Override
+                        public Thread newThread(final Runnable runnable) {
+                            Thread thread =
+                                    new Thread(runnable, "browser-launcher-"
+                                            + threadCount.incrementAndGet());
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+        }
+        return executor;
+    }
+
+    /**
+     * The launch of a warm browser, which knows whether it has started so
+     * that only the launches still queued are cancelled.
+     */
+    private static final class WarmLaunch extends FutureTask<WarmBrowser> {
+
+        /** True, once the launch started or was cancelled. */
+        private final AtomicBoolean claimed = new AtomicBoolean();
+
+        /**
+         * Instantiates a new warm launch.
+         *
+         * @param launch the launch
+         */
+        private WarmLaunch(final Callable<WarmBrowser> launch) {
+            super(launch);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void run() {
+            if (claimed.compareAndSet(false, true)) {
+                super.run();
+            }
+        }
+
+        /**
+         * Cancels the launch if it has not started.
+         *
+         * @return true, if the launch was cancelled
+         */
+        private boolean cancelIfNotStarted() {
+            if (claimed.compareAndSet(false, true)) {
+                cancel(false);
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * A browser launched in the background.
+     */
+    private static final class WarmBrowser {
+
+        /** The driver. */
+        private final WebDriver driver;
+
+        /** The launch time in nanoseconds. */
+        private final long launchNanos;
+
+        /**
+         * Instantiates a new warm browser.
+         *
+         * @param webDriver the driver
+         * @param launchTime the launch time in nanoseconds
+         */
+        private WarmBrowser(final WebDriver webDriver, final long launchTime) {
+            this.driver = webDriver;
+            this.launchNanos = launchTime;
+        }
+    }
+}
@@ -0,0 +1,478 @@
+/*
+ * Copyright 2004 ThoughtWorks, Inc. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law
+ * or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package com.virtusa.isq.vtaf.runtime;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriver;
+
+import com.virtusa.isq.vtaf.utils.PropertyHandler;
+
+/**
+ * Keeps browser sessions alive between test methods, so that a browser does
+ * not have to be launched for every test.<br>
+ * A released session is reset and kept for the next test of the same
+ * partition. A session is quit instead of being kept when it has been used
+ * the maximum number of times, when its reset fails, when the partition is
+ * full, or when it fails the health check on acquisition.<br>
+ * The cookies and the web storage can only be cleared for the site loaded in
+ * a window, so the origins opened through {@link #visited(WebDriver, String)}
+ * are remembered, and on reset a static resource of each one, its favicon,
+ * is loaded so that the origin can be cleared without running its home page
+ * and its scripts. The web storage is only cleared in full reset mode. Origins
+ * reached only by following links or redirects are not known to the pool,
+ * and are cleared only when they are still loaded in a window.<br>
+ * Configured through the runtime properties:
+ * <ul>
+ * <li><i>SESSION_POOL</i>: enables the pool (default false)</li>
+ * <li><i>SESSION_POOL_SIZE</i>: the idle sessions kept per partition</li>
+ * <li><i>SESSION_POOL_MAX_USES</i>: the tests a session is used for before it
+ * is quit</li>
+ * <li><i>SESSION_POOL_RESET</i>: <i>full</i> clears the cookies and the web
+ * storage, closes the extra windows and loads a blank page; <i>cookies</i>
+ * only clears the cookies and loads a blank page</li>
+ * <li><i>SESSION_POOL_PARTITION</i>: <i>type</i> shares the sessions between
+ * all the browser strings of a browser type, e.g. *firefox and *firefox3;
+ * <i>browser</i> keeps a partition per browser string</li>
+ * </ul>
+ */
+public final class BrowserSessionPool {
+
+    /**
+     * Creates the browser sessions of the pool.
+     */
+    public interface DriverFactory {
+
+        /**
+         * Launches a new browser.
+         *
+         * @param browserString the browser string
+         * @return the driver
+         */
+        WebDriver create(String browserString);
+    }
+
+    /** The default idle sessions kept per partition. */
+    private static final int DEFAULT_SIZE = 2;
+
+    /** The default maximum uses of a session. */
+    private static final int DEFAULT_MAX_USES = 20;
+
+    /** The browser types used to partition the pool. */
+    private static final String[] BROWSER_TYPES = {"chrome", "firefox",
+            "iexplore", "safari", "opera" };
+
+    /** The blank page loaded when a session is reset. */
+    private static final String BLANK_PAGE = "about:blank";
+
+    /**
+     * The static resource loaded to clear an origin, which needs no scripts
+     * or redirects whether or not the site has it.
+     */
+    private static final String ORIGIN_RESOURCE = "/favicon.ico";
+
+    /** The shared pool. */
+    private static BrowserSessionPool instance;
+
+    /** The log. */
+    private static final Logger LOG = Logger
+            .getLogger(BrowserSessionPool.class);
+
+    /** Whether the pool is enabled. */
+    private final boolean enabled;
+
+    /** The idle sessions kept per partition. */
+    private final int size;
+
+    /** The maximum uses of a session. */
+    private final int maxUses;
+
+    /** Whether the reset clears the storage and the extra windows. */
+    private final boolean fullReset;
+
+    /** Whether the partitions are browser types instead of strings. */
+    private final boolean partitionByType;
+
+    /** The idle sessions per partition. */
+    private final Map<String, LinkedList<PooledSession>> idleSessions =
+            new HashMap<String, LinkedList<PooledSession>>();
+
+    /** The sessions in use. */
+    private final Map<WebDriver, PooledSession> activeSessions =
+            new IdentityHashMap<WebDriver, PooledSession>();
+
+    /** The sessions launched. */
+    private long launchCount;
+
+    /** The sessions reused. */
+    private long reuseCount;
+
+    /**
+     * Instantiates a new browser session pool.
+     *
+     * @param poolEnabled whether the pool is enabled
+     * @param poolSize the idle sessions kept per partition
+     * @param maxSessionUses the maximum uses of a session
+     * @param resetAll whether the reset clears the storage and the extra
+     *            windows
+     * @param byType whether the partitions are browser types
+     */
+    public BrowserSessionPool(final boolean poolEnabled, final int poolSize,
+            final int maxSessionUses, final boolean resetAll,
+            final boolean byType) {
+        this.enabled = poolEnabled;
+        this.size = Math.max(1, poolSize);
+        this.maxUses = Math.max(1, maxSessionUses);
+        this.fullReset = resetAll;
+        this.partitionByType = byType;
+    }
+
+    /**
+     * Gets the shared pool configured from the runtime properties.
+     *
+     * @return the pool
+     */
+    public static synchronized BrowserSessionPool getInstance() {
+        if (instance == null) {
+            PropertyHandler propHandler =
+                    new PropertyHandler("runtime.properties");
+            instance =
+                    new BrowserSessionPool(
+                            propHandler.getBooleanRuntimeProperty(
+                                    "SESSION_POOL", false),
+                            propHandler.getIntRuntimeProperty(
+                                    "SESSION_POOL_SIZE", DEFAULT_SIZE),
+                            propHandler.getIntRuntimeProperty(
+                                    "SESSION_POOL_MAX_USES", DEFAULT_MAX_USES),
+                            !"cookies".equalsIgnoreCase(propHandler
+                                    .getRuntimeProperty("SESSION_POOL_RESET",
+                                            "full")),
+                            !"browser".equalsIgnoreCase(propHandler
+                                    .getRuntimeProperty(
+                                            "SESSION_POOL_PARTITION", "type")));
+            Runtime.getRuntime().addShutdownHook(new Thread() {
+
+                @Override
+                public void run() {
+                    instance.shutdown();
+                }
+            });
+        }
+        return instance;
+    }
+
+    /**
+     * Checks if the pool is enabled.
+     *
+     * @return true, if enabled
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Gets a healthy idle session of the partition of the browser string, or
+     * launches a new one.
+     *
+     * @param browserString the browser string
+     * @param factory the factory launching new sessions
+     * @return the driver
+     */
+    public WebDriver acquire(final String browserString,
+            final DriverFactory factory) {
+        String partition = partitionOf(browserString);
+        while (true) {
+            PooledSession session;
+            synchronized (this) {
+                LinkedList<PooledSession> idle = idleSessions.get(partition);
+                session = idle == null ? null : idle.pollFirst();
+            }
+            if (session == null) {
+                break;
+            }
+            if (isHealthy(session.driver)) {
+                synchronized (this) {
+                    activeSessions.put(session.driver, session);
+                    reuseCount++;
+                }
+                LOG.info("Reusing pooled " + partition + " session, use "
+                        + (session.uses + 1));
+                return session.driver;
+            }
+            LOG.info("Discarding unhealthy pooled " + partition + " session");
+            quit(session.driver);
+        }
+        WebDriver driver = factory.create(browserString);
+        synchronized (this) {
+            activeSessions.put(driver, new PooledSession(partition, driver));
+            launchCount++;
+        }
+        return driver;
+    }
+
+    /**
+     * Returns a session to the pool. The session is reset, or quit if it
+     * cannot be kept. Drivers which were not acquired from the pool are quit.
+     *
+     * @param driver the driver
+     */
+    public void release(final WebDriver driver) {
+        PooledSession session;
+        synchronized (this) {
+            session = activeSessions.remove(driver);
+        }
+        if (session == null) {
+            quit(driver);
+            return;
+        }
+        session.uses++;
+        if (session.uses >= maxUses) {
+            LOG.info("Recycling " + session.partition + " session after "
+                    + session.uses + " uses");
+            quit(driver);
+            return;
+        }
+        if (!reset(session)) {
+            quit(driver);
+            return;
+        }
+        synchronized (this) {
+            LinkedList<PooledSession> idle =
+                    idleSessions.get(session.partition);
+            if (idle == null) {
+                idle = new LinkedList<PooledSession>();
+                idleSessions.put(session.partition, idle);
+            }
+            if (idle.size() < size) {
+                idle.addLast(session);
+                return;
+            }
+        }
+        quit(driver);
+    }
+
+    /**
+     * Records that a session opened an URL, so that the site of the URL is
+     * cleared when the session is reset.
+     *
+     * @param driver the driver
+     * @param url the URL
+     */
+    public void visited(final WebDriver driver, final String url) {
+        if (!enabled) {
+            return;
+        }
+        String origin = originOf(url);
+        if (origin == null) {
+            return;
+        }
+        synchronized (this) {
+            PooledSession session = activeSessions.get(driver);
+            if (session != null) {
+                session.origins.add(origin);
+            }
+        }
+    }
+
+    /**
+     * Quits all the idle sessions.
+     */
+    public void shutdown() {
+        List<PooledSession> sessions = new ArrayList<PooledSession>();
+        synchronized (this) {
+            for (LinkedList<PooledSession> idle : idleSessions.values()) {
+                sessions.addAll(idle);
+            }
+            idleSessions.clear();
+        }
+        for (PooledSession session : sessions) {
+            quit(session.driver);
+        }
+        if (launchCount > 0) {
+            LOG.info("Browser session pool : launched " + launchCount
+                    + ", reused " + reuseCount);
+        }
+    }
+
+    /**
+     * Gets the partition of a browser string.
+     *
+     * @param browserString the browser string
+     * @return the partition
+     */
+    private String partitionOf(final String browserString) {
+        String browser = browserString.toLowerCase(Locale.ENGLISH).trim();
+        if (partitionByType) {
+            for (String type : BROWSER_TYPES) {
+                if (browser.contains(type)) {
+                    return type;
+                }
+            }
+        }
+        return browser;
+    }
+
+    /**
+     * Checks that a session still responds.
+     *
+     * @param driver the driver
+     * @return true, if healthy
+     */
+    private boolean isHealthy(final WebDriver driver) {
+        try {
+            return !driver.getWindowHandles().isEmpty()
+                    && driver.getCurrentUrl() != null;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    /**
+     * Gets the origin of an URL.
+     *
+     * @param url the URL
+     * @return the scheme, host and port, or null if the URL is not a web page
+     */
+    private static String originOf(final String url) {
+        if (url == null) {
+            return null;
+        }
+        try {
+            URI uri = new URI(url.trim());
+            String scheme = uri.getScheme();
+            if (uri.getHost() == null || scheme == null
+                    || !scheme.toLowerCase(Locale.ENGLISH).startsWith("http")) {
+                return null;
+            }
+            return scheme.toLowerCase(Locale.ENGLISH) + "://"
+                    + uri.getHost().toLowerCase(Locale.ENGLISH)
+                    + (uri.getPort() >= 0 ? ":" + uri.getPort() : "");
+        } catch (URISyntaxException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Resets a session for the next test.
+     *
+     * @param session the session
+     * @return true, if the session was reset
+     */
+    private boolean reset(final PooledSession session) {
+        WebDriver driver = session.driver;
+        try {
+            if (fullReset) {
+                Set<String> handles = driver.getWindowHandles();
+                Iterator<String> iterator = handles.iterator();
+                String keep = iterator.next();
+                while (iterator.hasNext()) {
+                    driver.switchTo().window(iterator.next());
+                    clearSite(driver);
+                    driver.close();
+                }
+                driver.switchTo().window(keep);
+                driver.switchTo().defaultContent();
+            }
+            clearSite(driver);
+            String current = originOf(driver.getCurrentUrl());
+            for (String origin : session.origins) {
+                if (!origin.equals(current)) {
+                    driver.get(origin + ORIGIN_RESOURCE);
+                    clearSite(driver);
+                }
+            }
+            session.origins.clear();
+            driver.get(BLANK_PAGE);
+            return true;
+        } catch (Exception e) {
+            LOG.info("Session reset failed : " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Clears the cookies, and the web storage in full reset mode, of the site
+     * loaded in the current window.
+     *
+     * @param driver the driver
+     */
+    private void clearSite(final WebDriver driver) {
+        driver.manage().deleteAllCookies();
+        if (fullReset && driver instanceof JavascriptExecutor) {
+            try {
+                ((JavascriptExecutor) driver).executeScript(
+                        "try { window.localStorage.clear(); } catch (e) {}"
+                        + "try { window.sessionStorage.clear(); } catch (e) {}");
+            } catch (Exception e) {
+                LOG.debug("Web storage not cleared : " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Quits a session, ignoring failures.
+     *
+     * @param driver the driver
+     */
+    private void quit(final WebDriver driver) {
+        try {
+            driver.quit();
+        } catch (Exception e) {
+            LOG.debug("Session quit failed : " + e.getMessage());
+        } finally {
+            ProcessReaper.getInstance().release(driver);
+        }
+    }
+
+    /**
+     * A session of the pool.
+     */
+    private static final class PooledSession {
+
+        /** The partition. */
+        private final String partition;
+
+        /** The driver. */
+        private final WebDriver driver;
+
+        /** The tests the session was used for. */
+        private int uses;
+
+        /** The origins opened since the last reset. */
+        private final Set<String> origins = new LinkedHashSet<String>();
+
+        /**
+         * Instantiates a new pooled session.
+         *
+         * @param sessionPartition the partition
+         * @param webDriver the driver
+         */
+        private PooledSession(final String sessionPartition,
+                final WebDriver webDriver) {
+            this.partition = sessionPartition;
+            this.driver = webDriver;
+        }
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright 2004 ThoughtWorks, Inc. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law
+ * or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package com.virtusa.isq.vtaf.runtime;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import org.openqa.selenium.By;
+
+import com.virtusa.isq.vtaf.runtime.SeleniumTestBase.LocatorType;
+
+/**
+ * An object locator parsed into its locator type and reference, together with
+ * the corresponding {@link By}. Instances are immutable and are shared through
+ * the {@link LocatorCache}.
+ */
+public final class CompiledLocator {
+
+    /**
+     * The locator type prefixes understood by the runtime. This is the single
+     * strategy table used for every locator.
+     */
+    private static final Map<String, LocatorType> STRATEGIES =
+            new HashMap<String, LocatorType>();
+
+    /**
+     * The locator types matched, in order, against prefixes which are not in
+     * the strategy table, e.g. <i>identifier=</i>.
+     */
+    private static final LocatorType[] LEGACY_ORDER = {LocatorType.XPATH,
+            LocatorType.CSS, LocatorType.CLASSNAME, LocatorType.TAGNAME,
+            LocatorType.LINK, LocatorType.NAME, LocatorType.ID };
+
+    static {
+        STRATEGIES.put("xpath", LocatorType.XPATH);
+        STRATEGIES.put("css", LocatorType.CSS);
+        STRATEGIES.put("cssselector", LocatorType.CSS);
+        STRATEGIES.put("id", LocatorType.ID);
+        STRATEGIES.put("link", LocatorType.LINK);
+        STRATEGIES.put("linktext", LocatorType.LINK);
+        STRATEGIES.put("partiallink", LocatorType.PARTIALLINK);
+        STRATEGIES.put("partiallinktext", LocatorType.PARTIALLINK);
+        STRATEGIES.put("tagname", LocatorType.TAGNAME);
+        STRATEGIES.put("name", LocatorType.NAME);
+        STRATEGIES.put("classname", LocatorType.CLASSNAME);
+        STRATEGIES.put("class", LocatorType.CLASSNAME);
+    }
+
+    /** The raw locator string. */
+    private final String locator;
+
+    /** The locator type. */
+    private final LocatorType type;
+
+    /** The reference part of the locator. */
+    private final String reference;
+
+    /** The compiled by. */
+    private final By by;
+
+    /**
+     * Instantiates a new compiled locator.
+     *
+     * @param locatorString the raw locator string
+     * @param locatorType the locator type
+     * @param referenceString the reference part of the locator
+     */
+    private CompiledLocator(final String locatorString,
+            final LocatorType locatorType, final String referenceString) {
+        this.locator = locatorString;
+        this.type = locatorType;
+        this.reference = referenceString;
+        this.by = toBy(locatorType, referenceString);
+    }
+
+    /**
+     * Parses the given locator string. Locators starting with <i>/</i> are
+     * treated as xpaths, all the others are expected in the form
+     * <i>type=reference</i>.
+     *
+     * @param objectID the locator string
+     * @return the compiled locator
+     * @throws Exception if the locator type is not supported
+     */
+    public static CompiledLocator compile(final String objectID)
+            throws Exception {
+        if (objectID.startsWith("/")) {
+            return new CompiledLocator(objectID, LocatorType.XPATH, objectID);
+        }
+        int separator = objectID.indexOf('=');
+        if (separator < 0) {
+            throw new Exception("Invalid Locator Type Passed " + objectID);
+        }
+        String typeString =
+                objectID.substring(0, separator).trim()
+                        .toLowerCase(Locale.ENGLISH);
+        String ref = objectID.substring(separator + 1);
+        LocatorType locatorType = STRATEGIES.get(typeString);
+        if (locatorType == null) {
+            for (LocatorType candidate : LEGACY_ORDER) {
+                if (typeString.contains(candidate.name().toLowerCase(
+                        Locale.ENGLISH))) {
+                    locatorType = candidate;
+                    break;
+                }
+            }
+        }
+        if (locatorType == null) {
+            throw new Exception("Invalid Locator Type Passed " + ref);
+        }
+        return new CompiledLocator(objectID, locatorType, ref);
+    }
+
+    /**
+     * Creates the by for the given locator type.
+     *
+     * @param locatorType the locator type
+     * @param ref the reference
+     * @return the by
+     */
+    private static By toBy(final LocatorType locatorType, final String ref) {
+        switch (locatorType) {
+        case CSS:
+            return By.cssSelector(ref);
+        case ID:
+            return By.id(ref);
+        case LINK:
+            return By.linkText(ref);
+        case PARTIALLINK:
+            return By.partialLinkText(ref);
+        case TAGNAME:
+            return By.tagName(ref);
+        case NAME:
+            return By.name(ref);
+        case CLASSNAME:
+            return By.className(ref);
+        default:
+            return By.xpath(ref);
+        }
+    }
+
+    /**
+     * Gets the raw locator string.
+     *
+     * @return the locator
+     */
+    public String getLocator() {
+        return locator;
+    }
+
+    /**
+     * Gets the locator type.
+     *
+     * @return the type
+     */
+    public LocatorType getType() {
+        return type;
+    }
+
+    /**
+     * Gets the reference part of the locator.
+     *
+     * @return the reference
+     */
+    public String getReference() {
+        return reference;
+    }
+
+    /**
+     * Gets the compiled by.
+     *
+     * @return the by
+     */
+    public By getBy() {
+        return by;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return locator;
+    }
+}
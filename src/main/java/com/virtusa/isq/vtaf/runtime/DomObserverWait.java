@@ -0,0 +1,379 @@
+/*
+ * Copyright 2004 ThoughtWorks, Inc. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law
+ * or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package com.virtusa.isq.vtaf.runtime;
+
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+import org.openqa.selenium.By;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.TimeoutException;
+import org.openqa.selenium.UnsupportedCommandException;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.WebElement;
+
+import com.google.common.base.Function;
+import com.virtusa.isq.vtaf.utils.PropertyHandler;
+
+/**
+ * Waits for the page to reach a state by observing the DOM in the browser
+ * instead of polling it over the wire.<br>
+ * A MutationObserver is injected with an asynchronous script. The script
+ * checks the condition immediately and again after each batch of DOM
+ * mutations, and answers as soon as the condition holds or the deadline
+ * passes, so that a wait costs a single round trip.<br>
+ * Enabled with the runtime property <i>WAIT_MODE=observer</i>. When the
+ * browser cannot run asynchronous scripts or has no MutationObserver, the
+ * waits fall back to polling through the {@link WaitEngine}.<br>
+ * The script timeout of the driver is raised for each observation, and set
+ * back afterwards to the runtime property <i>SCRIPT_TIMEOUT</i>, in
+ * milliseconds (default 0, the timeout of a new driver).
+ */
+public final class DomObserverWait {
+
+    /** The wait mode which enables the observer. */
+    private static final String OBSERVER_MODE = "observer";
+
+    /** The answer of the script when the browser has no MutationObserver. */
+    private static final String UNSUPPORTED = "unsupported";
+
+    /** The time given to the driver on top of the wait for the script. */
+    private static final long SCRIPT_TIMEOUT_MARGIN = 1000;
+
+    /** The longest single observation in milliseconds. */
+    private static final long MAX_OBSERVATION = 600000;
+
+    /** The script which observes the DOM. */
+    private static final String OBSERVER_SCRIPT =
+            "var callback = arguments[arguments.length - 1];"
+            + "var type = arguments[0], ref = arguments[1],"
+            + " condition = arguments[2], timeout = arguments[3],"
+            + " textMode = arguments[4];"
+            + "if (typeof MutationObserver === 'undefined') {"
+            + " callback('" + UNSUPPORTED + "'); return; }"
+            + "function trim(s) { return (s || '').replace(/^\\s+|\\s+$/g, ''); }"
+            + "function find() {"
+            + " switch (type) {"
+            + " case 'XPATH': return document.evaluate(ref, document, null,"
+            + " 9, null).singleNodeValue;"
+            + " case 'CSS': return document.querySelector(ref);"
+            + " case 'ID': return document.getElementById(ref);"
+            + " case 'NAME': return document.getElementsByName(ref)[0] || null;"
+            + " case 'CLASSNAME':"
+            + " return document.getElementsByClassName(ref)[0] || null;"
+            + " case 'TAGNAME':"
+            + " return document.getElementsByTagName(ref)[0] || null;"
+            + " case 'LINK': case 'PARTIALLINK':"
+            + " var links = document.getElementsByTagName('a');"
+            + " for (var i = 0; i < links.length; i++) {"
+            + " var text = trim(links[i].innerText || links[i].textContent);"
+            + " if (type === 'LINK' ? text === ref : text.indexOf(ref) >= 0) {"
+            + " return links[i]; } }"
+            + " return null;"
+            + " case 'TEXT': var root = document.documentElement;"
+            + " if (!root) { return null; }"
+            + " var haystack = root.outerHTML;"
+            + " if (textMode === 'TEXT') { var parts = [];"
+            + " var walker = document.createTreeWalker(root, 4, null, false);"
+            + " for (var n = walker.nextNode(); n; n = walker.nextNode()) {"
+            + " var parent = n.parentNode ? n.parentNode.nodeName : '';"
+            + " if (parent !== 'SCRIPT' && parent !== 'STYLE') {"
+            + " parts.push(n.nodeValue); } }"
+            + " haystack = parts.join(''); }"
+            + " return haystack.indexOf(ref) >= 0 ? root : null;"
+            + " }"
+            + " return null; }"
+            + "function check() {"
+            + " var e = null;"
+            + " try { e = find(); } catch (err) { e = null; }"
+            + " if (condition === 'ABSENT') { return e ? undefined : true; }"
+            + " if (!e) { return undefined; }"
+            + " return type === 'TEXT' ? true : e; }"
+            + "var first = check();"
+            + "if (first !== undefined) { callback(first); return; }"
+            + "var done = false, timer = null;"
+            + "var observer = new MutationObserver(function() {"
+            + " if (done) { return; }"
+            + " var result = check();"
+            + " if (result !== undefined) { finish(result); } });"
+            + "function finish(result) { done = true; observer.disconnect();"
+            + " if (timer !== null) { clearTimeout(timer); } callback(result); }"
+            + "timer = setTimeout(function() { if (!done) { finish(null); } },"
+            + " timeout);"
+            + "observer.observe(document, {childList: true, subtree: true,"
+            + " attributes: true, characterData: true});";
+
+    /** The shared instance. */
+    private static DomObserverWait instance;
+
+    /** The log. */
+    private static final Logger LOG = Logger.getLogger(DomObserverWait.class);
+
+    /** Whether the observer is used. */
+    private final boolean enabled;
+
+    /** The script timeout set back after an observation, in milliseconds. */
+    private final long scriptTimeout;
+
+    /** The driver classes which cannot run the observer. */
+    private final ConcurrentMap<Class< ? >, Boolean> unsupportedDrivers =
+            new ConcurrentHashMap<Class< ? >, Boolean>();
+
+    /**
+     * Instantiates a new DOM observer wait.
+     *
+     * @param observerEnabled whether the observer is used
+     */
+    public DomObserverWait(final boolean observerEnabled) {
+        this(observerEnabled, 0);
+    }
+
+    /**
+     * Instantiates a new DOM observer wait.
+     *
+     * @param observerEnabled whether the observer is used
+     * @param defaultScriptTimeout the script timeout set back after an
+     *        observation, in milliseconds
+     */
+    public DomObserverWait(final boolean observerEnabled,
+            final long defaultScriptTimeout) {
+        this.enabled = observerEnabled;
+        this.scriptTimeout = Math.max(0, defaultScriptTimeout);
+    }
+
+    /**
+     * Gets the shared instance configured from the runtime properties.
+     *
+     * @return the DOM observer wait
+     */
+    public static synchronized DomObserverWait getInstance() {
+        if (instance == null) {
+            PropertyHandler propHandler =
+                    new PropertyHandler("runtime.properties");
+            instance =
+                    new DomObserverWait(OBSERVER_MODE.equalsIgnoreCase(propHandler
+                            .getRuntimeProperty("WAIT_MODE", "poll")),
+                            propHandler.getIntRuntimeProperty("SCRIPT_TIMEOUT",
+                                    0));
+        }
+        return instance;
+    }
+
+    /**
+     * Checks if the observer wait mode is enabled.
+     *
+     * @return true, if enabled
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Waits until the element of the given search path is present.
+     *
+     * @param driver the driver
+     * @param searchPath the search path
+     * @param deadlineNanos the deadline, as a {@link System#nanoTime()} value
+     * @return the element
+     * @throws Exception if the search path is invalid, or a
+     *             {@link TimeoutException} if the element is not present
+     *             before the deadline
+     */
+    public WebElement waitForElement(final WebDriver driver,
+            final String searchPath, final long deadlineNanos)
+            throws Exception {
+        final CompiledLocator locator =
+                LocatorCache.getInstance().get(searchPath);
+        Object result =
+                observe(driver, locator.getType().name(),
+                        locator.getReference(), "PRESENT", deadlineNanos);
+        if (result instanceof WebElement) {
+            return (WebElement) result;
+        }
+        if (!UNSUPPORTED.equals(result)) {
+            throw new TimeoutException("Element " + searchPath
+                    + " did not appear");
+        }
+        final By searchBy = locator.getBy();
+        return WaitEngine.getInstance().untilDeadline(driver,
+                new Function<WebDriver, WebElement>() {
+
+                    @Override
+                    public WebElement apply(final WebDriver webDriver) {
+                        return webDriver.findElement(searchBy);
+                    }
+                }, deadlineNanos, searchPath);
+    }
+
+    /**
+     * Waits until the element of the given search path is no longer present.
+     *
+     * @param driver the driver
+     * @param searchPath the search path
+     * @param deadlineNanos the deadline, as a {@link System#nanoTime()} value
+     * @return true, if the element is absent before the deadline
+     * @throws Exception if the search path is invalid
+     */
+    public boolean waitForAbsence(final WebDriver driver,
+            final String searchPath, final long deadlineNanos)
+            throws Exception {
+        final CompiledLocator locator =
+                LocatorCache.getInstance().get(searchPath);
+        Object result =
+                observe(driver, locator.getType().name(),
+                        locator.getReference(), "ABSENT", deadlineNanos);
+        if (!UNSUPPORTED.equals(result)) {
+            return Boolean.TRUE.equals(result);
+        }
+        final By searchBy = locator.getBy();
+        return poll(driver, new Function<WebDriver, Boolean>() {
+
+            @Override
+            public Boolean apply(final WebDriver webDriver) {
+                return webDriver.findElements(searchBy).isEmpty();
+            }
+        }, deadlineNanos);
+    }
+
+    /**
+     * Waits until the page contains the given text. The observer and the
+     * polling fallback both search the page as the {@link TextSearch} does,
+     * in its <i>TEXT_SEARCH_MODE</i>: the text nodes in the text mode, the
+     * markup otherwise.
+     *
+     * @param driver the driver
+     * @param text the text
+     * @param deadlineNanos the deadline, as a {@link System#nanoTime()} value
+     * @return true, if the text is present before the deadline
+     */
+    public boolean waitForText(final WebDriver driver, final String text,
+            final long deadlineNanos) {
+        Object result = observe(driver, "TEXT", text, "PRESENT", deadlineNanos);
+        if (!UNSUPPORTED.equals(result)) {
+            return Boolean.TRUE.equals(result);
+        }
+        return poll(driver, new Function<WebDriver, Boolean>() {
+
+            @Override
+            public Boolean apply(final WebDriver webDriver) {
+                return TextSearch.getInstance().contains(webDriver, text, null);
+            }
+        }, deadlineNanos);
+    }
+
+    /**
+     * Polls the condition until the deadline.
+     *
+     * @param driver the driver
+     * @param condition the condition
+     * @param deadlineNanos the deadline
+     * @return true, if the condition was met before the deadline
+     */
+    private boolean poll(final WebDriver driver,
+            final Function<WebDriver, Boolean> condition,
+            final long deadlineNanos) {
+        try {
+            return WaitEngine.getInstance().untilDeadline(driver, condition,
+                    deadlineNanos, null);
+        } catch (TimeoutException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Runs the observer script until the condition holds or the deadline
+     * passes.
+     *
+     * @param driver the driver
+     * @param type the locator type, or TEXT
+     * @param reference the locator reference or the text
+     * @param condition PRESENT or ABSENT
+     * @param deadlineNanos the deadline
+     * @return the element or true if the condition holds, null on timeout, or
+     *         {@link #UNSUPPORTED} if the observer could not be used and the
+     *         caller should poll instead
+     */
+    private Object observe(final WebDriver driver, final String type,
+            final String reference, final String condition,
+            final long deadlineNanos) {
+        if (!(driver instanceof JavascriptExecutor)
+                || unsupportedDrivers.containsKey(driver.getClass())) {
+            return UNSUPPORTED;
+        }
+        long timeout =
+                Math.min(MAX_OBSERVATION, Math.max(0, TimeUnit.NANOSECONDS
+                        .toMillis(deadlineNanos - System.nanoTime())));
+        boolean timeoutRaised = false;
+        try {
+            driver.manage().timeouts()
+                    .setScriptTimeout(timeout + SCRIPT_TIMEOUT_MARGIN,
+                            TimeUnit.MILLISECONDS);
+            timeoutRaised = true;
+            Object result =
+                    ((JavascriptExecutor) driver).executeAsyncScript(
+                            OBSERVER_SCRIPT, type.toUpperCase(Locale.ENGLISH),
+                            reference, condition, timeout, TextSearch
+                                    .getInstance().getMode().name());
+            if (UNSUPPORTED.equals(result)) {
+                markUnsupported(driver, null);
+                return UNSUPPORTED;
+            }
+            return result;
+        } catch (UnsupportedCommandException e) {
+            markUnsupported(driver, e);
+            return UNSUPPORTED;
+        } catch (WebDriverException e) {
+            // e.g. the page was unloaded while observing; poll for the rest of
+            // this wait
+            LOG.info("DOM observer interrupted, polling instead : "
+                    + e.getMessage());
+            return UNSUPPORTED;
+        } finally {
+            if (timeoutRaised) {
+                restoreScriptTimeout(driver);
+            }
+        }
+    }
+
+    /**
+     * Sets the script timeout of the driver back after an observation.
+     *
+     * @param driver the driver
+     */
+    private void restoreScriptTimeout(final WebDriver driver) {
+        try {
+            driver.manage().timeouts()
+                    .setScriptTimeout(scriptTimeout, TimeUnit.MILLISECONDS);
+        } catch (WebDriverException e) {
+            LOG.info("Cannot restore the script timeout : " + e.getMessage());
+        }
+    }
+
+    /**
+     * Records that the given driver cannot run the observer.
+     *
+     * @param driver the driver
+     * @param cause the cause, or null
+     */
+    private void markUnsupported(final WebDriver driver, final Throwable cause) {
+        if (unsupportedDrivers.put(driver.getClass(), Boolean.TRUE) == null) {
+            LOG.info("DOM observer not supported by "
+                    + driver.getClass().getSimpleName()
+                    + ", polling instead"
+                    + (cause == null ? "" : " : " + cause.getMessage()));
+        }
+    }
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright 2004 ThoughtWorks, Inc. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law
+ * or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package com.virtusa.isq.vtaf.runtime;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.openqa.selenium.StaleElementReferenceException;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.WebElement;
+
+/**
+ * Keeps the web elements found by the previous commands of a single driver,
+ * so that consecutive commands on the same object do not have to locate it
+ * again.<br>
+ * Elements are keyed by the resolved locator and the browsing context (window
+ * and frame) they were found in. A cached element is validated with a single
+ * call before it is reused. The whole cache is dropped when the page is
+ * navigated, when the window or frame is switched, or when a cached element
+ * turns out to be stale.
+ */
+public class ElementCache {
+
+    /** The maximum number of elements kept in the cache. */
+    private static final int MAX_ENTRIES = 256;
+
+    /** The context used before any window or frame is selected. */
+    private static final String DEFAULT_CONTEXT = "";
+
+    /** The separator between the window and the frames of a context. */
+    private static final String FRAME_SEPARATOR = "/";
+
+    /** The cached elements keyed by locator. */
+    private final Map<String, CachedElement> elements;
+
+    /** The current browsing context. */
+    private String context = DEFAULT_CONTEXT;
+
+    /** The hit count. */
+    private long hitCount;
+
+    /** The miss count. */
+    private long missCount;
+
+    /** The invalidation count. */
+    private long invalidationCount;
+
+    /**
+     * Instantiates a new element cache.
+     */
+    public ElementCache() {
+        final int initialCapacity = 16;
+        final float loadFactor = 0.75f;
+        elements =
+                new LinkedHashMap<String, CachedElement>(initialCapacity,
+                        loadFactor, true) {
+
+                    private static final long serialVersionUID = 1L;
+
+                    @Override
+                    protected boolean removeEldestEntry(
+                            final Map.Entry<String, CachedElement> eldest) {
+                        return size() > MAX_ENTRIES;
+                    }
+                };
+    }
+
+    /**
+     * Gets the cached element of the given locator in the current browsing
+     * context. The element is validated before it is returned: if it is
+     * stale, the whole cache is invalidated, and if it is no longer displayed
+     * it is dropped, so that it is located again.
+     *
+     * @param locator the resolved locator
+     * @return the element, or null if it is not cached or no longer valid
+     */
+    public final synchronized WebElement get(final String locator) {
+        CachedElement cached = elements.get(locator);
+        if (cached == null || !cached.context.equals(context)) {
+            missCount++;
+            return null;
+        }
+        try {
+            if (!cached.element.isDisplayed()) {
+                missCount++;
+                elements.remove(locator);
+                return null;
+            }
+        } catch (StaleElementReferenceException e) {
+            missCount++;
+            invalidate();
+            return null;
+        } catch (WebDriverException e) {
+            missCount++;
+            elements.remove(locator);
+            return null;
+        }
+        hitCount++;
+        return cached.element;
+    }
+
+    /**
+     * Caches the element found for the given locator in the current browsing
+     * context.
+     *
+     * @param locator the resolved locator
+     * @param element the element
+     */
+    public final synchronized void put(final String locator,
+            final WebElement element) {
+        elements.put(locator, new CachedElement(context, element));
+    }
+
+    /**
+     * Records that the given window was selected. The cache is invalidated
+     * and the top level frame of the window becomes the browsing context.
+     *
+     * @param windowHandle the window handle
+     */
+    public final synchronized void selectWindow(final String windowHandle) {
+        invalidate();
+        context = windowHandle;
+    }
+
+    /**
+     * Records that the given frame of the current browsing context was
+     * selected. The cache is invalidated.
+     *
+     * @param frame the frame identification
+     */
+    public final synchronized void selectFrame(final String frame) {
+        invalidate();
+        context = context + FRAME_SEPARATOR + frame;
+    }
+
+    /**
+     * Records that the top level frame of the current window was selected.
+     * The cache is invalidated.
+     */
+    public final synchronized void selectTopFrame() {
+        invalidate();
+        int frameStart = context.indexOf(FRAME_SEPARATOR);
+        if (frameStart >= 0) {
+            context = context.substring(0, frameStart);
+        }
+    }
+
+    /**
+     * Gets the current browsing context.
+     *
+     * @return the browsing context
+     */
+    public final synchronized String getContext() {
+        return context;
+    }
+
+    /**
+     * Drops all the cached elements.
+     */
+    public final synchronized void invalidate() {
+        if (!elements.isEmpty()) {
+            invalidationCount++;
+            elements.clear();
+        }
+    }
+
+    /**
+     * Gets the hit count.
+     *
+     * @return the hit count
+     */
+    public final synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * Gets the miss count.
+     *
+     * @return the miss count
+     */
+    public final synchronized long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * Gets the invalidation count.
+     *
+     * @return the invalidation count
+     */
+    public final synchronized long getInvalidationCount() {
+        return invalidationCount;
+    }
+
+    /**
+     * A web element together with the browsing context it was found in.
+     */
+    private static final class CachedElement {
+
+        /** The browsing context. */
+        private final String context;
+
+        /** The element. */
+        private final WebElement element;
+
+        /**
+         * Instantiates a new cached element.
+         *
+         * @param browsingContext the browsing context
+         * @param webElement the element
+         */
+        private CachedElement(final String browsingContext,
+                final WebElement webElement) {
+            this.context = browsingContext;
+            this.element = webElement;
+        }
+    }
+}
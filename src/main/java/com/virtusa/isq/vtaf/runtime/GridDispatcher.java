@@ -0,0 +1,849 @@
+/*
+ * Copyright 2004 ThoughtWorks, Inc. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law
+ * or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package com.virtusa.isq.vtaf.runtime;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.log4j.Logger;
+import org.testng.TestNG;
+import org.testng.annotations.Test;
+import org.testng.xml.Parser;
+import org.testng.xml.XmlClass;
+import org.testng.xml.XmlInclude;
+import org.testng.xml.XmlPackage;
+import org.testng.xml.XmlSuite;
+import org.testng.xml.XmlTest;
+
+import com.virtusa.isq.vtaf.report.reporter.ReportMerger;
+import com.virtusa.isq.vtaf.report.reporter.Reporter;
+import com.virtusa.isq.vtaf.utils.PropertyHandler;
+
+/**
+ * Runs a TestNG suite on several driver hosts at once. The suite is split into
+ * shards, by test class or by test method, and each host runs one shard at a
+ * time in its own JVM until all the shards have run. The reports of the shards
+ * are then merged into one execution report.<br>
+ * A host which stops answering is dropped and its shard is run again on
+ * another host; a host whose shards keep timing out is dropped as well. When
+ * no shards are left to start, an idle host runs the slowest running shard
+ * again, and the first run to finish is kept.<br>
+ * The hosts are RemoteWebDriver endpoints, e.g. Selenium grid hubs or nodes,
+ * or <i>fake</i> endpoints which run the tests on the in-process fake driver,
+ * to try the dispatching out on one machine. A fake endpoint may give the
+ * milliseconds each command takes, as in <i>fake:50</i>, and the shards it
+ * runs before it stops answering, as in <i>fake:50:3</i>, to try the
+ * recovery from a lost host out.<br>
+ * The test classes of a suite are the classes listed in its tests and the
+ * classes of its packages. A suite which yields no test classes is an error.
+ * <br>
+ * Configured through the runtime properties:
+ * <ul>
+ * <li><i>GRID_ENDPOINTS</i>: the comma separated endpoints</li>
+ * <li><i>GRID_SPLIT</i>: <i>class</i> (default) or <i>method</i>. Classes
+ * whose tests depend on other tests, through their methods or the class, are
+ * not split.</li>
+ * <li><i>GRID_SHARD_TIMEOUT</i>: the milliseconds a shard may run (default 0,
+ * no limit)</li>
+ * <li><i>GRID_MAX_ATTEMPTS</i>: the times a shard is started before it is
+ * reported as blocked</li>
+ * <li><i>GRID_NODE_STRIKES</i>: the timeouts after which a host is dropped</li>
+ * <li><i>GRID_SLOW_FACTOR</i>: how many times slower than the average shard a
+ * shard runs before it is run again on an idle host (default 0, never)</li>
+ * </ul>
+ * Run with the suite files as arguments, from the project folder.
+ */
+public final class GridDispatcher {
+
+    /** The system property giving a shard JVM its endpoint. */
+    public static final String NODE_PROPERTY = "vtaf.grid.node";
+
+    /** The prefix of the fake endpoints. */
+    public static final String FAKE_NODE = "fake";
+
+    /** The milliseconds between the checks of a running shard. */
+    private static final long POLL_MILLIS = 200L;
+
+    /** The milliseconds an endpoint has to answer a status check. */
+    private static final int STATUS_TIMEOUT = 5000;
+
+    /** The default times a shard is started. */
+    private static final int DEFAULT_ATTEMPTS = 3;
+
+    /** The default timeouts after which a host is dropped. */
+    private static final int DEFAULT_STRIKES = 2;
+
+    /** The default slow shard factor, never running a shard again. */
+    private static final int DEFAULT_SLOW_FACTOR = 0;
+
+    /** The HTTP status of a healthy endpoint. */
+    private static final int HTTP_OK = 200;
+
+    /** The nanoseconds in a millisecond. */
+    private static final long NANOS_PER_MILLI = 1000000L;
+
+    /** The log. */
+    private static final Logger LOG = Logger.getLogger(GridDispatcher.class);
+
+    /** The endpoints. */
+    private final List<String> endpoints;
+
+    /** True, to split the classes by test method. */
+    private final boolean splitByMethod;
+
+    /** The milliseconds a shard may run, 0 for no limit. */
+    private final long shardTimeout;
+
+    /** The times a shard is started. */
+    private final int maxAttempts;
+
+    /** The timeouts after which a host is dropped. */
+    private final int maxStrikes;
+
+    /** The slow shard factor. */
+    private final int slowFactor;
+
+    /** The folder of the shard files and reports. */
+    private final File workDir;
+
+    /** The shards waiting for a host. */
+    private final LinkedList<Shard> queue = new LinkedList<Shard>();
+
+    /** The runs in progress. */
+    private final List<Run> activeRuns = new ArrayList<Run>();
+
+    /** The shards neither finished nor given up. */
+    private int pendingCount;
+
+    /** The finished shards. */
+    private int finishedCount;
+
+    /** The run time of the finished shards, in nanoseconds. */
+    private long finishedNanos;
+
+    /** The shards started on each fake endpoint. */
+    private final Map<String, Integer> fakeShards =
+            new HashMap<String, Integer>();
+
+    /**
+     * Instantiates a new grid dispatcher.
+     *
+     * @param nodeEndpoints the endpoints
+     * @param byMethod true, to split the classes by test method
+     * @param timeout the milliseconds a shard may run, 0 for no limit
+     * @param attempts the times a shard is started
+     * @param strikes the timeouts after which a host is dropped
+     * @param slowShardFactor the slow shard factor, 0 to never run a shard
+     *        again while it is running
+     * @param workFolder the folder of the shard files and reports
+     */
+    public GridDispatcher(final List<String> nodeEndpoints,
+            final boolean byMethod, final long timeout, final int attempts,
+            final int strikes, final int slowShardFactor,
+            final File workFolder) {
+        this.endpoints = new ArrayList<String>(nodeEndpoints);
+        this.splitByMethod = byMethod;
+        this.shardTimeout = Math.max(0, timeout);
+        this.maxAttempts = Math.max(1, attempts);
+        this.maxStrikes = Math.max(1, strikes);
+        this.slowFactor = Math.max(0, slowShardFactor);
+        this.workDir = workFolder;
+    }
+
+    /**
+     * Creates a dispatcher configured from the runtime properties.
+     *
+     * @return the dispatcher
+     */
+    public static GridDispatcher fromProperties() {
+        PropertyHandler propHandler = new PropertyHandler("runtime.properties");
+        List<String> nodeEndpoints = new ArrayList<String>();
+        for (String endpoint : propHandler.getRuntimeProperty(
+                "GRID_ENDPOINTS", FAKE_NODE).split(",")) {
+            if (!endpoint.trim().isEmpty()) {
+                nodeEndpoints.add(endpoint.trim());
+            }
+        }
+        return new GridDispatcher(nodeEndpoints, "method".equalsIgnoreCase(
+                propHandler.getRuntimeProperty("GRID_SPLIT", "class")),
+                propHandler.getIntRuntimeProperty("GRID_SHARD_TIMEOUT", 0),
+                propHandler.getIntRuntimeProperty("GRID_MAX_ATTEMPTS",
+                        DEFAULT_ATTEMPTS),
+                propHandler.getIntRuntimeProperty("GRID_NODE_STRIKES",
+                        DEFAULT_STRIKES),
+                propHandler.getIntRuntimeProperty("GRID_SLOW_FACTOR",
+                        DEFAULT_SLOW_FACTOR), new File("target"
+                        + File.separator + "grid"));
+    }
+
+    /**
+     * Runs the suites given as arguments on the configured endpoints. Exits
+     * with 1 if a shard could not be run.
+     *
+     * @param args the suite files
+     */
+    public static void main(final String[] args) {
+        try {
+            GridDispatcher dispatcher = fromProperties();
+            File report = dispatcher.run(Arrays.asList(args));
+            LOG.info("Report created successfully to the folder "
+                    + report.getAbsolutePath());
+            System.exit(dispatcher.pendingCount > 0 ? 1 : 0);
+        } catch (Exception e) {
+            LOG.error("Grid dispatch failed", e);
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Gets the milliseconds each command takes on a fake endpoint, as in
+     * <i>fake:50</i>.
+     *
+     * @param endpoint the fake endpoint
+     * @return the milliseconds, or 0 if none or invalid
+     */
+    public static long fakeLatency(final String endpoint) {
+        return fakeSetting(endpoint, 1);
+    }
+
+    /**
+     * Gets the shards a fake endpoint runs before it stops answering, as in
+     * <i>fake:50:3</i>.
+     *
+     * @param endpoint the fake endpoint
+     * @return the shards, or 0 to always answer
+     */
+    private static long fakeShardLimit(final String endpoint) {
+        return fakeSetting(endpoint, 2);
+    }
+
+    /**
+     * Gets a number given after the name of a fake endpoint.
+     *
+     * @param endpoint the fake endpoint
+     * @param index the index of the number among the colon separated parts
+     * @return the number, or 0 if none or invalid
+     */
+    private static long fakeSetting(final String endpoint, final int index) {
+        String[] parts = endpoint.split(":");
+        if (parts.length <= index || parts[index].trim().isEmpty()) {
+            return 0;
+        }
+        try {
+            return Math.max(0, Long.parseLong(parts[index].trim()));
+        } catch (NumberFormatException e) {
+            LOG.warn("Invalid fake endpoint " + endpoint + ", ignoring "
+                    + parts[index]);
+            return 0;
+        }
+    }
+
+    /**
+     * Runs suites on the endpoints and merges their reports.
+     *
+     * @param suiteFiles the suite files
+     * @return the folder of the merged report
+     * @throws Exception if the suites cannot be read or the report written
+     */
+    public File run(final List<String> suiteFiles) throws Exception {
+        List<Shard> shards = new ArrayList<Shard>();
+        for (String suiteFile : suiteFiles) {
+            Parser parser = new Parser(suiteFile);
+            parser.setLoadClasses(false);
+            for (XmlSuite suite : parser.parseToList()) {
+                List<Shard> suiteShards = split(suite, shards.size());
+                if (suiteShards.isEmpty()) {
+                    throw new IllegalArgumentException("Suite "
+                            + suite.getName() + " in " + suiteFile
+                            + " has no test classes to run");
+                }
+                shards.addAll(suiteShards);
+            }
+        }
+        FileUtils.deleteQuietly(workDir);
+        for (Shard shard : shards) {
+            File shardDir = new File(workDir, shard.name);
+            if (!shardDir.mkdirs()) {
+                throw new IOException("Cannot create new folder in location "
+                        + shardDir.getAbsolutePath());
+            }
+            shard.xmlFile = new File(shardDir, "testng.xml");
+            FileUtils.writeStringToFile(shard.xmlFile, shard.suite.toXml(),
+                    "UTF-8");
+        }
+        synchronized (this) {
+            queue.addAll(shards);
+            pendingCount = shards.size();
+        }
+        LOG.info("Running " + shards.size() + " shards on "
+                + endpoints.size() + " endpoints");
+
+        List<Thread> workers = new ArrayList<Thread>();
+        for (final String endpoint : endpoints) {
+            Thread worker = new Thread(new Runnable() {
+
+                @Override
+                public void run() {
+                    serve(endpoint);
+                }
+            }, "vtaf-grid-" + endpoint);
+            workers.add(worker);
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        List<File> reports = new ArrayList<File>();
+        int blockedCount = 0;
+        for (Shard shard : shards) {
+            if (shard.report != null) {
+                reports.add(shard.report);
+            } else {
+                LOG.error("Shard " + shard.name + " could not be run");
+                blockedCount += shard.testCount;
+            }
+        }
+        File report =
+                new File("target" + File.separator + "Reports"
+                        + File.separator + "ExecutionReport"
+                        + new SimpleDateFormat("yyyy_MM_dd_HH_mm_ssa")
+                                .format(new Date()));
+        new ReportMerger().merge(reports, report, blockedCount);
+        return report;
+    }
+
+    /**
+     * Splits a suite into shards.
+     *
+     * @param suite the suite
+     * @param firstIndex the index of the first shard
+     * @return the shards
+     */
+    private List<Shard> split(final XmlSuite suite, final int firstIndex) {
+        List<Shard> shards = new ArrayList<Shard>();
+        for (XmlTest test : suite.getTests()) {
+            for (XmlClass xmlClass : testClasses(test)) {
+                List<String> methods = testMethods(xmlClass);
+                if (!splitByMethod || methods == null) {
+                    shards.add(new Shard(firstIndex + shards.size(), suite,
+                            test, xmlClass, null, methods == null ? 1
+                                    : Math.max(1, methods.size())));
+                    continue;
+                }
+                for (String method : methods) {
+                    shards.add(new Shard(firstIndex + shards.size(), suite,
+                            test, xmlClass, method, 1));
+                }
+            }
+        }
+        return shards;
+    }
+
+    /**
+     * Gets the classes of a test: the classes listed, and the classes of its
+     * packages.
+     *
+     * @param test the test
+     * @return the classes
+     */
+    private List<XmlClass> testClasses(final XmlTest test) {
+        Map<String, XmlClass> classes = new LinkedHashMap<String, XmlClass>();
+        for (XmlClass xmlClass : test.getXmlClasses()) {
+            classes.put(xmlClass.getName(), xmlClass);
+        }
+        for (XmlPackage xmlPackage : test.getXmlPackages()) {
+            List<XmlClass> packageClasses = xmlPackage.getXmlClasses();
+            if (packageClasses.isEmpty()) {
+                LOG.warn("No test classes found in package "
+                        + xmlPackage.getName());
+            }
+            for (XmlClass xmlClass : packageClasses) {
+                if (!classes.containsKey(xmlClass.getName())) {
+                    classes.put(xmlClass.getName(), xmlClass);
+                }
+            }
+        }
+        return new ArrayList<XmlClass>(classes.values());
+    }
+
+    /**
+     * Gets the test methods of a class which may run apart.
+     *
+     * @param xmlClass the class
+     * @return the methods, or null if the class must run as a whole
+     */
+    private List<String> testMethods(final XmlClass xmlClass) {
+        List<String> methods = new ArrayList<String>();
+        if (!xmlClass.getIncludedMethods().isEmpty()) {
+            for (XmlInclude include : xmlClass.getIncludedMethods()) {
+                methods.add(include.getName());
+            }
+        }
+        Class<?> testClass;
+        try {
+            testClass = Class.forName(xmlClass.getName(), false,
+                    GridDispatcher.class.getClassLoader());
+        } catch (ClassNotFoundException e) {
+            LOG.warn("Cannot load " + xmlClass.getName()
+                    + ", running it as a whole");
+            return null;
+        }
+        for (Class<?> type = testClass; type != null; type =
+                type.getSuperclass()) {
+            Test classTest = type.getAnnotation(Test.class);
+            if (classTest != null && dependsOnOthers(classTest)) {
+                return null;
+            }
+        }
+        List<String> annotated = new ArrayList<String>();
+        for (Method method : testClass.getMethods()) {
+            Test test = method.getAnnotation(Test.class);
+            if (test == null) {
+                // the public methods of a class annotated with @Test are
+                // tests, unless they configure the tests
+                Test classTest =
+                        method.getDeclaringClass().getAnnotation(Test.class);
+                if (classTest == null || isConfiguration(method)
+                        || Modifier.isStatic(method.getModifiers())) {
+                    continue;
+                }
+                test = classTest;
+            }
+            if (dependsOnOthers(test)) {
+                return null;
+            }
+            if (test.enabled() && !annotated.contains(method.getName())
+                    && !xmlClass.getExcludedMethods().contains(
+                            method.getName())) {
+                annotated.add(method.getName());
+            }
+        }
+        return methods.isEmpty() ? annotated : methods;
+    }
+
+    /**
+     * Checks whether a test depends on other tests.
+     *
+     * @param test the test annotation
+     * @return true, if it depends on methods or groups
+     */
+    private static boolean dependsOnOthers(final Test test) {
+        return test.dependsOnMethods().length > 0
+                || test.dependsOnGroups().length > 0;
+    }
+
+    /**
+     * Checks whether a method is a TestNG configuration method, data provider
+     * or factory.
+     *
+     * @param method the method
+     * @return true, if it is not a test
+     */
+    private static boolean isConfiguration(final Method method) {
+        for (Annotation annotation : method.getAnnotations()) {
+            Class<? extends Annotation> type = annotation.annotationType();
+            String name = type.getSimpleName();
+            if (type.getName().startsWith("org.testng.annotations.")
+                    && (name.startsWith("Before") || name.startsWith("After")
+                            || "DataProvider".equals(name)
+                            || "Factory".equals(name))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Runs shards on an endpoint until none are left, or the endpoint is
+     * dropped.
+     *
+     * @param endpoint the endpoint
+     */
+    private void serve(final String endpoint) {
+        int strikes = 0;
+        while (true) {
+            Run run = next(endpoint);
+            if (run == null) {
+                return;
+            }
+            if (!isHealthy(endpoint)) {
+                LOG.warn("Endpoint " + endpoint + " is down, dropping it");
+                failed(run);
+                return;
+            }
+            Boolean finished = runShard(run);
+            if (finished == null) {
+                failed(run);
+                strikes++;
+                if (strikes >= maxStrikes) {
+                    LOG.warn("Endpoint " + endpoint + " timed out " + strikes
+                            + " times, dropping it");
+                    return;
+                }
+            } else if (finished) {
+                finished(run);
+            } else if (!isHealthy(endpoint)) {
+                LOG.warn("Endpoint " + endpoint
+                        + " went down during shard " + run.shard.name
+                        + ", dropping it");
+                failed(run);
+                return;
+            } else {
+                failed(run);
+            }
+        }
+    }
+
+    /**
+     * Waits for a shard to run on an endpoint: a waiting shard, or else a
+     * running shard which is slow, as long as other shards are running.
+     *
+     * @param endpoint the endpoint
+     * @return the run, or null when no shards are left
+     */
+    private synchronized Run next(final String endpoint) {
+        while (pendingCount > 0) {
+            Shard shard = queue.poll();
+            if (shard == null) {
+                shard = slowShard(endpoint);
+                if (shard != null) {
+                    LOG.info("Running slow shard " + shard.name
+                            + " again on " + endpoint);
+                }
+            }
+            if (shard != null) {
+                shard.attempts++;
+                Run run = new Run(shard, endpoint, new File(new File(workDir,
+                        shard.name), "attempt" + shard.attempts));
+                shard.runs.add(run);
+                return run;
+            }
+            try {
+                wait(POLL_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Finds a running shard worth running again on an idle endpoint.
+     *
+     * @param endpoint the endpoint
+     * @return the shard, or null if none
+     */
+    private Shard slowShard(final String endpoint) {
+        if (slowFactor == 0 || finishedCount == 0) {
+            return null;
+        }
+        long slowNanos = slowFactor * (finishedNanos / finishedCount);
+        long now = System.nanoTime();
+        Shard slowest = null;
+        long slowestNanos = slowNanos;
+        for (Map.Entry<Shard, Run> running : runningShards().entrySet()) {
+            Shard shard = running.getKey();
+            long runNanos = now - running.getValue().startNanos;
+            if (shard.runs.size() == 1 && shard.attempts < maxAttempts
+                    && !running.getValue().endpoint.equals(endpoint)
+                    && runNanos > slowestNanos) {
+                slowest = shard;
+                slowestNanos = runNanos;
+            }
+        }
+        return slowest;
+    }
+
+    /**
+     * Gets the shards running, with their first run.
+     *
+     * @return the running shards
+     */
+    private Map<Shard, Run> runningShards() {
+        Map<Shard, Run> running = new HashMap<Shard, Run>();
+        for (Run run : activeRuns) {
+            if (!running.containsKey(run.shard)) {
+                running.put(run.shard, run);
+            }
+        }
+        return running;
+    }
+
+    /**
+     * Runs a shard in a new JVM.
+     *
+     * @param run the run
+     * @return true if the shard ran, here or elsewhere, false if it could not
+     *         run, or null if it timed out
+     */
+    private Boolean runShard(final Run run) {
+        synchronized (this) {
+            if (run.shard.report != null) {
+                return true;
+            }
+            run.startNanos = System.nanoTime();
+            activeRuns.add(run);
+            if (run.endpoint.startsWith(FAKE_NODE)) {
+                Integer started = fakeShards.get(run.endpoint);
+                fakeShards.put(run.endpoint, started == null ? 1
+                        : started + 1);
+            }
+        }
+        File reportDir = new File(run.folder, "report");
+        List<String> command = new ArrayList<String>();
+        command.add(System.getProperty("java.home") + File.separator + "bin"
+                + File.separator + "java");
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add("-D" + NODE_PROPERTY + "=" + run.endpoint);
+        command.add("-D" + Reporter.REPORT_DIR_PROPERTY + "="
+                + reportDir.getAbsolutePath());
+        command.add(TestNG.class.getName());
+        command.add("-d");
+        command.add(new File(run.folder, "testng-output").getAbsolutePath());
+        command.add(run.shard.xmlFile.getAbsolutePath());
+
+        Process process = null;
+        try {
+            if (!run.folder.exists() && !run.folder.mkdirs()) {
+                throw new IOException("Cannot create new folder in location "
+                        + run.folder.getAbsolutePath());
+            }
+            LOG.info("Running shard " + run.shard.name + " on "
+                    + run.endpoint);
+            process = new ProcessBuilder(command).redirectErrorStream(true)
+                    .redirectOutput(new File(run.folder, "output.log"))
+                    .start();
+            while (true) {
+                try {
+                    process.exitValue();
+                    break;
+                } catch (IllegalThreadStateException e) {
+                    if (run.shard.report != null) {
+                        LOG.info("Shard " + run.shard.name
+                                + " finished elsewhere, stopping it on "
+                                + run.endpoint);
+                        return true;
+                    }
+                    if (shardTimeout > 0
+                            && System.nanoTime() - run.startNanos
+                                > shardTimeout * NANOS_PER_MILLI) {
+                        LOG.warn("Shard " + run.shard.name
+                                + " timed out on " + run.endpoint);
+                        return null;
+                    }
+                    Thread.sleep(POLL_MILLIS);
+                }
+            }
+            return new File(reportDir, "report.html.data").isFile();
+        } catch (IOException e) {
+            LOG.error("Cannot run shard " + run.shard.name, e);
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            if (process != null) {
+                process.destroy();
+            }
+            synchronized (this) {
+                activeRuns.remove(run);
+            }
+        }
+    }
+
+    /**
+     * Keeps the report of a run, unless another run of its shard finished
+     * first.
+     *
+     * @param run the run
+     */
+    private synchronized void finished(final Run run) {
+        Shard shard = run.shard;
+        shard.runs.remove(run);
+        if (shard.report == null) {
+            shard.report = new File(run.folder, "report");
+            pendingCount--;
+            finishedCount++;
+            finishedNanos += System.nanoTime() - run.startNanos;
+        }
+        notifyAll();
+    }
+
+    /**
+     * Runs a shard again after a run failed, unless another run of it is in
+     * progress, it already ran, or it was started too many times.
+     *
+     * @param run the run
+     */
+    private synchronized void failed(final Run run) {
+        Shard shard = run.shard;
+        shard.runs.remove(run);
+        if (shard.report != null || !shard.runs.isEmpty()) {
+            return;
+        }
+        if (shard.attempts < maxAttempts) {
+            queue.addFirst(shard);
+        } else {
+            LOG.error("Shard " + shard.name + " failed " + shard.attempts
+                    + " times, giving up");
+            shard.runs.clear();
+            pendingCount--;
+        }
+        notifyAll();
+    }
+
+    /**
+     * Checks whether an endpoint answers.
+     *
+     * @param endpoint the endpoint
+     * @return true, if healthy
+     */
+    private boolean isHealthy(final String endpoint) {
+        if (endpoint.startsWith(FAKE_NODE)) {
+            long limit = fakeShardLimit(endpoint);
+            synchronized (this) {
+                Integer started = fakeShards.get(endpoint);
+                return limit == 0 || started == null || started < limit;
+            }
+        }
+        try {
+            HttpURLConnection connection =
+                    (HttpURLConnection) new URL(endpoint.replaceAll("/$", "")
+                            + "/status").openConnection();
+            connection.setConnectTimeout(STATUS_TIMEOUT);
+            connection.setReadTimeout(STATUS_TIMEOUT);
+            try {
+                return connection.getResponseCode() == HTTP_OK;
+            } finally {
+                connection.disconnect();
+            }
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * A part of a suite run on one endpoint at a time.
+     */
+    private static final class Shard {
+
+        /** The name. */
+        private final String name;
+
+        /** The suite of the shard. */
+        private final XmlSuite suite;
+
+        /** The test cases in the shard. */
+        private final int testCount;
+
+        /** The runs in progress. */
+        private final List<Run> runs = new ArrayList<Run>();
+
+        /** The suite file. */
+        private File xmlFile;
+
+        /** The times the shard was started. */
+        private int attempts;
+
+        /** The report of the run kept, once one finished. */
+        private volatile File report;
+
+        /**
+         * Instantiates a new shard of a suite.
+         *
+         * @param index the index of the shard
+         * @param parent the suite
+         * @param test the test
+         * @param xmlClass the class
+         * @param method the method, or null for the whole class
+         * @param tests the test cases in the shard
+         */
+        private Shard(final int index, final XmlSuite parent,
+                final XmlTest test, final XmlClass xmlClass,
+                final String method, final int tests) {
+            this.name = "shard" + index;
+            this.testCount = tests;
+            this.suite = new XmlSuite();
+            suite.setName(parent.getName());
+            suite.setParameters(parent.getParameters());
+            suite.setListeners(parent.getListeners());
+            suite.setVerbose(parent.getVerbose());
+
+            XmlTest shardTest = new XmlTest(suite);
+            shardTest.setName(test.getName());
+            shardTest.setParameters(test.getParameters());
+            shardTest.setIncludedGroups(test.getIncludedGroups());
+            shardTest.setExcludedGroups(test.getExcludedGroups());
+            shardTest.setPreserveOrder(test.getPreserveOrder());
+
+            XmlClass shardClass = new XmlClass(xmlClass.getName(), false);
+            if (method == null) {
+                shardClass.setIncludedMethods(xmlClass.getIncludedMethods());
+                shardClass.setExcludedMethods(xmlClass.getExcludedMethods());
+            } else {
+                shardClass.setIncludedMethods(new ArrayList<XmlInclude>(
+                        Arrays.asList(new XmlInclude(method))));
+            }
+            shardTest.getXmlClasses().add(shardClass);
+        }
+    }
+
+    /**
+     * A run of a shard on an endpoint.
+     */
+    private static final class Run {
+
+        /** The shard. */
+        private final Shard shard;
+
+        /** The endpoint. */
+        private final String endpoint;
+
+        /** The folder of the run. */
+        private final File folder;
+
+        /** The start of the run, in nanoseconds. */
+        private long startNanos;
+
+        /**
+         * Instantiates a new run.
+         *
+         * @param runShard the shard
+         * @param runEndpoint the endpoint
+         * @param runFolder the folder of the run
+         */
+        private Run(final Shard runShard, final String runEndpoint,
+                final File runFolder) {
+            this.shard = runShard;
+            this.endpoint = runEndpoint;
+            this.folder = runFolder;
+        }
+    }
+}
@@ -0,0 +1,397 @@
+/*
+ * Copyright 2004 ThoughtWorks, Inc. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law
+ * or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package com.virtusa.isq.vtaf.runtime;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+import org.openqa.selenium.Dimension;
+import org.openqa.selenium.chrome.ChromeOptions;
+import org.openqa.selenium.firefox.FirefoxBinary;
+import org.openqa.selenium.firefox.FirefoxProfile;
+
+import com.virtusa.isq.vtaf.utils.PropertyHandler;
+
+/**
+ * The options the browsers are launched with, read once per suite from the
+ * runtime properties and compiled into the Chrome options and the Firefox
+ * preferences shared by all the sessions.<br>
+ * The options are:
+ * <ul>
+ * <li><i>LAUNCH_HEADLESS</i>: runs the browsers without a window; Chrome is
+ * started with --headless and Firefox with MOZ_HEADLESS</li>
+ * <li><i>LAUNCH_DISPLAY</i>: the X display the browsers are started on, e.g. a
+ * virtual frame buffer</li>
+ * <li><i>LAUNCH_VIEWPORT</i>: the window size, e.g. 1366x768, instead of
+ * maximizing the window</li>
+ * <li><i>LAUNCH_IMAGES</i>: false disables the images</li>
+ * <li><i>LAUNCH_JAVASCRIPT</i>: false disables JavaScript, for the pages which
+ * work without it</li>
+ * <li><i>LAUNCH_LEAN</i>: turns off the GPU, the extensions, the background
+ * networking, the updates and the telemetry</li>
+ * <li><i>LAUNCH_PAGE_LOAD_TIMEOUT</i>: the page load timeout in seconds</li>
+ * <li><i>LAUNCH_CHROME_ARGS</i>: extra Chrome switches, comma separated</li>
+ * </ul>
+ * Several profiles can be kept in the same file. The option
+ * <i>&lt;OPTION&gt;.&lt;profile&gt;</i> overrides <i>&lt;OPTION&gt;</i> when
+ * <i>LAUNCH_PROFILE=&lt;profile&gt;</i>, e.g. <i>LAUNCH_HEADLESS.ci=true</i>.
+ */
+public final class LaunchProfile {
+
+    /** The default page load timeout in seconds. */
+    private static final int DEFAULT_PAGE_LOAD_TIMEOUT = 300;
+
+    /** The Chrome content setting which blocks a content type. */
+    private static final int CHROME_BLOCK = 2;
+
+    /** The Firefox permission which blocks the images. */
+    private static final int FIREFOX_BLOCK_IMAGES = 2;
+
+    /** The Chrome switches which turn off the unused services. */
+    private static final String[] CHROME_LEAN_ARGS = {"--disable-gpu",
+            "--disable-extensions", "--disable-background-networking",
+            "--disable-component-update", "--disable-default-apps",
+            "--disable-sync", "--disable-translate", "--metrics-recording-only",
+            "--no-first-run", "--safebrowsing-disable-auto-update",
+            "--mute-audio" };
+
+    /** The shared profile. */
+    private static LaunchProfile instance;
+
+    /** The log. */
+    private static final Logger LOG = Logger.getLogger(LaunchProfile.class);
+
+    /** The profile name, empty for the default. */
+    private final String name;
+
+    /** Whether the browsers run without a window. */
+    private final boolean headless;
+
+    /** The X display, empty for the default. */
+    private final String display;
+
+    /** The window size, or null to maximize. */
+    private final Dimension viewport;
+
+    /** Whether the images are loaded. */
+    private final boolean images;
+
+    /** Whether JavaScript is enabled. */
+    private final boolean javascript;
+
+    /** Whether the unused services are turned off. */
+    private final boolean lean;
+
+    /** The page load timeout in seconds. */
+    private final int pageLoadTimeout;
+
+    /** The Chrome options shared by the sessions. */
+    private final ChromeOptions chromeOptions;
+
+    /** The Firefox preferences. */
+    private final Map<String, Object> firefoxPreferences;
+
+    /** The Firefox environment. */
+    private final Map<String, String> firefoxEnvironment;
+
+    /**
+     * Instantiates a new launch profile from the runtime properties.
+     *
+     * @param propHandler the runtime properties
+     */
+    private LaunchProfile(final PropertyHandler propHandler) {
+        this.name = propHandler.getRuntimeProperty("LAUNCH_PROFILE", "").trim();
+        this.headless = getBoolean(propHandler, "LAUNCH_HEADLESS", false);
+        this.display = getString(propHandler, "LAUNCH_DISPLAY", "");
+        this.viewport =
+                parseViewport(getString(propHandler, "LAUNCH_VIEWPORT", ""));
+        this.images = getBoolean(propHandler, "LAUNCH_IMAGES", true);
+        this.javascript = getBoolean(propHandler, "LAUNCH_JAVASCRIPT", true);
+        this.lean = getBoolean(propHandler, "LAUNCH_LEAN", false);
+        this.pageLoadTimeout =
+                getInt(propHandler, "LAUNCH_PAGE_LOAD_TIMEOUT",
+                        DEFAULT_PAGE_LOAD_TIMEOUT);
+        this.chromeOptions =
+                compileChromeOptions(getString(propHandler,
+                        "LAUNCH_CHROME_ARGS", ""));
+        this.firefoxPreferences = compileFirefoxPreferences();
+        this.firefoxEnvironment = compileFirefoxEnvironment();
+    }
+
+    /**
+     * Gets the shared profile configured from the runtime properties.
+     *
+     * @return the launch profile
+     */
+    public static synchronized LaunchProfile getInstance() {
+        if (instance == null) {
+            instance =
+                    new LaunchProfile(new PropertyHandler("runtime.properties"));
+            LOG.info("Launch profile : " + instance);
+        }
+        return instance;
+    }
+
+    /**
+     * Checks if the browsers run without a window.
+     *
+     * @return true, if headless
+     */
+    public boolean isHeadless() {
+        return headless;
+    }
+
+    /**
+     * Gets the window size.
+     *
+     * @return the window size, or null to maximize the window
+     */
+    public Dimension getViewport() {
+        return viewport;
+    }
+
+    /**
+     * Gets the page load timeout.
+     *
+     * @return the page load timeout in seconds
+     */
+    public int getPageLoadTimeout() {
+        return pageLoadTimeout;
+    }
+
+    /**
+     * Gets the Chrome options shared by the sessions.
+     *
+     * @return the Chrome options
+     */
+    public ChromeOptions getChromeOptions() {
+        return chromeOptions;
+    }
+
+    /**
+     * Applies the preferences of the profile to a Firefox profile.
+     *
+     * @param profile the Firefox profile
+     * @return the Firefox profile
+     */
+    public FirefoxProfile configure(final FirefoxProfile profile) {
+        for (Map.Entry<String, Object> preference : firefoxPreferences
+                .entrySet()) {
+            Object value = preference.getValue();
+            if (value instanceof Boolean) {
+                profile.setPreference(preference.getKey(),
+                        ((Boolean) value).booleanValue());
+            } else if (value instanceof Integer) {
+                profile.setPreference(preference.getKey(),
+                        ((Integer) value).intValue());
+            } else {
+                profile.setPreference(preference.getKey(),
+                        String.valueOf(value));
+            }
+        }
+        return profile;
+    }
+
+    /**
+     * Creates the Firefox binary of a session, with the environment of the
+     * profile.
+     *
+     * @return the Firefox binary
+     */
+    public FirefoxBinary createFirefoxBinary() {
+        FirefoxBinary binary = new FirefoxBinary();
+        for (Map.Entry<String, String> variable : firefoxEnvironment
+                .entrySet()) {
+            binary.setEnvironmentProperty(variable.getKey(),
+                    variable.getValue());
+        }
+        return binary;
+    }
+
+    /**
+     * Compiles the Chrome options.
+     *
+     * @param extraArgs the extra switches, comma separated
+     * @return the Chrome options
+     */
+    private ChromeOptions compileChromeOptions(final String extraArgs) {
+        List<String> args = new ArrayList<String>();
+        if (headless) {
+            args.add("--headless");
+            args.add("--disable-gpu");
+        }
+        if (viewport != null) {
+            args.add("--window-size=" + viewport.getWidth() + ","
+                    + viewport.getHeight());
+        }
+        if (lean) {
+            for (String arg : CHROME_LEAN_ARGS) {
+                if (!args.contains(arg)) {
+                    args.add(arg);
+                }
+            }
+        }
+        for (String arg : extraArgs.split(",")) {
+            if (!arg.trim().isEmpty()) {
+                args.add(arg.trim());
+            }
+        }
+        ChromeOptions options = new ChromeOptions();
+        options.addArguments(args);
+
+        Map<String, Object> prefs = new HashMap<String, Object>();
+        if (!images) {
+            prefs.put("profile.managed_default_content_settings.images",
+                    CHROME_BLOCK);
+        }
+        if (!javascript) {
+            prefs.put("profile.managed_default_content_settings.javascript",
+                    CHROME_BLOCK);
+        }
+        if (!prefs.isEmpty()) {
+            options.setExperimentalOptions("prefs", prefs);
+        }
+        return options;
+    }
+
+    /**
+     * Compiles the Firefox preferences.
+     *
+     * @return the preferences
+     */
+    private Map<String, Object> compileFirefoxPreferences() {
+        Map<String, Object> prefs = new LinkedHashMap<String, Object>();
+        if (!images) {
+            prefs.put("permissions.default.image", FIREFOX_BLOCK_IMAGES);
+        }
+        if (!javascript) {
+            prefs.put("javascript.enabled", Boolean.FALSE);
+        }
+        if (lean) {
+            prefs.put("layers.acceleration.disabled", Boolean.TRUE);
+            prefs.put("gfx.direct2d.disabled", Boolean.TRUE);
+            // the updates, the telemetry and safe browsing are already turned
+            // off by the preferences the driver freezes
+            prefs.put("datareporting.healthreport.uploadEnabled", Boolean.FALSE);
+            prefs.put("datareporting.policy.dataSubmissionEnabled",
+                    Boolean.FALSE);
+            prefs.put("browser.cache.disk.enable", Boolean.FALSE);
+            prefs.put("browser.sessionhistory.max_total_viewers", 0);
+            prefs.put("media.autoplay.enabled", Boolean.FALSE);
+        }
+        return Collections.unmodifiableMap(prefs);
+    }
+
+    /**
+     * Compiles the Firefox environment.
+     *
+     * @return the environment variables
+     */
+    private Map<String, String> compileFirefoxEnvironment() {
+        Map<String, String> environment = new LinkedHashMap<String, String>();
+        if (headless) {
+            environment.put("MOZ_HEADLESS", "1");
+        }
+        if (!display.isEmpty()) {
+            environment.put("DISPLAY", display);
+        }
+        return Collections.unmodifiableMap(environment);
+    }
+
+    /**
+     * Parses a window size such as 1366x768.
+     *
+     * @param value the window size
+     * @return the window size, or null if empty or invalid
+     */
+    private static Dimension parseViewport(final String value) {
+        String[] size = value.toLowerCase(Locale.ENGLISH).split("x");
+        if (size.length != 2) {
+            return null;
+        }
+        try {
+            return new Dimension(Integer.parseInt(size[0].trim()),
+                    Integer.parseInt(size[1].trim()));
+        } catch (NumberFormatException e) {
+            LOG.info("Invalid viewport " + value + ", maximizing instead");
+            return null;
+        }
+    }
+
+    /**
+     * Gets an option of the profile.
+     *
+     * @param propHandler the runtime properties
+     * @param key the option
+     * @param defaultValue the default value
+     * @return the value
+     */
+    private String getString(final PropertyHandler propHandler,
+            final String key, final String defaultValue) {
+        String value = propHandler.getRuntimeProperty(key, defaultValue);
+        if (!name.isEmpty()) {
+            value = propHandler.getRuntimeProperty(key + "." + name, value);
+        }
+        return value.trim();
+    }
+
+    /**
+     * Gets a boolean option of the profile.
+     *
+     * @param propHandler the runtime properties
+     * @param key the option
+     * @param defaultValue the default value
+     * @return the value
+     */
+    private boolean getBoolean(final PropertyHandler propHandler,
+            final String key, final boolean defaultValue) {
+        return Boolean.parseBoolean(getString(propHandler, key,
+                String.valueOf(defaultValue)));
+    }
+
+    /**
+     * Gets an integer option of the profile.
+     *
+     * @param propHandler the runtime properties
+     * @param key the option
+     * @param defaultValue the default value
+     * @return the value
+     */
+    private int getInt(final PropertyHandler propHandler, final String key,
+            final int defaultValue) {
+        try {
+            return Integer.parseInt(getString(propHandler, key,
+                    String.valueOf(defaultValue)));
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return (name.isEmpty() ? "default" : name) + " [headless=" + headless
+                + ", viewport="
+                + (viewport == null ? "maximized" : viewport.getWidth() + "x"
+                        + viewport.getHeight()) + ", images=" + images
+                + ", javascript=" + javascript + ", lean=" + lean
+                + ", pageLoadTimeout=" + pageLoadTimeout + "s]";
+    }
+}
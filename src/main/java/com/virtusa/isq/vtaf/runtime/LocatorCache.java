@@ -0,0 +1,189 @@
+/*
+ * Copyright 2004 ThoughtWorks, Inc. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law
+ * or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package com.virtusa.isq.vtaf.runtime;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.virtusa.isq.vtaf.utils.PropertyHandler;
+
+/**
+ * Bounded least recently used cache of {@link CompiledLocator}s keyed by the
+ * raw locator string. The capacity can be configured through the
+ * <i>LOCATOR_CACHE_SIZE</i> runtime property.
+ */
+public final class LocatorCache {
+
+    /** The default capacity of the cache. */
+    private static final int DEFAULT_CAPACITY = 2048;
+
+    /** The shared cache instance. */
+    private static LocatorCache instance;
+
+    /** The maximum number of locators kept in the cache. */
+    private final int capacity;
+
+    /** The cached locators in access order. */
+    private final Map<String, CompiledLocator> entries;
+
+    /** The hit count. */
+    private final AtomicLong hitCount = new AtomicLong();
+
+    /** The miss count. */
+    private final AtomicLong missCount = new AtomicLong();
+
+    /** The eviction count. */
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    /**
+     * Instantiates a new locator cache.
+     *
+     * @param maxEntries the maximum number of locators kept in the cache
+     */
+    public LocatorCache(final int maxEntries) {
+        this.capacity = Math.max(1, maxEntries);
+        final int initialCapacity = 16;
+        final float loadFactor = 0.75f;
+        this.entries =
+                new LinkedHashMap<String, CompiledLocator>(initialCapacity,
+                        loadFactor,
+                        true) {
+
+                    private static final long serialVersionUID = 1L;
+
+                    @Override
+                    protected boolean removeEldestEntry(
+                            final Map.Entry<String, CompiledLocator> eldest) {
+                        if (size() > capacity) {
+                            evictionCount.incrementAndGet();
+                            return true;
+                        }
+                        return false;
+                    }
+                };
+    }
+
+    /**
+     * Gets the shared cache instance.
+     *
+     * @return the locator cache
+     */
+    public static synchronized LocatorCache getInstance() {
+        if (instance == null) {
+            PropertyHandler propHandler =
+                    new PropertyHandler("runtime.properties");
+            instance =
+                    new LocatorCache(propHandler.getIntRuntimeProperty(
+                            "LOCATOR_CACHE_SIZE", DEFAULT_CAPACITY));
+        }
+        return instance;
+    }
+
+    /**
+     * Gets the compiled form of the given locator, compiling and caching it
+     * on the first use.
+     *
+     * @param objectID the locator string
+     * @return the compiled locator
+     * @throws Exception if the locator type is not supported
+     */
+    public CompiledLocator get(final String objectID) throws Exception {
+        CompiledLocator compiled;
+        synchronized (entries) {
+            compiled = entries.get(objectID);
+        }
+        if (compiled != null) {
+            hitCount.incrementAndGet();
+            return compiled;
+        }
+        missCount.incrementAndGet();
+        compiled = CompiledLocator.compile(objectID);
+        synchronized (entries) {
+            entries.put(objectID, compiled);
+        }
+        return compiled;
+    }
+
+    /**
+     * Gets the capacity.
+     *
+     * @return the capacity
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Gets the number of cached locators.
+     *
+     * @return the size
+     */
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * Gets the hit count.
+     *
+     * @return the hit count
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * Gets the miss count.
+     *
+     * @return the miss count
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * Gets the eviction count.
+     *
+     * @return the eviction count
+     */
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    /**
+     * Gets the ratio of the lookups served from the cache.
+     *
+     * @return the hit ratio, between 0 and 1
+     */
+    public double getHitRatio() {
+        long hits = hitCount.get();
+        long total = hits + missCount.get();
+        if (total == 0) {
+            return 0;
+        }
+        return (double) hits / total;
+    }
+
+    /**
+     * Clears the cached locators and resets the counters.
+     */
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+        hitCount.set(0);
+        missCount.set(0);
+        evictionCount.set(0);
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright 2004 ThoughtWorks, Inc. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law
+ * or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package com.virtusa.isq.vtaf.runtime;
+
+import java.util.List;
+
+import org.apache.log4j.Logger;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.TimeoutException;
+import org.openqa.selenium.WebDriver;
+
+import com.google.common.base.Function;
+import com.virtusa.isq.vtaf.utils.PropertyHandler;
+
+/**
+ * Detects when a page is ready to be used, so that the commands do not have
+ * to sleep for a fixed time after a navigation.<br>
+ * A page is ready when
+ * <ul>
+ * <li>the document has finished loading</li>
+ * <li>no XMLHttpRequest or fetch call started by the page is pending</li>
+ * <li>neither requests nor DOM mutations have happened for a quiet period</li>
+ * </ul>
+ * The request and mutation tracking is injected into the page by the first
+ * check after the page is loaded.<br>
+ * Configured through the runtime properties <i>PAGE_READY</i> (enables the
+ * detection after navigation, default false) and <i>PAGE_READY_QUIET</i> (the
+ * quiet period in milliseconds).
+ */
+public final class PageReadiness {
+
+    /** The default quiet period in milliseconds. */
+    private static final int DEFAULT_QUIET_PERIOD = 300;
+
+    /**
+     * The script which installs the tracking when missing and returns the
+     * ready state, the pending requests and the time since the last activity.
+     */
+    private static final String READINESS_SCRIPT =
+            "var w = window;"
+            + "if (!w.__vtafReady) {"
+            + " w.__vtafReady = {pending: 0, last: new Date().getTime()};"
+            + " var state = w.__vtafReady;"
+            + " var touch = function() { state.last = new Date().getTime(); };"
+            + " var done = function() {"
+            + " state.pending = Math.max(0, state.pending - 1); touch(); };"
+            + " if (w.XMLHttpRequest) {"
+            + " var send = w.XMLHttpRequest.prototype.send;"
+            + " w.XMLHttpRequest.prototype.send = function() {"
+            + " var xhr = this, finished = false;"
+            + " state.pending++; touch();"
+            + " var end = function() { if (!finished) { finished = true; done(); } };"
+            + " if (xhr.addEventListener) {"
+            + " xhr.addEventListener('loadend', end, false);"
+            + " xhr.addEventListener('abort', end, false);"
+            + " xhr.addEventListener('error', end, false);"
+            + " xhr.addEventListener('load', end, false);"
+            + " } else { var change = xhr.onreadystatechange;"
+            + " xhr.onreadystatechange = function() {"
+            + " if (xhr.readyState === 4) { end(); }"
+            + " if (change) { return change.apply(xhr, arguments); } }; }"
+            + " try { return send.apply(xhr, arguments); }"
+            + " catch (e) { end(); throw e; } }; }"
+            + " if (w.fetch) {"
+            + " var fetch = w.fetch;"
+            + " w.fetch = function() {"
+            + " state.pending++; touch();"
+            + " return fetch.apply(this, arguments).then("
+            + " function(r) { done(); return r; },"
+            + " function(e) { done(); throw e; }); }; }"
+            + " if (w.MutationObserver && document.documentElement) {"
+            + " new MutationObserver(touch).observe(document.documentElement,"
+            + " {childList: true, subtree: true, attributes: true,"
+            + " characterData: true}); }"
+            + "}"
+            + "return [document.readyState, w.__vtafReady.pending,"
+            + " new Date().getTime() - w.__vtafReady.last];";
+
+    /** The shared instance. */
+    private static PageReadiness instance;
+
+    /** The log. */
+    private static final Logger LOG = Logger.getLogger(PageReadiness.class);
+
+    /** Whether the detection is applied after navigation. */
+    private final boolean enabled;
+
+    /** The quiet period in milliseconds. */
+    private final long quietPeriodMillis;
+
+    /**
+     * Instantiates a new page readiness detector.
+     *
+     * @param detectionEnabled whether the detection is applied after
+     *            navigation
+     * @param quietPeriod the quiet period in milliseconds
+     */
+    public PageReadiness(final boolean detectionEnabled, final long quietPeriod) {
+        this.enabled = detectionEnabled;
+        this.quietPeriodMillis = Math.max(0, quietPeriod);
+    }
+
+    /**
+     * Gets the shared instance configured from the runtime properties.
+     *
+     * @return the page readiness detector
+     */
+    public static synchronized PageReadiness getInstance() {
+        if (instance == null) {
+            PropertyHandler propHandler =
+                    new PropertyHandler("runtime.properties");
+            instance =
+                    new PageReadiness(propHandler.getBooleanRuntimeProperty(
+                            "PAGE_READY", false),
+                            propHandler.getIntRuntimeProperty(
+                                    "PAGE_READY_QUIET", DEFAULT_QUIET_PERIOD));
+        }
+        return instance;
+    }
+
+    /**
+     * Checks if the detection is applied after navigation.
+     *
+     * @return true, if enabled
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Waits until the current page is ready, or until the timeout expires.
+     * Drivers which cannot run scripts wait for the whole timeout.
+     *
+     * @param driver the driver
+     * @param timeoutMillis the timeout in milliseconds
+     * @return true, if the page became ready before the timeout
+     */
+    public boolean waitForPageReady(final WebDriver driver,
+            final long timeoutMillis) {
+        if (!(driver instanceof JavascriptExecutor)) {
+            sleep(timeoutMillis);
+            return false;
+        }
+        try {
+            WaitEngine.getInstance().until(driver,
+                    new Function<WebDriver, Boolean>() {
+
+                        @Override
+                        public Boolean apply(final WebDriver webDriver) {
+                            return isReady((JavascriptExecutor) webDriver);
+                        }
+
+                        @Override
+                        public String toString() {
+                            return "page ready";
+                        }
+                    }, timeoutMillis, null);
+            return true;
+        } catch (TimeoutException e) {
+            LOG.info("Page not ready after " + timeoutMillis + " ms, continuing");
+            return false;
+        }
+    }
+
+    /**
+     * Checks once if the page is ready.
+     *
+     * @param executor the script executor
+     * @return true, if ready
+     */
+    private boolean isReady(final JavascriptExecutor executor) {
+        List< ? > state = (List< ? >) executor.executeScript(READINESS_SCRIPT);
+        final int readyState = 0;
+        final int pending = 1;
+        final int idle = 2;
+        return "complete".equals(state.get(readyState))
+                && ((Number) state.get(pending)).intValue() == 0
+                && ((Number) state.get(idle)).longValue() >= quietPeriodMillis;
+    }
+
+    /**
+     * Sleeps for the given time.
+     *
+     * @param millis the time in milliseconds
+     */
+    private void sleep(final long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
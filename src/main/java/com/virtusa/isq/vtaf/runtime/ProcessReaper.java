@@ -0,0 +1,813 @@
+/*
+ * Copyright 2004 ThoughtWorks, Inc. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law
+ * or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package com.virtusa.isq.vtaf.runtime;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.remote.RemoteWebDriver;
+
+import com.sun.jna.Library;
+import com.sun.jna.Native;
+import com.sun.jna.Pointer;
+import com.virtusa.isq.vtaf.utils.PropertyHandler;
+
+/**
+ * Terminates the browser and driver server processes started by this
+ * runtime.<br>
+ * The processes of a driver are the process it started itself, the driver
+ * server or the Firefox binary, and the descendants of that process. The
+ * process is found from the driver once it is launched, so that launches
+ * run at the same time without being told apart by the process table.
+ * Drivers which start no local process, such as the grid and fake drivers,
+ * are not tracked. When a driver ends, its processes still running are
+ * asked to terminate, waited for, and killed if they do not exit in time.
+ * Processes of other sessions on the same machine are never touched. A
+ * launch which fails is left to the driver to clean up. In blanket mode the
+ * launches are not tracked.<br>
+ * The process tree is read from /proc on Linux, from <i>ps</i> on other
+ * Unix systems, and from <i>wmic</i> on Windows, or from PowerShell where
+ * wmic is no longer installed. Without /proc, the exit of the processes is
+ * checked with a lighter listing (<i>ps -p</i> or <i>tasklist</i>) at
+ * growing intervals.<br>
+ * Configured through the runtime properties:
+ * <ul>
+ * <li><i>PROCESS_KILL_MODE</i>: <i>tracked</i> (default) only terminates the
+ * tracked processes; <i>blanket</i> also kills every process of the browser
+ * type between the tests, as in the previous versions</li>
+ * <li><i>PROCESS_EXIT_TIMEOUT</i>: the milliseconds given to a process to
+ * exit before it is killed</li>
+ * </ul>
+ */
+public final class ProcessReaper {
+
+    /** The default exit timeout in milliseconds. */
+    private static final int DEFAULT_EXIT_TIMEOUT = 5000;
+
+    /** The interval between the exit checks in milliseconds. */
+    private static final long EXIT_POLL_INTERVAL = 100;
+
+    /**
+     * The longest interval between the exit checks in milliseconds, when
+     * each check runs a command.
+     */
+    private static final long MAX_EXIT_POLL_INTERVAL = 1000;
+
+    /** The PowerShell command listing the processes in the wmic csv form. */
+    private static final String POWERSHELL_PROCESSES =
+            "Get-CimInstance Win32_Process | ForEach-Object {"
+                    + " $env:COMPUTERNAME + ',' + $_.Name + ','"
+                    + " + $_.ParentProcessId + ',' + $_.ProcessId }";
+
+    /** The shared reaper. */
+    private static ProcessReaper instance;
+
+    /** The log. */
+    private static final Logger LOG = Logger.getLogger(ProcessReaper.class);
+
+    /** Whether every process of a browser type is killed between tests. */
+    private final boolean blanket;
+
+    /** The exit timeout in milliseconds. */
+    private final long exitTimeoutMillis;
+
+    /** Whether the system is Windows. */
+    private final boolean windows;
+
+    /** Whether the process tree can be read from /proc. */
+    private final boolean procfs;
+
+    /** The process id of the JVM, or -1 if unknown. */
+    private final int ownPid;
+
+    /** Whether wmic may still list the processes, on Windows. */
+    private volatile boolean wmic = true;
+
+    /** The processes started by each driver. */
+    private final Map<WebDriver, Set<Integer>> trackedProcesses =
+            new IdentityHashMap<WebDriver, Set<Integer>>();
+
+    /**
+     * Instantiates a new process reaper.
+     *
+     * @param blanketKill whether every process of a browser type is killed
+     *            between tests
+     * @param exitTimeout the exit timeout in milliseconds
+     */
+    public ProcessReaper(final boolean blanketKill, final long exitTimeout) {
+        this.blanket = blanketKill;
+        this.exitTimeoutMillis = Math.max(0, exitTimeout);
+        this.windows =
+                System.getProperty("os.name").toLowerCase(Locale.ENGLISH)
+                        .contains("win");
+        this.procfs = new File("/proc/self/stat").exists();
+        this.ownPid = readOwnPid();
+    }
+
+    /**
+     * Gets the shared reaper configured from the runtime properties.
+     *
+     * @return the reaper
+     */
+    public static synchronized ProcessReaper getInstance() {
+        if (instance == null) {
+            PropertyHandler propHandler =
+                    new PropertyHandler("runtime.properties");
+            instance =
+                    new ProcessReaper("blanket".equalsIgnoreCase(propHandler
+                            .getRuntimeProperty("PROCESS_KILL_MODE", "tracked")),
+                            propHandler.getIntRuntimeProperty(
+                                    "PROCESS_EXIT_TIMEOUT",
+                                    DEFAULT_EXIT_TIMEOUT));
+        }
+        return instance;
+    }
+
+    /**
+     * Checks if every process of a browser type is killed between tests.
+     *
+     * @return true, if blanket kills are enabled
+     */
+    public boolean isBlanket() {
+        return blanket;
+    }
+
+    /**
+     * Launches a driver and tracks the processes it started.
+     *
+     * @param browserString the browser string
+     * @param factory the factory launching the driver
+     * @return the driver
+     */
+    public WebDriver launch(final String browserString,
+            final BrowserSessionPool.DriverFactory factory) {
+        WebDriver driver = factory.create(browserString);
+        if (!blanket) {
+            track(driver);
+        }
+        return driver;
+    }
+
+    /**
+     * Tracks the process a driver started and its descendants, when the
+     * driver started a local process.
+     *
+     * @param driver the driver
+     */
+    private void track(final WebDriver driver) {
+        int pid = driverPid(driver);
+        if (pid < 0) {
+            return;
+        }
+        // the browser is a child of the driver server, recorded now as it
+        // may outlive the server when the driver is quit
+        Set<Integer> pids = new LinkedHashSet<Integer>();
+        pids.add(pid);
+        pids.addAll(descendants(snapshot(), pid));
+        synchronized (trackedProcesses) {
+            trackedProcesses.put(driver, pids);
+        }
+    }
+
+    /**
+     * Gets the id of the process a driver started: the process of its driver
+     * service, or of the Firefox binary.
+     *
+     * @param driver the driver
+     * @return the process id, or -1 if the driver started no local process,
+     *         or it cannot be found
+     */
+    private int driverPid(final WebDriver driver) {
+        if (!(driver instanceof RemoteWebDriver)
+                || driver.getClass() == RemoteWebDriver.class) {
+            return -1;
+        }
+        Object executor = ((RemoteWebDriver) driver).getCommandExecutor();
+        Object owner = field(executor, "service");
+        if (owner == null) {
+            owner = field(executor, "binary");
+        }
+        // CommandLine -> OsProcess -> its watchdog -> the java.lang.Process
+        Object process =
+                field(field(field(field(owner, "process"), "process"),
+                        "executeWatchdog"), "process");
+        if (!(process instanceof Process)) {
+            LOG.debug("Cannot find the process of "
+                    + driver.getClass().getSimpleName());
+            return -1;
+        }
+        return processId((Process) process);
+    }
+
+    /**
+     * Gets the id of a process.
+     *
+     * @param process the process
+     * @return the process id, or -1 if unknown
+     */
+    private int processId(final Process process) {
+        try {
+            // Java 9 and later
+            Method pid = Process.class.getMethod("pid");
+            return ((Number) pid.invoke(process)).intValue();
+        } catch (NoSuchMethodException e) {
+            Object pid = field(process, "pid");
+            if (pid instanceof Integer) {
+                return (Integer) pid;
+            }
+            Object handle = field(process, "handle");
+            if (windows && handle instanceof Long) {
+                try {
+                    return ((Kernel32) Native.loadLibrary("kernel32",
+                            Kernel32.class)).GetProcessId(new Pointer(
+                            (Long) handle));
+                } catch (Throwable t) {
+                    LOG.debug("Cannot read the process id : " + t.getMessage());
+                }
+            }
+        } catch (IllegalAccessException e) {
+            LOG.debug("Cannot read the process id : " + e.getMessage());
+        } catch (InvocationTargetException e) {
+            LOG.debug("Cannot read the process id : " + e.getMessage());
+        }
+        return -1;
+    }
+
+    /**
+     * Reads a field of an object, declared by its class or a superclass.
+     *
+     * @param target the object, or null
+     * @param name the field name
+     * @return the value, or null if the object has no such field
+     */
+    private static Object field(final Object target, final String name) {
+        if (target == null) {
+            return null;
+        }
+        for (Class< ? > type = target.getClass(); type != null; type =
+                type.getSuperclass()) {
+            try {
+                Field field = type.getDeclaredField(name);
+                field.setAccessible(true);
+                return field.get(target);
+            } catch (NoSuchFieldException e) {
+                continue;
+            } catch (Exception e) {
+                // e.g. not accessible on a newer runtime
+                return null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Terminates the processes a driver started which are still running.
+     * Called after the driver is quit.
+     *
+     * @param driver the driver
+     */
+    public void release(final WebDriver driver) {
+        Set<Integer> pids;
+        synchronized (trackedProcesses) {
+            pids = trackedProcesses.remove(driver);
+        }
+        if (pids != null && !pids.isEmpty()) {
+            terminate(pids);
+        }
+    }
+
+    /**
+     * Terminates the processes of all the tracked drivers.
+     */
+    public void releaseAll() {
+        Set<Integer> pids = new LinkedHashSet<Integer>();
+        synchronized (trackedProcesses) {
+            for (Set<Integer> started : trackedProcesses.values()) {
+                pids.addAll(started);
+            }
+            trackedProcesses.clear();
+        }
+        if (!pids.isEmpty()) {
+            terminate(pids);
+        }
+    }
+
+    /**
+     * Checks if a process of the given name is running on the machine.
+     *
+     * @param processName the process name, with or without the .exe
+     *            extension
+     * @return true, if a process of the name is running
+     */
+    public boolean isRunning(final String processName) {
+        return !named(snapshot(), processName).isEmpty();
+    }
+
+    /**
+     * Kills every process of the given name on the machine, and waits for
+     * them to exit.
+     *
+     * @param processName the process name, with or without the .exe
+     *            extension
+     * @return true, if processes were killed
+     */
+    public boolean killAll(final String processName) {
+        Set<Integer> pids = named(snapshot(), processName);
+        if (pids.isEmpty()) {
+            return false;
+        }
+        if (windows) {
+            run("taskkill", "/F", "/T", "/IM", baseName(processName) + ".exe");
+        } else {
+            signal("-KILL", pids);
+        }
+        if (!awaitExit(pids)) {
+            LOG.info(processName + " processes still running : " + pids);
+        }
+        return true;
+    }
+
+    /**
+     * Terminates processes and their children, waiting for them to exit and
+     * killing them if they do not exit in time.
+     *
+     * @param pids the process ids
+     */
+    private void terminate(final Set<Integer> pids) {
+        Map<Integer, ProcessInfo> processes = snapshot();
+        Set<Integer> alive = new LinkedHashSet<Integer>();
+        for (Integer pid : pids) {
+            if (processes.containsKey(pid)) {
+                alive.add(pid);
+                alive.addAll(descendants(processes, pid));
+            }
+        }
+        if (alive.isEmpty()) {
+            return;
+        }
+        if (windows) {
+            run(taskkillArgs(false, alive));
+        } else {
+            signal("-TERM", alive);
+        }
+        if (awaitExit(alive)) {
+            return;
+        }
+        LOG.info("Killing the processes which did not exit : " + alive);
+        if (windows) {
+            run(taskkillArgs(true, alive));
+        } else {
+            signal("-KILL", alive);
+        }
+        awaitExit(alive);
+    }
+
+    /**
+     * Waits for processes to exit.
+     *
+     * @param pids the process ids; the processes which exited are removed
+     * @return true, if all the processes exited before the exit timeout
+     */
+    private boolean awaitExit(final Set<Integer> pids) {
+        long deadline = System.currentTimeMillis() + exitTimeoutMillis;
+        long interval = EXIT_POLL_INTERVAL;
+        while (true) {
+            pids.retainAll(running(pids));
+            if (pids.isEmpty()) {
+                return true;
+            }
+            if (System.currentTimeMillis() >= deadline) {
+                return false;
+            }
+            try {
+                Thread.sleep(Math.min(interval,
+                        Math.max(1, deadline - System.currentTimeMillis())));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+            if (!procfs) {
+                interval = Math.min(MAX_EXIT_POLL_INTERVAL, interval * 2);
+            }
+        }
+    }
+
+    /**
+     * Gets the processes of the given ids which are still running.
+     *
+     * @param pids the process ids
+     * @return the running process ids
+     */
+    private Set<Integer> running(final Set<Integer> pids) {
+        Set<Integer> running = new HashSet<Integer>();
+        if (procfs) {
+            for (Integer pid : pids) {
+                String stat = readFile(new File("/proc/" + pid + "/stat"));
+                int close = stat.lastIndexOf(')');
+                // exited processes not yet reaped by their parent are zombies
+                if (close > 0 && close + 2 < stat.length()
+                        && stat.charAt(close + 2) != 'Z') {
+                    running.add(pid);
+                }
+            }
+        } else if (windows) {
+            // "image name","pid",...
+            for (String line : run("tasklist", "/FO", "CSV", "/NH")) {
+                String[] fields = line.split("\",\"");
+                if (fields.length > 1) {
+                    try {
+                        running.add(Integer.valueOf(fields[1].trim()));
+                    } catch (NumberFormatException e) {
+                        continue;
+                    }
+                }
+            }
+            running.retainAll(pids);
+        } else {
+            StringBuilder list = new StringBuilder();
+            for (Integer pid : pids) {
+                list.append(list.length() == 0 ? "" : ",").append(pid);
+            }
+            for (String line : run("ps", "-p", list.toString(), "-o", "pid=")) {
+                try {
+                    running.add(Integer.valueOf(line.trim()));
+                } catch (NumberFormatException e) {
+                    continue;
+                }
+            }
+            running.retainAll(pids);
+        }
+        return running;
+    }
+
+    /**
+     * Sends a signal to processes.
+     *
+     * @param signalName the signal, e.g. -TERM
+     * @param pids the process ids
+     */
+    private void signal(final String signalName, final Set<Integer> pids) {
+        List<String> command = new ArrayList<String>();
+        command.add("kill");
+        command.add(signalName);
+        for (Integer pid : pids) {
+            command.add(String.valueOf(pid));
+        }
+        run(command.toArray(new String[command.size()]));
+    }
+
+    /**
+     * Builds the taskkill command for processes.
+     *
+     * @param force whether the processes are killed
+     * @param pids the process ids
+     * @return the command
+     */
+    private String[] taskkillArgs(final boolean force, final Set<Integer> pids) {
+        List<String> command = new ArrayList<String>();
+        command.add("taskkill");
+        if (force) {
+            command.add("/F");
+        }
+        command.add("/T");
+        for (Integer pid : pids) {
+            command.add("/PID");
+            command.add(String.valueOf(pid));
+        }
+        return command.toArray(new String[command.size()]);
+    }
+
+    /**
+     * Gets the ids of the processes of the given name.
+     *
+     * @param processes the processes
+     * @param processName the process name, with or without the .exe
+     *            extension
+     * @return the process ids
+     */
+    private Set<Integer> named(final Map<Integer, ProcessInfo> processes,
+            final String processName) {
+        String name = baseName(processName).toLowerCase(Locale.ENGLISH);
+        Set<Integer> pids = new LinkedHashSet<Integer>();
+        for (ProcessInfo process : processes.values()) {
+            String processFile = process.name.toLowerCase(Locale.ENGLISH);
+            if (processFile.equals(name) || processFile.equals(name + ".exe")) {
+                pids.add(process.pid);
+            }
+        }
+        return pids;
+    }
+
+    /**
+     * Gets a process name without the .exe extension.
+     *
+     * @param processName the process name
+     * @return the name without the extension
+     */
+    private static String baseName(final String processName) {
+        String name = processName.trim();
+        if (name.toLowerCase(Locale.ENGLISH).endsWith(".exe")) {
+            return name.substring(0, name.length() - ".exe".length());
+        }
+        return name;
+    }
+
+    /**
+     * Gets the descendants of a process.
+     *
+     * @param processes the processes
+     * @param rootPid the process id
+     * @return the ids of the descendants
+     */
+    private Set<Integer> descendants(final Map<Integer, ProcessInfo> processes,
+            final int rootPid) {
+        Map<Integer, List<Integer>> children =
+                new HashMap<Integer, List<Integer>>();
+        for (ProcessInfo process : processes.values()) {
+            List<Integer> siblings = children.get(process.parentPid);
+            if (siblings == null) {
+                siblings = new ArrayList<Integer>();
+                children.put(process.parentPid, siblings);
+            }
+            siblings.add(process.pid);
+        }
+        Set<Integer> found = new LinkedHashSet<Integer>();
+        List<Integer> pending = new ArrayList<Integer>();
+        pending.add(rootPid);
+        while (!pending.isEmpty()) {
+            List<Integer> direct = children.get(pending.remove(0));
+            if (direct != null) {
+                for (Integer child : direct) {
+                    if (found.add(child)) {
+                        pending.add(child);
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Reads the process table.
+     *
+     * @return the processes by id, empty if the table cannot be read
+     */
+    private Map<Integer, ProcessInfo> snapshot() {
+        Map<Integer, ProcessInfo> processes =
+                new HashMap<Integer, ProcessInfo>();
+        try {
+            if (procfs) {
+                readProcfs(processes);
+            } else if (windows) {
+                if (wmic) {
+                    parse(processes, run("wmic", "process", "get",
+                            "ParentProcessId,ProcessId,Name", "/format:csv"),
+                            true);
+                }
+                if (processes.isEmpty()) {
+                    // wmic is deprecated and missing on recent Windows
+                    wmic = false;
+                    parse(processes, run("powershell", "-NoProfile",
+                            "-NonInteractive", "-Command",
+                            POWERSHELL_PROCESSES), true);
+                }
+            } else {
+                parse(processes, run("ps", "-A", "-o", "pid=,ppid=,comm="),
+                        false);
+            }
+        } catch (Exception e) {
+            LOG.debug("Cannot read the process table : " + e.getMessage());
+        }
+        return processes;
+    }
+
+    /**
+     * Reads the process table from /proc.
+     *
+     * @param processes the processes to fill
+     */
+    private void readProcfs(final Map<Integer, ProcessInfo> processes) {
+        File[] entries = new File("/proc").listFiles();
+        if (entries == null) {
+            return;
+        }
+        for (File entry : entries) {
+            String fileName = entry.getName();
+            if (fileName.isEmpty() || !Character.isDigit(fileName.charAt(0))) {
+                continue;
+            }
+            String stat = readFile(new File(entry, "stat"));
+            // pid (comm) state ppid ...; the name may contain spaces
+            int open = stat.indexOf('(');
+            int close = stat.lastIndexOf(')');
+            if (open < 0 || close < open) {
+                continue;
+            }
+            String[] fields = stat.substring(close + 2).split(" ");
+            final int parentField = 1;
+            try {
+                int pid = Integer.parseInt(fileName);
+                processes.put(pid, new ProcessInfo(pid, Integer
+                        .parseInt(fields[parentField]), stat.substring(
+                        open + 1, close)));
+            } catch (RuntimeException e) {
+                continue;
+            }
+        }
+    }
+
+    /**
+     * Parses the output of ps, wmic or the PowerShell listing.
+     *
+     * @param processes the processes to fill
+     * @param output the output lines
+     * @param csv whether the output is the wmic csv, with the columns
+     *            node, name, parent id and id
+     */
+    private void parse(final Map<Integer, ProcessInfo> processes,
+            final List<String> output, final boolean csv) {
+        for (String line : output) {
+            String trimmed = line.trim();
+            if (trimmed.isEmpty()) {
+                continue;
+            }
+            try {
+                if (csv) {
+                    String[] fields = trimmed.split(",");
+                    final int nameField = 1;
+                    final int parentField = 2;
+                    final int pidField = 3;
+                    if (fields.length > pidField) {
+                        int pid = Integer.parseInt(fields[pidField].trim());
+                        processes.put(pid, new ProcessInfo(pid, Integer
+                                .parseInt(fields[parentField].trim()),
+                                fields[nameField]));
+                    }
+                } else {
+                    String[] fields = trimmed.split("\\s+", 3);
+                    final int nameField = 2;
+                    int pid = Integer.parseInt(fields[0]);
+                    String command = fields.length > nameField ? fields[nameField] : "";
+                    processes.put(pid, new ProcessInfo(pid,
+                            Integer.parseInt(fields[1]), new File(command)
+                                    .getName()));
+                }
+            } catch (NumberFormatException e) {
+                // header line
+                continue;
+            }
+        }
+    }
+
+    /**
+     * Runs a command and returns its output.
+     *
+     * @param command the command
+     * @return the output lines
+     */
+    private List<String> run(final String... command) {
+        List<String> lines = new ArrayList<String>();
+        BufferedReader reader = null;
+        try {
+            Process process =
+                    new ProcessBuilder(command).redirectErrorStream(true)
+                            .start();
+            reader =
+                    new BufferedReader(new InputStreamReader(
+                            process.getInputStream()));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+            process.waitFor();
+        } catch (IOException e) {
+            LOG.debug("Cannot run " + command[0] + " : " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            close(reader);
+        }
+        return lines;
+    }
+
+    /**
+     * Reads a small file.
+     *
+     * @param file the file
+     * @return the content, empty if it cannot be read
+     */
+    private String readFile(final File file) {
+        BufferedReader reader = null;
+        try {
+            InputStream input = new FileInputStream(file);
+            reader = new BufferedReader(new InputStreamReader(input, "UTF-8"));
+            String line = reader.readLine();
+            return line == null ? "" : line;
+        } catch (IOException e) {
+            // the process exited
+            return "";
+        } finally {
+            close(reader);
+        }
+    }
+
+    /**
+     * Closes a reader, ignoring failures.
+     *
+     * @param reader the reader, or null
+     */
+    private void close(final BufferedReader reader) {
+        if (reader != null) {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Reads the process id of the JVM.
+     *
+     * @return the process id, or -1 if unknown
+     */
+    private static int readOwnPid() {
+        String name = ManagementFactory.getRuntimeMXBean().getName();
+        try {
+            return Integer.parseInt(name.substring(0, name.indexOf('@')));
+        } catch (RuntimeException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * The Windows API reading the id of a process from its handle.
+     */
+    private interface Kernel32 extends Library {
+
+        /**
+         * Gets the id of a process.
+         *
+         * @param process the process handle
+         * @return the process id
+         */
+        int GetProcessId(Pointer process);
+    }
+
+    /**
+     * A process of the process table.
+     */
+    private static final class ProcessInfo {
+
+        /** The process id. */
+        private final int pid;
+
+        /** The parent process id. */
+        private final int parentPid;
+
+        /** The executable name. */
+        private final String name;
+
+        /**
+         * Instantiates a new process info.
+         *
+         * @param processId the process id
+         * @param parentProcessId the parent process id
+         * @param processName the executable name
+         */
+        private ProcessInfo(final int processId, final int parentProcessId,
+                final String processName) {
+            this.pid = processId;
+            this.parentPid = parentProcessId;
+            this.name = processName;
+        }
+    }
+}
@@ -37,8 +37,12 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Properties;
+import java.util.Map;
 import java.util.Random;
 import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -50,7 +54,6 @@ import org.openqa.selenium.By;
 import org.openqa.selenium.ElementNotVisibleException;
 import org.openqa.selenium.JavascriptExecutor;
 import org.openqa.selenium.NoAlertPresentException;
-import org.openqa.selenium.NoSuchElementException;
 import org.openqa.selenium.OutputType;
 import org.openqa.selenium.StaleElementReferenceException;
 import org.openqa.selenium.TakesScreenshot;
@@ -59,9 +62,8 @@ import org.openqa.selenium.WebDriver.TargetLocator;
 import org.openqa.selenium.WebDriverException;
 import org.openqa.selenium.WebElement;
 import org.openqa.selenium.interactions.Actions;
-import org.openqa.selenium.support.ui.FluentWait;
+import org.openqa.selenium.support.ui.ExpectedConditions;
 import org.openqa.selenium.support.ui.Select;
-import org.openqa.selenium.support.ui.Wait;
 import org.sikuli.api.DesktopScreenRegion;
 import org.sikuli.api.ImageTarget;
 import org.sikuli.api.ScreenRegion;
@@ -70,6 +72,7 @@ import org.testng.ITestResult;
 import org.testng.Reporter;
 
 import com.google.common.base.Function;
+import com.thoughtworks.selenium.ExecutionContext;
 import com.thoughtworks.selenium.SeleneseTestBaseVir;
 import com.thoughtworks.selenium.SeleneseTestNgHelperVir;
 import com.virtusa.isq.vtaf.objectmap.ObjectLocator;
@@ -77,6 +80,7 @@ import com.virtusa.isq.vtaf.objectmap.ObjectMap;
 import com.virtusa.isq.vtaf.utils.ErrorMessageHandler;
 import com.virtusa.isq.vtaf.utils.KeyCodes;
 import com.virtusa.isq.vtaf.utils.PropertyHandler;
+import com.virtusa.isq.vtaf.utils.RetryExecutor;
 
 /**
  * The Class SeleniumTestBase.
@@ -120,8 +124,22 @@ public class SeleniumTestBase extends SeleneseTestNgHelperVir {
     /** The tables. */
     private HashMap<String, DataTable> tables = null;
     
-    /** The identifire. */
-    private String locatorIdentifire = "";
+    /** The identifire of the command running on each thread. */
+    private final ThreadLocal<String> locatorIdentifire =
+            new ThreadLocal<String>() {
+
+                @Override
+                protected String initialValue() {
+                    return "";
+                }
+            };
+
+    /** Whether the elements found are cached between commands. */
+    private boolean elementCacheEnabled;
+
+    /** The element caches of the drivers used by the test. */
+    private final Map<WebDriver, ElementCache> elementCaches =
+            new WeakHashMap<WebDriver, ElementCache>();
 
     /**
      * The Constructor.
@@ -132,6 +150,25 @@ public class SeleniumTestBase extends SeleneseTestNgHelperVir {
         retryInterval =
                 Integer.parseInt(propHandler
                         .getRuntimeProperty("RETRY_INTERVAL"));
+        elementCacheEnabled =
+                propHandler.getBooleanRuntimeProperty("ELEMENT_CACHE", false);
+    }
+
+    /**
+     * Gets the element cache of the current driver.
+     *
+     * @return the element cache
+     */
+    private ElementCache getElementCache() {
+        WebDriver driver = getDriver();
+        synchronized (elementCaches) {
+            ElementCache cache = elementCaches.get(driver);
+            if (cache == null) {
+                cache = new ElementCache();
+                elementCaches.put(driver, cache);
+            }
+            return cache;
+        }
     }
 
     /**
@@ -198,8 +235,14 @@ public class SeleniumTestBase extends SeleneseTestNgHelperVir {
                     throw new WebDriverException("Empty URL : " + url);
                 }
             }
-            setCommandStartTime(getCurrentTime());
+            setCommandStartTime(System.nanoTime());
+            BrowserSessionPool.getInstance().visited(driver, url);
             driver.get(url);
+            getElementCache().invalidate();
+            if (PageReadiness.getInstance().isEnabled()) {
+                PageReadiness.getInstance().waitForPageReady(driver,
+                        Integer.parseInt(waitTime));
+            }
 
             try {
                 driver.manage()
@@ -307,24 +350,27 @@ public class SeleniumTestBase extends SeleneseTestNgHelperVir {
         try {
 
             url = locator.getActualLocator();
-            setCommandStartTime(getCurrentTime());
+            setCommandStartTime(System.nanoTime());
             if (url.toLowerCase(Locale.getDefault()).startsWith("openwindow=")) {
 
                 Set<String> oldWindowHandles = getAllWindows();
                 String actualUrl = url.substring(url.indexOf('=') + 1, url.length());
 
+                BrowserSessionPool.getInstance().visited(driver, actualUrl);
                 JavascriptExecutor js = (JavascriptExecutor) driver;
                 js.executeScript("window.open('" + actualUrl + "', '_newWindow');");
-                super.pause(Integer.parseInt(waitTime));
-
-                Set<String> newWindowHandles = getAllWindows();
-                newWindowHandles.removeAll(oldWindowHandles);
-                Object[] newWindowArr = newWindowHandles.toArray();
-                driver.switchTo().window(newWindowArr[0].toString());
+                String newWindow =
+                        waitForNewWindow(oldWindowHandles,
+                                Integer.parseInt(waitTime));
+                driver.switchTo().window(newWindow);
+                getElementCache().selectWindow(newWindow);
+                waitForNavigation(waitTime);
 
             } else {
+                BrowserSessionPool.getInstance().visited(driver, url);
                 driver.get(url);
-                super.pause(Integer.parseInt(waitTime));
+                getElementCache().invalidate();
+                waitForNavigation(waitTime);
             }
             reportresult(true, "NAVIGATE TO URL Command :" + url + "",
                     "PASSED", url);
@@ -339,6 +385,64 @@ public class SeleniumTestBase extends SeleneseTestNgHelperVir {
 
     }
 
+    /**
+     * Waits for the page loaded by a navigation command to be ready. The
+     * whole wait time is slept only when the page readiness detection is
+     * disabled.
+     *
+     * @param waitTime the maximum time to wait in milliseconds
+     */
+    private void waitForNavigation(final String waitTime) {
+        PageReadiness readiness = PageReadiness.getInstance();
+        if (readiness.isEnabled()) {
+            readiness.waitForPageReady(getDriver(), Integer.parseInt(waitTime));
+        } else {
+            super.pause(Integer.parseInt(waitTime));
+        }
+    }
+
+    /**
+     * Waits for a window which is not one of the given windows to open.
+     *
+     * @param oldWindowHandles the windows open before
+     * @param timeoutMillis the timeout in milliseconds
+     * @return the handle of the new window
+     */
+    private String waitForNewWindow(final Set<String> oldWindowHandles,
+            final long timeoutMillis) {
+        return WaitEngine.getInstance().until(getDriver(),
+                new Function<WebDriver, String>() {
+
+                    @Override
+                    public String apply(final WebDriver webDriver) {
+                        for (String handle : webDriver.getWindowHandles()) {
+                            if (!oldWindowHandles.contains(handle)) {
+                                return handle;
+                            }
+                        }
+                        return null;
+                    }
+                }, timeoutMillis, null);
+    }
+
+    /**
+     * Waits until the current page has finished loading, has no pending
+     * requests and has been quiet for a moment, or until the timeout expires.
+     * Use instead of a fixed pause after actions which load content. <br>
+     *
+     * @param timeout the maximum time to wait in milliseconds
+     */
+    public final void waitForPageReady(final String timeout) {
+        int timeoutMillis = Integer.parseInt(timeout);
+        setCommandStartTime(System.nanoTime());
+        boolean ready =
+                PageReadiness.getInstance().waitForPageReady(getDriver(),
+                        timeoutMillis);
+        reportresult(true, "WAIT FOR PAGE READY : (" + timeoutMillis + " ms)",
+                "PASSED", ready ? "Page ready" : "Page not ready after "
+                        + timeoutMillis + " Milliseconds.");
+    }
+
     /**
      * Clicks on a link, button, checkbox or radio button. If the click action
      * causes a new page to load (like a link usually does), call
@@ -389,7 +493,8 @@ public class SeleniumTestBase extends SeleneseTestNgHelperVir {
     private void doClickAt(final ObjectLocator locator,
             final String coordinateString) {
         String objectID = "";
-        int counter = getRetryCount();
+        RetryExecutor.Attempts attempts =
+                getRetryExecutor().start("CLICKAT");
         int xOffset = 0;
         int yOffset = 0;
         WebDriver driver = getDriver();
@@ -432,9 +537,8 @@ public class SeleniumTestBase extends SeleneseTestNgHelperVir {
              * can be exited from the loop under 2 conditions 1. if the command
              * succeeded 2. if the RETRY count is exceeded
              */
-            while (counter > 0) {
+            while (attempts.hasNext()) {
                 try {
-                    counter--;
                     // call for real selenium command
                     /* selenium.clickAt(objectID, coordinateString); */
 
@@ -448,12 +552,13 @@ public class SeleniumTestBase extends SeleneseTestNgHelperVir {
                     // if the testcase passed move out from the loop
                     break;
                 } catch (StaleElementReferenceException staleElementException) {
-
+                    if (!attempts.retryNow(staleElementException)) {
+                        throw staleElementException;
+                    }
                     element = checkElementPresence(objectID);
                 } catch (Exception e) {
 
-                    pause(retryInterval);
-                    if (!(counter > 0)) {
+                    if (!attempts.retry(e)) {
 
                         e.printStackTrace();
                         reportresult(true, "CLICKAT :" + objectName + "",
@@ -527,7 +632,8 @@ public class SeleniumTestBase extends SeleneseTestNgHelperVir {
 
     private void doClick(final ObjectLocator locator) {
         String objectID = "";
-        int counter = getRetryCount();
+        RetryExecutor.Attempts attempts =
+                getRetryExecutor().start("CLICK");
         WebDriver driver = getDriver();
         try {
             // Retrieve the correct object locator from the object map
@@ -546,9 +652,8 @@ public class SeleniumTestBase extends SeleneseTestNgHelperVir {
              * can be exitted from the loop under 2 conditions 1. if the command
              * succeeded 2. if the RETRY count is exceeded
              */
-            while (counter > 0) {
+            while (attempts.hasNext()) {
                 try {
-                    counter--;
                     // call for real selenium command
                     /* selenium.click(objectID); */
 
@@ -560,7 +665,9 @@ public class SeleniumTestBase extends SeleneseTestNgHelperVir {
                     // if the test case passed move out from the loop
                     break;
                 } catch (StaleElementReferenceException staleElementException) {
-
+                    if (!attempts.retryNow(staleElementException)) {
+                        throw staleElementException;
+                    }
                     element = checkElementPresence(objectID);
                 } catch (ElementNotVisibleException ex) {
                     try {
@@ -578,9 +685,8 @@ public class SeleniumTestBase extends SeleneseTestNgHelperVir {
 
                 } catch (Exception e) {
 
-                    pause(retryInterval);
                     String objectName = locator.getLogicalName();
-                    if (!(counter > 0)) {
+                    if (!attempts.retry(e)) {
 
                         e.printStackTrace();
                         reportresult(true, "CLICK :" + objectName + "",
@@ -743,7 +849,8 @@ public class SeleniumTestBase extends SeleneseTestNgHelperVir {
     private String getVarPropertyAttributeValue(final ObjectLocator locator,
             final WebElement webElement, final String component)
             throws Exception {
-        int counter = getRetryCount();
+        RetryExecutor.Attempts attempts =
+                getRetryExecutor().start("SET_VARIABLE_PROPERTY");
         WebElement element = webElement;
         String returnValue = null;
         final int compSubstrIndex = 5;
@@ -758,9 +865,8 @@ public class SeleniumTestBase extends SeleneseTestNgHelperVir {
          * can be exited from the loop under 2 conditions 1. if the
          * command succeeded 2. if the RETRY count is exceeded
          */
-        while (counter > 0) {
+        while (attempts.hasNext()) {
             try {
-                counter--;
 
                 returnValue =
                         validateObjectProperty(element, component.substring(compSubstrIndex));
@@ -770,10 +876,11 @@ public class SeleniumTestBase extends SeleneseTestNgHelperVir {
                         "Object value = " + returnValue);
                 break;
             } catch (StaleElementReferenceException staleElementException) {
-
+                if (!attempts.retryNow(staleElementException)) {
+                    throw staleElementException;
+                }
                 element = checkElementPresence(locator.getActualLocator());
             } catch (Exception e) {
-                pause(retryInterval);
                 /*
                  * after the retry amout, if still the object is not
                  * found, report the failure error will be based on the
@@ -781,7 +888,7 @@ public class SeleniumTestBase extends SeleneseTestNgHelperVir {
                  * attribute failure else if e contains element, report
                  * object not found
                  */
-                if (!(counter > 0)) {
+                if (!attempts.retry(e)) {
                     if (e.getMessage().startsWith("Attribute")) {
                         reportresult(true, "SET VARIABLE PROPERTY :" + locator
                                 + "." + component.substring(compSubstrIndex), "FAILED",
@@ -1277,7 +1384,8 @@ public class SeleniumTestBase extends SeleneseTestNgHelperVir {
      * 
      * */
     private void doSelectWindow(final ObjectLocator locator) {
-        int counter = getRetryCount();
+        RetryExecutor.Attempts attempts =
+                getRetryExecutor().start("SELECT_WINDOW");
         String targetWindow = null;
         WebDriver driver = getDriver();
 
@@ -1285,6 +1393,8 @@ public class SeleniumTestBase extends SeleneseTestNgHelperVir {
         String window = locator.getActualLocator();
         try {
             checkForNewWindowPopups();
+            // searching the windows switches between them
+            getElementCache().invalidate();
 
             /*
              * START DESCRIPTION following for loop was added to make the
@@ -1296,9 +1406,8 @@ public class SeleniumTestBase extends SeleneseTestNgHelperVir {
              * can be exited from the loop under 2 conditions 1. if the command
              * succeeded 2. if the RETRY count is exceeded
              */
-            while (counter > 0) {
+            while (attempts.hasNext()) {
                 try {
-                    counter--;
 
                     targetWindow =
                             getMatchingWindowFromCurrentWindowHandles(driver,
@@ -1307,6 +1416,7 @@ public class SeleniumTestBase extends SeleneseTestNgHelperVir {
                     if (targetWindow != null) {
 
                         driver.switchTo().window(targetWindow);
+                        getElementCache().selectWindow(targetWindow);
 
                         driver.manage().window().maximize();
                         JavascriptExecutor jsExecutor =
@@ -1322,8 +1432,7 @@ public class SeleniumTestBase extends SeleneseTestNgHelperVir {
                                 + window);
                     }
                 } catch (WebDriverException ex) {
-                    pause(retryInterval);
-                    if (!(counter > 0)) {
+                    if (!attempts.retry(ex)) {
                         String errorString = ex.getMessage();
                         String objectName = locator.getLogicalName();
                         reportresult(
@@ -1471,7 +1580,8 @@ public class SeleniumTestBase extends SeleneseTestNgHelperVir {
     public final void doType(final ObjectLocator locator, final Object objValue) {
         String value = checkNullObject(objValue, "TYPE");
 
-        int counter = getRetryCount();
+        RetryExecutor.Attempts attempts =
+                getRetryExecutor().start("TYPE");
 
         // Getting the actual object identification from the object map
 
@@ -1496,9 +1606,8 @@ public class SeleniumTestBase extends SeleneseTestNgHelperVir {
                 e.printStackTrace();
             }
 
-            while (counter > 0) {
+            while (attempts.hasNext()) {
                 try {
-                    counter--;
                     // Calling the actual command
 
                     element.sendKeys(value);
@@ -1508,11 +1617,12 @@ public class SeleniumTestBase extends SeleneseTestNgHelperVir {
                             " [Input value = " + value + "]");
                     break;
                 } catch (StaleElementReferenceException staleElementException) {
-
+                    if (!attempts.retryNow(staleElementException)) {
+                        throw staleElementException;
+                    }
                     element = checkElementPresence(objectID);
                 } catch (Exception e) {
-                    pause(retryInterval);
-                    if (!(counter > 0)) {
+                    if (!attempts.retry(e)) {
                         e.printStackTrace();
                         String objectName = locator.getLogicalName();
                         reportresult(true, "TYPE :" + objectName + "",
@@ -1625,7 +1735,8 @@ public class SeleniumTestBase extends SeleneseTestNgHelperVir {
     private void doSelect(final ObjectLocator locator, final Object objValue) {
 
         String value = checkNullObject(objValue, "SELECT");
-        int counter = getRetryCount();
+        RetryExecutor.Attempts attempts =
+                getRetryExecutor().start("SELECT");
         String[] actualOptions = {};
         boolean multiSelect = false;
         String objectName = locator.getLogicalName();
@@ -1658,9 +1769,8 @@ public class SeleniumTestBase extends SeleneseTestNgHelperVir {
              * succeeded 2. if the RETRY count is exceeded
              */
 
-            while (counter > 0) {
+            while (attempts.hasNext()) {
                 try {
-                    counter--;
 
                     if (!multiSelect) {
 
@@ -1682,13 +1792,14 @@ public class SeleniumTestBase extends SeleneseTestNgHelperVir {
                     }
 
                 } catch (StaleElementReferenceException staleElementException) {
-
+                    if (!attempts.retryNow(staleElementException)) {
+                        throw staleElementException;
+                    }
                     element = checkElementPresence(objectID);
                     selectElement = new Select(element);
                 } catch (Exception ex) {
-                    pause(retryInterval);
 
-                    if (!(counter > 0)) {
+                    if (!attempts.retry(ex)) {
                         ex.printStackTrace();
 
                         reportresult(true, "SELECT :" + objectName + "",
@@ -1888,7 +1999,8 @@ public class SeleniumTestBase extends SeleneseTestNgHelperVir {
     private void doDoubleClick(final ObjectLocator locator) {
         // Retrieve the actual object name from the object repository
 
-        int counter = getRetryCount();
+        RetryExecutor.Attempts attempts =
+                getRetryExecutor().start("DOUBLE_CLICK");
         WebDriver driver = getDriver();
         String objectName = locator.getLogicalName();
         String objectID = locator.getActualLocator();
@@ -1908,9 +2020,8 @@ public class SeleniumTestBase extends SeleneseTestNgHelperVir {
              * succeeded 2. if the RETRY count is exceeded
              */
 
-            while (counter > 0) {
+            while (attempts.hasNext()) {
                 try {
-                    counter--;
                     element.click();
                     Actions dClick = new Actions(driver);
                     dClick.moveToElement(element).doubleClick();
@@ -1920,12 +2031,13 @@ public class SeleniumTestBase extends SeleneseTestNgHelperVir {
                             "PASSED", "");
                     break;
                 } catch (StaleElementReferenceException staleElementException) {
-
+                    if (!attempts.retryNow(staleElementException)) {
+                        throw staleElementException;
+                    }
                     element = checkElementPresence(objectID);
                 } catch (Exception e) {
 
-                    pause(retryInterval);
-                    if (!(counter > 0)) {
+                    if (!attempts.retry(e)) {
 
                         e.printStackTrace();
                         reportresult(true, "DOUBLE CLICK :" + objectName + "",
@@ -1986,9 +2098,9 @@ public class SeleniumTestBase extends SeleneseTestNgHelperVir {
      */
     public final void check(final String objectName, final String identifire,
             final boolean isSelect) {
-        this.locatorIdentifire = identifire;
+        this.locatorIdentifire.set(identifire);
         check(objectName, isSelect);
-        this.locatorIdentifire = "";
+        this.locatorIdentifire.set("");
     }
 
     /**
@@ -2002,10 +2114,11 @@ public class SeleniumTestBase extends SeleneseTestNgHelperVir {
      * @param isSelect            : specify whether to check or uncheck the button
      */
     public final void check(final String objectName, final boolean isSelect) {
-        int counter = getRetryCount();
+        RetryExecutor.Attempts attempts =
+                getRetryExecutor().start("CHECK");
         String option = "";
         // Getting the actual object identification from the object map
-        String objectID = ObjectMap.getObjectSearchPath(objectName, locatorIdentifire);
+        String objectID = ObjectMap.getObjectSearchPath(objectName, locatorIdentifire.get());
         try {
             // Check whether the element present
             checkForNewWindowPopups();
@@ -2020,9 +2133,8 @@ public class SeleniumTestBase extends SeleneseTestNgHelperVir {
              * can be exited from the loop under 2 conditions 1. if the command
              * succeeded 2. if the RETRY count is exceeded
              */
-            while (counter > 0) {
+            while (attempts.hasNext()) {
                 try {
-                    counter--;
                     if (isSelect) {
                         option = "Select";
                         // Calling the actual command
@@ -2045,12 +2157,13 @@ public class SeleniumTestBase extends SeleneseTestNgHelperVir {
 
                     break;
                 } catch (StaleElementReferenceException staleElementException) {
-
+                    if (!attempts.retryNow(staleElementException)) {
+                        throw staleElementException;
+                    }
                     element = checkElementPresence(objectID);
                 } catch (Exception e) {
-                    pause(retryInterval);
 
-                    if (!(counter > 0)) {
+                    if (!attempts.retry(e)) {
                         e.printStackTrace();
                         reportresult(true, "CHECK : (" + option + ")"
                                 + objectName + "", "FAILED",
@@ -2131,7 +2244,8 @@ public class SeleniumTestBase extends SeleneseTestNgHelperVir {
 
     private void doDoubleClickAt(final ObjectLocator locator,
             final String coordinateString) {
-        int counter = getRetryCount();
+        RetryExecutor.Attempts attempts =
+                getRetryExecutor().start("DOUBLE_CLICK_AT");
         int xOffset = 0;
         int yOffset = 0;
         WebDriver driver = getDriver();
@@ -2178,8 +2292,7 @@ public class SeleniumTestBase extends SeleneseTestNgHelperVir {
              * can be exited from the loop under 2 conditions 1. if the command
              * succeeded 2. if the RETRY count is exceeded
              */
-            while (counter > 0) {
-                counter--;
+            while (attempts.hasNext()) {
                 try {
 
                     Actions doubleClickAt = new Actions(driver);
@@ -2191,15 +2304,16 @@ public class SeleniumTestBase extends SeleneseTestNgHelperVir {
                             "PASSED", "");
                     break;
                 } catch (StaleElementReferenceException staleElementException) {
-
+                    if (!attempts.retryNow(staleElementException)) {
+                        throw staleElementException;
+                    }
                     element = checkElementPresence(objectID);
                 } catch (Exception e) {
-                    pause(retryInterval);
                     // The main possibility of throwing exception at this point
                     // should be due to the element was not
                     // fully loaded, in this catch block handle the exception
                     // untill retry amount of attempts
-                    if (!(counter > 0)) {
+                    if (!attempts.retry(e)) {
                         e.printStackTrace();
                         reportresult(true, "DOUBLE CLICK AT :" + objectName
                                 + "", "FAILED",
@@ -2315,7 +2429,7 @@ public class SeleniumTestBase extends SeleneseTestNgHelperVir {
 
     public final boolean checkElementPresent(final String objectName) {
         // Retrieve the actual object id from the OR
-        String objectID = ObjectMap.getObjectSearchPath(objectName, locatorIdentifire);
+        String objectID = ObjectMap.getObjectSearchPath(objectName, locatorIdentifire.get());
         if (objectID.isEmpty()) {
             objectID = objectName;
         }
@@ -2347,9 +2461,10 @@ public class SeleniumTestBase extends SeleneseTestNgHelperVir {
 
         String searchText =
                 checkNullObject(objSearchText, "CHECK TEXT PRESENT");
-        int counter = getRetryCount();
+        RetryExecutor.Attempts attempts =
+                getRetryExecutor().start("CHECK_TEXT_PRESENT");
         // retrieves the objectid from the object repository
-        String objectID = ObjectMap.getObjectSearchPath(searchText, locatorIdentifire);
+        String objectID = ObjectMap.getObjectSearchPath(searchText, locatorIdentifire.get());
 
         // if, in case, the user has given the search text itself instead of
         // objectid this
@@ -2368,22 +2483,28 @@ public class SeleniumTestBase extends SeleneseTestNgHelperVir {
          * can be exited from the loop under 2 conditions 1. if the command
          * succeeded 2. if the RETRY count is exceeded
          */
-        while (counter > 0) {
+        while (attempts.hasNext()) {
 
             boolean objectFound = false;
             try {
-                counter--;
 
-                objectFound = getDriver().getPageSource().contains(objectID);
+                DomObserverWait observerWait = DomObserverWait.getInstance();
+                if (observerWait.isEnabled()) {
+                    objectFound =
+                            observerWait.waitForText(getDriver(), objectID,
+                                    getWaitDeadline());
+                } else {
+                    objectFound =
+                            TextSearch.getInstance().contains(getDriver(),
+                                    objectID, null);
+                }
                 if (objectFound) {
                     reportresult(true,
                             "CHECK TEXT PRESENT :" + searchText + "", "PASSED",
                             "");
                     break;
                 }
-                pause(retryInterval);
-
-                if ((!(counter > 0)) && !objectFound) {
+                if (!attempts.retry()) {
                     // if the retry count has exceeded and still the text is not
                     // present,
                     // report a test failure
@@ -2401,7 +2522,7 @@ public class SeleniumTestBase extends SeleneseTestNgHelperVir {
                  */
             } catch (Exception e) {
 
-                if (!(counter > 0)) {
+                if (!attempts.retry(e)) {
                     // if the retry count has exceeded and still the text is not
                     // present,
                     // report a test failure
@@ -2419,6 +2540,122 @@ public class SeleniumTestBase extends SeleneseTestNgHelperVir {
 
     }
 
+    /**
+     * checks whether the Text referred by the logical id exists inside the
+     * given container object.<br>
+     * Only the container is searched, in the browser, so that the page source
+     * is not transferred. <br>
+     *
+     * @param containerName            : logical name of the container object
+     * @param objSearchText the obj search text
+     * @param stopOnFailure            : if <b> true </b> : stop the execution after the failure <br>
+     *            if <b> false </b>: Continue the execution after the failure
+     */
+    public final void checkTextPresentIn(final String containerName,
+            final Object objSearchText, final boolean stopOnFailure) {
+        checkTextsPresent(containerName, new Object[] {objSearchText },
+                stopOnFailure);
+    }
+
+    /**
+     * checks whether all the Texts referred by the logical ids exist.<br>
+     * All the texts are searched in a single call to the browser on each
+     * attempt. <br>
+     *
+     * @param objSearchTexts the search texts
+     * @param stopOnFailure            : if <b> true </b> : stop the execution after the failure <br>
+     *            if <b> false </b>: Continue the execution after the failure
+     */
+    public final void checkTextsPresent(final Object[] objSearchTexts,
+            final boolean stopOnFailure) {
+        checkTextsPresent(null, objSearchTexts, stopOnFailure);
+    }
+
+    /**
+     * checks whether all the Texts referred by the logical ids exist inside
+     * the given container object, or in the whole page if no container is
+     * given.<br>
+     *
+     * @param containerName            : logical name of the container object, or null
+     * @param objSearchTexts the search texts
+     * @param stopOnFailure            : if <b> true </b> : stop the execution after the failure <br>
+     *            if <b> false </b>: Continue the execution after the failure
+     */
+    public final void checkTextsPresent(final String containerName,
+            final Object[] objSearchTexts, final boolean stopOnFailure) {
+
+        String[] searchTexts = new String[objSearchTexts.length];
+        String[] objectIDs = new String[objSearchTexts.length];
+        for (int i = 0; i < objSearchTexts.length; i++) {
+            searchTexts[i] =
+                    checkNullObject(objSearchTexts[i], "CHECK TEXT PRESENT");
+            objectIDs[i] =
+                    ObjectMap.getObjectSearchPath(searchTexts[i],
+                            locatorIdentifire.get());
+            if ("".equalsIgnoreCase(objectIDs[i])) {
+                objectIDs[i] = searchTexts[i];
+            }
+        }
+        String step =
+                "CHECK TEXT PRESENT :"
+                        + Arrays.toString(searchTexts)
+                        + (containerName == null ? "" : " in "
+                                + containerName);
+        RetryExecutor.Attempts attempts =
+                getRetryExecutor().start("CHECK_TEXT_PRESENT");
+        String containerID = null;
+        if (containerName != null) {
+            containerID =
+                    ObjectMap.getObjectSearchPath(containerName,
+                            locatorIdentifire.get());
+            if ("".equalsIgnoreCase(containerID)) {
+                containerID = containerName;
+            }
+        }
+        List<String> missing = new ArrayList<String>();
+        while (attempts.hasNext()) {
+            try {
+                WebElement container = null;
+                if (containerID != null) {
+                    container = checkElementPresence(containerID);
+                }
+                TextSearch.TextMatch[] matches =
+                        TextSearch.getInstance().find(getDriver(), objectIDs,
+                                container);
+                missing.clear();
+                for (int i = 0; i < matches.length; i++) {
+                    if (!matches[i].isFound()) {
+                        missing.add(searchTexts[i] + " [" + objectIDs[i] + "]");
+                    }
+                }
+                if (missing.isEmpty()) {
+                    reportresult(true, step, "PASSED", "");
+                    break;
+                }
+                if (!attempts.retry()) {
+                    reportresult(stopOnFailure, step, "FAILED",
+                            " command checkTextPresent()  :Text "
+                                    + missing + " not present");
+                    checkTrue(false, stopOnFailure,
+                            " command checkTextPresent()  :Text "
+                                    + missing + " not present");
+                }
+            } catch (Exception e) {
+                if (!attempts.retry(e)) {
+                    e.printStackTrace();
+                    reportresult(stopOnFailure, step, "FAILED",
+                            " command checkTextPresent()  :Text "
+                                    + Arrays.toString(searchTexts)
+                                    + " cannot be searched. " + e.getMessage());
+                    checkTrue(false, stopOnFailure,
+                            " command checkTextPresent()  :Text "
+                                    + Arrays.toString(searchTexts)
+                                    + " cannot be searched. " + e.getMessage());
+                }
+            }
+        }
+    }
+
     /**
      * Checks whether the Object property given by the property name is exists
      * if the property does not exists, further continuation of the script
@@ -2438,10 +2675,10 @@ public class SeleniumTestBase extends SeleneseTestNgHelperVir {
     public final void checkObjectProperty(final String objectName,
             final String identifire, final String propertyname,
             final Object expectedvale, final boolean stopOnFailure) {
-        this.locatorIdentifire = identifire;
+        this.locatorIdentifire.set(identifire);
         checkObjectProperty(objectName, propertyname, expectedvale,
                 stopOnFailure);
-        this.locatorIdentifire = "";
+        this.locatorIdentifire.set("");
     }
 
     /**
@@ -2530,9 +2767,10 @@ public class SeleniumTestBase extends SeleneseTestNgHelperVir {
             final String property, final String expectedvale,
             final boolean stopOnFailure) {
 
-        int counter = getRetryCount();
+        RetryExecutor.Attempts attempts =
+                getRetryExecutor().start("CHECK_PROPERTY_PRESENT");
         // retrieve the actual object ID from object repository
-        String objectID = ObjectMap.getObjectSearchPath(objectName, locatorIdentifire);
+        String objectID = ObjectMap.getObjectSearchPath(objectName, locatorIdentifire.get());
 
         String propertyName = "";
         String condition = "";
@@ -2574,9 +2812,8 @@ public class SeleniumTestBase extends SeleneseTestNgHelperVir {
              * succeeded 2. if the RETRY count is exceeded
              */
 
-            while (counter > 0) {
+            while (attempts.hasNext()) {
                 try {
-                    counter--;
                     boolean isAttributePresent =
                             checkAttributePresent(element, propertyName);
                     if (String.valueOf(isAttributePresent).equalsIgnoreCase(
@@ -2615,11 +2852,12 @@ public class SeleniumTestBase extends SeleneseTestNgHelperVir {
                     }
 
                 } catch (StaleElementReferenceException staleElementException) {
-
+                    if (!attempts.retryNow(staleElementException)) {
+                        throw staleElementException;
+                    }
                     element = checkElementPresence(objectID);
                 } catch (Exception e) {
-                    pause(retryInterval);
-                    if (!(counter > 0)) {
+                    if (!attempts.retry(e)) {
                         reportresult(stopOnFailure, "CHECK OBJECT PROPERTY :"
                                 + objectName + "." + property, "FAILED",
                                 " command checkObjectProperty :Element : ["
@@ -2686,9 +2924,10 @@ public class SeleniumTestBase extends SeleneseTestNgHelperVir {
             final String propertyname, final String expectedvale,
             final boolean stopOnFailure) {
 
-        int counter = getRetryCount();
+        RetryExecutor.Attempts attempts =
+                getRetryExecutor().start("CHECK_MISSING_OPTION");
         // retrieve the actual object ID from object repository
-        String objectID = ObjectMap.getObjectSearchPath(objectName, locatorIdentifire);
+        String objectID = ObjectMap.getObjectSearchPath(objectName, locatorIdentifire.get());
         try {
             // Checking whether the element is present
             checkForNewWindowPopups();
@@ -2705,9 +2944,8 @@ public class SeleniumTestBase extends SeleneseTestNgHelperVir {
              * succeeded 2. if the RETRY count is exceeded
              */
 
-            while (counter > 0) {
+            while (attempts.hasNext()) {
                 try {
-                    counter--;
 
                     /*
                      * String[] selectOptions = selenium
@@ -2743,11 +2981,13 @@ public class SeleniumTestBase extends SeleneseTestNgHelperVir {
                             + expectedvale);
                     break;
                 } catch (StaleElementReferenceException staleElementException) {
+                    if (!attempts.retryNow(staleElementException)) {
+                        throw staleElementException;
+                    }
                     element = checkElementPresence(objectID);
                     selectElement = new Select(element);
                 } catch (Exception e) {
-                    pause(retryInterval);
-                    if (!(counter > 0)) {
+                    if (!attempts.retry(e)) {
                         reportresult(stopOnFailure, "CHECK OBJECT PROPERTY :"
                                 + objectName + "." + propertyname, "FAILED",
                                 " command checkObjectProperty :Element : ["
@@ -2786,9 +3026,10 @@ public class SeleniumTestBase extends SeleneseTestNgHelperVir {
             final String propertyname, final String expectedvale,
             final boolean stopOnFailure) {
 
-        int counter = getRetryCount();
+        RetryExecutor.Attempts attempts =
+                getRetryExecutor().start("CHECK_ELEMENT_NOT_PRESENT");
         // retrieve the actual object ID from object repository
-        String objectID = ObjectMap.getObjectSearchPath(objectName, locatorIdentifire);
+        String objectID = ObjectMap.getObjectSearchPath(objectName, locatorIdentifire.get());
 
         String isObjectFound = "false";
         /*
@@ -2801,9 +3042,28 @@ public class SeleniumTestBase extends SeleneseTestNgHelperVir {
          * can be exited from the loop under 2 conditions 1. if the command
          * succeeded 2. if the RETRY count is exceeded
          */
-        while (counter > 0) {
+        DomObserverWait observerWait = DomObserverWait.getInstance();
+        if (observerWait.isEnabled()) {
+            // let the browser report when the expected state is reached, the
+            // loop below then confirms it with a single lookup
+            try {
+                long deadline = getWaitDeadline();
+                if ("true".equalsIgnoreCase(expectedvale)) {
+                    observerWait.waitForElement(getDriver(), objectID,
+                            deadline);
+                } else {
+                    observerWait.waitForAbsence(getDriver(), objectID,
+                            deadline);
+                }
+            } catch (Exception e) {
+                getLog().info(
+                        "Element " + objectName
+                                + " did not reach the expected state : "
+                                + e.getMessage());
+            }
+        }
+        while (attempts.hasNext()) {
             try {
-                counter--;
                 try {
                     objectLocator(objectID);
                     isObjectFound = "True";
@@ -2818,13 +3078,12 @@ public class SeleniumTestBase extends SeleneseTestNgHelperVir {
                             + ".ELEMENTPRESENT", "PASSED", "");
                     break;
                 } else {
-                    if (counter < 1) {
+                    if (!attempts.retry()) {
                         throw new Exception("Element " + objectName);
                     }
                 }
 
             } catch (Exception e) {
-                pause(retryInterval);
 
                 if (e.getMessage().startsWith("Element")) {
                     reportresult(
@@ -2877,10 +3136,11 @@ public class SeleniumTestBase extends SeleneseTestNgHelperVir {
             final String propertyname, final String expectedvale,
             final boolean stopOnFailure) {
 
-        int counter = getRetryCount();
+        RetryExecutor.Attempts attempts =
+                getRetryExecutor().start("CHECK_ALL_SELECT_OPTIONS");
         String verificationErrors = "";
         // retrieve the actual object ID from object repository
-        String objectID = ObjectMap.getObjectSearchPath(objectName, locatorIdentifire);
+        String objectID = ObjectMap.getObjectSearchPath(objectName, locatorIdentifire.get());
         try {
             // Checking whether the element is present
             checkForNewWindowPopups();
@@ -2898,9 +3158,8 @@ public class SeleniumTestBase extends SeleneseTestNgHelperVir {
              */
             String[] expectedSelectOptions = expectedvale.split(",");
 
-            while (counter > 0) {
+            while (attempts.hasNext()) {
                 try {
-                    counter--;
                     List<WebElement> elementOptions =
                             selectElement.getOptions();
                     String[] actualSelectOptions =
@@ -2978,13 +3237,14 @@ public class SeleniumTestBase extends SeleneseTestNgHelperVir {
                     // actual option count
 
                 } catch (StaleElementReferenceException staleElementException) {
-
+                    if (!attempts.retryNow(staleElementException)) {
+                        throw staleElementException;
+                    }
                     element = checkElementPresence(objectID);
                     selectElement = new Select(element);
                 } catch (Exception e) {
-                    pause(retryInterval);
 
-                    if (!(counter > 0)) {
+                    if (!attempts.retry(e)) {
                         e.printStackTrace();
                         reportresult(stopOnFailure,
                                 "CHECK ALL SELECT OPTIONS :" + objectName + "."
@@ -3061,9 +3321,10 @@ public class SeleniumTestBase extends SeleneseTestNgHelperVir {
             final String propertyname, final String expectedvale,
             final boolean stopOnFailure) {
 
-        int counter = getRetryCount();
+        RetryExecutor.Attempts attempts =
+                getRetryExecutor().start("CHECK_SELECTED_OPTION");
         // retrieve the actual object ID from object repository
-        String objectID = ObjectMap.getObjectSearchPath(objectName, locatorIdentifire);
+        String objectID = ObjectMap.getObjectSearchPath(objectName, locatorIdentifire.get());
         try {
             // Checking whether the element is present
             checkForNewWindowPopups();
@@ -3080,9 +3341,8 @@ public class SeleniumTestBase extends SeleneseTestNgHelperVir {
              * succeeded 2. if the RETRY count is exceeded
              */
 
-            while (counter > 0) {
+            while (attempts.hasNext()) {
                 try {
-                    counter--;
 
                     /*
                      * String selectedOptionLabel = selenium
@@ -3111,11 +3371,13 @@ public class SeleniumTestBase extends SeleneseTestNgHelperVir {
                     }
 
                 } catch (StaleElementReferenceException staleElementException) {
+                    if (!attempts.retryNow(staleElementException)) {
+                        throw staleElementException;
+                    }
                     element = checkElementPresence(objectID);
                     selectElement = new Select(element);
                 } catch (Exception e) {
-                    pause(retryInterval);
-                    if (!(counter > 0)) {
+                    if (!attempts.retry(e)) {
                         reportresult(stopOnFailure, "CHECK OBJECT PROPERTY :"
                                 + objectName + "." + propertyname, "FAILED",
                                 " command checkObjectProperty()  :Element ("
@@ -3155,9 +3417,10 @@ public class SeleniumTestBase extends SeleneseTestNgHelperVir {
     private void checkObjectOtherProperty(final String objectName,
             final String propertyname, final String expectedvale,
             final boolean stopOnFailure) {
-        int counter = getRetryCount();
+        RetryExecutor.Attempts attempts =
+                getRetryExecutor().start("CHECK_OBJECT_PROPERTY");
         // retrieve the actual object ID from object repository
-        String objectID = ObjectMap.getObjectSearchPath(objectName, locatorIdentifire);
+        String objectID = ObjectMap.getObjectSearchPath(objectName, locatorIdentifire.get());
         try {
             // Checking whether the element is present
             checkForNewWindowPopups();
@@ -3173,9 +3436,8 @@ public class SeleniumTestBase extends SeleneseTestNgHelperVir {
              * can be exited from the loop under 2 conditions 1. if the command
              * succeeded 2. if the RETRY count is exceeded
              */
-            while (counter > 0) {
+            while (attempts.hasNext()) {
                 try {
-                    counter--;
                     String attributeValue =
                             validateObjectProperty(element, propertyname);
                     if (attributeValue.trim().equals(expectedvale.trim())) {
@@ -3204,16 +3466,18 @@ public class SeleniumTestBase extends SeleneseTestNgHelperVir {
                     }
 
                 } catch (StaleElementReferenceException staleElementException) {
+                    if (!attempts.retryNow(staleElementException)) {
+                        throw staleElementException;
+                    }
                     element = checkElementPresence(objectID);
                 } catch (Exception e) {
-                    pause(retryInterval);
                     /*
                      * after the retry amout, if still the object is not found,
                      * report the failure error will be based on the exception
                      * message, if e contains attribute report attribute failure
                      * else if e contains element, report object not found
                      */
-                    if (!(counter > 0)) {
+                    if (!attempts.retry(e)) {
                         if (e.getMessage().startsWith("Attribute")) {
                             reportresult(stopOnFailure,
                                     "CHECK OBJECT PROPERTY :" + objectName
@@ -3449,9 +3713,9 @@ public class SeleniumTestBase extends SeleneseTestNgHelperVir {
     public final void checkTable(final String objectName, final String identifire,
             final String validationType, final Object expectedvale,
             final boolean stopOnFaliure) {
-        this.locatorIdentifire = identifire;
+        this.locatorIdentifire.set(identifire);
         checkTable(objectName, validationType, expectedvale, stopOnFaliure);
-        this.locatorIdentifire = "";
+        this.locatorIdentifire.set("");
 
     }
 
@@ -3463,9 +3727,9 @@ public class SeleniumTestBase extends SeleneseTestNgHelperVir {
      * @return the object count
      */
     public final int getObjectCount(final String objectName, final String identifire) {
-        this.locatorIdentifire = identifire;
+        this.locatorIdentifire.set(identifire);
         int objCount = getObjectCount(objectName);
-        this.locatorIdentifire = "";
+        this.locatorIdentifire.set("");
         return objCount;
     }
 
@@ -3497,9 +3761,10 @@ public class SeleniumTestBase extends SeleneseTestNgHelperVir {
      * @return the object count
      */
     public final int getObjectCount(final String objectName) {
-        int counter = getRetryCount();
+        RetryExecutor.Attempts attempts =
+                getRetryExecutor().start("GET_OBJECT_COUNT");
         int objectCount = 0;
-        String objectID = ObjectMap.getObjectSearchPath(objectName, locatorIdentifire);
+        String objectID = ObjectMap.getObjectSearchPath(objectName, locatorIdentifire.get());
         WebDriver driver = getDriver();
         try {
 
@@ -3514,9 +3779,8 @@ public class SeleniumTestBase extends SeleneseTestNgHelperVir {
              * succeeded 2. if the RETRY count is exceeded
              */
 
-            while (counter > 0) {
+            while (attempts.hasNext()) {
                 try {
-                    counter--;
 
                     List<WebElement> elements =
                             driver.findElements(getLocatorType(objectID));
@@ -3526,9 +3790,8 @@ public class SeleniumTestBase extends SeleneseTestNgHelperVir {
                                     + objectName + ") [" + objectID + "] ");
                     break;
                 } catch (Exception e) {
-                    pause(retryInterval);
 
-                    if (!(counter > 0)) {
+                    if (!attempts.retry(e)) {
                         e.printStackTrace();
                         reportresult(true, "GET OBJECT COUNT :" + objectName
                                 + "", "FAILED",
@@ -3548,7 +3811,7 @@ public class SeleniumTestBase extends SeleneseTestNgHelperVir {
             // test case
             // Several checks were introduced to narrow down to the failure to
             // the exact cause.
-            if (!(counter > 0)) {
+            if (attempts.isExhausted()) {
                 e.printStackTrace();
                 reportresult(true, "SELECT :" + objectName + "", "FAILED",
                         "GET OBJECT COUNT command  :Element (" + objectName
@@ -3745,7 +4008,7 @@ public class SeleniumTestBase extends SeleneseTestNgHelperVir {
 
         String objectID = "";
         // load the actual object id from the OR
-        objectID = ObjectMap.getObjectSearchPath(objectName, locatorIdentifire);
+        objectID = ObjectMap.getObjectSearchPath(objectName, locatorIdentifire.get());
         try {
             // checks the element presence
             checkForNewWindowPopups();
@@ -4299,6 +4562,8 @@ public class SeleniumTestBase extends SeleneseTestNgHelperVir {
  ID, 
  /** The link. */
  LINK, 
+ /** The partial link. */
+ PARTIALLINK, 
  /** The name. */
  NAME, 
  /** The tagname. */
@@ -4308,7 +4573,8 @@ public class SeleniumTestBase extends SeleneseTestNgHelperVir {
     }
 
     /**
-     * Gets the locator type.
+     * Gets the locator type. The locator is parsed once and the compiled
+     * {@link By} is shared through the {@link LocatorCache}.
      *
      * @param objectID the object id
      * @return the locator type
@@ -4316,46 +4582,7 @@ public class SeleniumTestBase extends SeleneseTestNgHelperVir {
      */
     public final By getLocatorType(final String objectID) throws Exception {
 
-        String typeString = "";
-        String ref = "";
-        String objectIDinLowerCase = objectID.toLowerCase(Locale.getDefault());
-        boolean isObjectTypeisXpath = objectIDinLowerCase.startsWith("/");
-        if (!isObjectTypeisXpath) {
-            typeString =
-                    objectIDinLowerCase.substring(0, objectID.indexOf('='));
-            ref =
-                    objectID.substring(objectID.indexOf('=') + 1,
-                            objectID.length());
-        }
-        // String objectIDType = typeString.toLowerCase(Locale.getDefault());
-        if (isObjectTypeisXpath) {
-
-            return By.xpath(objectID);
-        } else if (typeString.contains("xpath")) {
-
-            return By.xpath(ref);
-        } else if (typeString.contains("css")) {
-
-            return By.cssSelector(ref);
-        } else if (typeString.contains("id")) {
-
-            return By.id(ref);
-        } else if (typeString.contains("link")) {
-
-            return By.linkText(ref);
-        } else if (typeString.contains("tagname")) {
-
-            return By.tagName(ref);
-        } else if (typeString.contains("name")) {
-
-            return By.name(ref);
-        } else if (typeString.contains("classname")) {
-
-            return By.className(ref);
-        }
-
-        throw new Exception("Invalid Locator Type Passed " + ref);
-
+        return LocatorCache.getInstance().get(objectID).getBy();
     }
 
     /**
@@ -4370,53 +4597,38 @@ public class SeleniumTestBase extends SeleneseTestNgHelperVir {
         Logger log = getLog();
         log.info("INFO : Finding Element [ " + objectID + " ]");
         WebDriver driver = getDriver();
-        String typeString = "";
-        String ref = "";
-        String objectIDinLowerCase = objectID.toLowerCase(Locale.getDefault());
-        boolean isObjectTypeisXpath = objectIDinLowerCase.startsWith("/");
-        if (!isObjectTypeisXpath) {
-            typeString =
-                    objectIDinLowerCase.substring(0,
-                            objectIDinLowerCase.indexOf('='));
-            ref =
-                    objectID.substring(objectID.indexOf('=') + 1,
-                            objectID.length());
-        }
-        if (isObjectTypeisXpath) {
-
-            return driver.findElement(By.xpath(objectID));
-        } else if ("xpath".equals(typeString)) {
-
-            return driver.findElement(By.xpath(ref));
-        } else if ("css".equals(typeString)) {
-
-            return driver.findElement(By.cssSelector(ref));
-        } else if ("id".equals(typeString)) {
-
-            return driver.findElement(By.id(ref));
-        } else if ("link".equals(typeString)) {
-
-            return driver.findElement(By.partialLinkText(ref));
-        } else if ("tagname".equals(typeString)) {
-
-            return driver.findElement(By.tagName(ref));
-        } else if ("classname".equals(typeString) || "class".equals(typeString)) {
-
-            return driver.findElement(By.className(ref));
-        } else if ("name".equals(typeString)) {
-
-            return driver.findElement(By.name(ref));
+        By searchBy;
+        try {
+            searchBy = getLocatorType(objectID);
+        } catch (Exception e) {
+            log.error(
+                    "Invalid Locator Type Passed "
+                            + objectID
+                            + ". Expected locator types : XPATH, CSS, ID, NAME, LINK, PARTIALLINK, TAGNAME, CLASSNAME");
+            throw e;
         }
-        log.error(
-                "Invalid Locator Type Passed "
-                        + objectID
-                        + ". Expected locator types : XPATH, CSS, ID, NAME, LINK, TAGNAME, CLASSNAME");
-        throw new Exception("Invalid Locator Type Passed " + ref);
+        return driver.findElement(searchBy);
+    }
 
+    /**
+     * Gets the deadline of a wait of the current step: the retries at one
+     * second each, as a polling wait takes, but never past the end of the
+     * step.
+     *
+     * @return the deadline, as a {@link System#nanoTime()} value
+     */
+    private long getWaitDeadline() {
+        final long retryMillis = 1000L;
+        return Math.min(System.nanoTime()
+                + TimeUnit.MILLISECONDS.toNanos(getRetryCount() * retryMillis),
+                getRetryExecutor().getStepDeadline());
     }
 
     /**
      * internal method which actually checks whether the given element is exists.
+     * Elements found by the previous commands are reused from the
+     * {@link ElementCache} while they are still attached to the page; a
+     * cached element is not scrolled to again, as it was when it was found.
      *
      * @param searchPath the search path
      * @return the web element
@@ -4428,26 +4640,31 @@ public class SeleniumTestBase extends SeleneseTestNgHelperVir {
         WebElement webElement = null;
         String locator = searchPath;
         final Logger log = getLog();
-        int count = getRetryCount();
-        setCommandStartTime(getCurrentTime());
+        setCommandStartTime(System.nanoTime());
+        if (elementCacheEnabled) {
+            webElement = getElementCache().get(searchPath);
+            if (webElement != null) {
+                log.info("Element [ " + searchPath + " ] Found in cache");
+                return webElement;
+            }
+        }
         final By searchBy = getLocatorType(locator);
-        final Long retryMillis = 1000L;
 
         try {
-            
-            Function<WebDriver, WebElement> findElementFunction = 
+            Function<WebDriver, WebElement> findElementFunction =
                     new FindElementFunction<WebDriver, WebElement>(searchBy);
-            
-            Wait<WebDriver> wait =
-                    new FluentWait<WebDriver>(driver)
-                            .withTimeout((count * retryMillis),
-                                    TimeUnit.MILLISECONDS)
-                            .pollingEvery(retryInterval, TimeUnit.MILLISECONDS)
-                            .ignoring(NoSuchElementException.class)
-                            .ignoring(WebDriverException.class);
-
-            webElement = wait.until(findElementFunction);
-               
+
+            long deadline = getWaitDeadline();
+            DomObserverWait observerWait = DomObserverWait.getInstance();
+            if (observerWait.isEnabled()) {
+                webElement =
+                        observerWait.waitForElement(driver, searchPath,
+                                deadline);
+            } else {
+                webElement =
+                        WaitEngine.getInstance().untilDeadline(driver,
+                                findElementFunction, deadline, searchPath);
+            }
         } catch (Exception e) {
             log.error("Element [ " + searchPath + " ] Not Found", e);
         }
@@ -4456,9 +4673,11 @@ public class SeleniumTestBase extends SeleneseTestNgHelperVir {
             try {
                 log.info("Element [ " + searchBy.toString()
                         + " ] Found");
-                JavascriptExecutor jsExecutor = (JavascriptExecutor) driver;
-                jsExecutor.executeScript("arguments[0].scrollIntoView(false);",
-                        webElement);
+                if (driver instanceof JavascriptExecutor) {
+                    JavascriptExecutor jsExecutor = (JavascriptExecutor) driver;
+                    jsExecutor.executeScript(
+                            "arguments[0].scrollIntoView(false);", webElement);
+                }
             } catch (Exception ex) {
                 log.error("Exception occured while scrolling to the element.",
                         ex);
@@ -4467,6 +4686,9 @@ public class SeleniumTestBase extends SeleneseTestNgHelperVir {
             throw new Exception("Element " + searchPath);
         }
 
+        if (elementCacheEnabled) {
+            getElementCache().put(searchPath, webElement);
+        }
         return webElement;
     }
     
@@ -4656,7 +4878,7 @@ public class SeleniumTestBase extends SeleneseTestNgHelperVir {
      * @param name the name
      * @return the table
      */
-    public final DataTable getTable(final String name) {
+    public final synchronized DataTable getTable(final String name) {
         File file;
         if (tables == null) {
             File tempFile = new File("tempFile");
@@ -4739,7 +4961,8 @@ public class SeleniumTestBase extends SeleneseTestNgHelperVir {
         WebDriver driver = getDriver();
         try {
             driver.navigate().back();
-            super.pause(Integer.parseInt(waitTime));
+            getElementCache().invalidate();
+            waitForNavigation(waitTime);
             reportresult(true, "GO BACK :", "PASSED", "");
         } catch (Exception e) {
             String errorString = e.getMessage();
@@ -5013,22 +5236,22 @@ public class SeleniumTestBase extends SeleneseTestNgHelperVir {
             throws Exception {
         initRobot();
         clipboard = Toolkit.getDefaultToolkit().getSystemClipboard();
-        this.inputStringp = actionFlow;
-        this.waitTimep = waitTime;
+        final ExecutionContext context = ExecutionContext.current();
 
         Thread newThread = new Thread(new Runnable() {
 
             @Override
             public void run() {
 
-                try {
-                    pause(Integer.parseInt(waitTimep));
-                } catch (Exception e1) {
-                    e1.printStackTrace();
-                }
-                if (inputStringp.startsWith("FORCE%")) {
+                ExecutionContext.attach(context);
+                if (actionFlow.startsWith("FORCE%")) {
 
-                    forceHandlePopup(getRobot(), inputStringp.split("%")[1]);
+                    try {
+                        pause(Integer.parseInt(waitTime));
+                    } catch (Exception e1) {
+                        e1.printStackTrace();
+                    }
+                    forceHandlePopup(getRobot(), actionFlow.split("%")[1]);
                 } else {
                     /*
                      * If the popup is not a forcrfully handled it will be
@@ -5037,7 +5260,25 @@ public class SeleniumTestBase extends SeleneseTestNgHelperVir {
                     String verificationErrors = "";
                     String actualAlertText = "";
                     WebDriver driver = getDriver();
-                    String[] commands = inputStringp.split("\\|");
+                    String[] commands = actionFlow.split("\\|");
+                    if (PageReadiness.getInstance().isEnabled()) {
+                        // handle the alert as soon as it opens instead of
+                        // after the whole wait time
+                        try {
+                            WaitEngine.getInstance().until(driver,
+                                    ExpectedConditions.alertIsPresent(),
+                                    Integer.parseInt(waitTime), null);
+                        } catch (Exception e1) {
+                            getLog().info("No alert opened within "
+                                    + waitTime + " ms");
+                        }
+                    } else {
+                        try {
+                            pause(Integer.parseInt(waitTime));
+                        } catch (Exception e1) {
+                            e1.printStackTrace();
+                        }
+                    }
                     try {
                         actualAlertText = driver.switchTo().alert().getText();
                     } catch (NoAlertPresentException e) {
@@ -5267,12 +5508,6 @@ public class SeleniumTestBase extends SeleneseTestNgHelperVir {
         }
     }
 
-    /** The input stringp. */
-    private String inputStringp;
-    
-    /** The wait timep. */
-    private String waitTimep;
-
     /**
      * Type.
      *
@@ -5351,9 +5586,9 @@ public class SeleniumTestBase extends SeleneseTestNgHelperVir {
 
     public final void keyPress(final String objectName, final String identifire,
             final Object value) {
-        this.locatorIdentifire = identifire;
+        this.locatorIdentifire.set(identifire);
         keyPress(objectName, value);
-        this.locatorIdentifire = "";
+        this.locatorIdentifire.set("");
     }
 
     /**
@@ -5374,12 +5609,13 @@ public class SeleniumTestBase extends SeleneseTestNgHelperVir {
 
         String value = checkNullObject(objValue, "KEYPRESS");
         WebDriver driver = getDriver();
-        int counter = getRetryCount();
+        RetryExecutor.Attempts attempts =
+                getRetryExecutor().start("KEYPRESS");
 
         String[] valueStringsArr = value.split("\\|");
 
         // Getting the actual object identification from the object map
-        String objectID = ObjectMap.getObjectSearchPath(objectName, locatorIdentifire);
+        String objectID = ObjectMap.getObjectSearchPath(objectName, locatorIdentifire.get());
         try {
             // Check whether the element present
             checkForNewWindowPopups();
@@ -5394,9 +5630,8 @@ public class SeleniumTestBase extends SeleneseTestNgHelperVir {
              * can be exited from the loop under 2 conditions 1. if the command
              * succeeded 2. if the RETRY count is exceeded
              */
-            while (counter > 0) {
+            while (attempts.hasNext()) {
                 try {
-                    counter--;
 
                     // Calling the actual command
                     element.sendKeys("");
@@ -5414,11 +5649,13 @@ public class SeleniumTestBase extends SeleneseTestNgHelperVir {
                             "PASSED", "Input Value = " + value);
                     break;
                 } catch (StaleElementReferenceException staleElementException) {
+                    if (!attempts.retryNow(staleElementException)) {
+                        throw staleElementException;
+                    }
                     element = checkElementPresence(objectID);
                 } catch (Exception e) {
-                    pause(retryInterval);
 
-                    if (!(counter > 0)) {
+                    if (!attempts.retry(e)) {
                         e.printStackTrace();
                         reportresult(true, "KEYPRESS :" + objectName + "",
                                 "FAILED",
@@ -5552,7 +5789,8 @@ public class SeleniumTestBase extends SeleneseTestNgHelperVir {
     private void doCheckPattern(final ObjectLocator locator,
             final String pattern) {
 
-        int counter = getRetryCount();
+        RetryExecutor.Attempts attempts =
+                getRetryExecutor().start("CHECK_PATTERN");
         String returnValue = "";
 
         String regex = getRegexPattern(pattern);
@@ -5573,9 +5811,8 @@ public class SeleniumTestBase extends SeleneseTestNgHelperVir {
              * can be exited from the loop under 2 conditions 1. if the command
              * succeeded 2. if the RETRY count is exceeded
              */
-            while (counter > 0) {
+            while (attempts.hasNext()) {
                 try {
-                    counter--;
 
                     // Calling the actual command
                     returnValue = element.getText().trim();
@@ -5603,10 +5840,12 @@ public class SeleniumTestBase extends SeleneseTestNgHelperVir {
                     }
 
                 } catch (StaleElementReferenceException staleElementException) {
+                    if (!attempts.retryNow(staleElementException)) {
+                        throw staleElementException;
+                    }
                     element = checkElementPresence(objectID);
                 } catch (Exception e) {
-                    pause(retryInterval);
-                    if (!(counter > 0)) {
+                    if (!attempts.retry(e)) {
                         e.printStackTrace();
                         String objectLogicalName = locator.getLogicalName();
                         reportresult(true, "CHECKPATTERN :" + objectLogicalName
@@ -5745,9 +5984,9 @@ public class SeleniumTestBase extends SeleneseTestNgHelperVir {
      * */
     public final void mouseOver(final String objectName, final String identifire) {
 
-        this.locatorIdentifire = identifire;
+        this.locatorIdentifire.set(identifire);
         mouseOver(objectName);
-        this.locatorIdentifire = "";
+        this.locatorIdentifire.set("");
     }
 
     /**
@@ -5761,11 +6000,12 @@ public class SeleniumTestBase extends SeleneseTestNgHelperVir {
 
     public final void mouseOver(final String objectName) {
         String objectID = "";
-        int counter = getRetryCount();
+        RetryExecutor.Attempts attempts =
+                getRetryExecutor().start("MOUSE_OVER");
         WebDriver driver = getDriver();
         try {
             // Retrieve the correct object locator from the object map
-            objectID = ObjectMap.getObjectSearchPath(objectName, locatorIdentifire);
+            objectID = ObjectMap.getObjectSearchPath(objectName, locatorIdentifire.get());
             // first verify whether the element is present in the current web
             // pagge
             checkForNewWindowPopups();
@@ -5780,9 +6020,8 @@ public class SeleniumTestBase extends SeleneseTestNgHelperVir {
              * can be exitted from the loop under 2 conditions 1. if the command
              * succeeded 2. if the RETRY count is exceeded
              */
-            while (counter > 0) {
+            while (attempts.hasNext()) {
                 try {
-                    counter--;
 
                     Actions builder = new Actions(driver);
                     // call for selenium web driver command
@@ -5794,10 +6033,12 @@ public class SeleniumTestBase extends SeleneseTestNgHelperVir {
                     // if the testcase passed move out from the loop
                     break;
                 } catch (StaleElementReferenceException staleElementException) {
+                    if (!attempts.retryNow(staleElementException)) {
+                        throw staleElementException;
+                    }
                     element = checkElementPresence(objectID);
                 } catch (Exception e) {
-                    pause(retryInterval);
-                    if (!(counter > 0)) {
+                    if (!attempts.retry(e)) {
 
                         e.printStackTrace();
                         reportresult(true, "MOUSE OVER :" + objectName + "",
@@ -5878,7 +6119,8 @@ public class SeleniumTestBase extends SeleneseTestNgHelperVir {
      */
 
     private void doSelectFrame(final ObjectLocator locator) {
-        int counter = getRetryCount();
+        RetryExecutor.Attempts attempts =
+                getRetryExecutor().start("SELECT_FRAME");
         int frameIndex = -1;
         WebElement element = null;
 
@@ -5897,10 +6139,9 @@ public class SeleniumTestBase extends SeleneseTestNgHelperVir {
              * succeeded 2. if the RETRY count is exceeded
              */
 
-            while (counter > 0) {
+            while (attempts.hasNext()) {
                 try {
 
-                    counter--;
                     // Calling the actual command
                     TargetLocator target;
                     if (objectIDValue.startsWith("index=")) {
@@ -5911,17 +6152,21 @@ public class SeleniumTestBase extends SeleneseTestNgHelperVir {
                         target = getDriver().switchTo();
                         target.defaultContent();
                         target.frame(frameIndex);
+                        getElementCache().selectTopFrame();
+                        getElementCache().selectFrame(objectIDValue);
 
                     } else if ("parent".equals(objectIDValue)
                             || "null".equals(objectIDValue)) {
 
                         target = getDriver().switchTo();
                         target.defaultContent();
+                        getElementCache().selectTopFrame();
                     } else {
                         checkForNewWindowPopups();
                         element = checkElementPresence(objectID);
                         target = getDriver().switchTo();
                         target.frame(element);
+                        getElementCache().selectFrame(objectID);
                     }
 
                     reportresult(true, "SELECT FRAME :" + locator + "",
@@ -5929,9 +6174,8 @@ public class SeleniumTestBase extends SeleneseTestNgHelperVir {
                     break;
                 } catch (Exception e) {
 
-                    pause(retryInterval);
 
-                    if (!(counter > 0)) {
+                    if (!attempts.retry(e)) {
                         e.printStackTrace();
                         reportresult(true, "SELECT FRAME :" + locator + "",
                                 "FAILED",
@@ -6110,7 +6354,7 @@ public class SeleniumTestBase extends SeleneseTestNgHelperVir {
      * */
     public final void fireEvent(final String event, final String waittime) {
 
-        super.pause(Integer.parseInt(waittime));
+        waitForNavigation(waittime);
         /*
          * START DESCRIPTION following for loop was added to make the command
          * more consistent try the command for give amount of time (can be
@@ -6312,6 +6556,17 @@ public class SeleniumTestBase extends SeleneseTestNgHelperVir {
      */
     public final void switchUser(final String instanceName) {
 
+        String launchError = awaitUser(instanceName);
+        if (launchError != null) {
+            reportresult(true, "SWITCH USER :" + instanceName + "", "FAILED",
+                    "SWITCH USER command : User (" + instanceName
+                            + ") could not be created. Error : "
+                            + launchError);
+            checkTrue(false, true, "SWITCH USER command : User ("
+                    + instanceName + ") could not be created. Error : "
+                    + launchError);
+            return;
+        }
         boolean isNewInstance;
         if (getSeleniumInstances().containsKey(instanceName)) {
             isNewInstance = false;
@@ -6346,7 +6601,9 @@ public class SeleniumTestBase extends SeleneseTestNgHelperVir {
             final String serverConfig) {
 
         boolean isNewInstance;
-        if (getSeleniumInstances().containsKey(instanceName)) {
+        if (getSeleniumInstances().containsKey(instanceName)
+                || ExecutionContext.current().getPendingUsers()
+                        .containsKey(instanceName)) {
             isNewInstance = false;
         } else {
             isNewInstance = true;
@@ -6382,6 +6639,130 @@ public class SeleniumTestBase extends SeleneseTestNgHelperVir {
 
     }
 
+    /**
+     * Creates a new user profile and launches the browser session of the user
+     * in the background. The test continues with the current user; a later
+     * switchUser to the new user waits for its browser only.
+     *
+     * @param instanceName the instance name
+     * @param browser the browser
+     * @param serverConfig the server config
+     */
+    public final void createUserAsync(final String instanceName,
+            final String browser, final String serverConfig) {
+
+        String error = startUser(instanceName, browser, serverConfig);
+        if (error == null) {
+            reportresult(true, "CREATE USER :" + instanceName + "", "PASSED",
+                    "CREATE USER command : User (" + instanceName
+                            + ") is being created. ");
+        } else {
+            reportresult(true, "CREATE USER :" + instanceName + "", "FAILED",
+                    "CREATE USER command : " + error);
+            checkTrue(false, true, "CREATE USER command : " + error);
+        }
+    }
+
+    /**
+     * Creates new user profiles and launches the browser sessions of the users
+     * at the same time, waiting for all of them. Each user is reported on its
+     * own; a failed launch does not stop the others. The test continues with
+     * the current user.
+     *
+     * @param browser the browser
+     * @param serverConfig the server config
+     * @param instanceNames the instance names
+     */
+    public final void createUsers(final String browser,
+            final String serverConfig, final String... instanceNames) {
+
+        List<String> errors = new ArrayList<String>(instanceNames.length);
+        for (String instanceName : instanceNames) {
+            errors.add(startUser(instanceName, browser, serverConfig));
+        }
+        StringBuilder failedUsers = new StringBuilder();
+        for (int i = 0; i < instanceNames.length; i++) {
+            String instanceName = instanceNames[i];
+            String error = errors.get(i);
+            if (error == null) {
+                error = awaitUser(instanceName);
+                if (error != null) {
+                    error =
+                            "Error occured while invoking the new user ("
+                                    + instanceName + "). Error : " + error;
+                }
+            }
+            if (error == null) {
+                reportresult(true, "CREATE USER :" + instanceName + "",
+                        "PASSED", "CREATE USER command : User ("
+                                + instanceName + ") is Created. ");
+            } else {
+                reportresult(true, "CREATE USER :" + instanceName + "",
+                        "FAILED", "CREATE USER command : " + error);
+                failedUsers.append(failedUsers.length() > 0 ? ", " : "")
+                        .append(instanceName);
+            }
+        }
+        if (failedUsers.length() > 0) {
+            checkTrue(false, true, "CREATE USER command : Users ("
+                    + failedUsers + ") could not be created. ");
+        }
+    }
+
+    /**
+     * Configures a new user and starts launching its browser session.
+     *
+     * @param instanceName the instance name
+     * @param browser the browser
+     * @param serverConfig the server config
+     * @return the error, or null if the launch started
+     */
+    private String startUser(final String instanceName, final String browser,
+            final String serverConfig) {
+
+        ExecutionContext context = ExecutionContext.current();
+        if (getSeleniumInstances().containsKey(instanceName)
+                || context.getPendingUsers().containsKey(instanceName)) {
+            return "User (" + instanceName + ") is already available. ";
+        }
+        try {
+            setUp(instanceName, browser, serverConfig);
+            context.getPendingUsers().put(instanceName,
+                    startBrowserSessionAsync(browser));
+            return null;
+        } catch (Exception e) {
+            return "Error occured while invoking the new user ("
+                    + instanceName + "). Error : " + e.getMessage();
+        }
+    }
+
+    /**
+     * Waits for the browser session of a user created in the background, and
+     * adds it to the selenium instances.
+     *
+     * @param instanceName the instance name
+     * @return the launch error, or null if the session is ready or was not
+     *         launched in the background
+     */
+    private String awaitUser(final String instanceName) {
+
+        Future<WebDriver> launch =
+                ExecutionContext.current().getPendingUsers()
+                        .remove(instanceName);
+        if (launch == null) {
+            return null;
+        }
+        try {
+            putSeleniumInstances(instanceName, launch.get());
+            return null;
+        } catch (ExecutionException e) {
+            return String.valueOf(e.getCause().getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "Interrupted while waiting for the browser";
+        }
+    }
+
     /**
      * Checks the properties of an browser property given by the property name
      * is exists if the property does not exists, further continuation of the
@@ -6405,10 +6786,10 @@ public class SeleniumTestBase extends SeleneseTestNgHelperVir {
             final String identifier, final String propertyname,
             final Object objExpectedvale, final boolean stopOnFailure) {
 
-        this.locatorIdentifire = identifier;
+        this.locatorIdentifire.set(identifier);
         checkWindowProperty(windowName, propertyname, objExpectedvale,
                 stopOnFailure);
-        this.locatorIdentifire = "";
+        this.locatorIdentifire.set("");
     }
 
     /**
@@ -6466,13 +6847,14 @@ public class SeleniumTestBase extends SeleneseTestNgHelperVir {
             final String propertyname, final String expectedvale,
             final boolean stopOnFailure) {
 
-        int counter = getRetryCount();
+        RetryExecutor.Attempts attempts =
+                getRetryExecutor().start("CHECK_WINDOW_PROPERTY");
         boolean objectFound = false;
         WebDriver driver = getDriver();
         // String windowiden = "";
 
         // Getting the actual object identification from the object map
-        String window = ObjectMap.getObjectSearchPath(windowName, locatorIdentifire);
+        String window = ObjectMap.getObjectSearchPath(windowName, locatorIdentifire.get());
         try {
             checkForNewWindowPopups();
 
@@ -6486,14 +6868,14 @@ public class SeleniumTestBase extends SeleneseTestNgHelperVir {
              * can be exited from the loop under 2 conditions 1. if the command
              * succeeded 2. if the RETRY count is exceeded
              */
-            while (counter > 0) {
+            while (attempts.hasNext()) {
                 try {
-                    counter--;
                     String currentWinHandle = driver.getWindowHandle();
                     String targetWindow =
                             getMatchingWindowFromCurrentWindowHandles(driver,
                                     window);
                     driver.switchTo().window(currentWinHandle);
+                    getElementCache().selectWindow(currentWinHandle);
                     if (expectedvale.equalsIgnoreCase(String
                             .valueOf(targetWindow != null))) {
 
@@ -6516,8 +6898,7 @@ public class SeleniumTestBase extends SeleneseTestNgHelperVir {
                     }
                     break;
                 } catch (WebDriverException ex) {
-                    pause(retryInterval);
-                    if (!(counter > 0)) {
+                    if (!attempts.retry(ex)) {
                         reportresult(true, "CHECK WINDOW PROPERTY:"
                                 + propertyname + "", "FAILED",
                                 "CHECK WINDOW PROPERTY  :Window (" + windowName
@@ -6904,20 +7285,20 @@ public class SeleniumTestBase extends SeleneseTestNgHelperVir {
         int rotationDegree = Integer.parseInt(propHandler
                 .getRuntimeProperty("ROTATION_DEGREE"));
 
-        int retry = getRetryCount();
+        RetryExecutor.Attempts attempts =
+                getRetryExecutor().start("IMAGE_PRESENT");
         double regQuality = maxRecQuality;
         Target target;
 
         javaxt.io.Image img = new javaxt.io.Image(path);
         ScreenRegion targetRegion = null;
-        while (retry > 0) {
-            retry--;
+        while (attempts.hasNext()) {
             ScreenRegion s = new DesktopScreenRegion();
             target = new ImageTarget(img.getBufferedImage());
             target.setMinScore(regQuality);
             targetRegion = s.find(target);
             if (targetRegion == null) {
-                pause(retryInterval);
+                attempts.retry();
                 if (isRotatable) {
                     img.rotate(rotationDegree);
                 }
@@ -6959,16 +7340,16 @@ public class SeleniumTestBase extends SeleneseTestNgHelperVir {
             final String actionFlow, final String waitTime) throws Exception {
         initRobot();
         clipboard = Toolkit.getDefaultToolkit().getSystemClipboard();
-        this.inputStringp = actionFlow;
-        this.waitTimep = waitTime;
+        final ExecutionContext context = ExecutionContext.current();
 
         Thread newThread = new Thread(new Runnable() {
 
             @Override
             public void run() {
 
+                ExecutionContext.attach(context);
                 try {
-                    pause(Integer.parseInt(waitTimep));
+                    pause(Integer.parseInt(waitTime));
 
                 } catch (Exception e1) {
                     e1.printStackTrace();
@@ -6976,7 +7357,7 @@ public class SeleniumTestBase extends SeleneseTestNgHelperVir {
                 try {
                     ScreenRegion targetImage = isImagePresent(imagePath, false);
                     if (targetImage != null) {
-                        forceHandlePopup(getRobot(), inputStringp);
+                        forceHandlePopup(getRobot(), actionFlow);
                         reportresult(true, "HANDLE IMAGE POPUP :", "PASSED", "");
                     }
                 } catch (Exception e) {
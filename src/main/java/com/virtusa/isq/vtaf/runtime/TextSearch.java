@@ -0,0 +1,224 @@
+/*
+ * Copyright 2004 ThoughtWorks, Inc. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law
+ * or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package com.virtusa.isq.vtaf.runtime;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebElement;
+
+import com.virtusa.isq.vtaf.utils.PropertyHandler;
+
+/**
+ * Searches the page for texts inside the browser, so that only the result of
+ * the search crosses the wire instead of the whole page source.<br>
+ * The search mode is set with the runtime property <i>TEXT_SEARCH_MODE</i>:
+ * <ul>
+ * <li><i>markup</i> (default): the serialized markup of the page or container
+ * is searched, which matches the page source of the previous versions</li>
+ * <li><i>text</i>: only the text nodes are searched, ignoring tags, attributes,
+ * scripts and styles</li>
+ * <li><i>pagesource</i>: the page source is downloaded and searched, as in the
+ * previous versions</li>
+ * </ul>
+ */
+public final class TextSearch {
+
+    /**
+     * The text search modes.
+     */
+    public static enum Mode {
+
+        /** The serialized markup, searched in the browser. */
+        MARKUP,
+        /** The text nodes, searched in the browser. */
+        TEXT,
+        /** The downloaded page source. */
+        PAGESOURCE
+    }
+
+    /** The script which searches the texts. */
+    private static final String SEARCH_SCRIPT =
+            "var mode = arguments[0], texts = arguments[2];"
+            + "var root = arguments[1] || document.documentElement;"
+            + "var haystack, nodes = null, starts = null;"
+            + "if (mode === 'MARKUP') { haystack = root.outerHTML; } else {"
+            + " nodes = []; starts = []; var parts = [], length = 0;"
+            + " var walker = document.createTreeWalker(root, 4, null, false);"
+            + " for (var n = walker.nextNode(); n; n = walker.nextNode()) {"
+            + " var parent = n.parentNode ? n.parentNode.nodeName : '';"
+            + " if (parent === 'SCRIPT' || parent === 'STYLE') { continue; }"
+            + " nodes.push(n); starts.push(length); parts.push(n.nodeValue);"
+            + " length += n.nodeValue.length; }"
+            + " haystack = parts.join(''); }"
+            + "var results = [];"
+            + "for (var t = 0; t < texts.length; t++) {"
+            + " var index = haystack.indexOf(texts[t]), tag = '';"
+            + " if (index >= 0 && nodes !== null) {"
+            + " var lo = 0, hi = starts.length - 1;"
+            + " while (lo < hi) { var mid = (lo + hi + 1) >> 1;"
+            + " if (starts[mid] <= index) { lo = mid; } else { hi = mid - 1; } }"
+            + " tag = nodes[lo].parentNode"
+            + " ? nodes[lo].parentNode.nodeName.toLowerCase() : '';"
+            + " } else if (index >= 0) { tag = root.nodeName.toLowerCase(); }"
+            + " results.push([index, tag]); }"
+            + "return results;";
+
+    /** The shared instance. */
+    private static TextSearch instance;
+
+    /** The search mode. */
+    private final Mode mode;
+
+    /**
+     * Instantiates a new text search.
+     *
+     * @param searchMode the search mode
+     */
+    public TextSearch(final Mode searchMode) {
+        this.mode = searchMode;
+    }
+
+    /**
+     * Gets the shared instance configured from the runtime properties.
+     *
+     * @return the text search
+     */
+    public static synchronized TextSearch getInstance() {
+        if (instance == null) {
+            PropertyHandler propHandler =
+                    new PropertyHandler("runtime.properties");
+            String modeName =
+                    propHandler.getRuntimeProperty("TEXT_SEARCH_MODE",
+                            Mode.MARKUP.name());
+            Mode searchMode;
+            try {
+                searchMode = Mode.valueOf(modeName.trim().toUpperCase(
+                        Locale.ENGLISH));
+            } catch (IllegalArgumentException e) {
+                searchMode = Mode.MARKUP;
+            }
+            instance = new TextSearch(searchMode);
+        }
+        return instance;
+    }
+
+    /**
+     * Gets the search mode.
+     *
+     * @return the mode
+     */
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * Checks if the page, or the given container, contains the text.
+     *
+     * @param driver the driver
+     * @param text the text
+     * @param container the container to search in, or null for the whole page
+     * @return true, if the text is present
+     */
+    public boolean contains(final WebDriver driver, final String text,
+            final WebElement container) {
+        return find(driver, new String[] {text }, container)[0].isFound();
+    }
+
+    /**
+     * Searches the page, or the given container, for all the texts in a
+     * single call.
+     *
+     * @param driver the driver
+     * @param texts the texts
+     * @param container the container to search in, or null for the whole page
+     * @return the match of each text, in the same order
+     */
+    public TextMatch[] find(final WebDriver driver, final String[] texts,
+            final WebElement container) {
+        TextMatch[] matches = new TextMatch[texts.length];
+        if (mode == Mode.PAGESOURCE || !(driver instanceof JavascriptExecutor)) {
+            String haystack =
+                    container == null ? driver.getPageSource() : container
+                            .getAttribute("outerHTML");
+            for (int i = 0; i < texts.length; i++) {
+                matches[i] = new TextMatch(haystack.indexOf(texts[i]), "");
+            }
+            return matches;
+        }
+        List< ? > results =
+                (List< ? >) ((JavascriptExecutor) driver).executeScript(
+                        SEARCH_SCRIPT, mode.name(), container,
+                        Arrays.asList(texts));
+        for (int i = 0; i < texts.length; i++) {
+            List< ? > result = (List< ? >) results.get(i);
+            matches[i] =
+                    new TextMatch(((Number) result.get(0)).intValue(),
+                            String.valueOf(result.get(1)));
+        }
+        return matches;
+    }
+
+    /**
+     * The result of searching one text.
+     */
+    public static final class TextMatch {
+
+        /** The offset of the match. */
+        private final int offset;
+
+        /** The tag of the element holding the match. */
+        private final String tagName;
+
+        /**
+         * Instantiates a new text match.
+         *
+         * @param matchOffset the offset of the match, or -1
+         * @param matchTag the tag of the element holding the match
+         */
+        private TextMatch(final int matchOffset, final String matchTag) {
+            this.offset = matchOffset;
+            this.tagName = matchTag;
+        }
+
+        /**
+         * Checks if the text was found.
+         *
+         * @return true, if found
+         */
+        public boolean isFound() {
+            return offset >= 0;
+        }
+
+        /**
+         * Gets the offset of the match in the searched markup or text.
+         *
+         * @return the offset, or -1 if not found
+         */
+        public int getOffset() {
+            return offset;
+        }
+
+        /**
+         * Gets the tag of the element holding the match. Empty when the tag
+         * is not known.
+         *
+         * @return the tag name
+         */
+        public String getTagName() {
+            return tagName;
+        }
+    }
+}
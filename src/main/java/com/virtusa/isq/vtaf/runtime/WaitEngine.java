@@ -0,0 +1,235 @@
+/*
+ * Copyright 2004 ThoughtWorks, Inc. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law
+ * or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package com.virtusa.isq.vtaf.runtime;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openqa.selenium.TimeoutException;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+
+import com.google.common.base.Function;
+import com.virtusa.isq.vtaf.utils.PropertyHandler;
+
+/**
+ * Waits for a condition on the browser until a deadline.<br>
+ * The condition is checked immediately, then polled after a short delay which
+ * is doubled after each miss, up to a maximum. The time each object took to
+ * appear is recorded; in adaptive mode that history is used to choose the
+ * first poll delay of the object, so that slow objects are not polled
+ * needlessly and fast ones are not slept past.<br>
+ * Configured through the runtime properties <i>WAIT_INITIAL_POLL</i>,
+ * <i>WAIT_MAX_POLL</i> (defaults to <i>RETRY_INTERVAL</i>) and
+ * <i>WAIT_ADAPTIVE</i>.
+ */
+public final class WaitEngine {
+
+    /** The default initial poll delay in milliseconds. */
+    private static final int DEFAULT_INITIAL_POLL = 50;
+
+    /** The default maximum poll delay in milliseconds. */
+    private static final int DEFAULT_MAX_POLL = 1000;
+
+    /** The maximum number of objects with a recorded history. */
+    private static final int MAX_HISTORY = 4096;
+
+    /** The weight of the latest sample in the appearance time average. */
+    private static final double HISTORY_WEIGHT = 0.3;
+
+    /** The shared wait engine. */
+    private static WaitEngine instance;
+
+    /** The initial poll delay in milliseconds. */
+    private final long initialPollMillis;
+
+    /** The maximum poll delay in milliseconds. */
+    private final long maxPollMillis;
+
+    /** Whether the history seeds the first poll delay. */
+    private final boolean adaptive;
+
+    /** The average appearance time of each object in milliseconds. */
+    private final ConcurrentMap<String, Double> appearanceTimes =
+            new ConcurrentHashMap<String, Double>();
+
+    /**
+     * Instantiates a new wait engine.
+     *
+     * @param initialPoll the initial poll delay in milliseconds
+     * @param maxPoll the maximum poll delay in milliseconds
+     * @param adaptiveMode whether the history seeds the first poll delay
+     */
+    public WaitEngine(final long initialPoll, final long maxPoll,
+            final boolean adaptiveMode) {
+        this.initialPollMillis = Math.max(1, initialPoll);
+        this.maxPollMillis = Math.max(initialPollMillis, maxPoll);
+        this.adaptive = adaptiveMode;
+    }
+
+    /**
+     * Gets the shared wait engine configured from the runtime properties.
+     *
+     * @return the wait engine
+     */
+    public static synchronized WaitEngine getInstance() {
+        if (instance == null) {
+            PropertyHandler propHandler =
+                    new PropertyHandler("runtime.properties");
+            int retryInterval =
+                    propHandler.getIntRuntimeProperty("RETRY_INTERVAL",
+                            DEFAULT_MAX_POLL);
+            instance =
+                    new WaitEngine(propHandler.getIntRuntimeProperty(
+                            "WAIT_INITIAL_POLL", DEFAULT_INITIAL_POLL),
+                            propHandler.getIntRuntimeProperty("WAIT_MAX_POLL",
+                                    retryInterval),
+                            propHandler.getBooleanRuntimeProperty(
+                                    "WAIT_ADAPTIVE", false));
+        }
+        return instance;
+    }
+
+    /**
+     * Waits until the condition returns a value other than null or false, or
+     * until the timeout expires.
+     *
+     * @param <T> the condition result type
+     * @param driver the driver
+     * @param condition the condition
+     * @param timeoutMillis the timeout in milliseconds
+     * @param key the object the condition is waiting for, used to record the
+     *            appearance time. Can be null.
+     * @return the condition result
+     * @throws TimeoutException if the condition is not met before the timeout
+     */
+    public <T> T until(final WebDriver driver,
+            final Function< ? super WebDriver, T> condition,
+            final long timeoutMillis, final String key) {
+        return untilDeadline(driver, condition, System.nanoTime()
+                + TimeUnit.MILLISECONDS.toNanos(timeoutMillis), key);
+    }
+
+    /**
+     * Waits until the condition returns a value other than null or false, or
+     * until the deadline passes. NoSuchElementException and other
+     * WebDriverExceptions thrown by the condition are treated as misses.
+     *
+     * @param <T> the condition result type
+     * @param driver the driver
+     * @param condition the condition
+     * @param deadlineNanos the deadline, as a {@link System#nanoTime()} value
+     * @param key the object the condition is waiting for, used to record the
+     *            appearance time. Can be null.
+     * @return the condition result
+     * @throws TimeoutException if the condition is not met before the deadline
+     */
+    public <T> T untilDeadline(final WebDriver driver,
+            final Function< ? super WebDriver, T> condition,
+            final long deadlineNanos, final String key) {
+        long start = System.nanoTime();
+        long delay = firstPollDelay(key);
+        WebDriverException lastException = null;
+        while (true) {
+            try {
+                T value = condition.apply(driver);
+                if (value != null && !Boolean.FALSE.equals(value)) {
+                    record(key, System.nanoTime() - start);
+                    return value;
+                }
+            } catch (WebDriverException e) {
+                lastException = e;
+            }
+            long remaining = deadlineNanos - System.nanoTime();
+            if (remaining <= 0) {
+                break;
+            }
+            long sleep =
+                    Math.min(delay, TimeUnit.NANOSECONDS.toMillis(remaining));
+            try {
+                Thread.sleep(Math.max(1, sleep));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            delay = Math.min(delay * 2, maxPollMillis);
+        }
+        throw new TimeoutException("Timed out after "
+                + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)
+                + " ms waiting for " + condition, lastException);
+    }
+
+    /**
+     * Gets the delay before the second check of the given object.
+     *
+     * @param key the object
+     * @return the delay in milliseconds
+     */
+    private long firstPollDelay(final String key) {
+        if (!adaptive || key == null) {
+            return initialPollMillis;
+        }
+        Double average = appearanceTimes.get(key);
+        if (average == null) {
+            return initialPollMillis;
+        }
+        return Math.min(maxPollMillis,
+                Math.max(initialPollMillis, average.longValue()));
+    }
+
+    /**
+     * Records the time the given object took to appear.
+     *
+     * @param key the object
+     * @param elapsedNanos the elapsed time in nanoseconds
+     */
+    private void record(final String key, final long elapsedNanos) {
+        if (key == null) {
+            return;
+        }
+        double elapsed = TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+        Double average = appearanceTimes.get(key);
+        if (average == null) {
+            if (appearanceTimes.size() < MAX_HISTORY) {
+                appearanceTimes.put(key, elapsed);
+            }
+        } else {
+            appearanceTimes.put(key, average + HISTORY_WEIGHT
+                    * (elapsed - average));
+        }
+    }
+
+    /**
+     * Gets the average time the given object took to appear.
+     *
+     * @param key the object
+     * @return the average appearance time in milliseconds, or -1 if the object
+     *         has no recorded history
+     */
+    public long getAverageAppearanceMillis(final String key) {
+        Double average = appearanceTimes.get(key);
+        if (average == null) {
+            return -1;
+        }
+        return average.longValue();
+    }
+
+    /**
+     * Checks if the history seeds the first poll delay.
+     *
+     * @return true, if adaptive
+     */
+    public boolean isAdaptive() {
+        return adaptive;
+    }
+}
@@ -0,0 +1,512 @@
+/*
+ * Copyright 2004 ThoughtWorks, Inc. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law
+ * or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package com.virtusa.isq.vtaf.runtime.fake;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import org.openqa.selenium.InvalidSelectorException;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/**
+ * A CSS selector of the fake driver.<br>
+ * Supports the type, universal, id, class and attribute selectors (=, ~=, |=,
+ * ^=, $=, *=), the descendant, child, adjacent and sibling combinators, the
+ * selector groups and the :first-child, :last-child, :nth-child(n),
+ * :checked, :disabled and :enabled pseudo classes.
+ */
+final class CssSelector {
+
+    /** The alternatives of the group. */
+    private final List<List<Compound>> alternatives =
+            new ArrayList<List<Compound>>();
+
+    /** The selector. */
+    private final String selector;
+
+    /** The position of the parser. */
+    private int pos;
+
+    /**
+     * Compiles a selector.
+     *
+     * @param cssSelector the selector
+     */
+    CssSelector(final String cssSelector) {
+        this.selector = cssSelector;
+        do {
+            alternatives.add(parseComplex());
+        } while (consume(','));
+        skipSpaces();
+        if (pos < selector.length()) {
+            throw invalid();
+        }
+    }
+
+    /**
+     * Finds the descendants of a node matching the selector, in document
+     * order.
+     *
+     * @param root the node
+     * @return the elements
+     */
+    List<Element> select(final Node root) {
+        List<Element> matches = new ArrayList<Element>();
+        for (Element element : FakeDom.descendants(root)) {
+            if (matches(element)) {
+                matches.add(element);
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Checks if an element matches the selector.
+     *
+     * @param element the element
+     * @return true, if matching
+     */
+    boolean matches(final Element element) {
+        for (List<Compound> compounds : alternatives) {
+            if (matches(element, compounds, compounds.size() - 1)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks if an element matches a compound and its combinators, from right
+     * to left.
+     *
+     * @param element the element
+     * @param compounds the compounds
+     * @param index the compound the element must match
+     * @return true, if matching
+     */
+    private boolean matches(final Element element,
+            final List<Compound> compounds, final int index) {
+        Compound compound = compounds.get(index);
+        if (!compound.matches(element)) {
+            return false;
+        }
+        if (index == 0) {
+            return true;
+        }
+        switch (compound.combinator) {
+        case '>':
+            Element parent = parent(element);
+            return parent != null && matches(parent, compounds, index - 1);
+        case '+':
+            Element previous = previous(element);
+            return previous != null && matches(previous, compounds, index - 1);
+        case '~':
+            for (Element sibling = previous(element); sibling != null; sibling =
+                    previous(sibling)) {
+                if (matches(sibling, compounds, index - 1)) {
+                    return true;
+                }
+            }
+            return false;
+        default:
+            for (Element ancestor = parent(element); ancestor != null; ancestor =
+                    parent(ancestor)) {
+                if (matches(ancestor, compounds, index - 1)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Parses compounds separated by combinators.
+     *
+     * @return the compounds
+     */
+    private List<Compound> parseComplex() {
+        List<Compound> compounds = new ArrayList<Compound>();
+        skipSpaces();
+        compounds.add(parseCompound(' '));
+        while (true) {
+            boolean spaced = skipSpaces();
+            if (pos >= selector.length() || peek() == ',') {
+                return compounds;
+            }
+            char combinator = ' ';
+            if (peek() == '>' || peek() == '+' || peek() == '~') {
+                combinator = selector.charAt(pos++);
+                skipSpaces();
+            } else if (!spaced) {
+                throw invalid();
+            }
+            compounds.add(parseCompound(combinator));
+        }
+    }
+
+    /**
+     * Parses a compound selector.
+     *
+     * @param combinator the combinator with the previous compound
+     * @return the compound
+     */
+    private Compound parseCompound(final char combinator) {
+        Compound compound = new Compound(combinator);
+        boolean empty = true;
+        if (consume('*')) {
+            empty = false;
+        } else if (pos < selector.length() && isNameChar(peek())) {
+            compound.tag = parseName().toLowerCase(Locale.ENGLISH);
+            empty = false;
+        }
+        while (pos < selector.length()) {
+            char c = peek();
+            if (c == '#') {
+                pos++;
+                compound.conditions.add(new String[] {"id", "=", parseName() });
+            } else if (c == '.') {
+                pos++;
+                compound.conditions.add(new String[] {"class", "~=",
+                        parseName() });
+            } else if (c == '[') {
+                pos++;
+                compound.conditions.add(parseAttribute());
+            } else if (c == ':') {
+                pos++;
+                compound.pseudos.add(parsePseudo());
+            } else {
+                break;
+            }
+            empty = false;
+        }
+        if (empty) {
+            throw invalid();
+        }
+        return compound;
+    }
+
+    /**
+     * Parses an attribute selector, after the opening bracket.
+     *
+     * @return the attribute, the operator and the value
+     */
+    private String[] parseAttribute() {
+        skipSpaces();
+        String name = parseName().toLowerCase(Locale.ENGLISH);
+        skipSpaces();
+        String operator = "";
+        String value = "";
+        if (!consume(']')) {
+            int start = pos;
+            while (pos < selector.length() && "~|^$*".indexOf(peek()) >= 0) {
+                pos++;
+            }
+            if (!consume('=')) {
+                throw invalid();
+            }
+            operator = selector.substring(start, pos);
+            skipSpaces();
+            value = parseValue();
+            skipSpaces();
+            if (!consume(']')) {
+                throw invalid();
+            }
+        }
+        return new String[] {name, operator, value };
+    }
+
+    /**
+     * Parses a pseudo class, after the colon.
+     *
+     * @return the pseudo class, with its argument for nth-child
+     */
+    private String parsePseudo() {
+        String name = parseName().toLowerCase(Locale.ENGLISH);
+        if (consume('(')) {
+            int end = selector.indexOf(')', pos);
+            if (end < 0) {
+                throw invalid();
+            }
+            name += "(" + selector.substring(pos, end).trim() + ")";
+            pos = end + 1;
+        }
+        if (!Arrays.asList("first-child", "last-child", "checked", "disabled",
+                "enabled").contains(name)
+                && !name.matches("nth-child\\(\\d+\\)")) {
+            throw new InvalidSelectorException("Unsupported pseudo class :"
+                    + name + " in " + selector);
+        }
+        return name;
+    }
+
+    /**
+     * Parses a quoted or bare value.
+     *
+     * @return the value
+     */
+    private String parseValue() {
+        if (pos < selector.length() && (peek() == '"' || peek() == '\'')) {
+            char quote = selector.charAt(pos++);
+            int end = selector.indexOf(quote, pos);
+            if (end < 0) {
+                throw invalid();
+            }
+            String value = selector.substring(pos, end);
+            pos = end + 1;
+            return value;
+        }
+        return parseName();
+    }
+
+    /**
+     * Parses an identifier, unescaping the backslash escapes.
+     *
+     * @return the identifier
+     */
+    private String parseName() {
+        StringBuilder name = new StringBuilder();
+        while (pos < selector.length()) {
+            char c = peek();
+            if (c == '\\' && pos + 1 < selector.length()) {
+                name.append(selector.charAt(pos + 1));
+                pos += 2;
+            } else if (isNameChar(c)) {
+                name.append(c);
+                pos++;
+            } else {
+                break;
+            }
+        }
+        if (name.length() == 0) {
+            throw invalid();
+        }
+        return name.toString();
+    }
+
+    /**
+     * Checks if a character can be part of an identifier.
+     *
+     * @param c the character
+     * @return true, if a name character
+     */
+    private static boolean isNameChar(final char c) {
+        return Character.isLetterOrDigit(c) || c == '-' || c == '_'
+                || c > '\u007f';
+    }
+
+    /**
+     * Gets the current character.
+     *
+     * @return the character
+     */
+    private char peek() {
+        return selector.charAt(pos);
+    }
+
+    /**
+     * Skips the current character if it is the given one.
+     *
+     * @param c the character
+     * @return true, if skipped
+     */
+    private boolean consume(final char c) {
+        if (pos < selector.length() && peek() == c) {
+            pos++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Skips the white space.
+     *
+     * @return true, if white space was skipped
+     */
+    private boolean skipSpaces() {
+        int start = pos;
+        while (pos < selector.length() && Character.isWhitespace(peek())) {
+            pos++;
+        }
+        return pos > start;
+    }
+
+    /**
+     * Creates the exception for an invalid selector.
+     *
+     * @return the exception
+     */
+    private InvalidSelectorException invalid() {
+        return new InvalidSelectorException("Invalid css selector " + selector
+                + " at " + pos);
+    }
+
+    /**
+     * Gets the parent element.
+     *
+     * @param element the element
+     * @return the parent, or null
+     */
+    private static Element parent(final Element element) {
+        Node parent = element.getParentNode();
+        return parent instanceof Element ? (Element) parent : null;
+    }
+
+    /**
+     * Gets the previous sibling element.
+     *
+     * @param element the element
+     * @return the sibling, or null
+     */
+    private static Element previous(final Node element) {
+        for (Node node = element.getPreviousSibling(); node != null; node =
+                node.getPreviousSibling()) {
+            if (node instanceof Element) {
+                return (Element) node;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gets the next sibling element.
+     *
+     * @param element the element
+     * @return the sibling, or null
+     */
+    private static Element next(final Node element) {
+        for (Node node = element.getNextSibling(); node != null; node =
+                node.getNextSibling()) {
+            if (node instanceof Element) {
+                return (Element) node;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * A compound selector.
+     */
+    private static final class Compound {
+
+        /** The combinator with the previous compound. */
+        private final char combinator;
+
+        /** The tag, or null for any. */
+        private String tag;
+
+        /** The attribute conditions: the name, the operator and the value. */
+        private final List<String[]> conditions = new ArrayList<String[]>();
+
+        /** The pseudo classes. */
+        private final List<String> pseudos = new ArrayList<String>();
+
+        /**
+         * Instantiates a new compound.
+         *
+         * @param previousCombinator the combinator with the previous compound
+         */
+        private Compound(final char previousCombinator) {
+            this.combinator = previousCombinator;
+        }
+
+        /**
+         * Checks if an element matches the compound.
+         *
+         * @param element the element
+         * @return true, if matching
+         */
+        private boolean matches(final Element element) {
+            if (tag != null && !tag.equals(FakeDom.tag(element))) {
+                return false;
+            }
+            for (String[] condition : conditions) {
+                if (!matches(element, condition[0], condition[1], condition[2])) {
+                    return false;
+                }
+            }
+            for (String pseudo : pseudos) {
+                if (!matchesPseudo(element, pseudo)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Checks an attribute condition.
+         *
+         * @param element the element
+         * @param name the attribute
+         * @param operator the operator, empty for presence
+         * @param expected the value
+         * @return true, if matching
+         */
+        private boolean matches(final Element element, final String name,
+                final String operator, final String expected) {
+            if (!element.hasAttribute(name)) {
+                return false;
+            }
+            String actual = element.getAttribute(name);
+            if (operator.isEmpty()) {
+                return true;
+            } else if ("=".equals(operator)) {
+                return actual.equals(expected);
+            } else if ("~=".equals(operator)) {
+                return Arrays.asList(actual.trim().split("\\s+")).contains(
+                        expected);
+            } else if ("|=".equals(operator)) {
+                return actual.equals(expected)
+                        || actual.startsWith(expected + "-");
+            } else if ("^=".equals(operator)) {
+                return !expected.isEmpty() && actual.startsWith(expected);
+            } else if ("$=".equals(operator)) {
+                return !expected.isEmpty() && actual.endsWith(expected);
+            }
+            return !expected.isEmpty() && actual.contains(expected);
+        }
+
+        /**
+         * Checks a pseudo class.
+         *
+         * @param element the element
+         * @param pseudo the pseudo class
+         * @return true, if matching
+         */
+        private boolean matchesPseudo(final Element element,
+                final String pseudo) {
+            if ("first-child".equals(pseudo)) {
+                return previous(element) == null;
+            } else if ("last-child".equals(pseudo)) {
+                return next(element) == null;
+            } else if ("checked".equals(pseudo)) {
+                return element.hasAttribute("checked")
+                        || element.hasAttribute("selected");
+            } else if ("disabled".equals(pseudo)) {
+                return element.hasAttribute("disabled");
+            } else if ("enabled".equals(pseudo)) {
+                return !element.hasAttribute("disabled");
+            }
+            int expected =
+                    Integer.parseInt(pseudo.substring(pseudo.indexOf('(') + 1,
+                            pseudo.length() - 1));
+            int position = 1;
+            for (Element sibling = previous(element); sibling != null; sibling =
+                    previous(sibling)) {
+                position++;
+            }
+            return position == expected;
+        }
+    }
+}
@@ -0,0 +1,338 @@
+/*
+ * Copyright 2004 ThoughtWorks, Inc. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law
+ * or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package com.virtusa.isq.vtaf.runtime.fake;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathExpressionException;
+import javax.xml.xpath.XPathFactory;
+
+import org.cyberneko.html.parsers.DOMParser;
+import org.openqa.selenium.InvalidSelectorException;
+import org.openqa.selenium.WebDriverException;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.InputSource;
+
+/**
+ * The DOM operations of the fake driver: parsing the fixtures, querying and
+ * rendering the elements.
+ */
+final class FakeDom {
+
+    /** The elements which are never rendered. */
+    private static final Set<String> HIDDEN_TAGS = new HashSet<String>(
+            Arrays.asList("head", "script", "style", "title", "meta", "link",
+                    "noscript", "template"));
+
+    /** The elements which start a new line in the rendered text. */
+    private static final Set<String> BLOCK_TAGS = new HashSet<String>(
+            Arrays.asList("address", "article", "aside", "blockquote", "br",
+                    "dd", "div", "dl", "dt", "fieldset", "footer", "form",
+                    "h1", "h2", "h3", "h4", "h5", "h6", "header", "hr", "li",
+                    "main", "nav", "ol", "p", "pre", "section", "table",
+                    "tbody", "tfoot", "thead", "tr", "ul",
+                    "option"));
+
+    /** The XPath engine of each thread. */
+    private static final ThreadLocal<XPath> XPATH = new ThreadLocal<XPath>() {
+
+        @Override
+        protected XPath initialValue() {
+            return XPathFactory.newInstance().newXPath();
+        }
+    };
+
+    /**
+     * Instantiates a new fake DOM.
+     */
+    private FakeDom() {
+    }
+
+    /**
+     * Parses an HTML page. The element and attribute names are lower case and
+     * have no namespace, as in the browsers.
+     *
+     * @param html the page
+     * @return the document
+     */
+    static Document parse(final String html) {
+        DOMParser parser = new DOMParser();
+        try {
+            parser.setFeature("http://xml.org/sax/features/namespaces", false);
+            parser.setFeature(
+                    "http://apache.org/xml/features/dom/defer-node-expansion",
+                    false);
+            parser.setProperty(
+                    "http://cyberneko.org/html/properties/names/elems",
+                    "lower");
+            parser.setProperty(
+                    "http://cyberneko.org/html/properties/names/attrs",
+                    "lower");
+            parser.setProperty(
+                    "http://apache.org/xml/properties/dom/document-class-name",
+                    "org.apache.xerces.dom.DocumentImpl");
+            parser.parse(new InputSource(new StringReader(html)));
+        } catch (Exception e) {
+            throw new WebDriverException("Cannot parse the page", e);
+        }
+        return parser.getDocument();
+    }
+
+    /**
+     * Serializes a document to HTML.
+     *
+     * @param document the document
+     * @return the page source
+     */
+    static String serialize(final Document document) {
+        try {
+            Transformer transformer =
+                    TransformerFactory.newInstance().newTransformer();
+            transformer.setOutputProperty(OutputKeys.METHOD, "html");
+            StringWriter writer = new StringWriter();
+            transformer.transform(new DOMSource(document), new StreamResult(
+                    writer));
+            return writer.toString();
+        } catch (Exception e) {
+            throw new WebDriverException("Cannot serialize the page", e);
+        }
+    }
+
+    /**
+     * Finds the elements matching an XPath expression.
+     *
+     * @param context the context node
+     * @param expression the expression
+     * @return the elements
+     */
+    static List<Element> xpath(final Node context, final String expression) {
+        NodeList nodes;
+        try {
+            nodes =
+                    (NodeList) XPATH.get().evaluate(expression, context,
+                            XPathConstants.NODESET);
+        } catch (XPathExpressionException e) {
+            throw new InvalidSelectorException("Invalid xpath " + expression,
+                    e);
+        }
+        List<Element> elements = new ArrayList<Element>(nodes.getLength());
+        for (int i = 0; i < nodes.getLength(); i++) {
+            if (!(nodes.item(i) instanceof Element)) {
+                throw new InvalidSelectorException("The xpath " + expression
+                        + " does not select elements");
+            }
+            elements.add((Element) nodes.item(i));
+        }
+        return elements;
+    }
+
+    /**
+     * Gets the descendant elements of a node, in document order.
+     *
+     * @param root the node
+     * @return the elements
+     */
+    static List<Element> descendants(final Node root) {
+        List<Element> elements = new ArrayList<Element>();
+        collect(root, elements);
+        return elements;
+    }
+
+    /**
+     * Collects the descendant elements of a node.
+     *
+     * @param node the node
+     * @param elements the elements
+     */
+    private static void collect(final Node node, final List<Element> elements) {
+        for (Node child = node.getFirstChild(); child != null; child =
+                child.getNextSibling()) {
+            if (child instanceof Element) {
+                elements.add((Element) child);
+                collect(child, elements);
+            }
+        }
+    }
+
+    /**
+     * Gets the first element of a tag.
+     *
+     * @param document the document
+     * @param tagName the tag
+     * @return the element, or null
+     */
+    static Element first(final Document document, final String tagName) {
+        NodeList nodes = document.getElementsByTagName(tagName);
+        return nodes.getLength() == 0 ? null : (Element) nodes.item(0);
+    }
+
+    /**
+     * Gets the tag of an element.
+     *
+     * @param element the element
+     * @return the tag, in lower case
+     */
+    static String tag(final Element element) {
+        return element.getNodeName().toLowerCase(Locale.ENGLISH);
+    }
+
+    /**
+     * Gets an attribute.
+     *
+     * @param element the element
+     * @param name the attribute
+     * @return the value, or null if the attribute is not set
+     */
+    static String attribute(final Element element, final String name) {
+        return element.hasAttribute(name) ? element.getAttribute(name) : null;
+    }
+
+    /**
+     * Gets the closest ancestor of a tag, or the element itself.
+     *
+     * @param element the element
+     * @param tagName the tag
+     * @return the ancestor, or null
+     */
+    static Element closest(final Element element, final String tagName) {
+        for (Node node = element; node != null; node = node.getParentNode()) {
+            if (node instanceof Element && tagName.equals(tag((Element) node))) {
+                return (Element) node;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Checks if an element is rendered, from its tag, its hidden attribute
+     * and the display and visibility of its inline style and ancestors.
+     *
+     * @param element the element
+     * @return true, if displayed
+     */
+    static boolean isDisplayed(final Element element) {
+        if ("input".equals(tag(element))
+                && "hidden".equalsIgnoreCase(element.getAttribute("type"))) {
+            return false;
+        }
+        for (Node node = element; node instanceof Element; node =
+                node.getParentNode()) {
+            Element ancestor = (Element) node;
+            String style =
+                    ancestor.getAttribute("style").replace(" ", "")
+                            .toLowerCase(Locale.ENGLISH);
+            if (HIDDEN_TAGS.contains(tag(ancestor))
+                    || ancestor.hasAttribute("hidden")
+                    || style.contains("display:none")
+                    || style.contains("visibility:hidden")) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Gets a property of the inline style of an element.
+     *
+     * @param element the element
+     * @param property the property
+     * @return the value, empty if not set
+     */
+    static String style(final Element element, final String property) {
+        for (String declaration : element.getAttribute("style").split(";")) {
+            int colon = declaration.indexOf(':');
+            if (colon > 0
+                    && declaration.substring(0, colon).trim()
+                            .equalsIgnoreCase(property)) {
+                return declaration.substring(colon + 1).trim();
+            }
+        }
+        return "";
+    }
+
+    /**
+     * Gets the rendered text of an element: the text of the displayed
+     * descendants, with the white space collapsed and a line break around the
+     * blocks.
+     *
+     * @param element the element
+     * @return the text
+     */
+    static String text(final Element element) {
+        if (!isDisplayed(element)) {
+            return "";
+        }
+        StringBuilder text = new StringBuilder();
+        appendText(element, text);
+        StringBuilder lines = new StringBuilder();
+        for (String line : text.toString().split("\n")) {
+            String collapsed = line.replaceAll("[ \\t\\r\\u00a0]+", " ").trim();
+            if (!collapsed.isEmpty()) {
+                if (lines.length() > 0) {
+                    lines.append('\n');
+                }
+                lines.append(collapsed);
+            }
+        }
+        return lines.toString();
+    }
+
+    /**
+     * Appends the rendered text of a node.
+     *
+     * @param node the node
+     * @param text the text
+     */
+    private static void appendText(final Node node, final StringBuilder text) {
+        for (Node child = node.getFirstChild(); child != null; child =
+                child.getNextSibling()) {
+            if (child.getNodeType() == Node.TEXT_NODE
+                    || child.getNodeType() == Node.CDATA_SECTION_NODE) {
+                text.append(child.getNodeValue().replace('\n', ' '));
+            } else if (child instanceof Element) {
+                Element element = (Element) child;
+                String tag = tag(element);
+                if (HIDDEN_TAGS.contains(tag) || element.hasAttribute("hidden")
+                        || !isDisplayed(element)) {
+                    continue;
+                }
+                boolean block = BLOCK_TAGS.contains(tag);
+                if (block) {
+                    text.append('\n');
+                }
+                appendText(element, text);
+                if (block) {
+                    text.append('\n');
+                } else if ("td".equals(tag) || "th".equals(tag)) {
+                    text.append(' ');
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,323 @@
+/*
+ * Copyright 2004 ThoughtWorks, Inc. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law
+ * or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package com.virtusa.isq.vtaf.runtime.fake;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.openqa.selenium.By;
+import org.openqa.selenium.InvalidSelectorException;
+import org.openqa.selenium.NoSuchElementException;
+import org.openqa.selenium.SearchContext;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.internal.FindsByClassName;
+import org.openqa.selenium.internal.FindsByCssSelector;
+import org.openqa.selenium.internal.FindsById;
+import org.openqa.selenium.internal.FindsByLinkText;
+import org.openqa.selenium.internal.FindsByName;
+import org.openqa.selenium.internal.FindsByTagName;
+import org.openqa.selenium.internal.FindsByXPath;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/**
+ * The element lookups shared by the fake driver and its elements, for all the
+ * locator types of the runtime. Each lookup is one command of the driver.
+ */
+abstract class FakeSearchContext implements SearchContext, FindsById,
+        FindsByName, FindsByClassName, FindsByTagName, FindsByLinkText,
+        FindsByCssSelector, FindsByXPath {
+
+    /** The most selectors kept compiled. */
+    private static final int MAX_SELECTORS = 1000;
+
+    /** The compiled selectors. */
+    private static final Map<String, CssSelector> SELECTORS =
+            new ConcurrentHashMap<String, CssSelector>();
+
+    /**
+     * Gets the driver.
+     *
+     * @return the driver
+     */
+    abstract FakeWebDriver driver();
+
+    /**
+     * Gets the node the lookups search under, checking that it is still
+     * usable.
+     *
+     * @return the node
+     */
+    abstract Node searchRoot();
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final WebElement findElement(final By by) {
+        return by.findElement(this);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final List<WebElement> findElements(final By by) {
+        return by.findElements(this);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final WebElement findElementById(final String using) {
+        return first(findElementsById(using), "id", using);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final List<WebElement> findElementsById(final String using) {
+        return matching("id", using);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final WebElement findElementByName(final String using) {
+        return first(findElementsByName(using), "name", using);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final List<WebElement> findElementsByName(final String using) {
+        return matching("name", using);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final WebElement findElementByClassName(final String using) {
+        return first(findElementsByClassName(using), "class name", using);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final List<WebElement> findElementsByClassName(final String using) {
+        if (using.trim().isEmpty() || using.trim().contains(" ")) {
+            throw new InvalidSelectorException(
+                    "Compound class names are not permitted : " + using);
+        }
+        return wrap(compile("." + using.trim()).select(root()));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final WebElement findElementByTagName(final String using) {
+        return first(findElementsByTagName(using), "tag name", using);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final List<WebElement> findElementsByTagName(final String using) {
+        String tag = using.toLowerCase(Locale.ENGLISH);
+        List<Element> elements = new ArrayList<Element>();
+        for (Element element : FakeDom.descendants(root())) {
+            if ("*".equals(tag) || tag.equals(FakeDom.tag(element))) {
+                elements.add(element);
+            }
+        }
+        return wrap(elements);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final WebElement findElementByLinkText(final String using) {
+        return first(findElementsByLinkText(using), "link text", using);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final List<WebElement> findElementsByLinkText(final String using) {
+        return links(using, false);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final WebElement findElementByPartialLinkText(final String using) {
+        return first(findElementsByPartialLinkText(using),
+                "partial link text", using);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final List<WebElement> findElementsByPartialLinkText(
+            final String using) {
+        return links(using, true);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final WebElement findElementByCssSelector(final String using) {
+        return first(findElementsByCssSelector(using), "css selector", using);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final List<WebElement>
+            findElementsByCssSelector(final String using) {
+        return wrap(compile(using).select(root()));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final WebElement findElementByXPath(final String using) {
+        return first(findElementsByXPath(using), "xpath", using);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final List<WebElement> findElementsByXPath(final String using) {
+        return wrap(FakeDom.xpath(root(), using));
+    }
+
+    /**
+     * Gets the search node, as one command of the driver.
+     *
+     * @return the node
+     */
+    private Node root() {
+        driver().command();
+        return searchRoot();
+    }
+
+    /**
+     * Finds the elements with an attribute value.
+     *
+     * @param attribute the attribute
+     * @param value the value
+     * @return the elements
+     */
+    private List<WebElement> matching(final String attribute,
+            final String value) {
+        List<Element> elements = new ArrayList<Element>();
+        for (Element element : FakeDom.descendants(root())) {
+            if (value.equals(FakeDom.attribute(element, attribute))) {
+                elements.add(element);
+            }
+        }
+        return wrap(elements);
+    }
+
+    /**
+     * Finds the displayed links by their rendered text.
+     *
+     * @param text the text
+     * @param partial true, to match a part of the text
+     * @return the elements
+     */
+    private List<WebElement> links(final String text, final boolean partial) {
+        List<Element> elements = new ArrayList<Element>();
+        for (Element element : FakeDom.descendants(root())) {
+            if ("a".equals(FakeDom.tag(element))
+                    && element.hasAttribute("href")) {
+                String linkText = FakeDom.text(element).trim();
+                if (partial ? linkText.contains(text) : linkText.equals(text
+                        .trim())) {
+                    elements.add(element);
+                }
+            }
+        }
+        return wrap(elements);
+    }
+
+    /**
+     * Wraps the found elements.
+     *
+     * @param elements the elements
+     * @return the web elements
+     */
+    private List<WebElement> wrap(final List<Element> elements) {
+        List<WebElement> webElements =
+                new ArrayList<WebElement>(elements.size());
+        for (Element element : elements) {
+            webElements.add(new FakeWebElement(driver(), element));
+        }
+        return webElements;
+    }
+
+    /**
+     * Gets the first found element.
+     *
+     * @param elements the elements
+     * @param how the locator type
+     * @param using the locator
+     * @return the element
+     */
+    private static WebElement first(final List<WebElement> elements,
+            final String how, final String using) {
+        if (elements.isEmpty()) {
+            throw new NoSuchElementException("Unable to locate element: {\""
+                    + "method\":\"" + how + "\",\"selector\":\"" + using
+                    + "\"}");
+        }
+        return elements.get(0);
+    }
+
+    /**
+     * Gets a compiled selector.
+     *
+     * @param selector the selector
+     * @return the compiled selector
+     */
+    private static CssSelector compile(final String selector) {
+        CssSelector compiled = SELECTORS.get(selector);
+        if (compiled == null) {
+            compiled = new CssSelector(selector);
+            if (SELECTORS.size() >= MAX_SELECTORS) {
+                SELECTORS.clear();
+            }
+            SELECTORS.put(selector, compiled);
+        }
+        return compiled;
+    }
+}
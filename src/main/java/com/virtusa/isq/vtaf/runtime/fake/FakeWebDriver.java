@@ -0,0 +1,999 @@
+/*
+ * Copyright 2004 ThoughtWorks, Inc. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law
+ * or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package com.virtusa.isq.vtaf.runtime.fake;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.log4j.Logger;
+import org.openqa.selenium.Alert;
+import org.openqa.selenium.Cookie;
+import org.openqa.selenium.Dimension;
+import org.openqa.selenium.NoAlertPresentException;
+import org.openqa.selenium.NoSuchFrameException;
+import org.openqa.selenium.NoSuchWindowException;
+import org.openqa.selenium.Point;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.logging.Logs;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import com.virtusa.isq.vtaf.utils.PropertyHandler;
+
+/**
+ * A driver which runs in process on an in-memory DOM of local HTML fixtures,
+ * used to measure the overhead of the runtime without a browser or a network.
+ * <br>
+ * Every page is served from the fixture directory: the file named as the last
+ * segment of the URL, with or without the .html extension, or else the
+ * default fixture. A fixture missing from the directory is read from the
+ * <i>/fake</i> folder of the classpath, so that the fixtures shipped in the
+ * runtime jar are found when the tests run from another project. The driver supports the lookups of all the locator types,
+ * clicks, typing, the windows opened by links, the frames and the cookies.
+ * It runs no JavaScript, so the commands relying on scripts are not
+ * supported.<br>
+ * Each command waits for the configured latency, to stand in for the wire
+ * and the browser. Configured through the runtime properties:
+ * <ul>
+ * <li><i>FAKE_FIXTURE_DIR</i>: the fixture directory</li>
+ * <li><i>FAKE_FIXTURE</i>: the default fixture</li>
+ * <li><i>FAKE_LATENCY</i>: the latency of each command in milliseconds</li>
+ * <li><i>FAKE_LATENCY_JITTER</i>: the random latency added to each command in
+ * milliseconds</li>
+ * </ul>
+ */
+public class FakeWebDriver extends FakeSearchContext implements WebDriver {
+
+    /** The blank page. */
+    private static final String BLANK_PAGE =
+            "<html><head></head><body></body></html>";
+
+    /** The page served when no fixture exists. */
+    private static final String NOT_FOUND_PAGE =
+            "<html><head><title>404 Not Found</title></head>"
+                    + "<body><h1>Not Found</h1></body></html>";
+
+    /** The key of the URL of a document. */
+    private static final String URL_KEY = "fake.url";
+
+    /** The default window width. */
+    private static final int DEFAULT_WIDTH = 1280;
+
+    /** The default window height. */
+    private static final int DEFAULT_HEIGHT = 1024;
+
+    /** The maximized window width. */
+    private static final int MAXIMIZED_WIDTH = 1920;
+
+    /** The maximized window height. */
+    private static final int MAXIMIZED_HEIGHT = 1080;
+
+    /** The folder of the fixtures on the classpath. */
+    private static final String FIXTURE_RESOURCES = "/fake/";
+
+    /** The fixtures read, by path. */
+    private static final Map<String, String> FIXTURES =
+            new ConcurrentHashMap<String, String>();
+
+    /** The log. */
+    private static final Logger LOG = Logger.getLogger(FakeWebDriver.class);
+
+    /** The fixture directory. */
+    private final File fixtureDir;
+
+    /** The default fixture. */
+    private final String defaultFixture;
+
+    /** The latency of each command in milliseconds. */
+    private final long latency;
+
+    /** The random latency added to each command in milliseconds. */
+    private final int jitter;
+
+    /** The jitter source. */
+    private final Random random = new Random();
+
+    /** The commands run. */
+    private final AtomicLong commandCount = new AtomicLong();
+
+    /** The open windows by handle. */
+    private final Map<String, FakeWindow> windows =
+            new LinkedHashMap<String, FakeWindow>();
+
+    /** The cookies by name. */
+    private final Map<String, Cookie> cookies =
+            new LinkedHashMap<String, Cookie>();
+
+    /** The current window, null once closed. */
+    private FakeWindow currentWindow;
+
+    /** Whether the driver has been quit. */
+    private boolean quit;
+
+    /**
+     * Instantiates a new fake driver on about:blank.
+     *
+     * @param fixtureDirectory the fixture directory
+     * @param fixture the default fixture
+     * @param commandLatency the latency of each command in milliseconds
+     * @param latencyJitter the random latency added to each command in
+     *            milliseconds
+     */
+    public FakeWebDriver(final File fixtureDirectory, final String fixture,
+            final long commandLatency, final int latencyJitter) {
+        this.fixtureDir = fixtureDirectory;
+        this.defaultFixture = fixture;
+        this.latency = Math.max(0, commandLatency);
+        this.jitter = Math.max(0, latencyJitter);
+        currentWindow = openWindow("");
+        currentWindow.navigate("about:blank");
+    }
+
+    /**
+     * Creates a fake driver configured from the runtime properties.
+     *
+     * @return the driver
+     */
+    public static FakeWebDriver fromProperties() {
+        return fromProperties(new PropertyHandler("runtime.properties")
+                .getIntRuntimeProperty("FAKE_LATENCY", 0));
+    }
+
+    /**
+     * Creates a fake driver configured from the runtime properties, with the
+     * given latency, e.g. to stand in for a slower grid node.
+     *
+     * @param latency the milliseconds each command takes
+     * @return the driver
+     */
+    public static FakeWebDriver fromProperties(final long latency) {
+        PropertyHandler propHandler = new PropertyHandler("runtime.properties");
+        return new FakeWebDriver(new File(propHandler.getRuntimeProperty(
+                "FAKE_FIXTURE_DIR", "src" + File.separator + "main"
+                        + File.separator + "resources" + File.separator
+                        + "fake")), propHandler.getRuntimeProperty(
+                "FAKE_FIXTURE", "index.html"), latency,
+                propHandler.getIntRuntimeProperty("FAKE_LATENCY_JITTER", 0));
+    }
+
+    /**
+     * Gets the commands run so far.
+     *
+     * @return the command count
+     */
+    public final long getCommandCount() {
+        return commandCount.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final void get(final String url) {
+        command();
+        activeWindow().navigate(url);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final String getCurrentUrl() {
+        command();
+        return urlOf(activeWindow().document);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final String getTitle() {
+        command();
+        Element title = FakeDom.first(activeWindow().document, "title");
+        return title == null ? "" : title.getTextContent().trim();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final String getPageSource() {
+        command();
+        return FakeDom.serialize(activeWindow().context);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final void close() {
+        command();
+        windows.remove(activeWindow().handle);
+        currentWindow = null;
+        if (windows.isEmpty()) {
+            quit = true;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final void quit() {
+        if (!quit) {
+            LOG.debug("Fake browser quit after " + commandCount.get()
+                    + " commands");
+        }
+        quit = true;
+        windows.clear();
+        currentWindow = null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final Set<String> getWindowHandles() {
+        command();
+        return new LinkedHashSet<String>(windows.keySet());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final String getWindowHandle() {
+        command();
+        return activeWindow().handle;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final TargetLocator switchTo() {
+        return new FakeTargetLocator();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final Navigation navigate() {
+        return new FakeNavigation();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final Options manage() {
+        return new FakeOptions();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final String toString() {
+        return "FakeWebDriver [" + fixtureDir + ", latency " + latency + "+"
+                + jitter + " ms]";
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    final FakeWebDriver driver() {
+        return this;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    final Node searchRoot() {
+        return activeWindow().context;
+    }
+
+    /**
+     * Runs a command: checks that the driver is open and waits for the
+     * latency.
+     */
+    final void command() {
+        if (quit) {
+            throw new WebDriverException("The fake browser has been quit");
+        }
+        commandCount.incrementAndGet();
+        long wait = latency + (jitter > 0 ? random.nextInt(jitter + 1) : 0);
+        if (wait > 0) {
+            try {
+                Thread.sleep(wait);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Checks if a document is still loaded in a window or a frame.
+     *
+     * @param document the document
+     * @return true, if loaded
+     */
+    final boolean isLoaded(final Document document) {
+        for (FakeWindow window : windows.values()) {
+            if (window.document == document
+                    || window.frames.containsValue(document)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Gets the focused element of the current window.
+     *
+     * @return the element, or null
+     */
+    final Element getFocused() {
+        return activeWindow().focused;
+    }
+
+    /**
+     * Focuses an element of the current window.
+     *
+     * @param element the element
+     */
+    final void focus(final Element element) {
+        activeWindow().focused = element;
+    }
+
+    /**
+     * Follows a link or submits a form, loading the target page in the window
+     * or the frame of the source document, or in the named window.
+     *
+     * @param source the document of the link or the form
+     * @param href the URL, relative to the source document
+     * @param target the target window, empty for the source one
+     */
+    final void follow(final Document source, final String href,
+            final String target) {
+        String url = resolve(urlOf(source), href);
+        if (!target.isEmpty() && !"_self".equals(target)) {
+            for (FakeWindow window : windows.values()) {
+                if (target.equals(window.name)) {
+                    window.navigate(url);
+                    return;
+                }
+            }
+            openWindow("_blank".equals(target) ? "" : target).navigate(url);
+            return;
+        }
+        for (FakeWindow window : windows.values()) {
+            if (window.document == source) {
+                window.navigate(url);
+                return;
+            }
+            for (Map.Entry<Element, Document> frame : window.frames.entrySet()) {
+                if (frame.getValue() == source) {
+                    Document document = load(url);
+                    frame.setValue(document);
+                    if (window.context == source) {
+                        window.context = document;
+                    }
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the current window.
+     *
+     * @return the window
+     */
+    private FakeWindow activeWindow() {
+        if (currentWindow == null) {
+            throw new NoSuchWindowException("The current window was closed");
+        }
+        return currentWindow;
+    }
+
+    /**
+     * Opens a window on about:blank.
+     *
+     * @param name the window name
+     * @return the window
+     */
+    private FakeWindow openWindow(final String name) {
+        FakeWindow window = new FakeWindow(UUID.randomUUID().toString(), name);
+        window.document = load("about:blank");
+        window.context = window.document;
+        windows.put(window.handle, window);
+        return window;
+    }
+
+    /**
+     * Loads a page.
+     *
+     * @param url the URL
+     * @return the document
+     */
+    private Document load(final String url) {
+        Document document = FakeDom.parse(fixture(url));
+        document.setUserData(URL_KEY, url, null);
+        return document;
+    }
+
+    /**
+     * Gets the fixture serving a URL.
+     *
+     * @param url the URL
+     * @return the page
+     */
+    private String fixture(final String url) {
+        if (url.isEmpty() || url.startsWith("about:")) {
+            return BLANK_PAGE;
+        }
+        String path = url.replaceAll("[?#].*$", "");
+        String name = path.substring(path.lastIndexOf('/') + 1);
+        List<String> candidates = new ArrayList<String>();
+        if (!name.isEmpty()) {
+            candidates.add(name);
+            candidates.add(name + ".html");
+        }
+        candidates.add(defaultFixture);
+        for (String candidate : candidates) {
+            File file = new File(fixtureDir, candidate);
+            if (file.isFile()) {
+                return read(file);
+            }
+            String page = readResource(FIXTURE_RESOURCES + candidate);
+            if (page != null) {
+                return page;
+            }
+        }
+        LOG.warn("No fake fixture for " + url + " in "
+                + fixtureDir.getAbsolutePath() + " or on the classpath");
+        return NOT_FOUND_PAGE;
+    }
+
+    /**
+     * Reads a fixture from the classpath, once.
+     *
+     * @param resource the resource name
+     * @return the page, or null if there is no such resource
+     */
+    private static String readResource(final String resource) {
+        String key = "classpath:" + resource;
+        String page = FIXTURES.get(key);
+        if (page == null) {
+            InputStream input =
+                    FakeWebDriver.class.getResourceAsStream(resource);
+            if (input == null) {
+                return null;
+            }
+            try {
+                page = IOUtils.toString(input, "UTF-8");
+            } catch (IOException e) {
+                throw new WebDriverException("Cannot read the fixture "
+                        + resource, e);
+            } finally {
+                IOUtils.closeQuietly(input);
+            }
+            FIXTURES.put(key, page);
+        }
+        return page;
+    }
+
+    /**
+     * Reads a fixture, once.
+     *
+     * @param file the fixture
+     * @return the page
+     */
+    private static String read(final File file) {
+        String key = file.getAbsolutePath();
+        String page = FIXTURES.get(key);
+        if (page == null) {
+            try {
+                page = new String(Files.readAllBytes(file.toPath()), "UTF-8");
+            } catch (IOException e) {
+                throw new WebDriverException("Cannot read the fixture " + key,
+                        e);
+            }
+            FIXTURES.put(key, page);
+        }
+        return page;
+    }
+
+    /**
+     * Gets the URL of a document.
+     *
+     * @param document the document
+     * @return the URL
+     */
+    private static String urlOf(final Document document) {
+        Object url = document.getUserData(URL_KEY);
+        return url == null ? "about:blank" : url.toString();
+    }
+
+    /**
+     * Resolves a URL against a base URL.
+     *
+     * @param base the base URL
+     * @param href the URL
+     * @return the absolute URL
+     */
+    private static String resolve(final String base, final String href) {
+        try {
+            URI uri = new URI(base);
+            if (uri.isOpaque()) {
+                return href;
+            }
+            return uri.resolve(href).toString();
+        } catch (Exception e) {
+            return href;
+        }
+    }
+
+    /**
+     * A browser window.
+     */
+    private final class FakeWindow {
+
+        /** The handle. */
+        private final String handle;
+
+        /** The name given by the link targets. */
+        private final String name;
+
+        /** The visited URLs. */
+        private final List<String> history = new ArrayList<String>();
+
+        /** The position of the current page in the history. */
+        private int historyIndex = -1;
+
+        /** The loaded documents of the frames. */
+        private final Map<Element, Document> frames =
+                new IdentityHashMap<Element, Document>();
+
+        /** The top document. */
+        private Document document;
+
+        /** The document of the selected frame, or the top document. */
+        private Document context;
+
+        /** The focused element. */
+        private Element focused;
+
+        /** The size. */
+        private Dimension size = new Dimension(DEFAULT_WIDTH, DEFAULT_HEIGHT);
+
+        /** The position. */
+        private Point position = new Point(0, 0);
+
+        /**
+         * Instantiates a new window.
+         *
+         * @param windowHandle the handle
+         * @param windowName the name
+         */
+        private FakeWindow(final String windowHandle, final String windowName) {
+            this.handle = windowHandle;
+            this.name = windowName;
+        }
+
+        /**
+         * Loads a new page, dropping the forward history.
+         *
+         * @param url the URL
+         */
+        private void navigate(final String url) {
+            while (history.size() > historyIndex + 1) {
+                history.remove(history.size() - 1);
+            }
+            history.add(url);
+            historyIndex++;
+            show(url);
+        }
+
+        /**
+         * Moves in the history and loads the page.
+         *
+         * @param offset the offset in the history
+         */
+        private void go(final int offset) {
+            int index = historyIndex + offset;
+            if (index >= 0 && index < history.size()) {
+                historyIndex = index;
+                show(history.get(index));
+            }
+        }
+
+        /**
+         * Shows a page in the window.
+         *
+         * @param url the URL
+         */
+        private void show(final String url) {
+            document = load(url);
+            context = document;
+            frames.clear();
+            focused = null;
+        }
+
+        /**
+         * Selects a frame of the current document.
+         *
+         * @param frame the frame or iframe element
+         */
+        private void enter(final Element frame) {
+            Document frameDocument = frames.get(frame);
+            if (frameDocument == null) {
+                frameDocument =
+                        load(resolve(urlOf(context),
+                                frame.getAttribute("src")));
+                frames.put(frame, frameDocument);
+            }
+            context = frameDocument;
+        }
+
+        /**
+         * Gets the frames of the current document.
+         *
+         * @return the frame and iframe elements
+         */
+        private List<Element> frameElements() {
+            List<Element> elements = new ArrayList<Element>();
+            for (Element element : FakeDom.descendants(context)) {
+                String tag = FakeDom.tag(element);
+                if ("frame".equals(tag) || "iframe".equals(tag)) {
+                    elements.add(element);
+                }
+            }
+            return elements;
+        }
+    }
+
+    /**
+     * Switches between the windows and the frames.
+     */
+    private final class FakeTargetLocator implements TargetLocator {
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public WebDriver frame(final int index) {
+            command();
+            List<Element> frames = activeWindow().frameElements();
+            if (index < 0 || index >= frames.size()) {
+                throw new NoSuchFrameException("Unable to locate frame: "
+                        + index);
+            }
+            activeWindow().enter(frames.get(index));
+            return FakeWebDriver.this;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public WebDriver frame(final String nameOrId) {
+            command();
+            for (Element frame : activeWindow().frameElements()) {
+                if (nameOrId.equals(frame.getAttribute("name"))
+                        || nameOrId.equals(frame.getAttribute("id"))) {
+                    activeWindow().enter(frame);
+                    return FakeWebDriver.this;
+                }
+            }
+            throw new NoSuchFrameException("Unable to locate frame: "
+                    + nameOrId);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public WebDriver frame(final WebElement frameElement) {
+            command();
+            if (!(frameElement instanceof FakeWebElement)) {
+                throw new NoSuchFrameException("Not a fake element: "
+                        + frameElement);
+            }
+            Element frame = ((FakeWebElement) frameElement).element();
+            String tag = FakeDom.tag(frame);
+            if (!"frame".equals(tag) && !"iframe".equals(tag)) {
+                throw new NoSuchFrameException("Element is not a frame: "
+                        + frameElement);
+            }
+            activeWindow().enter(frame);
+            return FakeWebDriver.this;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public WebDriver window(final String nameOrHandle) {
+            command();
+            FakeWindow target = windows.get(nameOrHandle);
+            if (target == null) {
+                for (FakeWindow window : windows.values()) {
+                    if (nameOrHandle.equals(window.name)) {
+                        target = window;
+                        break;
+                    }
+                }
+            }
+            if (target == null) {
+                throw new NoSuchWindowException("Unable to locate window: "
+                        + nameOrHandle);
+            }
+            currentWindow = target;
+            return FakeWebDriver.this;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public WebDriver defaultContent() {
+            command();
+            activeWindow().context = activeWindow().document;
+            return FakeWebDriver.this;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public WebElement activeElement() {
+            command();
+            Element focused = activeWindow().focused;
+            if (focused == null
+                    || focused.getOwnerDocument() != activeWindow().context) {
+                focused = FakeDom.first(activeWindow().context, "body");
+            }
+            return new FakeWebElement(FakeWebDriver.this, focused);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Alert alert() {
+            command();
+            throw new NoAlertPresentException();
+        }
+    }
+
+    /**
+     * Moves in the history of the current window.
+     */
+    private final class FakeNavigation implements Navigation {
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void back() {
+            command();
+            activeWindow().go(-1);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void forward() {
+            command();
+            activeWindow().go(1);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void to(final String url) {
+            get(url);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void to(final URL url) {
+            get(url.toString());
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void refresh() {
+            command();
+            activeWindow().go(0);
+        }
+    }
+
+    /**
+     * The cookies, timeouts and window options.
+     */
+    private final class FakeOptions implements Options {
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void addCookie(final Cookie cookie) {
+            command();
+            cookies.put(cookie.getName(), cookie);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void deleteCookieNamed(final String name) {
+            command();
+            cookies.remove(name);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void deleteCookie(final Cookie cookie) {
+            deleteCookieNamed(cookie.getName());
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void deleteAllCookies() {
+            command();
+            cookies.clear();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Set<Cookie> getCookies() {
+            command();
+            return new LinkedHashSet<Cookie>(cookies.values());
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Cookie getCookieNamed(final String name) {
+            command();
+            return cookies.get(name);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Timeouts timeouts() {
+            return new Timeouts() {
+
+                @Override
+                public Timeouts implicitlyWait(final long time,
+                        final TimeUnit unit) {
+                    command();
+                    return this;
+                }
+
+                @Override
+                public Timeouts setScriptTimeout(final long time,
+                        final TimeUnit unit) {
+                    command();
+                    return this;
+                }
+
+                @Override
+                public Timeouts pageLoadTimeout(final long time,
+                        final TimeUnit unit) {
+                    command();
+                    return this;
+                }
+            };
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public ImeHandler ime() {
+            throw new UnsupportedOperationException(
+                    "The fake browser has no input method");
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Window window() {
+            return new Window() {
+
+                @Override
+                public void setSize(final Dimension targetSize) {
+                    command();
+                    activeWindow().size = targetSize;
+                }
+
+                @Override
+                public void setPosition(final Point targetPosition) {
+                    command();
+                    activeWindow().position = targetPosition;
+                }
+
+                @Override
+                public Dimension getSize() {
+                    command();
+                    return activeWindow().size;
+                }
+
+                @Override
+                public Point getPosition() {
+                    command();
+                    return activeWindow().position;
+                }
+
+                @Override
+                public void maximize() {
+                    command();
+                    activeWindow().position = new Point(0, 0);
+                    activeWindow().size =
+                            new Dimension(MAXIMIZED_WIDTH, MAXIMIZED_HEIGHT);
+                }
+            };
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Logs logs() {
+            throw new UnsupportedOperationException(
+                    "The fake browser has no logs");
+        }
+    }
+}
@@ -0,0 +1,494 @@
+/*
+ * Copyright 2004 ThoughtWorks, Inc. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law
+ * or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package com.virtusa.isq.vtaf.runtime.fake;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+import org.openqa.selenium.Dimension;
+import org.openqa.selenium.ElementNotVisibleException;
+import org.openqa.selenium.InvalidElementStateException;
+import org.openqa.selenium.Keys;
+import org.openqa.selenium.NoSuchElementException;
+import org.openqa.selenium.Point;
+import org.openqa.selenium.StaleElementReferenceException;
+import org.openqa.selenium.WebElement;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/**
+ * An element of a fake driver page.<br>
+ * Clicks toggle the check boxes, select the radio buttons and the options,
+ * follow the links and submit the forms; typing edits the value of the inputs
+ * and the text areas, and the enter key submits their form. The element goes
+ * stale once its page is unloaded.
+ */
+public class FakeWebElement extends FakeSearchContext implements WebElement {
+
+    /** The attributes read as true or null. */
+    private static final Set<String> BOOLEAN_ATTRIBUTES = new HashSet<String>(
+            Arrays.asList("async", "autofocus", "autoplay", "checked",
+                    "compact", "complete", "controls", "declare",
+                    "defaultchecked", "defaultselected", "defer", "disabled",
+                    "draggable", "ended", "formnovalidate", "hidden",
+                    "indeterminate", "iscontenteditable", "ismap",
+                    "itemscope", "loop", "multiple", "muted", "nohref",
+                    "noresize", "noshade", "novalidate", "nowrap", "open",
+                    "paused", "pubdate", "readonly", "required", "reversed",
+                    "scoped", "seamless", "seeking", "selected", "truespeed",
+                    "willvalidate"));
+
+    /** The input types submitting their form when clicked. */
+    private static final Set<String> SUBMIT_TYPES = new HashSet<String>(
+            Arrays.asList("submit", "image"));
+
+    /** The width of a displayed element. */
+    private static final int DISPLAYED_WIDTH = 100;
+
+    /** The height of a displayed element. */
+    private static final int DISPLAYED_HEIGHT = 20;
+
+    /** The first character of the special keys. */
+    private static final char FIRST_KEY = '\uE000';
+
+    /** The last character of the special keys. */
+    private static final char LAST_KEY = '\uF8FF';
+
+    /** The driver. */
+    private final FakeWebDriver driver;
+
+    /** The element. */
+    private final Element element;
+
+    /**
+     * Instantiates a new fake element.
+     *
+     * @param fakeDriver the driver
+     * @param domElement the element
+     */
+    FakeWebElement(final FakeWebDriver fakeDriver, final Element domElement) {
+        this.driver = fakeDriver;
+        this.element = domElement;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final void click() {
+        Element target = live();
+        driver.command();
+        if (!FakeDom.isDisplayed(target)) {
+            throw new ElementNotVisibleException(
+                    "Element is not currently visible and so may not be"
+                            + " interacted with");
+        }
+        driver.focus(target);
+        if (isDisabled(target)) {
+            return;
+        }
+        String tag = FakeDom.tag(target);
+        String type = type(target);
+        if ("input".equals(tag) && "checkbox".equals(type)) {
+            setFlag(target, "checked", !target.hasAttribute("checked"));
+        } else if ("input".equals(tag) && "radio".equals(type)) {
+            selectRadio(target);
+        } else if ("option".equals(tag)) {
+            selectOption(target);
+        } else if ("input".equals(tag) && SUBMIT_TYPES.contains(type)
+                || "button".equals(tag) && "submit".equals(type)) {
+            submitForm(target);
+        } else {
+            Element link = FakeDom.closest(target, "a");
+            if (link != null && link.hasAttribute("href")) {
+                driver.follow(link.getOwnerDocument(),
+                        link.getAttribute("href"), link.getAttribute("target"));
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final void submit() {
+        Element target = live();
+        driver.command();
+        if (FakeDom.closest(target, "form") == null) {
+            throw new NoSuchElementException(
+                    "Unable to find the containing form");
+        }
+        submitForm(target);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final void sendKeys(final CharSequence... keysToSend) {
+        Element target = live();
+        driver.command();
+        checkEditable(target);
+        driver.focus(target);
+        StringBuilder value = new StringBuilder(value(target));
+        for (CharSequence keys : keysToSend) {
+            for (int i = 0; i < keys.length(); i++) {
+                char key = keys.charAt(i);
+                if (key == Keys.ENTER.charAt(0) || key == Keys.RETURN.charAt(0)) {
+                    setValue(target, value.toString());
+                    if (!"textarea".equals(FakeDom.tag(target))) {
+                        if (FakeDom.closest(target, "form") != null) {
+                            submitForm(target);
+                        }
+                        return;
+                    }
+                    value.append('\n');
+                } else if (key == Keys.BACK_SPACE.charAt(0)) {
+                    if (value.length() > 0) {
+                        value.setLength(value.length() - 1);
+                    }
+                } else if (key < FIRST_KEY || key > LAST_KEY) {
+                    value.append(key);
+                }
+            }
+        }
+        setValue(target, value.toString());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final void clear() {
+        Element target = live();
+        driver.command();
+        checkEditable(target);
+        setValue(target, "");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final String getTagName() {
+        Element target = live();
+        driver.command();
+        return FakeDom.tag(target);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final String getAttribute(final String name) {
+        Element target = live();
+        driver.command();
+        String attribute = name.toLowerCase(Locale.ENGLISH);
+        if ("value".equals(attribute)) {
+            return value(target);
+        } else if ("classname".equals(attribute)) {
+            attribute = "class";
+        }
+        if (BOOLEAN_ATTRIBUTES.contains(attribute)) {
+            return target.hasAttribute(attribute) ? "true" : null;
+        }
+        return FakeDom.attribute(target, attribute);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final boolean isSelected() {
+        Element target = live();
+        driver.command();
+        return target.hasAttribute("checked")
+                || target.hasAttribute("selected");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final boolean isEnabled() {
+        Element target = live();
+        driver.command();
+        return !isDisabled(target);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final String getText() {
+        Element target = live();
+        driver.command();
+        return FakeDom.text(target);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final boolean isDisplayed() {
+        Element target = live();
+        driver.command();
+        return FakeDom.isDisplayed(target);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final Point getLocation() {
+        live();
+        driver.command();
+        return new Point(0, 0);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final Dimension getSize() {
+        Element target = live();
+        driver.command();
+        return FakeDom.isDisplayed(target) ? new Dimension(DISPLAYED_WIDTH,
+                DISPLAYED_HEIGHT) : new Dimension(0, 0);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final String getCssValue(final String propertyName) {
+        Element target = live();
+        driver.command();
+        return FakeDom.style(target, propertyName);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final boolean equals(final Object obj) {
+        return obj instanceof FakeWebElement
+                && ((FakeWebElement) obj).driver == driver
+                && ((FakeWebElement) obj).element == element;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final int hashCode() {
+        return System.identityHashCode(element);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final String toString() {
+        return "FakeWebElement [" + FakeDom.tag(element)
+                + (element.hasAttribute("id") ? "#" + element.getAttribute("id")
+                        : "") + "]";
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    final FakeWebDriver driver() {
+        return driver;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    final Node searchRoot() {
+        return live();
+    }
+
+    /**
+     * Gets the element.
+     *
+     * @return the element
+     */
+    final Element element() {
+        return live();
+    }
+
+    /**
+     * Gets the element, checking that its page is still loaded.
+     *
+     * @return the element
+     */
+    private Element live() {
+        if (!driver.isLoaded(element.getOwnerDocument())) {
+            throw new StaleElementReferenceException(
+                    "Element not found in the cache - perhaps the page has"
+                            + " changed since it was looked up");
+        }
+        return element;
+    }
+
+    /**
+     * Checks that an element accepts typing.
+     *
+     * @param target the element
+     */
+    private static void checkEditable(final Element target) {
+        String tag = FakeDom.tag(target);
+        if (!"input".equals(tag) && !"textarea".equals(tag)
+                || isDisabled(target) || target.hasAttribute("readonly")) {
+            throw new InvalidElementStateException(
+                    "Element must be user-editable in order to clear it");
+        }
+    }
+
+    /**
+     * Checks if an element or its field set is disabled.
+     *
+     * @param target the element
+     * @return true, if disabled
+     */
+    private static boolean isDisabled(final Element target) {
+        if (target.hasAttribute("disabled")) {
+            return true;
+        }
+        Element fieldSet = FakeDom.closest(target, "fieldset");
+        return fieldSet != null && fieldSet.hasAttribute("disabled");
+    }
+
+    /**
+     * Gets the type of an input or a button.
+     *
+     * @param target the element
+     * @return the type, in lower case
+     */
+    private static String type(final Element target) {
+        String type = target.getAttribute("type").toLowerCase(Locale.ENGLISH);
+        if (type.isEmpty()) {
+            return "button".equals(FakeDom.tag(target)) ? "submit" : "text";
+        }
+        return type;
+    }
+
+    /**
+     * Gets the current value of an element.
+     *
+     * @param target the element
+     * @return the value, or null if the element has none
+     */
+    private static String value(final Element target) {
+        String tag = FakeDom.tag(target);
+        if ("textarea".equals(tag)) {
+            return target.getTextContent();
+        } else if ("option".equals(tag) && !target.hasAttribute("value")) {
+            return FakeDom.text(target);
+        } else if ("input".equals(tag) && !target.hasAttribute("value")) {
+            return "";
+        }
+        return FakeDom.attribute(target, "value");
+    }
+
+    /**
+     * Sets the current value of an element.
+     *
+     * @param target the element
+     * @param value the value
+     */
+    private static void setValue(final Element target, final String value) {
+        if ("textarea".equals(FakeDom.tag(target))) {
+            target.setTextContent(value);
+        } else {
+            target.setAttribute("value", value);
+        }
+    }
+
+    /**
+     * Sets or removes a boolean attribute.
+     *
+     * @param target the element
+     * @param name the attribute
+     * @param on true, to set it
+     */
+    private static void setFlag(final Element target, final String name,
+            final boolean on) {
+        if (on) {
+            target.setAttribute(name, name);
+        } else {
+            target.removeAttribute(name);
+        }
+    }
+
+    /**
+     * Checks a radio button and unchecks the others of its group.
+     *
+     * @param radio the radio button
+     */
+    private static void selectRadio(final Element radio) {
+        String name = radio.getAttribute("name");
+        if (!name.isEmpty()) {
+            Element form = FakeDom.closest(radio, "form");
+            Node scope = form == null ? radio.getOwnerDocument() : form;
+            for (Element other : FakeDom.descendants(scope)) {
+                if ("input".equals(FakeDom.tag(other))
+                        && "radio".equals(type(other))
+                        && name.equals(other.getAttribute("name"))) {
+                    other.removeAttribute("checked");
+                }
+            }
+        }
+        setFlag(radio, "checked", true);
+    }
+
+    /**
+     * Selects an option, toggling it in a multiple select and unselecting
+     * the others in a single one.
+     *
+     * @param option the option
+     */
+    private static void selectOption(final Element option) {
+        Element select = FakeDom.closest(option, "select");
+        if (select != null && select.hasAttribute("multiple")) {
+            setFlag(option, "selected", !option.hasAttribute("selected"));
+            return;
+        }
+        if (select != null) {
+            for (Element other : FakeDom.descendants(select)) {
+                if ("option".equals(FakeDom.tag(other))) {
+                    other.removeAttribute("selected");
+                }
+            }
+        }
+        setFlag(option, "selected", true);
+    }
+
+    /**
+     * Submits the form of an element, loading its action page. A form
+     * without an action keeps the current page.
+     *
+     * @param target the element
+     */
+    private void submitForm(final Element target) {
+        Element form = FakeDom.closest(target, "form");
+        if (form != null && !form.getAttribute("action").isEmpty()) {
+            driver.follow(form.getOwnerDocument(),
+                    form.getAttribute("action"), form.getAttribute("target"));
+        }
+    }
+}
@@ -83,6 +83,67 @@ public class PropertyHandler {
         return value;
     }
 
+    /**
+     * Gets the runtime property, falling back to the given default when the
+     * property is not set.
+     * 
+     * @param key
+     *            the key
+     * @param defaultValue
+     *            the default value
+     * @return the runtime property
+     */
+    public final String getRuntimeProperty(final String key,
+            final String defaultValue) {
+        String value = getRuntimeProperty(key);
+        if (value == null || "".equals(value.trim())) {
+            return defaultValue;
+        }
+        return value.trim();
+    }
+
+    /**
+     * Gets an integer runtime property, falling back to the given default when
+     * the property is not set or is not a number.
+     * 
+     * @param key
+     *            the key
+     * @param defaultValue
+     *            the default value
+     * @return the runtime property
+     */
+    public final int getIntRuntimeProperty(final String key,
+            final int defaultValue) {
+        String value = getRuntimeProperty(key, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Gets a boolean runtime property, falling back to the given default when
+     * the property is not set.
+     * 
+     * @param key
+     *            the key
+     * @param defaultValue
+     *            the default value
+     * @return the runtime property
+     */
+    public final boolean getBooleanRuntimeProperty(final String key,
+            final boolean defaultValue) {
+        String value = getRuntimeProperty(key, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        return Boolean.parseBoolean(value);
+    }
+
     /**
      * Sets the run time property.
      * 
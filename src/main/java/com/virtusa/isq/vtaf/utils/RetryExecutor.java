@@ -0,0 +1,506 @@
+/*
+ * Copyright 2004 ThoughtWorks, Inc. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law
+ * or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package com.virtusa.isq.vtaf.utils;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Drives the retry loops of the commands.<br>
+ * A command starts a step with {@link #start(String)} and loops while
+ * {@link Attempts#hasNext()}. Each step has a single deadline shared by
+ * everything it does, including the element waits, so that nested retries
+ * cannot multiply the time spent on one step. Retry counts and the time
+ * wasted in failed attempts are collected per command.<br>
+ * <br>
+ * Configured through the runtime properties:
+ * <ul>
+ * <li><i>RETRY</i> and <i>RETRY_INTERVAL</i>: the default attempts and pause</li>
+ * <li><i>RETRY.&lt;COMMAND&gt;</i> and <i>RETRY_INTERVAL.&lt;COMMAND&gt;</i>:
+ * per command overrides, e.g. RETRY.CLICK=5</li>
+ * <li><i>STEP_TIMEOUT</i>: the deadline of a step in milliseconds, by default
+ * twice RETRY * RETRY_INTERVAL</li>
+ * </ul>
+ */
+public class RetryExecutor {
+
+    /** The default number of attempts. */
+    private static final int DEFAULT_ATTEMPTS = 12;
+
+    /** The default pause between attempts in milliseconds. */
+    private static final int DEFAULT_PAUSE = 1000;
+
+    /** The prefix of the per command attempt overrides. */
+    private static final String ATTEMPTS_PREFIX = "RETRY.";
+
+    /** The prefix of the per command pause overrides. */
+    private static final String PAUSE_PREFIX = "RETRY_INTERVAL.";
+
+    /** The default policy. */
+    private volatile RetryPolicy defaultPolicy;
+
+    /** The per command policies. */
+    private final Map<String, RetryPolicy> policies;
+
+    /** The step timeout in milliseconds. */
+    private final long stepTimeoutMillis;
+
+    /** The step running on each thread. */
+    private final ThreadLocal<Attempts> currentStep = new ThreadLocal<Attempts>();
+
+    /** The retries of the last step completed on each thread. */
+    private final ThreadLocal<int[]> lastStepRetries = new ThreadLocal<int[]>();
+
+    /** The statistics per command. */
+    private final ConcurrentMap<String, CommandStatistics> statistics =
+            new ConcurrentHashMap<String, CommandStatistics>();
+
+    /**
+     * Instantiates a new retry executor.
+     *
+     * @param policy the default policy
+     * @param commandPolicies the per command policies, keyed by upper case
+     *            command name
+     * @param stepTimeout the step timeout in milliseconds
+     */
+    public RetryExecutor(final RetryPolicy policy,
+            final Map<String, RetryPolicy> commandPolicies,
+            final long stepTimeout) {
+        this.defaultPolicy = policy;
+        this.policies = new ConcurrentHashMap<String, RetryPolicy>(commandPolicies);
+        this.stepTimeoutMillis = stepTimeout;
+    }
+
+    /**
+     * Creates a retry executor configured from the given property file.
+     *
+     * @param propertyFile the property file
+     * @return the retry executor
+     */
+    public static RetryExecutor fromProperties(final String propertyFile) {
+        PropertyHandler propHandler = new PropertyHandler(propertyFile);
+        int attempts =
+                propHandler.getIntRuntimeProperty("RETRY", DEFAULT_ATTEMPTS);
+        int pause =
+                propHandler.getIntRuntimeProperty("RETRY_INTERVAL",
+                        DEFAULT_PAUSE);
+        long stepTimeout =
+                propHandler.getIntRuntimeProperty("STEP_TIMEOUT", 2
+                        * attempts * pause);
+
+        Map<String, RetryPolicy> commandPolicies =
+                new TreeMap<String, RetryPolicy>();
+        Properties props = propHandler.getPropertyObject();
+        if (props != null) {
+            for (String key : props.stringPropertyNames()) {
+                String command = null;
+                if (key.startsWith(ATTEMPTS_PREFIX)) {
+                    command = key.substring(ATTEMPTS_PREFIX.length());
+                } else if (key.startsWith(PAUSE_PREFIX)) {
+                    command = key.substring(PAUSE_PREFIX.length());
+                }
+                if (command != null && !command.isEmpty()) {
+                    command = command.toUpperCase(Locale.ENGLISH);
+                    commandPolicies.put(command, new RetryPolicy(
+                            propHandler.getIntRuntimeProperty(ATTEMPTS_PREFIX
+                                    + command, attempts), propHandler
+                                    .getIntRuntimeProperty(PAUSE_PREFIX
+                                            + command, pause)));
+                }
+            }
+        }
+        return new RetryExecutor(new RetryPolicy(attempts, pause),
+                commandPolicies, stepTimeout);
+    }
+
+    /**
+     * Sets the number of attempts of the commands without their own policy,
+     * keeping the default pause.
+     *
+     * @param attempts the maximum number of attempts
+     */
+    public final void setDefaultAttempts(final int attempts) {
+        defaultPolicy =
+                new RetryPolicy(attempts, defaultPolicy.getPauseMillis());
+    }
+
+    /**
+     * Starts a step of the given command on the current thread.
+     *
+     * @param command the command name, e.g. CLICK
+     * @return the attempts of the step
+     */
+    public final Attempts start(final String command) {
+        String name = command.toUpperCase(Locale.ENGLISH);
+        RetryPolicy policy = policies.get(name);
+        if (policy == null) {
+            policy = defaultPolicy;
+        }
+        Attempts attempts =
+                new Attempts(name, policy, System.nanoTime()
+                        + TimeUnit.MILLISECONDS.toNanos(stepTimeoutMillis));
+        currentStep.set(attempts);
+        return attempts;
+    }
+
+    /**
+     * Gets the deadline of the step running on the current thread.
+     *
+     * @return the deadline as a {@link System#nanoTime()} value, or
+     *         {@link Long#MAX_VALUE} if no step is running
+     */
+    public final long getStepDeadline() {
+        Attempts attempts = currentStep.get();
+        if (attempts == null || attempts.finished) {
+            return Long.MAX_VALUE;
+        }
+        return attempts.deadline;
+    }
+
+    /**
+     * Ends the step running on the current thread. Called once the result of
+     * the step is reported.
+     *
+     * @param passed whether the step passed
+     */
+    public final void endStep(final boolean passed) {
+        Attempts attempts = currentStep.get();
+        if (attempts != null) {
+            if (passed) {
+                attempts.succeeded();
+            } else {
+                attempts.finish();
+            }
+            lastStepRetries.set(new int[] {attempts.getRetries() });
+            currentStep.remove();
+        } else {
+            lastStepRetries.remove();
+        }
+    }
+
+    /**
+     * Forgets the step of the current thread, e.g. one which ended with an
+     * error before its result was reported, so that its deadline does not
+     * limit the waits of the next test case.
+     */
+    public final void clearStep() {
+        currentStep.remove();
+        lastStepRetries.remove();
+    }
+
+    /**
+     * Gets the number of retries of the last step ended on the current thread.
+     *
+     * @return the retries
+     */
+    public final int getLastStepRetries() {
+        int[] retries = lastStepRetries.get();
+        if (retries == null) {
+            return 0;
+        }
+        return retries[0];
+    }
+
+    /**
+     * Gets the statistics collected per command.
+     *
+     * @return the statistics keyed by command name
+     */
+    public final Map<String, CommandStatistics> getStatistics() {
+        return new TreeMap<String, CommandStatistics>(statistics);
+    }
+
+    /**
+     * Logs the statistics of the commands which had to be retried.
+     *
+     * @param log the logger
+     */
+    public final void logStatistics(final Logger log) {
+        for (Map.Entry<String, CommandStatistics> entry : getStatistics()
+                .entrySet()) {
+            CommandStatistics stats = entry.getValue();
+            if (stats.getRetries() > 0 || stats.getFailures() > 0) {
+                log.info("Retry statistics " + entry.getKey() + " : " + stats);
+            }
+        }
+    }
+
+    /**
+     * Gets the statistics of the given command.
+     *
+     * @param command the command
+     * @return the statistics
+     */
+    private CommandStatistics statisticsOf(final String command) {
+        CommandStatistics stats = statistics.get(command);
+        if (stats == null) {
+            stats = new CommandStatistics();
+            CommandStatistics existing = statistics.putIfAbsent(command, stats);
+            if (existing != null) {
+                stats = existing;
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * The attempts of a single step.
+     */
+    public final class Attempts {
+
+        /** The command. */
+        private final String command;
+
+        /** The policy. */
+        private final RetryPolicy policy;
+
+        /** The deadline as a nano time. */
+        private final long deadline;
+
+        /** The attempts made so far. */
+        private int attempt;
+
+        /** The start time of the current attempt. */
+        private long attemptStart;
+
+        /** Whether the step is over. */
+        private boolean finished;
+
+        /** Whether the step succeeded. */
+        private boolean passed;
+
+        /** The last failure. */
+        private Throwable lastFailure;
+
+        /**
+         * Instantiates the attempts of a step.
+         *
+         * @param commandName the command name
+         * @param retryPolicy the retry policy
+         * @param stepDeadline the step deadline
+         */
+        private Attempts(final String commandName,
+                final RetryPolicy retryPolicy, final long stepDeadline) {
+            this.command = commandName;
+            this.policy = retryPolicy;
+            this.deadline = stepDeadline;
+        }
+
+        /**
+         * Checks if another attempt should be made, and starts it.
+         *
+         * @return true, if an attempt should be made
+         */
+        public boolean hasNext() {
+            if (finished || attempt >= policy.getMaxAttempts()
+                    || (attempt > 0 && System.nanoTime() >= deadline)) {
+                finish();
+                return false;
+            }
+            if (attempt > 0) {
+                statisticsOf(command).retries.incrementAndGet();
+            }
+            attempt++;
+            attemptStart = System.nanoTime();
+            return true;
+        }
+
+        /**
+         * Records that the current attempt succeeded.
+         */
+        public void succeeded() {
+            if (!finished) {
+                finished = true;
+                passed = true;
+                statisticsOf(command).successes.incrementAndGet();
+            }
+        }
+
+        /**
+         * Records that the current attempt did not meet its condition and
+         * pauses according to the policy if another attempt will follow.
+         *
+         * @return true, if another attempt will follow; false if the step
+         *         failed for good and the failure should be reported
+         */
+        public boolean retry() {
+            return failed(null, policy.getPauseMillis());
+        }
+
+        /**
+         * Records the failure of the current attempt and pauses according to
+         * the policy if another attempt will follow.
+         *
+         * @param failure the failure
+         * @return true, if another attempt will follow; false if the step
+         *         failed for good and the failure should be reported
+         */
+        public boolean retry(final Throwable failure) {
+            return failed(failure, policy.getPauseMillis());
+        }
+
+        /**
+         * Records the failure of the current attempt, without pausing before
+         * the next one.
+         *
+         * @param failure the failure
+         * @return true, if another attempt will follow; false if the step
+         *         failed for good and the failure should be reported
+         */
+        public boolean retryNow(final Throwable failure) {
+            return failed(failure, 0);
+        }
+
+        /**
+         * Records the failure of the current attempt.
+         *
+         * @param failure the failure, or null if the attempt did not meet its
+         *            condition
+         * @param pause the pause before the next attempt
+         * @return true, if another attempt will follow
+         */
+        private boolean failed(final Throwable failure, final long pause) {
+            lastFailure = failure;
+            CommandStatistics stats = statisticsOf(command);
+            long now = System.nanoTime();
+            stats.wastedNanos.addAndGet(now - attemptStart);
+            if ((failure != null && !policy.isRetryable(failure))
+                    || attempt >= policy.getMaxAttempts() || now >= deadline) {
+                finish();
+                return false;
+            }
+            long sleep =
+                    Math.min(pause, TimeUnit.NANOSECONDS.toMillis(deadline
+                            - now));
+            if (sleep > 0) {
+                try {
+                    Thread.sleep(sleep);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    finish();
+                    return false;
+                }
+                stats.wastedNanos.addAndGet(System.nanoTime() - now);
+            }
+            return true;
+        }
+
+        /**
+         * Ends the step. A step which did not succeed is counted as failed.
+         */
+        private void finish() {
+            if (!finished) {
+                finished = true;
+                statisticsOf(command).failures.incrementAndGet();
+            }
+        }
+
+        /**
+         * Checks if the step is over without succeeding.
+         *
+         * @return true, if exhausted
+         */
+        public boolean isExhausted() {
+            return finished && !passed;
+        }
+
+        /**
+         * Gets the number of retries made so far.
+         *
+         * @return the retries
+         */
+        public int getRetries() {
+            return Math.max(0, attempt - 1);
+        }
+
+        /**
+         * Gets the last failure.
+         *
+         * @return the last failure, or null
+         */
+        public Throwable getLastFailure() {
+            return lastFailure;
+        }
+    }
+
+    /**
+     * The retry statistics of a command.
+     */
+    public static final class CommandStatistics {
+
+        /** The successful steps. */
+        private final AtomicLong successes = new AtomicLong();
+
+        /** The failed steps. */
+        private final AtomicLong failures = new AtomicLong();
+
+        /** The retries. */
+        private final AtomicLong retries = new AtomicLong();
+
+        /** The time spent in failed attempts and pauses. */
+        private final AtomicLong wastedNanos = new AtomicLong();
+
+        /**
+         * Gets the number of successful steps.
+         *
+         * @return the successes
+         */
+        public long getSuccesses() {
+            return successes.get();
+        }
+
+        /**
+         * Gets the number of failed steps.
+         *
+         * @return the failures
+         */
+        public long getFailures() {
+            return failures.get();
+        }
+
+        /**
+         * Gets the number of retries.
+         *
+         * @return the retries
+         */
+        public long getRetries() {
+            return retries.get();
+        }
+
+        /**
+         * Gets the time spent in failed attempts and pauses.
+         *
+         * @return the wasted time in milliseconds
+         */
+        public long getWastedMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(wastedNanos.get());
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String toString() {
+            return "successes=" + getSuccesses() + ", failures="
+                    + getFailures() + ", retries=" + getRetries()
+                    + ", wasted=" + getWastedMillis() + "ms";
+        }
+    }
+}
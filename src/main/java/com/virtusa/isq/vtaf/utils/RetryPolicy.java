@@ -0,0 +1,88 @@
+/*
+ * Copyright 2004 ThoughtWorks, Inc. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law
+ * or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+package com.virtusa.isq.vtaf.utils;
+
+import org.openqa.selenium.WebDriverException;
+
+/**
+ * Describes how a command is retried: how many attempts are made, how long to
+ * pause between them and which failures are worth another attempt.
+ */
+public class RetryPolicy {
+
+    /** The maximum number of attempts. */
+    private final int maxAttempts;
+
+    /** The pause between attempts in milliseconds. */
+    private final long pauseMillis;
+
+    /**
+     * Instantiates a new retry policy.
+     *
+     * @param attempts the maximum number of attempts
+     * @param pause the pause between attempts in milliseconds
+     */
+    public RetryPolicy(final int attempts, final long pause) {
+        this.maxAttempts = Math.max(1, attempts);
+        this.pauseMillis = Math.max(0, pause);
+    }
+
+    /**
+     * Gets the maximum number of attempts.
+     *
+     * @return the maximum number of attempts
+     */
+    public final int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * Gets the pause between attempts.
+     *
+     * @return the pause in milliseconds
+     */
+    public final long getPauseMillis() {
+        return pauseMillis;
+    }
+
+    /**
+     * Checks if another attempt may succeed after the given failure.<br>
+     * WebDriver failures (stale, not visible, no such element, no such frame
+     * or window, ...) and the checked exceptions raised by the runtime for
+     * missing elements are retryable. Programming and input errors, such as
+     * invalid numbers or arguments, are not: repeating the command cannot
+     * change their outcome.
+     *
+     * @param failure the failure
+     * @return true, if the failure is retryable
+     */
+    public boolean isRetryable(final Throwable failure) {
+        if (failure instanceof WebDriverException) {
+            return true;
+        }
+        if (failure instanceof Error) {
+            return false;
+        }
+        return !(failure instanceof IllegalArgumentException
+                || failure instanceof IndexOutOfBoundsException
+                || failure instanceof ClassCastException
+                || failure instanceof UnsupportedOperationException);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "attempts=" + maxAttempts + ", pause=" + pauseMillis + "ms";
+    }
+}
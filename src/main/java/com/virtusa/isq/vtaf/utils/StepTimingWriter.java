@@ -0,0 +1,380 @@
+/*
+ * Copyright 2004 ThoughtWorks, Inc. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law
+ * or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+
+package com.virtusa.isq.vtaf.utils;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes the time taken by each step to the time log as the steps run, so
+ * that the memory held stays bounded and a crashed run keeps the steps timed
+ * so far.<br>
+ * The steps are queued, and written by a background thread every flush
+ * interval. When the queue is full, the step is written by the test thread
+ * itself. The time log is a CSV file with the columns <i>test, step, command,
+ * object, duration_ms, retries, outcome</i>.<br>
+ * <br>
+ * The same steps may also be written in a compact binary form, as a sequence
+ * of records:
+ * <ul>
+ * <li><i>'S'</i>, an int id and a UTF string: a string seen the first time
+ * </li>
+ * <li><i>'R'</i>, the int ids of the test, step, command, object and outcome,
+ * a long duration in milliseconds and an int retry count: a step</li>
+ * </ul>
+ * Configured through the runtime properties:
+ * <ul>
+ * <li><i>TIME_LOG_FLUSH_INTERVAL</i>: the milliseconds between the writes
+ * (default 1000)</li>
+ * <li><i>TIME_LOG_QUEUE</i>: the steps which may wait for a write (default
+ * 4096)</li>
+ * <li><i>TIME_LOG_BINARY</i>: true, to write the binary form too</li>
+ * </ul>
+ */
+public class StepTimingWriter {
+
+    /** The header of the CSV file. */
+    private static final String CSV_HEADER =
+            "test,step,command,object,duration_ms,retries,outcome";
+
+    /** The default milliseconds between the writes. */
+    private static final int DEFAULT_FLUSH_INTERVAL = 1000;
+
+    /** The default steps which may wait for a write. */
+    private static final int DEFAULT_QUEUE = 4096;
+
+    /** The record of a string in the binary form. */
+    private static final int STRING_RECORD = 'S';
+
+    /** The record of a step in the binary form. */
+    private static final int STEP_RECORD = 'R';
+
+    /** The steps not written yet. */
+    private final BlockingQueue<StepTiming> queue;
+
+    /** The CSV file. */
+    private final BufferedWriter csv;
+
+    /** The binary file, or null. */
+    private final DataOutputStream binary;
+
+    /** The ids of the strings written to the binary file. */
+    private final Map<String, Integer> stringIds =
+            new HashMap<String, Integer>();
+
+    /** The background flusher. */
+    private final ScheduledExecutorService flusher;
+
+    /** True, once closed. */
+    private volatile boolean closed;
+
+    /**
+     * Instantiates a new step timing writer, and starts its flusher.
+     *
+     * @param csvFile the CSV file
+     * @param binaryFile the binary file, or null to write CSV only
+     * @param queueSize the steps which may wait for a write
+     * @param flushMillis the milliseconds between the writes
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public StepTimingWriter(final File csvFile, final File binaryFile,
+            final int queueSize, final long flushMillis) throws IOException {
+        createFolder(csvFile);
+        queue = new ArrayBlockingQueue<StepTiming>(Math.max(1, queueSize));
+        csv =
+                new BufferedWriter(new OutputStreamWriter(
+                        new FileOutputStream(csvFile), "UTF-8"));
+        csv.write(CSV_HEADER);
+        csv.newLine();
+        if (binaryFile != null) {
+            createFolder(binaryFile);
+            binary =
+                    new DataOutputStream(new BufferedOutputStream(
+                            new FileOutputStream(binaryFile)));
+        } else {
+            binary = null;
+        }
+
+        flusher =
+                Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+                    @Override
+                    public Thread newThread(final Runnable task) {
+                        Thread thread = new Thread(task, "vtaf-time-log");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        long interval = Math.max(1, flushMillis);
+        flusher.scheduleWithFixedDelay(new Runnable() {
+
+            @Override
+            public void run() {
+                flush();
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Creates a step timing writer for the time log in the target/logs
+     * folder, configured from the runtime properties.
+     *
+     * @return the writer
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public static StepTimingWriter fromProperties() throws IOException {
+        PropertyHandler propHandler = new PropertyHandler("runtime.properties");
+        File logs = new File("target" + File.separator + "logs");
+        return new StepTimingWriter(new File(logs, "ExecutionTime.csv"),
+                propHandler.getBooleanRuntimeProperty("TIME_LOG_BINARY", false)
+                        ? new File(logs, "ExecutionTime.bin") : null,
+                propHandler.getIntRuntimeProperty("TIME_LOG_QUEUE",
+                        DEFAULT_QUEUE), propHandler.getIntRuntimeProperty(
+                        "TIME_LOG_FLUSH_INTERVAL", DEFAULT_FLUSH_INTERVAL));
+    }
+
+    /**
+     * Records the time taken by a step.
+     *
+     * @param test the test case
+     * @param step the step, as reported: the command and its object separated
+     *        by a colon
+     * @param durationMillis the milliseconds taken
+     * @param retries the retries of the step
+     * @param outcome the result of the step
+     */
+    public final void record(final String test, final String step,
+            final long durationMillis, final int retries, final String outcome) {
+        if (closed) {
+            return;
+        }
+        StepTiming timing =
+                new StepTiming(test, step, durationMillis, retries, outcome);
+        if (!queue.offer(timing)) {
+            flush();
+            if (!queue.offer(timing)) {
+                synchronized (this) {
+                    write(timing);
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the steps queued so far.
+     */
+    public final synchronized void flush() {
+        if (closed) {
+            return;
+        }
+        List<StepTiming> timings = new ArrayList<StepTiming>();
+        queue.drainTo(timings);
+        for (StepTiming timing : timings) {
+            write(timing);
+        }
+        try {
+            csv.flush();
+            if (binary != null) {
+                binary.flush();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Stops the flusher, and writes and closes the time log.
+     */
+    public final void close() {
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(DEFAULT_FLUSH_INTERVAL,
+                    TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            flush();
+            closed = true;
+            try {
+                csv.close();
+                if (binary != null) {
+                    binary.close();
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Writes a step. Called holding the lock of the writer.
+     *
+     * @param timing the step
+     */
+    private void write(final StepTiming timing) {
+        if (closed) {
+            return;
+        }
+        try {
+            csv.write(csvField(timing.test));
+            csv.write(',');
+            csv.write(csvField(timing.step));
+            csv.write(',');
+            csv.write(csvField(timing.command));
+            csv.write(',');
+            csv.write(csvField(timing.object));
+            csv.write(',');
+            csv.write(Long.toString(timing.durationMillis));
+            csv.write(',');
+            csv.write(Integer.toString(timing.retries));
+            csv.write(',');
+            csv.write(csvField(timing.outcome));
+            csv.newLine();
+
+            if (binary != null) {
+                int test = stringId(timing.test);
+                int step = stringId(timing.step);
+                int command = stringId(timing.command);
+                int object = stringId(timing.object);
+                int outcome = stringId(timing.outcome);
+                binary.writeByte(STEP_RECORD);
+                binary.writeInt(test);
+                binary.writeInt(step);
+                binary.writeInt(command);
+                binary.writeInt(object);
+                binary.writeInt(outcome);
+                binary.writeLong(timing.durationMillis);
+                binary.writeInt(timing.retries);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Gets the id of a string in the binary file, writing the string the
+     * first time.
+     *
+     * @param value the string
+     * @return the id
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    private int stringId(final String value) throws IOException {
+        Integer id = stringIds.get(value);
+        if (id == null) {
+            id = stringIds.size();
+            stringIds.put(value, id);
+            binary.writeByte(STRING_RECORD);
+            binary.writeInt(id);
+            binary.writeUTF(value);
+        }
+        return id;
+    }
+
+    /**
+     * Quotes a CSV field when it holds a separator, a quote or a line break.
+     *
+     * @param value the field
+     * @return the CSV field
+     */
+    private static String csvField(final String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0
+                && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return "\"" + value.replace("\"", "\"\"") + "\"";
+    }
+
+    /**
+     * Creates the folder of a file.
+     *
+     * @param file the file
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    private static void createFolder(final File file) throws IOException {
+        File folder = file.getAbsoluteFile().getParentFile();
+        if (!folder.exists() && !folder.mkdirs()) {
+            throw new IOException("Cannot create new folder in location "
+                    + folder.getAbsolutePath());
+        }
+    }
+
+    /**
+     * The time taken by a step.
+     */
+    private static final class StepTiming {
+
+        /** The test case. */
+        private final String test;
+
+        /** The step. */
+        private final String step;
+
+        /** The command of the step. */
+        private final String command;
+
+        /** The object of the step. */
+        private final String object;
+
+        /** The milliseconds taken. */
+        private final long durationMillis;
+
+        /** The retries. */
+        private final int retries;
+
+        /** The result. */
+        private final String outcome;
+
+        /**
+         * Instantiates a new step timing.
+         *
+         * @param testName the test case
+         * @param stepName the step
+         * @param duration the milliseconds taken
+         * @param retryCount the retries
+         * @param result the result
+         */
+        private StepTiming(final String testName, final String stepName,
+                final long duration, final int retryCount, final String result) {
+            this.test = testName == null ? "" : testName;
+            this.step = stepName == null ? "" : stepName.trim();
+            int separator = step.indexOf(':');
+            if (separator >= 0) {
+                this.command = step.substring(0, separator).trim();
+                this.object = step.substring(separator + 1).trim();
+            } else {
+                this.command = step;
+                this.object = "";
+            }
+            this.durationMillis = duration;
+            this.retries = retryCount;
+            this.outcome = result == null ? "" : result;
+        }
+    }
+}
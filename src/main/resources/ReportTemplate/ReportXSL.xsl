@@ -10,6 +10,9 @@
 	<xsl:param name="testcaserid"/>
 	<xsl:param name="loadAll" /> 
 
+	<!-- A suite can be written in several sections with the same rid -->
+	<xsl:key name="folderByRid" match="activity[@type='folder']" use="@rid"/>
+
 
     <!-- Report Root Content -->
 	<xsl:template match="/report/*">
@@ -442,26 +445,35 @@
 	-->   
 	<xsl:template match="activity[@type='folder']">
         <xsl:param name="itemCount"/>
-        <li class="folder {@result} ui-treeList-item">
-            <h2 class="folder {@result}">
+        <xsl:variable name="sections" select="key('folderByRid', @rid)"/>
+        <xsl:if test="generate-id() = generate-id($sections[1])">
+        <xsl:variable name="result">
+            <xsl:choose>
+                <xsl:when test="$sections[@result='Failed']">Failed</xsl:when>
+                <xsl:otherwise><xsl:value-of select="@result"/></xsl:otherwise>
+            </xsl:choose>
+        </xsl:variable>
+        <li class="folder {$result} ui-treeList-item">
+            <h2 class="folder {$result}">
                 <span class="ui-status-icon"></span>
                 <span class="ui-icon folder"></span>
                 <xsl:value-of select="./@foldername"/>
-				<xsl:if test=".//item[@level='Warn']"><span class="ui-module-icon warn"></span></xsl:if>
+				<xsl:if test="$sections//item[@level='Warn']"><span class="ui-module-icon warn"></span></xsl:if>
                 <span class="duration">
                     <xsl:value-of select="./@duration"/>
                 </span>
             </h2>
             <ul>
                 <xsl:choose>
-                    <xsl:when test="@result='Failed' or @result='Active' or @result='Ignored' or @result='Success'">
-                        <xsl:apply-templates select="./activity">
+                    <xsl:when test="$result='Failed' or $result='Active' or $result='Ignored' or $result='Success'">
+                        <xsl:apply-templates select="$sections/activity">
                             <xsl:with-param name="itemCount" select="$itemCount" />
                         </xsl:apply-templates>
                     </xsl:when>
                 </xsl:choose>
             </ul>
         </li>
+        </xsl:if>
     </xsl:template> 
   
   
@@ -524,7 +536,7 @@
 				</div>
 				</xsl:if>
 
-				<xsl:if test='@errimg'>
+				<xsl:if test="@errimg != ''">
 					<br />
 					<a href="{@errimg}" class="thickbox" rel="modulename"><img src="{@errthumb}" alt="Screenshot"/></a>
 				</xsl:if>				